@@ -0,0 +1,31 @@
+package com.wwerlang.expensemanager.department;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Department entity to DTO mapping, which every employee response goes through as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DepartmentMappingBenchmark {
+
+    private DepartmentService departmentService;
+    private Department department;
+
+    @Setup
+    public void setUp() {
+        departmentService = new DepartmentService();
+        department = new Department(1, "IT", "Fix computers.", true, 3);
+    }
+
+    @Benchmark
+    public DepartmentDTO parseResponse() {
+        return departmentService.parseResponse(department);
+    }
+}
@@ -0,0 +1,92 @@
+package com.wwerlang.expensemanager.employee;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.wwerlang.expensemanager.department.DepartmentDTO;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialization of an employee listing as JSON, CBOR and Smile, each with and without gzip, the way a response is
+ * written with the matching {@code Accept} and {@code Accept-Encoding} headers. The payload size of each variant is
+ * printed once per trial, before the timing starts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class EmployeeFormatBenchmark {
+
+    private static final int DEPARTMENTS = 20;
+
+    public enum Format {
+        JSON, CBOR, SMILE;
+
+        JsonFactory factory() {
+            return switch (this) {
+                case JSON -> new JsonFactory();
+                case CBOR -> new CBORFactory();
+                case SMILE -> new SmileFactory();
+            };
+        }
+    }
+
+    @Param({"10000", "100000"})
+    private int size;
+
+    @Param({"JSON", "CBOR", "SMILE"})
+    private Format format;
+
+    @Param({"false", "true"})
+    private boolean gzip;
+
+    private ObjectWriter writer;
+    private List<EmployeeDTO> employees;
+
+    @Setup
+    public void setUp() throws IOException {
+        writer = Jackson2ObjectMapperBuilder.json().factory(format.factory()).build()
+                .writerFor(new TypeReference<List<EmployeeDTO>>() {
+                });
+
+        List<DepartmentDTO> departments = IntStream.range(0, DEPARTMENTS)
+                .mapToObj(i -> new DepartmentDTO(i + 1, "Department" + i, "Description of department " + i, true, 0))
+                .toList();
+        employees = IntStream.range(0, size)
+                .mapToObj(i -> new EmployeeDTO(i + 1, "First" + i, "Last" + i, i % 10 != 0,
+                        departments.get(i % DEPARTMENTS), 0))
+                .toList();
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        write(payload);
+        System.out.printf("%n%s of %d employees%s: %d bytes%n", format, size, gzip ? " gzipped" : "", payload.size());
+    }
+
+    @Benchmark
+    public void serialize() throws IOException {
+        write(OutputStream.nullOutputStream());
+    }
+
+    private void write(OutputStream out) throws IOException {
+        if (gzip) {
+            try (GZIPOutputStream gzipOut = new GZIPOutputStream(out)) {
+                writer.writeValue(gzipOut, employees);
+            }
+        } else {
+            writer.writeValue(out, employees);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.wwerlang.expensemanager.employee;
+
+import com.wwerlang.expensemanager.Application;
+import com.wwerlang.expensemanager.department.DepartmentDTO;
+import com.wwerlang.expensemanager.department.DepartmentService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * HTTP load on {@code GET /employee/{id}} and {@code POST /employee} from 1024 concurrent clients, with requests
+ * handled by Tomcat's platform thread pool or by virtual threads. Throughput is reported in requests per millisecond
+ * and latency percentiles (p0.99 among them) in milliseconds. The server runs in the benchmark JVM.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Threads(1024)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class EmployeeLoadBenchmark {
+
+    private static final int EMPLOYEES = 1000;
+
+    @Param({"false", "true"})
+    private boolean virtualThreads;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private String baseUrl;
+    private List<Long> ids;
+    private String newEmployee;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(Application.class)
+                .run("--server.port=0", "--logging.level.root=WARN",
+                        "--spring.threads.virtual.enabled=" + virtualThreads);
+        baseUrl = "http://localhost:" + context.getEnvironment().getProperty("local.server.port") + "/employee";
+        client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(30)).build();
+
+        DepartmentService departmentService = context.getBean(DepartmentService.class);
+        DepartmentDTO department = departmentService.save(new DepartmentDTO(0, "IT", "Fix computers.", true, 0));
+
+        EmployeeService employeeService = context.getBean(EmployeeService.class);
+        ids = employeeService.saveAll(IntStream.range(0, EMPLOYEES)
+                        .mapToObj(i -> new EmployeeDTO(0, "First" + i, "Last" + i, true, department, 0))
+                        .toList())
+                .stream()
+                .map(e -> e.getItem().getId())
+                .toList();
+
+        newEmployee = "{\"firstName\":\"Load\",\"lastName\":\"Test\",\"active\":true,\"department\":{\"id\":"
+                + department.getId() + "}}";
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.close();
+        context.close();
+    }
+
+    @Benchmark
+    public String find() throws IOException, InterruptedException {
+        long id = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + "/" + id)).GET().build());
+    }
+
+    @Benchmark
+    public String save() throws IOException, InterruptedException {
+        return send(HttpRequest.newBuilder(URI.create(baseUrl))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(newEmployee))
+                .build());
+    }
+
+    private String send(HttpRequest request) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Unexpected status " + response.statusCode() + ": " + response.body());
+        }
+
+        return response.body();
+    }
+}
@@ -0,0 +1,46 @@
+package com.wwerlang.expensemanager.employee;
+
+import com.wwerlang.expensemanager.department.Department;
+import com.wwerlang.expensemanager.department.DepartmentDTO;
+import com.wwerlang.expensemanager.department.DepartmentService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity to DTO mapping and back for a single employee, without a Spring context.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmployeeMappingBenchmark {
+
+    private EmployeeService employeeService;
+    private Employee employee;
+    private EmployeeDTO employeeDTO;
+
+    @Setup
+    public void setUp() {
+        employeeService = new EmployeeService();
+        ReflectionTestUtils.setField(employeeService, "departmentService", new DepartmentService());
+
+        Department department = new Department(1, "IT", "Fix computers.", true, 3);
+        employee = new Employee(1, "John", "Johnson", true, department, 7);
+        employeeDTO = new EmployeeDTO(1, "John", "Johnson", true,
+                new DepartmentDTO(1, "IT", "Fix computers.", true, 3), 7);
+    }
+
+    @Benchmark
+    public EmployeeDTO parseResponse() {
+        return employeeService.parseResponse(employee);
+    }
+
+    @Benchmark
+    public Employee parseRequest() {
+        return employeeService.parseRequest(employeeDTO);
+    }
+}
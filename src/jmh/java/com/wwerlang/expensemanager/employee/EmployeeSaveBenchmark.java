@@ -0,0 +1,67 @@
+package com.wwerlang.expensemanager.employee;
+
+import com.wwerlang.expensemanager.Application;
+import com.wwerlang.expensemanager.common.BatchResultDTO;
+import com.wwerlang.expensemanager.department.DepartmentDTO;
+import com.wwerlang.expensemanager.department.DepartmentService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Employees created per second through one {@code save()} per employee versus {@code saveAll()}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class EmployeeSaveBenchmark {
+
+    private static final int EMPLOYEES = 1000;
+
+    private ConfigurableApplicationContext context;
+    private EmployeeService employeeService;
+    private List<EmployeeDTO> employees;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .run("--logging.level.root=WARN");
+        employeeService = context.getBean(EmployeeService.class);
+
+        DepartmentService departmentService = context.getBean(DepartmentService.class);
+        DepartmentDTO department = departmentService.save(new DepartmentDTO(0, "IT", "Fix computers.", true, 0));
+
+        employees = IntStream.range(0, EMPLOYEES)
+                .mapToObj(i -> new EmployeeDTO(0, "First" + i, "Last" + i, true, department, 0))
+                .toList();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EMPLOYEES)
+    public void save(Blackhole blackhole) {
+        for (EmployeeDTO employee : employees) {
+            blackhole.consume(employeeService.save(employee));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EMPLOYEES)
+    public List<BatchResultDTO<EmployeeDTO>> saveAll() {
+        return employeeService.saveAll(employees);
+    }
+}
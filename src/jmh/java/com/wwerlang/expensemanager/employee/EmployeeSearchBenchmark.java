@@ -0,0 +1,87 @@
+package com.wwerlang.expensemanager.employee;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Name searches on the employee search index holding one million employees, with names made of random syllables so
+ * short prefixes match many of them. Also times a single save reaching the index, of a new employee and of a renamed
+ * one, whose old slot is compacted away at the next merge of the delta.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class EmployeeSearchBenchmark {
+
+    private static final String[] SYLLABLES = {"an", "be", "ca", "do", "el", "fi", "go", "ha", "jo", "ka", "li", "ma",
+            "ne", "ol", "pa", "ri", "sa", "to", "ul", "vi"};
+
+    private EmployeeSearchIndex index;
+    private long id;
+    private long renamed;
+
+    @Setup
+    public void setUp() {
+        index = new EmployeeSearchIndex();
+        SplittableRandom random = new SplittableRandom(42);
+        List<EmployeeNameDTO> employees = new ArrayList<>(100_000);
+
+        for (id = 1; id <= 1_000_000; id++) {
+            employees.add(new EmployeeNameDTO(id, name(random), name(random), true));
+
+            if (employees.size() == 100_000) {
+                index.putAll(employees);
+                employees.clear();
+            }
+        }
+    }
+
+    @Benchmark
+    public List<EmployeeNameDTO> shortPrefix() {
+        return index.search("ma", 10);
+    }
+
+    @Benchmark
+    public List<EmployeeNameDTO> longPrefix() {
+        return index.search("marika", 10);
+    }
+
+    @Benchmark
+    public List<EmployeeNameDTO> twoWords() {
+        return index.search("ma ca", 10);
+    }
+
+    @Benchmark
+    public List<EmployeeNameDTO> noMatch() {
+        return index.search("xyz", 10);
+    }
+
+    @Benchmark
+    public void put() {
+        index.put(new EmployeeNameDTO(id++, "Marika", "Canelo", true));
+    }
+
+    @Benchmark
+    public void rename() {
+        renamed = renamed % 1_000_000 + 1;
+        index.put(new EmployeeNameDTO(renamed, "Marika" + id++, "Canelo", true));
+    }
+
+    private static String name(SplittableRandom random) {
+        StringBuilder name = new StringBuilder();
+
+        for (int i = random.nextInt(2, 5); i > 0; i--) {
+            name.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+
+        name.setCharAt(0, Character.toUpperCase(name.charAt(0)));
+        return name.toString();
+    }
+}
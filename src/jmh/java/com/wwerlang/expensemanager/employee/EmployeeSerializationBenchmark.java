@@ -0,0 +1,55 @@
+package com.wwerlang.expensemanager.employee;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.wwerlang.expensemanager.department.DepartmentDTO;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Jackson serialization of an employee listing, written to a discarding stream the way the message converter writes
+ * to the response. Employees share a handful of departments, as they do in practice.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class EmployeeSerializationBenchmark {
+
+    private static final int DEPARTMENTS = 20;
+
+    @Param({"1000", "100000", "1000000"})
+    private int size;
+
+    private ObjectWriter writer;
+    private List<EmployeeDTO> employees;
+
+    @Setup
+    public void setUp() {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        writer = objectMapper.writerFor(new TypeReference<List<EmployeeDTO>>() {
+        });
+
+        List<DepartmentDTO> departments = IntStream.range(0, DEPARTMENTS)
+                .mapToObj(i -> new DepartmentDTO(i + 1, "Department" + i, "Description of department " + i, true, 0))
+                .toList();
+        employees = IntStream.range(0, size)
+                .mapToObj(i -> new EmployeeDTO(i + 1, "First" + i, "Last" + i, i % 10 != 0,
+                        departments.get(i % DEPARTMENTS), 0))
+                .toList();
+    }
+
+    @Benchmark
+    public void serialize() throws IOException {
+        writer.writeValue(OutputStream.nullOutputStream(), employees);
+    }
+}
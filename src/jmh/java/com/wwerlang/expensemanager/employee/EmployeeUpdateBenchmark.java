@@ -0,0 +1,70 @@
+package com.wwerlang.expensemanager.employee;
+
+import com.wwerlang.expensemanager.Application;
+import com.wwerlang.expensemanager.department.DepartmentDTO;
+import com.wwerlang.expensemanager.department.DepartmentService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Updates per second of one employee through the previous {@code existsById()} plus {@code save()} (a merge that
+ * selects the row again before updating it) versus {@code EmployeeService.save()}, a single conditional update.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class EmployeeUpdateBenchmark {
+
+    private ConfigurableApplicationContext context;
+    private EmployeeService employeeService;
+    private EmployeeRepository employeeRepository;
+    private TransactionTemplate transactionTemplate;
+    private EmployeeDTO employee;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .run("--logging.level.root=WARN");
+        employeeService = context.getBean(EmployeeService.class);
+        employeeRepository = context.getBean(EmployeeRepository.class);
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+
+        DepartmentService departmentService = context.getBean(DepartmentService.class);
+        DepartmentDTO department = departmentService.save(new DepartmentDTO(0, "IT", "Fix computers.", true, 0));
+        employee = employeeService.save(new EmployeeDTO(0, "John", "Johnson", true, department, 0));
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Employee existsAndMerge() {
+        return transactionTemplate.execute(status -> {
+            if (!employeeRepository.existsById(employee.getId())) {
+                throw new IllegalStateException();
+            }
+
+            Employee saved = employeeRepository.save(employeeService.parseRequest(employee));
+            employee.setVersion(saved.getVersion());
+            return saved;
+        });
+    }
+
+    @Benchmark
+    public EmployeeDTO conditionalUpdate() {
+        EmployeeDTO saved = employeeService.save(employee);
+        employee.setVersion(saved.getVersion());
+        return saved;
+    }
+}
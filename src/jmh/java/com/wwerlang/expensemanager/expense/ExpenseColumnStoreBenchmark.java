@@ -0,0 +1,107 @@
+package com.wwerlang.expensemanager.expense;
+
+import com.wwerlang.expensemanager.category.Category;
+import com.wwerlang.expensemanager.department.Department;
+import com.wwerlang.expensemanager.employee.Employee;
+import com.wwerlang.expensemanager.expense.ExpenseQueryDTO.Dimension;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregates over the in-memory expense columns: 100 departments, 50,000 employees and 20 categories over three years.
+ * Rows are filled in directly, without a database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class ExpenseColumnStoreBenchmark {
+
+    private static final Currency EUR = Currency.getInstance("EUR");
+    private static final LocalDate START = LocalDate.of(2021, 1, 1);
+
+    @Param({"1000000", "10000000"})
+    private int rows;
+
+    private ExpenseColumnStore store;
+    private ExpenseQueryDTO byDepartmentAndCategory;
+    private ExpenseQueryDTO oneEmployee;
+    private ExpenseQueryDTO total;
+
+    @Setup
+    public void setUp() {
+        store = new ExpenseColumnStore();
+        ReflectionTestUtils.setField(store, "exchangeRates", exchangeRates());
+        SplittableRandom random = new SplittableRandom(42);
+
+        Department[] departments = new Department[100];
+        Category[] categories = new Category[20];
+
+        for (int i = 0; i < departments.length; i++) {
+            departments[i] = new Department(i + 1, null, null, true, 0);
+        }
+
+        for (int i = 0; i < categories.length; i++) {
+            categories[i] = new Category(i + 1, null, null, true, 0);
+        }
+
+        List<Expense> batch = new ArrayList<>(100_000);
+
+        for (int id = 1; id <= rows; id++) {
+            Employee employee = new Employee();
+            employee.setId(random.nextInt(50_000) + 1);
+
+            batch.add(new Expense(id, employee, departments[(int) (employee.getId() % departments.length)],
+                    categories[random.nextInt(categories.length)], START.plusDays(random.nextInt(3 * 365)),
+                    random.nextInt(100_000), EUR, null, 0));
+
+            if (batch.size() == 100_000) {
+                store.putAll(batch);
+                batch.clear();
+            }
+        }
+
+        store.putAll(batch);
+
+        byDepartmentAndCategory = new ExpenseQueryDTO(LocalDate.of(2022, 1, 1), LocalDate.of(2022, 12, 31), null,
+                null, null, List.of(Dimension.DEPARTMENT, Dimension.CATEGORY));
+        oneEmployee = new ExpenseQueryDTO(null, null, null, null, 1234L, List.of(Dimension.CATEGORY));
+        total = new ExpenseQueryDTO(null, null, null, null, null, List.of());
+    }
+
+    @Benchmark
+    public List<ExpenseAggregateDTO> byDepartmentAndCategoryForOneYear() {
+        return store.aggregate(byDepartmentAndCategory);
+    }
+
+    @Benchmark
+    public List<ExpenseAggregateDTO> oneEmployeeByCategory() {
+        return store.aggregate(oneEmployee);
+    }
+
+    @Benchmark
+    public List<ExpenseAggregateDTO> total() {
+        return store.aggregate(total);
+    }
+
+    /**
+     * Rates without a file, so every amount is in the base currency.
+     */
+    private static ExchangeRates exchangeRates() {
+        ExchangeRates exchangeRates = new ExchangeRates();
+        ReflectionTestUtils.setField(exchangeRates, "baseCurrency", "EUR");
+        ReflectionTestUtils.setField(exchangeRates, "file", Path.of("no-exchange-rates.csv"));
+        exchangeRates.start();
+        return exchangeRates;
+    }
+}
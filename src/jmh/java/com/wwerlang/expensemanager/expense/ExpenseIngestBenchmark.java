@@ -0,0 +1,97 @@
+package com.wwerlang.expensemanager.expense;
+
+import com.wwerlang.expensemanager.Application;
+import com.wwerlang.expensemanager.category.CategoryDTO;
+import com.wwerlang.expensemanager.category.CategoryService;
+import com.wwerlang.expensemanager.department.DepartmentDTO;
+import com.wwerlang.expensemanager.department.DepartmentService;
+import com.wwerlang.expensemanager.employee.EmployeeDTO;
+import com.wwerlang.expensemanager.employee.EmployeeService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+
+/**
+ * Expenses written per second through one {@code save()} per expense versus submitting them to the
+ * {@link ExpenseIngester} and waiting until its writer has committed them all. The wait parks instead of spinning
+ * so it does not take the CPU away from the writer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExpenseIngestBenchmark {
+
+    private static final int EXPENSES = 1000;
+
+    private ConfigurableApplicationContext context;
+    private ExpenseService expenseService;
+    private ExpenseIngester expenseIngester;
+    private List<ExpenseDTO> expenses;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .run("--logging.level.root=WARN", "--expense.ingest.journal.dir=target/benchmark-journal");
+        expenseService = context.getBean(ExpenseService.class);
+        expenseIngester = context.getBean(ExpenseIngester.class);
+
+        DepartmentDTO department = context.getBean(DepartmentService.class)
+                .save(new DepartmentDTO(0, "IT", "Fix computers.", true, 0));
+        EmployeeDTO employee = context.getBean(EmployeeService.class)
+                .save(new EmployeeDTO(0, "John", "Johnson", true, department, 0));
+        CategoryDTO category = context.getBean(CategoryService.class)
+                .save(new CategoryDTO(0, "Meal", "Lunch, dinner and breakfast.", true, 0));
+
+        expenses = IntStream.range(0, EXPENSES)
+                .mapToObj(i -> new ExpenseDTO(0, employee.getId(), category.getId(), LocalDate.of(2023, 12, 1),
+                        BigDecimal.valueOf(i, 2), null, null, 0))
+                .toList();
+    }
+
+    /**
+     * Millions of rows pile up in the in-memory database otherwise, slowing every later iteration down. All of them
+     * are in one month, so dropping its table clears them.
+     */
+    @TearDown(Level.Iteration)
+    public void clear() {
+        expenseService.dropPartition(YearMonth.from(expenses.get(0).getDate()), false);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EXPENSES)
+    public void save(Blackhole blackhole) {
+        for (ExpenseDTO expense : expenses) {
+            blackhole.consume(expenseService.save(expense));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(EXPENSES)
+    public void ingest() {
+        long target = expenseIngester.stats().getWritten() + EXPENSES;
+        expenseIngester.submit(expenses);
+
+        while (expenseIngester.stats().getWritten() < target) {
+            LockSupport.parkNanos(100_000);
+        }
+    }
+}
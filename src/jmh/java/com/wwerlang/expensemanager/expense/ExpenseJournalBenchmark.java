@@ -0,0 +1,67 @@
+package com.wwerlang.expensemanager.expense;
+
+import com.wwerlang.expensemanager.common.Journal;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Time until an ingested expense is acknowledged: encoding it and appending it to the journal, with and without
+ * waiting for the disk. Compare with {@code ExpenseIngestBenchmark.save} for the synchronous path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ExpenseJournalBenchmark {
+
+    private static final int CHECKPOINT_EVERY = 100_000;
+
+    @Param({"false", "true"})
+    private boolean force;
+
+    private Path directory;
+    private Journal journal;
+    private ExpenseDTO expense;
+    private int appends;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal");
+        journal = new Journal(directory, 64 << 20, force);
+        expense = new ExpenseDTO(0, 1, 1, LocalDate.of(2023, 12, 1), new BigDecimal("12.50"), null, "Lunch.", 0);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        journal.close();
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public long append() {
+        long end = journal.append(List.of(ExpenseIngester.encode(expense)));
+
+        // Lets go of the segments written so far, which would otherwise fill the disk within a few iterations.
+        if (++appends % CHECKPOINT_EVERY == 0) {
+            journal.checkpoint(end);
+        }
+
+        return end;
+    }
+}
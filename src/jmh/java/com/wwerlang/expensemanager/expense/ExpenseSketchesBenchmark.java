@@ -0,0 +1,95 @@
+package com.wwerlang.expensemanager.expense;
+
+import com.wwerlang.expensemanager.category.Category;
+import com.wwerlang.expensemanager.department.Department;
+import com.wwerlang.expensemanager.employee.Employee;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Estimates from the per day expense sketches over one quarter and one year, with the same data as
+ * {@link ExpenseColumnStoreBenchmark} at 10 million rows: 100 departments, 50,000 employees and 20 categories over
+ * three years. Compare with its aggregates, which scan the rows.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class ExpenseSketchesBenchmark {
+
+    private static final Currency EUR = Currency.getInstance("EUR");
+    private static final LocalDate START = LocalDate.of(2021, 1, 1);
+    private static final List<Double> QUANTILES = List.of(0.5, 0.95);
+
+    private ExpenseSketches sketches;
+
+    @Setup
+    public void setUp() {
+        sketches = new ExpenseSketches();
+        ReflectionTestUtils.setField(sketches, "exchangeRates", exchangeRates());
+        SplittableRandom random = new SplittableRandom(42);
+
+        Department[] departments = new Department[100];
+        Category[] categories = new Category[20];
+
+        for (int i = 0; i < departments.length; i++) {
+            departments[i] = new Department(i + 1, null, null, true, 0);
+        }
+
+        for (int i = 0; i < categories.length; i++) {
+            categories[i] = new Category(i + 1, null, null, true, 0);
+        }
+
+        List<Expense> batch = new ArrayList<>(100_000);
+
+        for (int id = 1; id <= 10_000_000; id++) {
+            Employee employee = new Employee();
+            employee.setId(random.nextInt(50_000) + 1);
+
+            batch.add(new Expense(id, employee, departments[(int) (employee.getId() % departments.length)],
+                    categories[random.nextInt(categories.length)], START.plusDays(random.nextInt(3 * 365)),
+                    random.nextInt(100_000), EUR, null, 0));
+
+            if (batch.size() == 100_000) {
+                sketches.addAll(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    @Benchmark
+    public ExpenseSketchDTO categoryForOneQuarter() {
+        return sketches.estimate(LocalDate.of(2022, 10, 1), LocalDate.of(2022, 12, 31), null, 7L, QUANTILES);
+    }
+
+    @Benchmark
+    public ExpenseSketchDTO departmentForOneQuarter() {
+        return sketches.estimate(LocalDate.of(2022, 10, 1), LocalDate.of(2022, 12, 31), 7L, null, QUANTILES);
+    }
+
+    @Benchmark
+    public ExpenseSketchDTO categoryForOneYear() {
+        return sketches.estimate(LocalDate.of(2022, 1, 1), LocalDate.of(2022, 12, 31), null, 7L, QUANTILES);
+    }
+
+    /**
+     * Rates without a file, so every amount is in the base currency.
+     */
+    private static ExchangeRates exchangeRates() {
+        ExchangeRates exchangeRates = new ExchangeRates();
+        ReflectionTestUtils.setField(exchangeRates, "baseCurrency", "EUR");
+        ReflectionTestUtils.setField(exchangeRates, "file", Path.of("no-exchange-rates.csv"));
+        exchangeRates.start();
+        return exchangeRates;
+    }
+}
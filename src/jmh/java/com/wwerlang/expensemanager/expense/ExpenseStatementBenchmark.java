@@ -0,0 +1,99 @@
+package com.wwerlang.expensemanager.expense;
+
+import com.wwerlang.expensemanager.Application;
+import com.wwerlang.expensemanager.category.CategoryDTO;
+import com.wwerlang.expensemanager.category.CategoryService;
+import com.wwerlang.expensemanager.department.DepartmentDTO;
+import com.wwerlang.expensemanager.department.DepartmentService;
+import com.wwerlang.expensemanager.employee.EmployeeDTO;
+import com.wwerlang.expensemanager.employee.EmployeeService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Month-end statements of 100 departments with 50,000 employees and 200,000 expenses in the month, written as CSV to
+ * a discarding stream, with the statement pool at one thread and at four.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ExpenseStatementBenchmark {
+
+    private static final YearMonth MONTH = YearMonth.of(2023, 12);
+    private static final int DEPARTMENTS = 100;
+    private static final int EMPLOYEES = 50_000;
+    private static final int EXPENSES = 200_000;
+
+    @Param({"1", "4"})
+    private int parallelism;
+
+    private ConfigurableApplicationContext context;
+    private ExpenseStatementService expenseStatementService;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(Application.class)
+                .web(WebApplicationType.NONE)
+                .run("--logging.level.root=WARN", "--expense.statements.parallelism=" + parallelism,
+                        "--expense.ingest.journal.dir=target/benchmark-journal");
+        expenseStatementService = context.getBean(ExpenseStatementService.class);
+
+        DepartmentService departmentService = context.getBean(DepartmentService.class);
+        List<DepartmentDTO> departments = IntStream.range(0, DEPARTMENTS)
+                .mapToObj(i -> departmentService.save(new DepartmentDTO(0, "Department " + i, null, true, 0)))
+                .toList();
+        CategoryDTO category = context.getBean(CategoryService.class)
+                .save(new CategoryDTO(0, "Meal", "Lunch, dinner and breakfast.", true, 0));
+
+        EmployeeService employeeService = context.getBean(EmployeeService.class);
+        List<Long> employees = employeeService.saveAll(IntStream.range(0, EMPLOYEES)
+                        .mapToObj(i -> new EmployeeDTO(0, "First" + i, "Last" + i, true,
+                                departments.get(i % DEPARTMENTS), 0))
+                        .toList())
+                .stream()
+                .map(e -> e.getItem().getId())
+                .toList();
+
+        ExpenseService expenseService = context.getBean(ExpenseService.class);
+        SplittableRandom random = new SplittableRandom(42);
+        List<ExpenseDTO> batch = new ArrayList<>();
+
+        for (int i = 0; i < EXPENSES; i++) {
+            batch.add(new ExpenseDTO(0, employees.get(random.nextInt(EMPLOYEES)), category.getId(),
+                    MONTH.atDay(random.nextInt(1, 32)), BigDecimal.valueOf(random.nextInt(1, 100_000), 2),
+                    null, "Expense " + i, 0));
+
+            if (batch.size() == 10_000) {
+                expenseService.insertAll(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void csv() throws IOException {
+        try (ExpenseStatementCsvWriter writer = new ExpenseStatementCsvWriter(OutputStream.nullOutputStream())) {
+            expenseStatementService.write(MONTH, writer);
+        }
+    }
+}
@@ -11,11 +11,12 @@ import lombok.Setter;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table
+@Table(indexes = @Index(name = "category_active", columnList = "active, id"))
 public class Category {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "category_seq")
+    @SequenceGenerator(name = "category_seq", sequenceName = "category_seq", allocationSize = 50)
     @Column(name = "id")
     private long id;
 
@@ -27,4 +28,8 @@ public class Category {
 
     @Column(name = "active")
     private boolean active;
+
+    @Version
+    @Column(name = "version")
+    private long version;
 }
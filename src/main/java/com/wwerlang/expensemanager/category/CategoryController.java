@@ -1,8 +1,12 @@
 package com.wwerlang.expensemanager.category;
 
+import com.wwerlang.expensemanager.common.BatchResultDTO;
+import com.wwerlang.expensemanager.common.CacheStatsDTO;
+import com.wwerlang.expensemanager.common.PageDTO;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
@@ -14,15 +18,36 @@ public class CategoryController {
     private CategoryService categoryService;
 
     @GetMapping("/{id}")
-    private ResponseEntity<CategoryDTO> find(@PathVariable("id") long id) {
+    private ResponseEntity<CategoryDTO> find(@PathVariable("id") long id, WebRequest request) {
+        String eTag = categoryService.eTag();
+
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+
         CategoryDTO category = categoryService.find(id);
-        return ResponseEntity.ok(category);
+        return ResponseEntity.ok().eTag(eTag).body(category);
     }
 
     @GetMapping
-    private ResponseEntity<List<CategoryDTO>> list() {
-        List<CategoryDTO> categories = categoryService.list();
-        return ResponseEntity.ok(categories);
+    private ResponseEntity<PageDTO<CategoryDTO>> list(@RequestParam(name = "after", defaultValue = "0") long after,
+                                                      @RequestParam(name = "limit", defaultValue = "100") int limit,
+                                                      @RequestParam(name = "active", required = false) Boolean active,
+                                                      WebRequest request) {
+        String eTag = categoryService.eTag();
+
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+
+        PageDTO<CategoryDTO> categories = categoryService.list(after, limit, active);
+        return ResponseEntity.ok().eTag(eTag).body(categories);
+    }
+
+    @GetMapping("/cache/stats")
+    private ResponseEntity<CacheStatsDTO> cacheStats() {
+        CacheStatsDTO stats = categoryService.cacheStats();
+        return ResponseEntity.ok(stats);
     }
 
     @PostMapping
@@ -30,4 +55,10 @@ public class CategoryController {
         category = categoryService.save(category);
         return ResponseEntity.ok(category);
     }
+
+    @PostMapping("/batch")
+    private ResponseEntity<List<BatchResultDTO<CategoryDTO>>> saveAll(@RequestBody List<CategoryDTO> categories) {
+        List<BatchResultDTO<CategoryDTO>> results = categoryService.saveAll(categories);
+        return ResponseEntity.ok(results);
+    }
 }
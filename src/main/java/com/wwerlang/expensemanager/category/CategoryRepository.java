@@ -1,8 +1,38 @@
 package com.wwerlang.expensemanager.category;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
 
 @Repository
 public interface CategoryRepository extends JpaRepository<Category, Long> {
+
+    List<Category> findByIdGreaterThanOrderByIdAsc(long id, Limit limit);
+
+    List<Category> findByActiveAndIdGreaterThanOrderByIdAsc(boolean active, long id, Limit limit);
+
+    /**
+     * Updates the row only if it still has the given version, bumping it. Returns the number of updated rows, so zero
+     * means the row is gone or was changed in the meantime.
+     */
+    default int updateIfVersionMatches(Category category) {
+        return updateIfVersionMatches(category.getId(), category.getVersion(),
+                category.getName(), category.getDescription(), category.isActive());
+    }
+
+    /**
+     * Plain native statement: JPQL with SpEL parameters is rendered, translated and evaluated again on every call.
+     */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true, value = "update category set name = :name, description = :description, "
+            + "active = :active, version = version + 1 where id = :id and version = :version")
+    int updateIfVersionMatches(@Param("id") long id, @Param("version") long version, @Param("name") String name,
+                               @Param("description") String description, @Param("active") boolean active);
 }
@@ -1,20 +1,52 @@
 package com.wwerlang.expensemanager.category;
 
+import com.wwerlang.expensemanager.common.BatchResultDTO;
+import com.wwerlang.expensemanager.common.CacheStatsDTO;
+import com.wwerlang.expensemanager.common.ChangeVersion;
+import com.wwerlang.expensemanager.common.PageDTO;
+import com.wwerlang.expensemanager.common.ReferenceCache;
+import com.wwerlang.expensemanager.exception.EntityConflictException;
 import com.wwerlang.expensemanager.exception.EntityNotFoundException;
+import com.wwerlang.expensemanager.metrics.MappingTimers;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
 public class CategoryService {
 
+    private static final Timer PARSE_RESPONSE = MappingTimers.response("category");
+    private static final Timer PARSE_REQUEST = MappingTimers.request("category");
+
     @Autowired
     private CategoryRepository categoryRepository;
 
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final ReferenceCache<CategoryDTO> cache = new ReferenceCache<>();
+    private final ChangeVersion changeVersion = new ChangeVersion("category");
+
+    /**
+     * ETag of every find and list response, changing with each write to categories.
+     */
+    public String eTag() {
+        return changeVersion.eTag();
+    }
+
     public CategoryDTO find(long id) {
+        return cache.find(id, this::load);
+    }
+
+    private CategoryDTO load(long id) {
         Optional<Category> categoryOptional = categoryRepository.findById(id);
 
         if (categoryOptional.isPresent()) {
@@ -25,40 +57,139 @@ public class CategoryService {
         }
     }
 
-    public List<CategoryDTO> list() {
-        List<CategoryDTO> categories = new ArrayList<>();
-        categoryRepository.findAll().forEach(e -> categories.add(parseResponse(e)));
-        return categories;
+    /**
+     * One page of categories after the given id, only the active or inactive ones when {@code active} is set.
+     */
+    public PageDTO<CategoryDTO> list(long after, int limit, Boolean active) {
+        int size = PageDTO.limit(limit);
+        return cache.list(active, after, size, () -> load(after, size, active));
+    }
+
+    private PageDTO<CategoryDTO> load(long after, int limit, Boolean active) {
+        List<Category> rows = active == null
+                ? categoryRepository.findByIdGreaterThanOrderByIdAsc(after, Limit.of(limit + 1))
+                : categoryRepository.findByActiveAndIdGreaterThanOrderByIdAsc(active, after, Limit.of(limit + 1));
+
+        List<CategoryDTO> categories = new ArrayList<>(rows.size());
+        rows.forEach(e -> categories.add(parseResponse(e)));
+        return PageDTO.of(categories, limit, CategoryDTO::getId);
     }
 
     public CategoryDTO save(CategoryDTO categoryDTO) {
         long id = categoryDTO.getId();
         boolean isUpdate = id != 0;
 
-        if (isUpdate && !categoryRepository.existsById(id)) {
+        Category category = parseRequest(categoryDTO);
+
+        if (!isUpdate) {
+            category = categoryRepository.save(category);
+        } else if (categoryRepository.updateIfVersionMatches(category) == 1) {
+            category.setVersion(category.getVersion() + 1);
+        } else if (categoryRepository.existsById(id)) {
+            throw new EntityConflictException("Category", id, category.getVersion());
+        } else {
             throw new EntityNotFoundException("Category", id);
         }
 
-        Category category = parseRequest(categoryDTO);
-        category = categoryRepository.save(category);
+        cache.invalidate(category.getId());
+        changeVersion.bump();
         return parseResponse(category);
     }
 
+    /**
+     * Saves the items in one transaction per chunk of {@link BatchResultDTO#CHUNK_SIZE}, reporting the outcome of each.
+     */
+    public List<BatchResultDTO<CategoryDTO>> saveAll(List<CategoryDTO> categoryDTOs) {
+        List<BatchResultDTO<CategoryDTO>> results = new ArrayList<>(categoryDTOs.size());
+
+        for (int from = 0; from < categoryDTOs.size(); from += BatchResultDTO.CHUNK_SIZE) {
+            int offset = from;
+            int to = Math.min(from + BatchResultDTO.CHUNK_SIZE, categoryDTOs.size());
+            List<CategoryDTO> chunk = categoryDTOs.subList(from, to);
+
+            try {
+                List<BatchResultDTO<CategoryDTO>> chunkResults =
+                        transactionTemplate.execute(status -> saveChunk(offset, chunk));
+                chunkResults.stream()
+                        .filter(e -> e.getItem() != null)
+                        .forEach(e -> cache.invalidate(e.getItem().getId()));
+                changeVersion.bump();
+                results.addAll(chunkResults);
+            } catch (RuntimeException e) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    results.add(BatchResultDTO.failed(offset + i, BatchResultDTO.Status.FAILED, e.getMessage()));
+                }
+            }
+        }
+
+        return results;
+    }
+
+    private List<BatchResultDTO<CategoryDTO>> saveChunk(int offset, List<CategoryDTO> chunk) {
+        List<Long> ids = chunk.stream().map(CategoryDTO::getId).filter(id -> id != 0).toList();
+        Map<Long, Long> versions = new HashMap<>();
+        categoryRepository.findAllById(ids).forEach(e -> versions.put(e.getId(), e.getVersion()));
+
+        List<BatchResultDTO<CategoryDTO>> results = new ArrayList<>(chunk.size());
+        List<Category> saved = new ArrayList<>(chunk.size());
+
+        for (int i = 0; i < chunk.size(); i++) {
+            CategoryDTO categoryDTO = chunk.get(i);
+            long id = categoryDTO.getId();
+            boolean isUpdate = id != 0;
+            Long version = versions.get(id);
+
+            if (isUpdate && version == null) {
+                String error = new EntityNotFoundException("Category", id).getMessage();
+                results.add(BatchResultDTO.failed(offset + i, BatchResultDTO.Status.NOT_FOUND, error));
+                saved.add(null);
+            } else if (isUpdate && version != categoryDTO.getVersion()) {
+                String error = new EntityConflictException("Category", id, categoryDTO.getVersion()).getMessage();
+                results.add(BatchResultDTO.failed(offset + i, BatchResultDTO.Status.CONFLICT, error));
+                saved.add(null);
+            } else {
+                results.add(BatchResultDTO.saved(offset + i, isUpdate, null));
+                saved.add(categoryRepository.save(parseRequest(categoryDTO)));
+            }
+        }
+
+        // Flush the batched statements so the responses carry the new versions.
+        categoryRepository.flush();
+
+        for (int i = 0; i < saved.size(); i++) {
+            if (saved.get(i) != null) {
+                results.get(i).setItem(parseResponse(saved.get(i)));
+            }
+        }
+
+        return results;
+    }
+
+    public CacheStatsDTO cacheStats() {
+        return cache.stats();
+    }
+
     public CategoryDTO parseResponse(Category category) {
-        CategoryDTO categoryDTO = new CategoryDTO();
-        categoryDTO.setId(category.getId());
-        categoryDTO.setName(category.getName());
-        categoryDTO.setDescription(category.getDescription());
-        categoryDTO.setActive(category.isActive());
-        return categoryDTO;
+        return PARSE_RESPONSE.record(() -> {
+            CategoryDTO categoryDTO = new CategoryDTO();
+            categoryDTO.setId(category.getId());
+            categoryDTO.setName(category.getName());
+            categoryDTO.setDescription(category.getDescription());
+            categoryDTO.setActive(category.isActive());
+            categoryDTO.setVersion(category.getVersion());
+            return categoryDTO;
+        });
     }
 
     public Category parseRequest(CategoryDTO categoryDTO) {
-        Category category = new Category();
-        category.setId(categoryDTO.getId());
-        category.setName(categoryDTO.getName());
-        category.setDescription(categoryDTO.getDescription());
-        category.setActive(categoryDTO.isActive());
-        return category;
+        return PARSE_REQUEST.record(() -> {
+            Category category = new Category();
+            category.setId(categoryDTO.getId());
+            category.setName(categoryDTO.getName());
+            category.setDescription(categoryDTO.getDescription());
+            category.setActive(categoryDTO.isActive());
+            category.setVersion(categoryDTO.getVersion());
+            return category;
+        });
     }
 }
@@ -0,0 +1,43 @@
+package com.wwerlang.expensemanager.common;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Outcome of one item of a batch save. {@code index} is the item's position in the request, {@code item} the saved
+ * state when it succeeded and {@code error} the reason when it did not.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchResultDTO<T> {
+
+    /**
+     * Items saved per transaction. Each chunk is flushed as JDBC batches and commits or fails on its own.
+     */
+    public static final int CHUNK_SIZE = 500;
+
+    public enum Status {
+        CREATED,
+        UPDATED,
+        NOT_FOUND,
+        CONFLICT,
+        FAILED
+    }
+
+    private int index;
+    private Status status;
+    private T item;
+    private String error;
+
+    public static <T> BatchResultDTO<T> saved(int index, boolean isUpdate, T item) {
+        return new BatchResultDTO<>(index, isUpdate ? Status.UPDATED : Status.CREATED, item, null);
+    }
+
+    public static <T> BatchResultDTO<T> failed(int index, Status status, String error) {
+        return new BatchResultDTO<>(index, status, null, error);
+    }
+}
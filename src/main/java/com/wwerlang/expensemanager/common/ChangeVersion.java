@@ -0,0 +1,53 @@
+package com.wwerlang.expensemanager.common;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory version of one entity type, bumped after every committed write to it, from which the ETags of its find
+ * and list responses are made. Any write changes the ETag of every response of that type, so a matching
+ * {@code If-None-Match} can be answered with 304 before anything is read.
+ * <p>
+ * The ETags are weak: they stand for the data, which may be sent as JSON or one of its binary alternatives, gzipped
+ * or not, and a strong ETag would have to differ for each of those. Tomcat also only compresses responses without a
+ * strong ETag.
+ * <p>
+ * Responses take the ETag before reading and writers bump after committing, so a response never carries a version
+ * newer than its data. ETags also carry the time this instance started, so versions from a previous run or another
+ * instance never match; writes made to the database by another instance are not seen until a write here.
+ */
+public class ChangeVersion {
+
+    private static final String EPOCH = Long.toString(System.currentTimeMillis(), 36);
+
+    private final String name;
+    private final AtomicLong version = new AtomicLong();
+
+    public ChangeVersion(String name) {
+        this.name = name;
+    }
+
+    public long get() {
+        return version.get();
+    }
+
+    public void bump() {
+        version.incrementAndGet();
+    }
+
+    public String eTag() {
+        return eTag(this);
+    }
+
+    /**
+     * ETag of responses made of several entity types, such as employees with their departments.
+     */
+    public static String eTag(ChangeVersion... versions) {
+        StringBuilder eTag = new StringBuilder("W/\"").append(EPOCH);
+
+        for (ChangeVersion version : versions) {
+            eTag.append('-').append(version.name).append('.').append(version.get());
+        }
+
+        return eTag.append('"').toString();
+    }
+}
@@ -0,0 +1,49 @@
+package com.wwerlang.expensemanager.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits single CSV lines into fields. Fields may be quoted with {@code "}, with {@code ""} standing for a literal
+ * quote; quoted fields may contain commas but not line breaks.
+ */
+public final class CsvParser {
+
+    private CsvParser() {
+    }
+
+    public static List<String> split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quoted field.");
+        }
+
+        fields.add(field.toString().trim());
+        return fields;
+    }
+}
@@ -0,0 +1,147 @@
+package com.wwerlang.expensemanager.common;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * Ignores flushes of JSON, CBOR and Smile responses until they are committed, leaving it to the container to send the
+ * buffer once it is full or the response is complete.
+ * <p>
+ * Message converters flush right after writing a body, which commits the response before its length is known. Tomcat
+ * then sends every response chunked and compresses it whatever its size, as the minimum size for compression only
+ * applies to responses with a Content-Length. Without the flush, a body that fits into the buffer is sent with its
+ * length once the response completes, and only larger ones are compressed.
+ * <p>
+ * Responses of any other content type, such as NDJSON and CSV streams or receipts, are flushed as they ask, so
+ * clients get what was written so far right away.
+ */
+@Component
+public class DeferredFlushFilter extends OncePerRequestFilter {
+
+    private static final List<MediaType> DEFERRED = List.of(MediaType.APPLICATION_JSON, MediaType.APPLICATION_CBOR,
+            new MediaType("application", "x-jackson-smile"), new MediaType("application", "*+json"));
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        chain.doFilter(request, new DeferredFlushResponse(response));
+    }
+
+    private static class DeferredFlushResponse extends HttpServletResponseWrapper {
+
+        private ServletOutputStream outputStream;
+        private PrintWriter writer;
+
+        DeferredFlushResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new DeferredFlushOutputStream(super.getOutputStream(), this);
+            }
+
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(super.getWriter()) {
+
+                    @Override
+                    public void flush() {
+                        if (!defers()) {
+                            super.flush();
+                        }
+                    }
+                };
+            }
+
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (!defers()) {
+                super.flushBuffer();
+            }
+        }
+
+        /**
+         * Whether a flush is ignored now, decided on every flush as the content type is only set with the body.
+         */
+        boolean defers() {
+            if (isCommitted() || getContentType() == null) {
+                return false;
+            }
+
+            MediaType contentType;
+
+            try {
+                contentType = MediaType.parseMediaType(getContentType());
+            } catch (InvalidMediaTypeException e) {
+                return false;
+            }
+
+            return DEFERRED.stream().anyMatch(e -> e.includes(contentType));
+        }
+    }
+
+    private static class DeferredFlushOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream delegate;
+        private final DeferredFlushResponse response;
+
+        DeferredFlushOutputStream(ServletOutputStream delegate, DeferredFlushResponse response) {
+            this.delegate = delegate;
+            this.response = response;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            delegate.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!response.defers()) {
+                delegate.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            delegate.setWriteListener(writeListener);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.wwerlang.expensemanager.common;
+
+import java.util.Arrays;
+
+/**
+ * HyperLogLog estimate of the number of distinct longs added, on {@link #REGISTERS} registers. The standard error is
+ * 1.04 / sqrt(REGISTERS), about 1.6%, so estimates are within 3.3% of the true count 95% of the time; below a few
+ * hundred values the estimate comes from linear counting and is close to exact. Merging the sketches of two sets gives
+ * the sketch of their union.
+ * <p>
+ * A sketch starts sparse, holding only the registers that are set in a small hash table, and switches to one byte per
+ * register once more than {@link #SPARSE_LIMIT} are set. Not thread-safe.
+ */
+public class HyperLogLog {
+
+    public static final int PRECISION = 12;
+    public static final int REGISTERS = 1 << PRECISION;
+
+    static final int SPARSE_LIMIT = REGISTERS / 16;
+
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / REGISTERS);
+
+    // Entries are (index + 1) << 8 | rank with linear probing, so 0 marks free slots. Null once dense.
+    private int[] sparse = new int[8];
+    private int sparseSize;
+    private byte[] registers;
+
+    public void add(long value) {
+        long hash = mix(value);
+        int index = (int) (hash >>> (64 - PRECISION));
+        // The bit set below the hash bits caps the rank, should they all be zero.
+        int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+        update(index, rank);
+    }
+
+    public void merge(HyperLogLog other) {
+        if (registers != null && other.registers != null) {
+            for (int i = 0; i < REGISTERS; i++) {
+                registers[i] = (byte) Math.max(registers[i], other.registers[i]);
+            }
+        } else if (other.registers != null) {
+            for (int i = 0; i < REGISTERS; i++) {
+                if (other.registers[i] != 0) {
+                    update(i, other.registers[i]);
+                }
+            }
+        } else {
+            for (int entry : other.sparse) {
+                if (entry != 0) {
+                    update((entry >>> 8) - 1, entry & 0xFF);
+                }
+            }
+        }
+    }
+
+    public long estimate() {
+        double sum = 0;
+        int zeros = 0;
+
+        if (registers != null) {
+            for (byte register : registers) {
+                sum += Math.scalb(1.0, -register);
+                zeros += register == 0 ? 1 : 0;
+            }
+        } else {
+            zeros = REGISTERS - sparseSize;
+            sum = zeros;
+
+            for (int entry : sparse) {
+                if (entry != 0) {
+                    sum += Math.scalb(1.0, -(entry & 0xFF));
+                }
+            }
+        }
+
+        double estimate = ALPHA * REGISTERS * REGISTERS / sum;
+
+        // The raw estimate is biased for small sets, which are counted from the registers still empty instead.
+        if (estimate <= 2.5 * REGISTERS && zeros > 0) {
+            estimate = REGISTERS * Math.log((double) REGISTERS / zeros);
+        }
+
+        return Math.round(estimate);
+    }
+
+    private void update(int index, int rank) {
+        if (registers != null) {
+            if (rank > registers[index]) {
+                registers[index] = (byte) rank;
+            }
+
+            return;
+        }
+
+        int mask = sparse.length - 1;
+        int i = (index * 0x9E3779B9 >>> 16) & mask;
+
+        while (sparse[i] != 0 && (sparse[i] >>> 8) - 1 != index) {
+            i = (i + 1) & mask;
+        }
+
+        if (sparse[i] == 0) {
+            sparse[i] = (index + 1) << 8 | rank;
+            sparseSize++;
+
+            if (sparseSize > SPARSE_LIMIT) {
+                densify();
+            } else if (sparseSize > sparse.length >> 1) {
+                growSparse();
+            }
+        } else if (rank > (sparse[i] & 0xFF)) {
+            sparse[i] = (index + 1) << 8 | rank;
+        }
+    }
+
+    private void growSparse() {
+        int[] entries = sparse;
+        sparse = new int[entries.length << 1];
+        sparseSize = 0;
+
+        for (int entry : entries) {
+            if (entry != 0) {
+                update((entry >>> 8) - 1, entry & 0xFF);
+            }
+        }
+    }
+
+    private void densify() {
+        int[] entries = sparse;
+        registers = new byte[REGISTERS];
+        sparse = null;
+
+        Arrays.stream(entries)
+                .filter(entry -> entry != 0)
+                .forEach(entry -> update((entry >>> 8) - 1, entry & 0xFF));
+    }
+
+    /**
+     * The finalizer of MurmurHash3, which spreads sequential ids over all 64 bits.
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB53FE1A87EC3L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
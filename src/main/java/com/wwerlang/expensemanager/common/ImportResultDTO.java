@@ -0,0 +1,33 @@
+package com.wwerlang.expensemanager.common;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Summary of a file import. Every rejected row is counted in {@code failed}, but only the first
+ * {@link #MAX_ERRORS} are listed, so a thoroughly broken file does not produce an unbounded report.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class ImportResultDTO {
+
+    public static final int MAX_ERRORS = 1000;
+
+    private long rows;
+    private long imported;
+    private long failed;
+    private List<ImportErrorDTO> errors = new ArrayList<>();
+
+    public void addError(long line, String error) {
+        failed++;
+
+        if (errors.size() < MAX_ERRORS) {
+            errors.add(new ImportErrorDTO(line, error));
+        }
+    }
+}
@@ -0,0 +1,332 @@
+package com.wwerlang.expensemanager.common;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only log of binary records in memory-mapped segment files. Each record is its length, the CRC-32C of its
+ * bytes and the bytes themselves; a zero length means the rest of the segment is unused. Records are addressed by
+ * their byte position across all segments, and each segment file is named after the position it starts at.
+ * <p>
+ * An appended record is in the page cache as soon as {@link #append(List)} returns, so it survives the process
+ * crashing. With {@code force} every append also waits for the segment to be written to disk, which it takes to
+ * survive the machine crashing too. On opening, the last segment is scanned up to the first record that is cut off
+ * or fails its checksum, and everything from there on is discarded.
+ * <p>
+ * One thread may append while another reads and moves the {@link #checkpoint(long) checkpoint}.
+ */
+public class Journal implements Closeable {
+
+    private static final int HEADER = 8;
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final String CHECKPOINT_FILE = "checkpoint";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean force;
+    private final NavigableMap<Long, MappedByteBuffer> segments = new ConcurrentSkipListMap<>();
+    private final MappedByteBuffer checkpoint;
+
+    private volatile long end;
+
+    public Journal(Path directory, int segmentSize, boolean force) throws IOException {
+        if (segmentSize <= HEADER) {
+            throw new IllegalArgumentException("Journal segments must be larger than " + HEADER + " bytes.");
+        }
+
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.force = force;
+
+        Files.createDirectories(directory);
+
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+
+                if (name.matches("\\d{20}" + SEGMENT_SUFFIX)) {
+                    segments.put(Long.parseLong(name.substring(0, 20)), map(file, Files.size(file)));
+                }
+            }
+        }
+
+        if (segments.isEmpty()) {
+            segments.put(0L, map(segment(0), segmentSize));
+        }
+
+        Map.Entry<Long, MappedByteBuffer> last = segments.lastEntry();
+        end = last.getKey() + recover(last.getValue());
+        checkpoint = map(directory.resolve(CHECKPOINT_FILE), HEADER + Long.BYTES);
+    }
+
+    /**
+     * Appends all records or, if one of them is empty or larger than a segment, none of them.
+     *
+     * @return the position after the last record
+     */
+    public synchronized long append(List<byte[]> records) {
+        for (byte[] record : records) {
+            if (record.length == 0 || record.length > segmentSize - HEADER) {
+                throw new IllegalArgumentException("Journal records must have 1 to " + (segmentSize - HEADER)
+                        + " bytes, not " + record.length + ".");
+            }
+        }
+
+        Map.Entry<Long, MappedByteBuffer> segment = segments.lastEntry();
+        long position = end;
+
+        for (byte[] record : records) {
+            int offset = (int) (position - segment.getKey());
+
+            if (offset + HEADER + record.length > segment.getValue().capacity()) {
+                if (force) {
+                    segment.getValue().force();
+                }
+
+                segment = roll(segment);
+                position = segment.getKey();
+                offset = 0;
+            }
+
+            MappedByteBuffer buffer = segment.getValue();
+            buffer.put(offset + HEADER, record);
+            buffer.putInt(offset + Integer.BYTES, checksum(record));
+            buffer.putInt(offset, record.length);
+            position += HEADER + record.length;
+        }
+
+        if (force) {
+            segment.getValue().force();
+        }
+
+        end = position;
+        return position;
+    }
+
+    /**
+     * Reads up to {@code max} records from the position on, stopping at the end of what has been appended or before a
+     * corrupt record, which is then the first one the next read finds.
+     *
+     * @return the position after the last record read
+     * @throws IllegalStateException if the record at the position is cut off or fails its checksum
+     */
+    public long read(long position, int max, List<Entry> entries) {
+        long limit = end;
+        int count = 0;
+
+        while (count < max && position < limit) {
+            Map.Entry<Long, MappedByteBuffer> segment = segments.floorEntry(position);
+
+            if (segment == null) {
+                throw new IllegalArgumentException("Position " + position + " is before the start of the journal.");
+            }
+
+            MappedByteBuffer buffer = segment.getValue();
+            int offset = (int) (position - segment.getKey());
+            int length = offset + HEADER <= buffer.capacity() ? buffer.getInt(offset) : 0;
+
+            if (length == 0) {
+                position = segment.getKey() + buffer.capacity();
+                continue;
+            }
+
+            byte[] record = length > 0 && length <= buffer.capacity() - offset - HEADER ? new byte[length] : null;
+
+            if (record != null) {
+                buffer.get(offset + HEADER, record);
+            }
+
+            if (record == null || buffer.getInt(offset + Integer.BYTES) != checksum(record)) {
+                if (count > 0) {
+                    break;
+                }
+
+                throw new IllegalStateException("Journal record at position " + position + " is corrupt.");
+            }
+
+            position += HEADER + length;
+            entries.add(new Entry(record, position));
+            count++;
+        }
+
+        return position;
+    }
+
+    /**
+     * Position to go on reading from past a corrupt record at the position: the start of the next segment, or the end
+     * of what has been appended if it is in the last one. The records after it in its segment are given up, as where
+     * they start is only known from the one before.
+     */
+    public long skip(long position) {
+        Map.Entry<Long, MappedByteBuffer> segment = segments.floorEntry(position);
+
+        if (segment == null) {
+            throw new IllegalArgumentException("Position " + position + " is before the start of the journal.");
+        }
+
+        return Math.min(segment.getKey() + segment.getValue().capacity(), end);
+    }
+
+    /**
+     * Position of the first record kept.
+     */
+    public long start() {
+        return segments.firstKey();
+    }
+
+    /**
+     * Position after the last record appended.
+     */
+    public long end() {
+        return end;
+    }
+
+    /**
+     * Position the reader last marked as done with, or the start of the journal if it never did.
+     */
+    public synchronized long checkpoint() {
+        long position = checkpoint.getLong(HEADER);
+        boolean valid = checkpoint.getInt(0) == Long.BYTES && checkpoint.getInt(Integer.BYTES) == checksum(position);
+        return valid ? Math.max(position, start()) : start();
+    }
+
+    /**
+     * Marks everything before the position as done with, and deletes the segments that only hold such records.
+     */
+    public synchronized void checkpoint(long position) {
+        checkpoint.putLong(HEADER, position);
+        checkpoint.putInt(Integer.BYTES, checksum(position));
+        checkpoint.putInt(0, Long.BYTES);
+
+        if (force) {
+            checkpoint.force();
+        }
+
+        while (segments.size() > 1) {
+            Map.Entry<Long, MappedByteBuffer> first = segments.firstEntry();
+
+            if (first.getKey() + first.getValue().capacity() > position) {
+                break;
+            }
+
+            segments.remove(first.getKey());
+
+            try {
+                Files.deleteIfExists(segment(first.getKey()));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        segments.lastEntry().getValue().force();
+        checkpoint.force();
+    }
+
+    private Map.Entry<Long, MappedByteBuffer> roll(Map.Entry<Long, MappedByteBuffer> segment) {
+        long start = segment.getKey() + segment.getValue().capacity();
+
+        try {
+            segments.put(start, map(segment(start), segmentSize));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return segments.lastEntry();
+    }
+
+    /**
+     * Returns the offset after the last intact record of the segment, and zeroes everything after it so later
+     * appends are not followed by leftovers that could pass for records.
+     */
+    private static int recover(MappedByteBuffer buffer) {
+        int offset = 0;
+
+        while (offset + HEADER <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+
+            if (length <= 0 || length > buffer.capacity() - offset - HEADER) {
+                break;
+            }
+
+            byte[] record = new byte[length];
+            buffer.get(offset + HEADER, record);
+
+            if (buffer.getInt(offset + Integer.BYTES) != checksum(record)) {
+                break;
+            }
+
+            offset += HEADER + length;
+        }
+
+        int i = offset;
+
+        for (; i + Long.BYTES <= buffer.capacity(); i += Long.BYTES) {
+            if (buffer.getLong(i) != 0) {
+                buffer.putLong(i, 0);
+            }
+        }
+
+        for (; i < buffer.capacity(); i++) {
+            buffer.put(i, (byte) 0);
+        }
+
+        return offset;
+    }
+
+    private Path segment(long start) {
+        return directory.resolve(String.format("%020d", start) + SEGMENT_SUFFIX);
+    }
+
+    private static MappedByteBuffer map(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private static int checksum(byte[] record) {
+        CRC32C crc = new CRC32C();
+        crc.update(record);
+        return (int) crc.getValue();
+    }
+
+    private static int checksum(long value) {
+        byte[] bytes = new byte[Long.BYTES];
+
+        for (int i = 0; i < Long.BYTES; i++) {
+            bytes[i] = (byte) (value >>> (8 * i));
+        }
+
+        return checksum(bytes);
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Entry {
+
+        private final byte[] record;
+
+        /**
+         * Position right after the record, where reading continues.
+         */
+        private final long next;
+    }
+}
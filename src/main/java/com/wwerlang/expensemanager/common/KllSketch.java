@@ -0,0 +1,137 @@
+package com.wwerlang.expensemanager.common;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * KLL sketch of the distribution of the longs added, answering quantiles with a rank error of about 1.65% with 99%
+ * confidence at {@link #K} = 200, whatever the count: the p95 returned lies between the true p93.35 and p96.65. Below
+ * K values nothing is compacted and quantiles are exact. Merging the sketches of two streams gives the sketch of both
+ * with the same error.
+ * <p>
+ * Values are kept in levels, those on level h standing for 2^h values each. A full level is sorted and every other
+ * value, starting at a random one of the first two, moves up a level. Capacities shrink by 2/3 per level down from the
+ * top, so a sketch holds at most about 3K values. Not thread-safe.
+ */
+public class KllSketch {
+
+    public static final int K = 200;
+
+    private static final double DECAY = 2.0 / 3;
+    private static final int MIN_CAPACITY = 8;
+
+    private long[][] levels = {new long[16]};
+    private int[] sizes = new int[1];
+    private long count;
+
+    public void add(long value) {
+        append(0, value);
+        count++;
+        compress();
+    }
+
+    public void merge(KllSketch other) {
+        for (int h = 0; h < other.levels.length; h++) {
+            for (int i = 0; i < other.sizes[h]; i++) {
+                append(h, other.levels[h][i]);
+            }
+        }
+
+        count += other.count;
+        compress();
+    }
+
+    public long count() {
+        return count;
+    }
+
+    /**
+     * The values at the given quantiles, each from 0 to 1. Returns an empty array when nothing was added.
+     */
+    public long[] quantiles(double... quantiles) {
+        if (count == 0) {
+            return new long[0];
+        }
+
+        int retained = Arrays.stream(sizes).sum();
+        long[] values = new long[retained];
+        long[] weights = new long[retained];
+        int n = 0;
+
+        for (int h = 0; h < levels.length; h++) {
+            for (int i = 0; i < sizes[h]; i++) {
+                values[n] = levels[h][i];
+                weights[n++] = 1L << h;
+            }
+        }
+
+        // Sorts the value and weight pairs together, ordering indexes by value.
+        Integer[] order = new Integer[retained];
+        Arrays.setAll(order, i -> i);
+        Arrays.sort(order, (a, b) -> Long.compare(values[a], values[b]));
+
+        long[] result = new long[quantiles.length];
+
+        for (int q = 0; q < quantiles.length; q++) {
+            long rank = Math.max(1, (long) Math.ceil(quantiles[q] * count));
+            long cumulative = 0;
+            int i = 0;
+
+            while (i < retained - 1 && (cumulative += weights[order[i]]) < rank) {
+                i++;
+            }
+
+            result[q] = values[order[i]];
+        }
+
+        return result;
+    }
+
+    private void append(int level, long value) {
+        if (level >= levels.length) {
+            int height = levels.length;
+            levels = Arrays.copyOf(levels, level + 1);
+            sizes = Arrays.copyOf(sizes, level + 1);
+
+            for (int h = height; h <= level; h++) {
+                levels[h] = new long[16];
+            }
+        }
+
+        if (sizes[level] == levels[level].length) {
+            levels[level] = Arrays.copyOf(levels[level], sizes[level] << 1);
+        }
+
+        levels[level][sizes[level]++] = value;
+    }
+
+    /**
+     * Compacts every level over its capacity, from the bottom up, since compacting one fills the next.
+     */
+    private void compress() {
+        for (int h = 0; h < levels.length; h++) {
+            if (sizes[h] >= capacity(h)) {
+                compact(h);
+            }
+        }
+    }
+
+    private void compact(int level) {
+        long[] values = levels[level];
+        int size = sizes[level];
+        // With an odd size the smallest value stays on its level, so the weights still add up to the count.
+        int kept = size & 1;
+
+        Arrays.sort(values, 0, size);
+
+        for (int i = kept + ThreadLocalRandom.current().nextInt(2); i < size; i += 2) {
+            append(level + 1, values[i]);
+        }
+
+        sizes[level] = kept;
+    }
+
+    private int capacity(int level) {
+        return Math.max(MIN_CAPACITY, (int) Math.ceil(K * Math.pow(DECAY, levels.length - 1 - level)));
+    }
+}
@@ -0,0 +1,108 @@
+package com.wwerlang.expensemanager.common;
+
+import java.util.Arrays;
+
+/**
+ * Map from long keys to int values on two flat arrays with linear probing, for indexes with millions of entries where
+ * a {@code HashMap<Long, Integer>} would spend several objects per entry. Keys must not be {@link Long#MIN_VALUE},
+ * which marks free slots. Not thread-safe, and entries cannot be removed.
+ */
+public class LongIntHashMap {
+
+    private static final long FREE = Long.MIN_VALUE;
+    private static final double MAX_LOAD = 0.75;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+
+    public LongIntHashMap(int expectedSize) {
+        allocate(Math.max(16, Integer.highestOneBit(Math.max(1, (int) (expectedSize / MAX_LOAD))) << 1));
+    }
+
+    /**
+     * Returns the value of the key, or {@code missing} if there is none.
+     */
+    public int get(long key, int missing) {
+        int mask = keys.length - 1;
+
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            } else if (keys[i] == FREE) {
+                return missing;
+            }
+        }
+    }
+
+    public void put(long key, int value) {
+        if (key == FREE) {
+            throw new IllegalArgumentException("Key " + key + " is reserved.");
+        }
+
+        if (size + 1 > keys.length * MAX_LOAD) {
+            grow();
+        }
+
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+
+        while (keys[i] != FREE && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+
+        if (keys[i] == FREE) {
+            keys[i] = key;
+            size++;
+        }
+
+        values[i] = value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Passes every entry to the consumer, in no particular order.
+     */
+    public void forEach(EntryConsumer consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+
+        void accept(long key, int value);
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(keys.length << 1);
+        size = 0;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, FREE);
+    }
+
+    /**
+     * Spreads sequential ids over the table, since they would otherwise fill it in long runs.
+     */
+    private static int slot(long key, int mask) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+}
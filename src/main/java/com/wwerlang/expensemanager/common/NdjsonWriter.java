@@ -0,0 +1,59 @@
+package com.wwerlang.expensemanager.common;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * Writes values as newline-delimited JSON through a single generator, so nothing but the current value is buffered.
+ * The first value is flushed right away and the following ones every {@link #FLUSH_INTERVAL} values.
+ */
+public class NdjsonWriter<T> implements Consumer<T>, Closeable {
+
+    private static final int FLUSH_INTERVAL = 500;
+
+    private final ObjectWriter writer;
+    private final JsonGenerator generator;
+    private long count;
+
+    public NdjsonWriter(ObjectMapper objectMapper, Class<T> type, OutputStream outputStream) throws IOException {
+        this.writer = objectMapper.writerFor(type)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE)
+                .withRootValueSeparator("\n");
+        this.generator = objectMapper.getFactory().createGenerator(outputStream)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    @Override
+    public void accept(T value) {
+        try {
+            writer.writeValue(generator, value);
+
+            if (count++ % FLUSH_INTERVAL == 0) {
+                generator.flush();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (count > 0) {
+            generator.writeRaw('\n');
+        }
+
+        generator.close();
+    }
+}
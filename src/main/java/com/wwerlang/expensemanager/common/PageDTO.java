@@ -0,0 +1,44 @@
+package com.wwerlang.expensemanager.common;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * One page of a keyset (cursor) paginated listing. {@code next} is the id to pass as {@code after}
+ * to fetch the following page, or {@code null} when this is the last one.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class PageDTO<T> {
+
+    public static final int MAX_LIMIT = 1000;
+
+    private List<T> items;
+    private Long next;
+
+    /**
+     * Clamps a requested page size to {@code [1, MAX_LIMIT]}.
+     */
+    public static int limit(int requested) {
+        return Math.max(1, Math.min(requested, MAX_LIMIT));
+    }
+
+    /**
+     * Builds a page from rows fetched with {@code limit + 1}, the extra row only telling whether there is a next page.
+     */
+    public static <T> PageDTO<T> of(List<T> rows, int limit, ToLongFunction<T> id) {
+        if (rows.size() <= limit) {
+            return new PageDTO<>(rows, null);
+        }
+
+        List<T> items = rows.subList(0, limit);
+        return new PageDTO<>(items, id.applyAsLong(items.get(limit - 1)));
+    }
+}
@@ -0,0 +1,122 @@
+package com.wwerlang.expensemanager.common;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
+
+/**
+ * In-process read-through cache for rarely changing reference data, holding single items by id and keyset pages by
+ * {@code (filter, after, limit)}. Both are bounded by weight (one per item) and expire a fixed time after being loaded.
+ * <p>
+ * {@link #invalidate(long)} drops the item and only the pages whose id range covers it: a page covers the ids in
+ * {@code (after, next]}, and the last page covers every id past its cursor, which is where new items show up.
+ */
+public class ReferenceCache<V> {
+
+    public static final long DEFAULT_MAXIMUM_WEIGHT = 10_000;
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(5);
+
+    private record PageKey(Object filter, long after, int limit) {
+    }
+
+    private final Cache<Long, V> items;
+    private final Cache<PageKey, PageDTO<V>> pages;
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public ReferenceCache() {
+        this(DEFAULT_MAXIMUM_WEIGHT, DEFAULT_TTL, Ticker.systemTicker());
+    }
+
+    public ReferenceCache(long maximumWeight, Duration ttl, Ticker ticker) {
+        this.items = Caffeine.newBuilder()
+                .maximumSize(maximumWeight)
+                .expireAfterWrite(ttl)
+                .ticker(ticker)
+                .recordStats()
+                .build();
+        this.pages = Caffeine.newBuilder()
+                .maximumWeight(maximumWeight)
+                .weigher((PageKey key, PageDTO<V> page) -> page.getItems().size() + 1)
+                .expireAfterWrite(ttl)
+                .ticker(ticker)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the cached item or loads it. Exceptions thrown by the loader are passed on and nothing is cached.
+     */
+    public V find(long id, LongFunction<V> loader) {
+        return items.get(id, loader::apply);
+    }
+
+    public PageDTO<V> list(long after, int limit, Supplier<PageDTO<V>> loader) {
+        return list(null, after, limit, loader);
+    }
+
+    /**
+     * Pages of a filtered listing, cached apart from the unfiltered ones. The filter is any value with equals and
+     * hashCode, such as a {@code Boolean}. A filtered page still covers {@code (after, next]}, so an item moving in
+     * or out of the filter drops it like any other change in that range.
+     */
+    public PageDTO<V> list(Object filter, long after, int limit, Supplier<PageDTO<V>> loader) {
+        PageKey key = new PageKey(filter, after, limit);
+        PageDTO<V> page = pages.getIfPresent(key);
+
+        if (page != null) {
+            return page;
+        }
+
+        // A page loaded while an invalidation ran may be stale: check again once it is stored and drop it if so.
+        long generation = invalidations.get();
+        page = loader.get();
+        pages.put(key, page);
+
+        if (invalidations.get() != generation) {
+            pages.invalidate(key);
+        }
+
+        return page;
+    }
+
+    public void invalidate(long id) {
+        invalidations.incrementAndGet();
+        items.invalidate(id);
+        pages.asMap().entrySet().removeIf(e -> covers(e.getKey(), e.getValue(), id));
+    }
+
+    public void invalidateAll() {
+        invalidations.incrementAndGet();
+        items.invalidateAll();
+        pages.invalidateAll();
+    }
+
+    public CacheStatsDTO stats() {
+        CacheStats itemStats = items.stats();
+        CacheStats pageStats = pages.stats();
+        return new CacheStatsDTO(
+                itemStats.hitCount() + pageStats.hitCount(),
+                itemStats.missCount() + pageStats.missCount(),
+                itemStats.evictionCount() + pageStats.evictionCount(),
+                items.estimatedSize() + pages.estimatedSize());
+    }
+
+    private boolean covers(PageKey key, PageDTO<V> page, long id) {
+        if (id <= key.after()) {
+            return false;
+        }
+
+        return page.getNext() == null || id <= page.getNext();
+    }
+
+    void cleanUp() {
+        items.cleanUp();
+        pages.cleanUp();
+    }
+}
@@ -11,11 +11,12 @@ import lombok.Setter;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table
+@Table(indexes = @Index(name = "department_active", columnList = "active, id"))
 public class Department {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "department_seq")
+    @SequenceGenerator(name = "department_seq", sequenceName = "department_seq", allocationSize = 50)
     @Column(name = "id")
     private long id;
 
@@ -27,4 +28,8 @@ public class Department {
 
     @Column(name = "active")
     private boolean active;
+
+    @Version
+    @Column(name = "version")
+    private long version;
 }
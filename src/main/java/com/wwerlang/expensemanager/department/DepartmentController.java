@@ -1,8 +1,12 @@
 package com.wwerlang.expensemanager.department;
 
+import com.wwerlang.expensemanager.common.BatchResultDTO;
+import com.wwerlang.expensemanager.common.CacheStatsDTO;
+import com.wwerlang.expensemanager.common.PageDTO;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.util.List;
 
@@ -14,15 +18,37 @@ public class DepartmentController {
     private DepartmentService departmentService;
 
     @GetMapping("/{id}")
-    private ResponseEntity<DepartmentDTO> find(@PathVariable("id") long id) {
+    private ResponseEntity<DepartmentDTO> find(@PathVariable("id") long id, WebRequest request) {
+        String eTag = departmentService.eTag();
+
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+
         DepartmentDTO department = departmentService.find(id);
-        return ResponseEntity.ok(department);
+        return ResponseEntity.ok().eTag(eTag).body(department);
     }
 
     @GetMapping
-    private ResponseEntity<List<DepartmentDTO>> list() {
-        List<DepartmentDTO> departments = departmentService.list();
-        return ResponseEntity.ok(departments);
+    private ResponseEntity<PageDTO<DepartmentDTO>> list(
+            @RequestParam(name = "after", defaultValue = "0") long after,
+            @RequestParam(name = "limit", defaultValue = "100") int limit,
+            @RequestParam(name = "active", required = false) Boolean active,
+            WebRequest request) {
+        String eTag = departmentService.eTag();
+
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+
+        PageDTO<DepartmentDTO> departments = departmentService.list(after, limit, active);
+        return ResponseEntity.ok().eTag(eTag).body(departments);
+    }
+
+    @GetMapping("/cache/stats")
+    private ResponseEntity<CacheStatsDTO> cacheStats() {
+        CacheStatsDTO stats = departmentService.cacheStats();
+        return ResponseEntity.ok(stats);
     }
 
     @PostMapping
@@ -30,4 +56,10 @@ public class DepartmentController {
         department = departmentService.save(department);
         return ResponseEntity.ok(department);
     }
+
+    @PostMapping("/batch")
+    private ResponseEntity<List<BatchResultDTO<DepartmentDTO>>> saveAll(@RequestBody List<DepartmentDTO> departments) {
+        List<BatchResultDTO<DepartmentDTO>> results = departmentService.saveAll(departments);
+        return ResponseEntity.ok(results);
+    }
 }
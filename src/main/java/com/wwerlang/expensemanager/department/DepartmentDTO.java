@@ -16,4 +16,5 @@ public class DepartmentDTO {
     private String name;
     private String description;
     private boolean active;
+    private long version;
 }
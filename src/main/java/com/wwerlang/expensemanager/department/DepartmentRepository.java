@@ -1,8 +1,37 @@
 package com.wwerlang.expensemanager.department;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
 
 @Repository
 public interface DepartmentRepository extends JpaRepository<Department, Long> {
+
+    List<Department> findByIdGreaterThanOrderByIdAsc(long id, Limit limit);
+
+    List<Department> findByActiveAndIdGreaterThanOrderByIdAsc(boolean active, long id, Limit limit);
+
+    /**
+     * Single-statement optimistic update; returns 0 when the row is missing or no longer at the given version.
+     */
+    default int updateIfVersionMatches(Department department) {
+        return updateIfVersionMatches(department.getId(), department.getVersion(),
+                department.getName(), department.getDescription(), department.isActive());
+    }
+
+    /**
+     * Native with plain parameters to keep the per-call overhead down.
+     */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true, value = "update department set name = :name, description = :description, "
+            + "active = :active, version = version + 1 where id = :id and version = :version")
+    int updateIfVersionMatches(@Param("id") long id, @Param("version") long version, @Param("name") String name,
+                               @Param("description") String description, @Param("active") boolean active);
 }
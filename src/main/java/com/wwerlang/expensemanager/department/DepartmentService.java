@@ -1,20 +1,60 @@
 package com.wwerlang.expensemanager.department;
 
+import com.wwerlang.expensemanager.common.BatchResultDTO;
+import com.wwerlang.expensemanager.common.CacheStatsDTO;
+import com.wwerlang.expensemanager.common.ChangeVersion;
+import com.wwerlang.expensemanager.common.PageDTO;
+import com.wwerlang.expensemanager.common.ReferenceCache;
+import com.wwerlang.expensemanager.exception.EntityConflictException;
 import com.wwerlang.expensemanager.exception.EntityNotFoundException;
+import com.wwerlang.expensemanager.metrics.MappingTimers;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
 public class DepartmentService {
 
+    private static final Timer PARSE_RESPONSE = MappingTimers.response("department");
+    private static final Timer PARSE_REQUEST = MappingTimers.request("department");
+
     @Autowired
     private DepartmentRepository departmentRepository;
 
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final ReferenceCache<DepartmentDTO> cache = new ReferenceCache<>();
+    private final ChangeVersion changeVersion = new ChangeVersion("department");
+
+    /**
+     * ETag of every find and list response, changing with each write to departments.
+     */
+    public String eTag() {
+        return changeVersion.eTag();
+    }
+
+    /**
+     * Version in the ETags, for responses that embed departments, such as employees.
+     */
+    public ChangeVersion changeVersion() {
+        return changeVersion;
+    }
+
     public DepartmentDTO find(long id) {
+        return cache.find(id, this::load);
+    }
+
+    private DepartmentDTO load(long id) {
         Optional<Department> departmentOptional = departmentRepository.findById(id);
 
         if (departmentOptional.isPresent()) {
@@ -25,9 +65,31 @@ public class DepartmentService {
         }
     }
 
-    public List<DepartmentDTO> list() {
-        List<DepartmentDTO> departments = new ArrayList<>();
-        departmentRepository.findAll().forEach(e -> departments.add(parseResponse(e)));
+    /**
+     * One page of departments after the given id, only the active or inactive ones when {@code active} is set.
+     */
+    public PageDTO<DepartmentDTO> list(long after, int limit, Boolean active) {
+        int size = PageDTO.limit(limit);
+        return cache.list(active, after, size, () -> load(after, size, active));
+    }
+
+    private PageDTO<DepartmentDTO> load(long after, int limit, Boolean active) {
+        List<Department> rows = active == null
+                ? departmentRepository.findByIdGreaterThanOrderByIdAsc(after, Limit.of(limit + 1))
+                : departmentRepository.findByActiveAndIdGreaterThanOrderByIdAsc(active, after, Limit.of(limit + 1));
+
+        List<DepartmentDTO> departments = new ArrayList<>(rows.size());
+        rows.forEach(e -> departments.add(parseResponse(e)));
+        return PageDTO.of(departments, limit, DepartmentDTO::getId);
+    }
+
+    /**
+     * Maps every department name to the department, keeping the lowest id when names repeat. Meant for resolving
+     * names in bulk, e.g. once per file import, rather than with one query per row.
+     */
+    public Map<String, DepartmentDTO> mapByName() {
+        Map<String, DepartmentDTO> departments = new HashMap<>();
+        departmentRepository.findAll(Sort.by("id")).forEach(e -> departments.putIfAbsent(e.getName(), parseResponse(e)));
         return departments;
     }
 
@@ -35,30 +97,117 @@ public class DepartmentService {
         long id = departmentDTO.getId();
         boolean isUpdate = id != 0;
 
-        if (isUpdate && !departmentRepository.existsById(id)) {
+        Department department = parseRequest(departmentDTO);
+
+        if (!isUpdate) {
+            department = departmentRepository.save(department);
+        } else if (departmentRepository.updateIfVersionMatches(department) == 1) {
+            department.setVersion(department.getVersion() + 1);
+        } else if (departmentRepository.existsById(id)) {
+            throw new EntityConflictException("Department", id, department.getVersion());
+        } else {
             throw new EntityNotFoundException("Department", id);
         }
 
-        Department department = parseRequest(departmentDTO);
-        department = departmentRepository.save(department);
+        cache.invalidate(department.getId());
+        changeVersion.bump();
         return parseResponse(department);
     }
 
+    /**
+     * Saves the items in one transaction per chunk of {@link BatchResultDTO#CHUNK_SIZE}, reporting the outcome of each.
+     */
+    public List<BatchResultDTO<DepartmentDTO>> saveAll(List<DepartmentDTO> departmentDTOs) {
+        List<BatchResultDTO<DepartmentDTO>> results = new ArrayList<>(departmentDTOs.size());
+
+        for (int from = 0; from < departmentDTOs.size(); from += BatchResultDTO.CHUNK_SIZE) {
+            int offset = from;
+            int to = Math.min(from + BatchResultDTO.CHUNK_SIZE, departmentDTOs.size());
+            List<DepartmentDTO> chunk = departmentDTOs.subList(from, to);
+
+            try {
+                List<BatchResultDTO<DepartmentDTO>> chunkResults =
+                        transactionTemplate.execute(status -> saveChunk(offset, chunk));
+                chunkResults.stream()
+                        .filter(e -> e.getItem() != null)
+                        .forEach(e -> cache.invalidate(e.getItem().getId()));
+                changeVersion.bump();
+                results.addAll(chunkResults);
+            } catch (RuntimeException e) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    results.add(BatchResultDTO.failed(offset + i, BatchResultDTO.Status.FAILED, e.getMessage()));
+                }
+            }
+        }
+
+        return results;
+    }
+
+    private List<BatchResultDTO<DepartmentDTO>> saveChunk(int offset, List<DepartmentDTO> chunk) {
+        List<Long> ids = chunk.stream().map(DepartmentDTO::getId).filter(id -> id != 0).toList();
+        Map<Long, Long> versions = new HashMap<>();
+        departmentRepository.findAllById(ids).forEach(e -> versions.put(e.getId(), e.getVersion()));
+
+        List<BatchResultDTO<DepartmentDTO>> results = new ArrayList<>(chunk.size());
+        List<Department> saved = new ArrayList<>(chunk.size());
+
+        for (int i = 0; i < chunk.size(); i++) {
+            DepartmentDTO departmentDTO = chunk.get(i);
+            long id = departmentDTO.getId();
+            boolean isUpdate = id != 0;
+            Long version = versions.get(id);
+
+            if (isUpdate && version == null) {
+                String error = new EntityNotFoundException("Department", id).getMessage();
+                results.add(BatchResultDTO.failed(offset + i, BatchResultDTO.Status.NOT_FOUND, error));
+                saved.add(null);
+            } else if (isUpdate && version != departmentDTO.getVersion()) {
+                String error = new EntityConflictException("Department", id, departmentDTO.getVersion()).getMessage();
+                results.add(BatchResultDTO.failed(offset + i, BatchResultDTO.Status.CONFLICT, error));
+                saved.add(null);
+            } else {
+                results.add(BatchResultDTO.saved(offset + i, isUpdate, null));
+                saved.add(departmentRepository.save(parseRequest(departmentDTO)));
+            }
+        }
+
+        // Flush the batched statements so the responses carry the new versions.
+        departmentRepository.flush();
+
+        for (int i = 0; i < saved.size(); i++) {
+            if (saved.get(i) != null) {
+                results.get(i).setItem(parseResponse(saved.get(i)));
+            }
+        }
+
+        return results;
+    }
+
+    public CacheStatsDTO cacheStats() {
+        return cache.stats();
+    }
+
     public DepartmentDTO parseResponse(Department department) {
-        DepartmentDTO departmentDTO = new DepartmentDTO();
-        departmentDTO.setId(department.getId());
-        departmentDTO.setName(department.getName());
-        departmentDTO.setDescription(department.getDescription());
-        departmentDTO.setActive(department.isActive());
-        return departmentDTO;
+        return PARSE_RESPONSE.record(() -> {
+            DepartmentDTO departmentDTO = new DepartmentDTO();
+            departmentDTO.setId(department.getId());
+            departmentDTO.setName(department.getName());
+            departmentDTO.setDescription(department.getDescription());
+            departmentDTO.setActive(department.isActive());
+            departmentDTO.setVersion(department.getVersion());
+            return departmentDTO;
+        });
     }
 
     public Department parseRequest(DepartmentDTO departmentDTO) {
-        Department department = new Department();
-        department.setId(departmentDTO.getId());
-        department.setName(departmentDTO.getName());
-        department.setDescription(departmentDTO.getDescription());
-        department.setActive(departmentDTO.isActive());
-        return department;
+        return PARSE_REQUEST.record(() -> {
+            Department department = new Department();
+            department.setId(departmentDTO.getId());
+            department.setName(departmentDTO.getName());
+            department.setDescription(departmentDTO.getDescription());
+            department.setActive(departmentDTO.isActive());
+            department.setVersion(departmentDTO.getVersion());
+            return department;
+        });
     }
 }
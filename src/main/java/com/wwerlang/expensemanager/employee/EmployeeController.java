@@ -1,9 +1,22 @@
 package com.wwerlang.expensemanager.employee;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wwerlang.expensemanager.common.NdjsonWriter;
+import com.wwerlang.expensemanager.common.BatchResultDTO;
+import com.wwerlang.expensemanager.common.ImportResultDTO;
+import com.wwerlang.expensemanager.common.PageDTO;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 @RestController
@@ -13,16 +26,67 @@ public class EmployeeController {
     @Autowired
     private EmployeeService employeeService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * The employee, or only the listed fields of it with e.g. {@code fields=firstName,lastName,department.name}.
+     */
     @GetMapping("/{id}")
-    private ResponseEntity<EmployeeDTO> find(@PathVariable("id") long id) {
-        EmployeeDTO category = employeeService.find(id);
-        return ResponseEntity.ok(category);
+    private ResponseEntity<?> find(@PathVariable("id") long id,
+                                   @RequestParam(name = "fields", required = false) String fields,
+                                   WebRequest request) {
+        String eTag = employeeService.eTag();
+
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+
+        Object employee = fields == null ? employeeService.find(id) : employeeService.findFields(id, fields);
+        return ResponseEntity.ok().eTag(eTag).body(employee);
     }
 
+    /**
+     * One page of employees, or only the listed fields of each with {@code fields=} as for a single one.
+     */
     @GetMapping
-    private ResponseEntity<List<EmployeeDTO>> list() {
-        List<EmployeeDTO> categories = employeeService.list();
-        return ResponseEntity.ok(categories);
+    private ResponseEntity<PageDTO<?>> list(
+            @RequestParam(name = "after", defaultValue = "0") long after,
+            @RequestParam(name = "limit", defaultValue = "100") int limit,
+            @RequestParam(name = "departmentId", required = false) Long departmentId,
+            @RequestParam(name = "active", required = false) Boolean active,
+            @RequestParam(name = "fields", required = false) String fields,
+            WebRequest request) {
+        String eTag = employeeService.eTag();
+
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+
+        PageDTO<?> employees = fields == null
+                ? employeeService.list(after, limit, departmentId, active)
+                : employeeService.listFields(after, limit, departmentId, active, fields);
+        return ResponseEntity.ok().eTag(eTag).body(employees);
+    }
+
+    /**
+     * Employees whose first or last name start with the words typed, e.g. {@code q=jo sm}, best match first.
+     */
+    @GetMapping("/search")
+    private ResponseEntity<List<EmployeeNameDTO>> search(@RequestParam("q") String query,
+                                                         @RequestParam(name = "limit", defaultValue = "10") int limit) {
+        List<EmployeeNameDTO> employees = employeeService.search(query, limit);
+        return ResponseEntity.ok(employees);
+    }
+
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    private ResponseEntity<StreamingResponseBody> export() {
+        StreamingResponseBody body = outputStream -> {
+            try (NdjsonWriter<EmployeeDTO> writer = new NdjsonWriter<>(objectMapper, EmployeeDTO.class, outputStream)) {
+                employeeService.export(writer);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
     }
 
     @PostMapping
@@ -30,4 +94,17 @@ public class EmployeeController {
         category = employeeService.save(category);
         return ResponseEntity.ok(category);
     }
+
+    @PostMapping("/batch")
+    private ResponseEntity<List<BatchResultDTO<EmployeeDTO>>> saveAll(@RequestBody List<EmployeeDTO> employees) {
+        List<BatchResultDTO<EmployeeDTO>> results = employeeService.saveAll(employees);
+        return ResponseEntity.ok(results);
+    }
+
+    @PostMapping(value = "/import", consumes = "text/csv")
+    private ResponseEntity<ImportResultDTO> importCsv(InputStream inputStream) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        ImportResultDTO result = employeeService.importCsv(reader);
+        return ResponseEntity.ok(result);
+    }
 }
@@ -17,4 +17,24 @@ public class EmployeeDTO {
     private String lastName;
     private boolean active;
     private DepartmentDTO department;
+    private long version;
+
+    /**
+     * Flat constructor for JPQL constructor expressions, so an employee and its department can be read in one joined
+     * row without hydrating either entity.
+     */
+    public EmployeeDTO(long id, String firstName, String lastName, boolean active, long version,
+                       Long departmentId, String departmentName, String departmentDescription, Boolean departmentActive,
+                       Long departmentVersion) {
+        this.id = id;
+        this.firstName = firstName;
+        this.lastName = lastName;
+        this.active = active;
+        this.version = version;
+
+        if (departmentId != null) {
+            this.department = new DepartmentDTO(departmentId, departmentName, departmentDescription, departmentActive,
+                    departmentVersion);
+        }
+    }
 }
@@ -0,0 +1,119 @@
+package com.wwerlang.expensemanager.employee;
+
+import jakarta.persistence.Tuple;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * The employee fields asked for with {@code fields=}, e.g. {@code firstName,lastName,department.name}, read as a
+ * narrower select and returned as maps holding only those fields. {@code department} stands for all of its fields.
+ * <p>
+ * The id is always included, as pages are keyed on it, and so is the department id whenever a department field is
+ * asked for, as a null one tells an employee without a department. The department table is only joined when one of
+ * its other fields is asked for; its id is the employee's foreign key column.
+ */
+public class EmployeeFields {
+
+    private static final String DEPARTMENT = "department.";
+
+    /**
+     * Path of each field in the select, in the order fields are read and written.
+     */
+    private static final Map<String, String> PATHS = new LinkedHashMap<>();
+
+    static {
+        PATHS.put("id", "e.id");
+        PATHS.put("firstName", "e.firstName");
+        PATHS.put("lastName", "e.lastName");
+        PATHS.put("active", "e.active");
+        PATHS.put("version", "e.version");
+        PATHS.put("department.id", "e.department.id");
+        PATHS.put("department.name", "d.name");
+        PATHS.put("department.description", "d.description");
+        PATHS.put("department.active", "d.active");
+        PATHS.put("department.version", "d.version");
+    }
+
+    private final List<String> fields;
+    private final boolean joinsDepartment;
+
+    private EmployeeFields(List<String> fields) {
+        this.fields = fields;
+        this.joinsDepartment = fields.stream().anyMatch(e -> PATHS.get(e).startsWith("d."));
+    }
+
+    /**
+     * Parses a comma-separated list of fields; throws {@link IllegalArgumentException} on unknown ones.
+     */
+    public static EmployeeFields parse(String fields) {
+        Set<String> requested = new HashSet<>();
+        requested.add("id");
+
+        for (String field : fields.split(",")) {
+            field = field.trim();
+
+            if (field.isEmpty()) {
+                continue;
+            }
+
+            if (field.equals("department")) {
+                PATHS.keySet().stream().filter(e -> e.startsWith(DEPARTMENT)).forEach(requested::add);
+            } else if (PATHS.containsKey(field)) {
+                requested.add(field);
+            } else {
+                throw new IllegalArgumentException("Unknown employee field \"" + field + "\".");
+            }
+
+            if (field.startsWith(DEPARTMENT)) {
+                requested.add("department.id");
+            }
+        }
+
+        return new EmployeeFields(PATHS.keySet().stream().filter(requested::contains).toList());
+    }
+
+    public boolean joinsDepartment() {
+        return joinsDepartment;
+    }
+
+    /**
+     * JPQL select and from clauses reading only these fields, with the employee as {@code e}.
+     */
+    public String select() {
+        return "select " + fields.stream().map(PATHS::get).collect(Collectors.joining(", ")) + " from Employee e"
+                + (joinsDepartment ? " left join e.department d" : "");
+    }
+
+    /**
+     * Maps a row read with {@link #select()}, nesting the department fields under {@code department}.
+     */
+    public Map<String, Object> toMap(Tuple row) {
+        Map<String, Object> employee = new LinkedHashMap<>();
+        Map<String, Object> department = null;
+
+        for (int i = 0; i < fields.size(); i++) {
+            String field = fields.get(i);
+            Object value = row.get(i);
+
+            if (!field.startsWith(DEPARTMENT)) {
+                employee.put(field, value);
+            } else if (field.equals("department.id")) {
+                department = value == null ? null : new LinkedHashMap<>();
+                employee.put("department", department);
+
+                if (department != null) {
+                    department.put("id", value);
+                }
+            } else if (department != null) {
+                department.put(field.substring(DEPARTMENT.length()), value);
+            }
+        }
+
+        return employee;
+    }
+}
@@ -0,0 +1,21 @@
+package com.wwerlang.expensemanager.employee;
+
+import org.springframework.data.domain.Limit;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Reads of chosen employee fields only, with a select built from the fields asked for.
+ */
+public interface EmployeeFieldsRepository {
+
+    Optional<Map<String, Object>> findFieldsById(EmployeeFields fields, long id);
+
+    /**
+     * Employees after the given id, narrowed to a department and to active or inactive employees when those are set.
+     */
+    List<Map<String, Object>> listFieldsByIdGreaterThan(EmployeeFields fields, long id, Long departmentId,
+                                                        Boolean active, Limit limit);
+}
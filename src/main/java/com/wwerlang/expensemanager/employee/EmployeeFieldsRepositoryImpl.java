@@ -0,0 +1,58 @@
+package com.wwerlang.expensemanager.employee;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TypedQuery;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Only conditions for the filters that are set are added, so each combination is its own statement, planned as a
+ * range scan on the index of its filter column like the fixed listings in {@link EmployeeRepository}.
+ */
+class EmployeeFieldsRepositoryImpl implements EmployeeFieldsRepository {
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Override
+    public Optional<Map<String, Object>> findFieldsById(EmployeeFields fields, long id) {
+        return entityManager.createQuery(fields.select() + " where e.id = :id", Tuple.class)
+                .setParameter("id", id)
+                .getResultStream()
+                .findFirst()
+                .map(fields::toMap);
+    }
+
+    @Override
+    public List<Map<String, Object>> listFieldsByIdGreaterThan(EmployeeFields fields, long id, Long departmentId,
+                                                               Boolean active, Limit limit) {
+        StringBuilder jpql = new StringBuilder(fields.select()).append(" where e.id > :id");
+
+        if (departmentId != null) {
+            jpql.append(" and e.department.id = :departmentId");
+        }
+
+        if (active != null) {
+            jpql.append(" and e.active = :active");
+        }
+
+        TypedQuery<Tuple> query = entityManager.createQuery(jpql.append(" order by e.id").toString(), Tuple.class)
+                .setParameter("id", id)
+                .setMaxResults(limit.max());
+
+        if (departmentId != null) {
+            query.setParameter("departmentId", departmentId);
+        }
+
+        if (active != null) {
+            query.setParameter("active", active);
+        }
+
+        return query.getResultList().stream().map(fields::toMap).toList();
+    }
+}
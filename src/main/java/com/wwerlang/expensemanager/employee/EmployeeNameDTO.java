@@ -0,0 +1,21 @@
+package com.wwerlang.expensemanager.employee;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * An employee as found by name search: only what the search index holds, without the department.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmployeeNameDTO {
+
+    private long id;
+    private String firstName;
+    private String lastName;
+    private boolean active;
+}
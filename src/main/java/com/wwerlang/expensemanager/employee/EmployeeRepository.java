@@ -1,8 +1,89 @@
 package com.wwerlang.expensemanager.employee;
 
+import com.wwerlang.expensemanager.department.Department;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
-public interface EmployeeRepository extends JpaRepository<Employee, Long> {
+public interface EmployeeRepository extends JpaRepository<Employee, Long>, EmployeeFieldsRepository {
+
+    String SELECT_DTO = "select new com.wwerlang.expensemanager.employee.EmployeeDTO("
+            + "e.id, e.firstName, e.lastName, e.active, e.version, d.id, d.name, d.description, d.active, d.version) "
+            + "from Employee e left join e.department d ";
+
+    /**
+     * Reads employees after the given id straight into DTOs, with the department joined into the same statement.
+     */
+    @Query(SELECT_DTO + "where e.id > :id order by e.id")
+    List<EmployeeDTO> listByIdGreaterThan(@Param("id") long id, Limit limit);
+
+    /**
+     * The filtered listings below are one statement per combination of filters rather than one with optional
+     * conditions, so each is planned as a range scan on the index of its filter column.
+     */
+    @Query(SELECT_DTO + "where e.department.id = :departmentId and e.id > :id order by e.id")
+    List<EmployeeDTO> listByDepartmentIdAndIdGreaterThan(@Param("departmentId") long departmentId,
+                                                         @Param("id") long id, Limit limit);
+
+    @Query(SELECT_DTO + "where e.active = :active and e.id > :id order by e.id")
+    List<EmployeeDTO> listByActiveAndIdGreaterThan(@Param("active") boolean active, @Param("id") long id,
+                                                   Limit limit);
+
+    @Query(SELECT_DTO + "where e.department.id = :departmentId and e.active = :active and e.id > :id order by e.id")
+    List<EmployeeDTO> listByDepartmentIdAndActiveAndIdGreaterThan(@Param("departmentId") long departmentId,
+                                                                  @Param("active") boolean active,
+                                                                  @Param("id") long id, Limit limit);
+
+    @Query("select e from Employee e left join fetch e.department where e.id in :ids")
+    List<Employee> findAllWithDepartmentByIdIn(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Streams every employee with its department joined in, reading rows from the driver in chunks of the fetch size.
+     * Must be consumed inside a transaction and closed afterwards.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select e from Employee e left join fetch e.department order by e.id")
+    Stream<Employee> streamAll();
+
+    /**
+     * Streams the id, names and active flag of every employee, for the search index. Must be consumed inside a
+     * transaction and closed afterwards.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select new com.wwerlang.expensemanager.employee.EmployeeNameDTO(e.id, e.firstName, e.lastName, e.active) "
+            + "from Employee e order by e.id")
+    Stream<EmployeeNameDTO> streamNames();
+
+    /**
+     * Single-statement optimistic update of the employee row; returns 0 when it is missing or its version moved on.
+     */
+    default int updateIfVersionMatches(Employee employee) {
+        Department department = employee.getDepartment();
+        return updateIfVersionMatches(employee.getId(), employee.getVersion(), employee.getFirstName(),
+                employee.getLastName(), employee.isActive(), department == null ? null : department.getId());
+    }
+
+    /**
+     * Native with plain parameters, so nothing is re-rendered, re-translated or evaluated per call.
+     */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true, value = "update employee set first_name = :firstName, last_name = :lastName, "
+            + "active = :active, department_id = :departmentId, version = version + 1 "
+            + "where id = :id and version = :version")
+    int updateIfVersionMatches(@Param("id") long id, @Param("version") long version,
+                               @Param("firstName") String firstName, @Param("lastName") String lastName,
+                               @Param("active") boolean active, @Param("departmentId") Long departmentId);
 }
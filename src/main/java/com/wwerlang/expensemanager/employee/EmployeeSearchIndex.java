@@ -0,0 +1,467 @@
+package com.wwerlang.expensemanager.employee;
+
+import com.wwerlang.expensemanager.common.LongIntHashMap;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * In-memory index of employee names for search as you type, answered without the database. Names are split into
+ * words, lower-cased and stripped of accents, and the words kept in sorted arrays, one per word length, which is a trie
+ * flattened: the words starting with what was typed are one binary search away in each array. Walking the arrays from
+ * the length typed upwards yields matches best first, exact words, then shorter words before longer ones, then
+ * alphabetically, so the top results are found without looking at the rest.
+ * <p>
+ * Queries of several words look up the word with the fewest matches and check the others against each match's name;
+ * every word typed must start a different word of the name.
+ * <p>
+ * Searches read an immutable snapshot and never lock. Writes go to a small delta of sorted arrays next to the main
+ * ones, which is copied on every write and merged into the main arrays once it holds {@link #DELTA_LIMIT} words, so
+ * a save costs a copy of the delta rather than of the whole index. A renamed employee moves to a new slot; the words
+ * of the old one are skipped by searches and dropped at the next merge. Once old slots make up more than a quarter of
+ * the live ones, that merge also moves the live slots together and forgets the names and words only old slots held,
+ * which costs a pass over every employee, so it is done rarely enough to be spread over many saves.
+ * <p>
+ * The index is loaded before the web server starts and then kept current by {@link EmployeeService}, which passes
+ * each employee after saving it.
+ */
+@Slf4j
+@Component
+public class EmployeeSearchIndex implements SmartLifecycle {
+
+    public static final int MAX_RESULTS = 100;
+
+    static final int DELTA_LIMIT = 4096;
+
+    // Longer words are indexed by their first this many characters and checked against the name in full.
+    private static final int MAX_WORD_LENGTH = 32;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern APOSTROPHES = Pattern.compile("['’]");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private volatile Snapshot snapshot = Snapshot.empty();
+
+    // Only touched by writers, which hold the monitor of this index.
+    private final LongIntHashMap slotsById = new LongIntHashMap(INITIAL_CAPACITY);
+    // Canonical copies of names and words, which repeat a lot across employees. Rebuilt when slots are compacted.
+    private Map<String, String> strings = new HashMap<>();
+
+    private volatile boolean running;
+
+    /**
+     * Up to {@code limit} employees, capped at {@link #MAX_RESULTS}, whose names have a word starting with each word of
+     * the query, best match first.
+     */
+    public List<EmployeeNameDTO> search(String query, int limit) {
+        limit = Math.max(1, Math.min(limit, MAX_RESULTS));
+        List<String> words = words(query);
+
+        if (words.isEmpty()) {
+            return List.of();
+        }
+
+        Snapshot snapshot = this.snapshot;
+        String lookup = words.size() == 1 ? words.get(0)
+                : words.stream().min(Comparator.comparingLong(snapshot::count)).orElseThrow();
+        String prefix = truncate(lookup);
+        // Longest first, so a word typed in full is not taken up by a shorter one that also fits.
+        List<String> required = words.stream().sorted(Comparator.comparingInt(String::length).reversed()).toList();
+        // A single word is matched by the lookup itself, unless it was longer than the words indexed.
+        boolean check = words.size() > 1 || !prefix.equals(lookup);
+
+        List<EmployeeNameDTO> results = new ArrayList<>(limit);
+        Set<Integer> seen = new HashSet<>();
+
+        for (int length = prefix.length(); length <= MAX_WORD_LENGTH && results.size() < limit; length++) {
+            Run main = snapshot.main()[length];
+            Run delta = snapshot.delta()[length];
+            int i = main.from(prefix);
+            int iEnd = main.to(prefix);
+            int j = delta.from(prefix);
+            int jEnd = delta.to(prefix);
+
+            while ((i < iEnd || j < jEnd) && results.size() < limit) {
+                int slot = j >= jEnd || (i < iEnd && main.compare(i, delta, j) <= 0) ? main.slots()[i++]
+                        : delta.slots()[j++];
+                Slots slots = snapshot.slots();
+
+                if (slots.live[slot] && seen.add(slot) && (!check || matches(slots, slot, required))) {
+                    results.add(new EmployeeNameDTO(slots.ids[slot], slots.firstNames[slot], slots.lastNames[slot],
+                            slots.active[slot]));
+                }
+            }
+        }
+
+        return results;
+    }
+
+    public void put(EmployeeNameDTO employee) {
+        putAll(List.of(employee));
+    }
+
+    public synchronized void putAll(Collection<EmployeeNameDTO> employees) {
+        Snapshot current = snapshot;
+        List<Word> added = new ArrayList<>();
+        Slots slots = current.slots().withCapacity(current.size() + employees.size());
+        int size = current.size();
+
+        for (EmployeeNameDTO employee : employees) {
+            int slot = slotsById.get(employee.getId(), -1);
+
+            if (slot >= 0 && Objects.equals(slots.firstNames[slot], employee.getFirstName())
+                    && Objects.equals(slots.lastNames[slot], employee.getLastName())) {
+                slots.active[slot] = employee.isActive();
+                continue;
+            }
+
+            if (slot >= 0) {
+                slots.live[slot] = false;
+            }
+
+            slot = size++;
+            slots.ids[slot] = employee.getId();
+            slots.firstNames[slot] = canonical(employee.getFirstName());
+            slots.lastNames[slot] = canonical(employee.getLastName());
+            slots.active[slot] = employee.isActive();
+            slots.live[slot] = true;
+            slotsById.put(employee.getId(), slot);
+
+            for (String word : words(name(employee.getFirstName(), employee.getLastName()))) {
+                added.add(new Word(canonical(truncate(word)), slot));
+            }
+        }
+
+        Run[] delta = merge(current.delta(), added, slots);
+        int deltaWords = current.deltaWords() + added.size();
+
+        if (deltaWords > DELTA_LIMIT && size - slotsById.size() > slotsById.size() / 4) {
+            snapshot = compact(merge(current.main(), delta, slots), slots, size);
+        } else if (deltaWords > DELTA_LIMIT) {
+            snapshot = new Snapshot(merge(current.main(), delta, slots), Snapshot.emptyRuns(), 0, slots, size);
+        } else {
+            snapshot = new Snapshot(current.main(), delta, deltaWords, slots, size);
+        }
+    }
+
+    /**
+     * Employees held, not counting old slots of renamed ones.
+     */
+    public int size() {
+        return slotsById.size();
+    }
+
+    @Override
+    public void start() {
+        long started = System.nanoTime();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            // All in one go, so the words are sorted once rather than merged into the main arrays over and over.
+            try (Stream<EmployeeNameDTO> employees = employeeRepository.streamNames()) {
+                putAll(employees.toList());
+            }
+        });
+
+        Gauge.builder("employee.search.size", this, EmployeeSearchIndex::size)
+                .description("Employees held by the in-memory name search index")
+                .register(Metrics.globalRegistry);
+
+        running = true;
+        log.info("Indexed the names of {} employees in {} ms.", size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Loads before the web server starts, so no employee is saved while the names are being read.
+     */
+    @Override
+    public int getPhase() {
+        return DEFAULT_PHASE - 4096;
+    }
+
+    /**
+     * The words of the text as indexed: lower-cased, without accents or apostrophes, split at anything but letters and
+     * digits.
+     */
+    static List<String> words(String text) {
+        if (text == null || text.isBlank()) {
+            return List.of();
+        }
+
+        String normalized = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        normalized = APOSTROPHES.matcher(normalized).replaceAll("").toLowerCase(Locale.ROOT);
+        return Arrays.stream(SEPARATORS.split(normalized)).filter(w -> !w.isEmpty()).toList();
+    }
+
+    /**
+     * Whether each word of the query starts a different word of the name in the slot.
+     */
+    private static boolean matches(Slots slots, int slot, List<String> required) {
+        List<String> words = new ArrayList<>(words(name(slots.firstNames[slot], slots.lastNames[slot])));
+
+        for (String word : required) {
+            int match = -1;
+
+            for (int i = 0; i < words.size() && match < 0; i++) {
+                match = words.get(i).startsWith(word) ? i : -1;
+            }
+
+            if (match < 0) {
+                return false;
+            }
+
+            words.remove(match);
+        }
+
+        return true;
+    }
+
+    private static String name(String firstName, String lastName) {
+        return Objects.toString(firstName, "") + " " + Objects.toString(lastName, "");
+    }
+
+    /**
+     * A snapshot of the merged runs with the live slots moved to the front in the same order, so the runs stay sorted
+     * by word and slot. Searches still reading the old snapshot keep its slots, as the live ones are copied.
+     */
+    private Snapshot compact(Run[] main, Slots slots, int size) {
+        int[] moved = new int[size];
+        Slots compacted = new Slots(Math.max(INITIAL_CAPACITY, slotsById.size()));
+        int live = 0;
+        strings = new HashMap<>();
+
+        for (int slot = 0; slot < size; slot++) {
+            if (!slots.live[slot]) {
+                continue;
+            }
+
+            compacted.ids[live] = slots.ids[slot];
+            compacted.firstNames[live] = canonical(slots.firstNames[slot]);
+            compacted.lastNames[live] = canonical(slots.lastNames[slot]);
+            compacted.active[live] = slots.active[slot];
+            compacted.live[live] = true;
+            slotsById.put(slots.ids[slot], live);
+            moved[slot] = live++;
+        }
+
+        Run[] runs = new Run[main.length];
+
+        for (int length = 0; length < main.length; length++) {
+            Run run = main[length];
+            Arrays.stream(run.words()).forEach(this::canonical);
+            runs[length] = new Run(run.words(), Arrays.stream(run.slots()).map(slot -> moved[slot]).toArray());
+        }
+
+        return new Snapshot(runs, Snapshot.emptyRuns(), 0, compacted, live);
+    }
+
+    private String canonical(String value) {
+        return value == null ? null : strings.computeIfAbsent(value, v -> v);
+    }
+
+    private static String truncate(String word) {
+        return word.length() > MAX_WORD_LENGTH ? word.substring(0, MAX_WORD_LENGTH) : word;
+    }
+
+    /**
+     * Adds the words to the runs of their length, keeping each sorted by word and slot.
+     */
+    private static Run[] merge(Run[] runs, List<Word> added, Slots slots) {
+        if (added.isEmpty()) {
+            return runs;
+        }
+
+        Run[] addedRuns = Snapshot.emptyRuns();
+        added.sort(Comparator.comparing(Word::word).thenComparingInt(Word::slot));
+        Map<Integer, List<Word>> byLength = new HashMap<>();
+        added.forEach(w -> byLength.computeIfAbsent(w.word().length(), l -> new ArrayList<>()).add(w));
+
+        byLength.forEach((length, words) -> addedRuns[length] = new Run(
+                words.stream().map(Word::word).toArray(String[]::new),
+                words.stream().mapToInt(Word::slot).toArray()));
+
+        return merge(runs, addedRuns, slots);
+    }
+
+    /**
+     * Merges the runs of each length, leaving out words of slots that are no longer live.
+     */
+    private static Run[] merge(Run[] a, Run[] b, Slots slots) {
+        Run[] merged = new Run[a.length];
+
+        for (int length = 0; length < a.length; length++) {
+            merged[length] = a[length].merge(b[length], slots);
+        }
+
+        return merged;
+    }
+
+    private record Word(String word, int slot) {
+    }
+
+    /**
+     * Words of one length sorted by word and then slot, next to the slot of each.
+     */
+    private record Run(String[] words, int[] slots) {
+
+        static final Run EMPTY = new Run(new String[0], new int[0]);
+
+        int from(String prefix) {
+            return lowerBound(prefix);
+        }
+
+        int to(String prefix) {
+            return lowerBound(prefix + Character.MAX_VALUE);
+        }
+
+        int compare(int i, Run other, int j) {
+            int order = words[i].compareTo(other.words[j]);
+            return order != 0 ? order : Integer.compare(slots[i], other.slots[j]);
+        }
+
+        Run merge(Run other, Slots live) {
+            if (other.words.length == 0 && Arrays.stream(slots).allMatch(s -> live.live[s])) {
+                return this;
+            }
+
+            String[] words = new String[this.words.length + other.words.length];
+            int[] slots = new int[words.length];
+            int i = 0;
+            int j = 0;
+            int n = 0;
+
+            while (i < this.words.length || j < other.words.length) {
+                boolean fromThis = j >= other.words.length || (i < this.words.length && compare(i, other, j) <= 0);
+                int slot = fromThis ? this.slots[i] : other.slots[j];
+                String word = fromThis ? this.words[i++] : other.words[j++];
+
+                if (live.live[slot]) {
+                    words[n] = word;
+                    slots[n++] = slot;
+                }
+            }
+
+            return new Run(Arrays.copyOf(words, n), Arrays.copyOf(slots, n));
+        }
+
+        private int lowerBound(String word) {
+            int low = 0;
+            int high = words.length;
+
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+
+                if (words[mid].compareTo(word) < 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+
+            return low;
+        }
+    }
+
+    /**
+     * Employees by slot. Arrays are replaced rather than grown in place, so a snapshot's arrays only ever gain slots
+     * past its size; the active and live flags of existing slots are updated in place.
+     */
+    private static class Slots {
+
+        private final long[] ids;
+        private final String[] firstNames;
+        private final String[] lastNames;
+        private final boolean[] active;
+        private final boolean[] live;
+
+        Slots(int capacity) {
+            this(new long[capacity], new String[capacity], new String[capacity], new boolean[capacity],
+                    new boolean[capacity]);
+        }
+
+        private Slots(long[] ids, String[] firstNames, String[] lastNames, boolean[] active, boolean[] live) {
+            this.ids = ids;
+            this.firstNames = firstNames;
+            this.lastNames = lastNames;
+            this.active = active;
+            this.live = live;
+        }
+
+        Slots withCapacity(int capacity) {
+            if (capacity <= ids.length) {
+                return this;
+            }
+
+            int grown = Math.max(capacity, ids.length << 1);
+            return new Slots(Arrays.copyOf(ids, grown), Arrays.copyOf(firstNames, grown),
+                    Arrays.copyOf(lastNames, grown), Arrays.copyOf(active, grown), Arrays.copyOf(live, grown));
+        }
+    }
+
+    /**
+     * What a search reads: the main and delta runs by word length, and the employees by slot up to {@code size}.
+     */
+    private record Snapshot(Run[] main, Run[] delta, int deltaWords, Slots slots, int size) {
+
+        static Snapshot empty() {
+            return new Snapshot(emptyRuns(), emptyRuns(), 0, new Slots(INITIAL_CAPACITY), 0);
+        }
+
+        static Run[] emptyRuns() {
+            Run[] runs = new Run[MAX_WORD_LENGTH + 1];
+            Arrays.fill(runs, Run.EMPTY);
+            return runs;
+        }
+
+        /**
+         * Indexed words starting with the word, including those of old slots.
+         */
+        long count(String word) {
+            String prefix = truncate(word);
+            long count = 0;
+
+            for (int length = prefix.length(); length <= MAX_WORD_LENGTH; length++) {
+                count += main[length].to(prefix) - main[length].from(prefix);
+                count += delta[length].to(prefix) - delta[length].from(prefix);
+            }
+
+            return count;
+        }
+    }
+}
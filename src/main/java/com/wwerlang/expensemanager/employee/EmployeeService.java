@@ -1,25 +1,68 @@
 package com.wwerlang.expensemanager.employee;
 
+import com.wwerlang.expensemanager.common.BatchResultDTO;
+import com.wwerlang.expensemanager.common.ChangeVersion;
+import com.wwerlang.expensemanager.common.CsvParser;
+import com.wwerlang.expensemanager.common.ImportResultDTO;
+import com.wwerlang.expensemanager.common.PageDTO;
 import com.wwerlang.expensemanager.department.Department;
 import com.wwerlang.expensemanager.department.DepartmentDTO;
 import com.wwerlang.expensemanager.department.DepartmentService;
+import com.wwerlang.expensemanager.exception.EntityConflictException;
 import com.wwerlang.expensemanager.exception.EntityNotFoundException;
+import com.wwerlang.expensemanager.metrics.MappingTimers;
+import io.micrometer.core.instrument.Timer;
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+@Slf4j
 @Service
 public class EmployeeService {
 
+    private static final Timer PARSE_RESPONSE = MappingTimers.response("employee");
+    private static final Timer PARSE_REQUEST = MappingTimers.request("employee");
+    private static final List<String> CSV_COLUMNS = List.of("firstName", "lastName", "active", "department");
+
     @Autowired
     private EmployeeRepository employeeRepository;
 
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
     @Autowired
     private DepartmentService departmentService;
 
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EmployeeSearchIndex employeeSearchIndex;
+
+    private final ChangeVersion changeVersion = new ChangeVersion("employee");
+
+    /**
+     * ETag of every find and list response, changing with each write to employees or to departments, which are part
+     * of employee responses.
+     */
+    public String eTag() {
+        return ChangeVersion.eTag(changeVersion, departmentService.changeVersion());
+    }
+
     public EmployeeDTO find(long id) {
         Optional<Employee> employeeOptional = employeeRepository.findById(id);
 
@@ -31,48 +74,340 @@ public class EmployeeService {
         }
     }
 
-    public List<EmployeeDTO> list() {
-        List<EmployeeDTO> employees = new ArrayList<>();
-        employeeRepository.findAll().forEach(e -> employees.add(parseResponse(e)));
-        return employees;
+    /**
+     * The employee with only the given fields, read without the columns and joins the others would need.
+     */
+    public Map<String, Object> findFields(long id, String fields) {
+        return employeeRepository.findFieldsById(EmployeeFields.parse(fields), id)
+                .orElseThrow(() -> new EntityNotFoundException("Employee", id));
+    }
+
+    /**
+     * Employees whose names match the query as typed so far, best match first, from the in-memory search index.
+     */
+    public List<EmployeeNameDTO> search(String query, int limit) {
+        return employeeSearchIndex.search(query, limit);
+    }
+
+    /**
+     * One page of employees after the given id, narrowed to a department and to active or inactive employees when
+     * those are set.
+     */
+    public PageDTO<EmployeeDTO> list(long after, int limit, Long departmentId, Boolean active) {
+        limit = PageDTO.limit(limit);
+        Limit rows = Limit.of(limit + 1);
+        List<EmployeeDTO> employees;
+
+        if (departmentId != null && active != null) {
+            employees = employeeRepository.listByDepartmentIdAndActiveAndIdGreaterThan(departmentId, active, after,
+                    rows);
+        } else if (departmentId != null) {
+            employees = employeeRepository.listByDepartmentIdAndIdGreaterThan(departmentId, after, rows);
+        } else if (active != null) {
+            employees = employeeRepository.listByActiveAndIdGreaterThan(active, after, rows);
+        } else {
+            employees = employeeRepository.listByIdGreaterThan(after, rows);
+        }
+
+        return PageDTO.of(employees, limit, EmployeeDTO::getId);
+    }
+
+    /**
+     * Like {@link #list(long, int, Long, Boolean)}, with only the given fields of each employee.
+     */
+    public PageDTO<Map<String, Object>> listFields(long after, int limit, Long departmentId, Boolean active,
+                                                   String fields) {
+        limit = PageDTO.limit(limit);
+        List<Map<String, Object>> employees = employeeRepository.listFieldsByIdGreaterThan(EmployeeFields.parse(fields),
+                after, departmentId, active, Limit.of(limit + 1));
+        return PageDTO.of(employees, limit, e -> (Long) e.get("id"));
+    }
+
+    /**
+     * Hands every employee to the consumer as it is read. Each entity is detached once mapped, so the persistence
+     * context does not grow with the table.
+     */
+    @Transactional(readOnly = true)
+    public void export(Consumer<EmployeeDTO> consumer) {
+        try (Stream<Employee> employees = employeeRepository.streamAll()) {
+            employees.forEach(e -> {
+                consumer.accept(parseResponse(e));
+                entityManager.detach(e);
+            });
+        }
     }
 
     public EmployeeDTO save(EmployeeDTO employeeDTO) {
         long id = employeeDTO.getId();
         boolean isUpdate = id != 0;
 
-        if (isUpdate && !employeeRepository.existsById(id)) {
+        // The request may only carry the department id, so answer with the department as stored, read before writing.
+        DepartmentDTO department = findDepartment(employeeDTO.getDepartment());
+        Employee employee = parseRequest(employeeDTO);
+
+        if (!isUpdate) {
+            employee = employeeRepository.save(employee);
+        } else if (employeeRepository.updateIfVersionMatches(employee) == 1) {
+            employee.setVersion(employee.getVersion() + 1);
+        } else if (employeeRepository.existsById(id)) {
+            throw new EntityConflictException("Employee", id, employee.getVersion());
+        } else {
             throw new EntityNotFoundException("Employee", id);
         }
 
-        Employee employee = parseRequest(employeeDTO);
-        employee = employeeRepository.save(employee);
-        return parseResponse(employee);
+        EmployeeDTO saved = parseResponse(employee);
+        saved.setDepartment(department);
+
+        employeeSearchIndex.put(parseName(employee));
+        changeVersion.bump();
+        return saved;
     }
 
-    public EmployeeDTO parseResponse(Employee employee) {
+    /**
+     * A copy of the stored department, as the one from the department service is shared with its cache.
+     */
+    private DepartmentDTO findDepartment(DepartmentDTO departmentDTO) {
+        if (departmentDTO == null) {
+            return null;
+        }
+
+        DepartmentDTO stored = departmentService.find(departmentDTO.getId());
+        return new DepartmentDTO(stored.getId(), stored.getName(), stored.getDescription(), stored.isActive(),
+                stored.getVersion());
+    }
+
+    /**
+     * Saves the items in one transaction per chunk of {@link BatchResultDTO#CHUNK_SIZE}, reporting the outcome of each.
+     */
+    public List<BatchResultDTO<EmployeeDTO>> saveAll(List<EmployeeDTO> employeeDTOs) {
+        List<BatchResultDTO<EmployeeDTO>> results = new ArrayList<>(employeeDTOs.size());
+
+        for (int from = 0; from < employeeDTOs.size(); from += BatchResultDTO.CHUNK_SIZE) {
+            int offset = from;
+            int to = Math.min(from + BatchResultDTO.CHUNK_SIZE, employeeDTOs.size());
+            List<EmployeeDTO> chunk = employeeDTOs.subList(from, to);
+
+            try {
+                List<BatchResultDTO<EmployeeDTO>> chunkResults = transactionTemplate.execute(status ->
+                        saveChunk(offset, chunk));
+                employeeSearchIndex.putAll(chunkResults.stream()
+                        .filter(r -> r.getItem() != null)
+                        .map(r -> parseName(r.getItem()))
+                        .toList());
+                changeVersion.bump();
+                results.addAll(chunkResults);
+            } catch (RuntimeException e) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    results.add(BatchResultDTO.failed(offset + i, BatchResultDTO.Status.FAILED, e.getMessage()));
+                }
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Imports employees from CSV with a {@code firstName,lastName,active,department} header (in any order, plus
+     * optional {@code id} and {@code version} columns for updates) and departments given by name. The file is read line
+     * by line and saved in chunks of {@link BatchResultDTO#CHUNK_SIZE}; rows that cannot be parsed or saved are
+     * reported and skipped.
+     */
+    public ImportResultDTO importCsv(BufferedReader reader) throws IOException {
+        ImportResultDTO result = new ImportResultDTO();
+        String header = reader.readLine();
+
+        if (header == null) {
+            return result;
+        }
+
+        List<String> columns = CsvParser.split(header);
+        List<String> missing = CSV_COLUMNS.stream().filter(e -> !columns.contains(e)).toList();
+
+        if (!missing.isEmpty()) {
+            result.addError(1, "Missing columns " + missing + ".");
+            return result;
+        }
+
+        Map<String, DepartmentDTO> departments = departmentService.mapByName();
+        List<EmployeeDTO> chunk = new ArrayList<>(BatchResultDTO.CHUNK_SIZE);
+        List<Long> chunkLines = new ArrayList<>(BatchResultDTO.CHUNK_SIZE);
+        long lineNumber = 1;
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+
+            if (line.isBlank()) {
+                continue;
+            }
+
+            result.setRows(result.getRows() + 1);
+
+            try {
+                chunk.add(parseCsvRow(columns, CsvParser.split(line), departments));
+                chunkLines.add(lineNumber);
+            } catch (IllegalArgumentException e) {
+                result.addError(lineNumber, e.getMessage());
+            }
+
+            if (chunk.size() == BatchResultDTO.CHUNK_SIZE) {
+                importChunk(chunk, chunkLines, result);
+            }
+        }
+
+        importChunk(chunk, chunkLines, result);
+        return result;
+    }
+
+    private void importChunk(List<EmployeeDTO> chunk, List<Long> chunkLines, ImportResultDTO result) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        for (BatchResultDTO<EmployeeDTO> itemResult : saveAll(chunk)) {
+            if (itemResult.getItem() != null) {
+                result.setImported(result.getImported() + 1);
+            } else {
+                result.addError(chunkLines.get(itemResult.getIndex()), itemResult.getError());
+            }
+        }
+
+        log.info("Employee import: {} rows read, {} imported, {} failed.",
+                result.getRows(), result.getImported(), result.getFailed());
+        chunk.clear();
+        chunkLines.clear();
+    }
+
+    private EmployeeDTO parseCsvRow(List<String> columns, List<String> fields, Map<String, DepartmentDTO> departments) {
+        if (fields.size() != columns.size()) {
+            throw new IllegalArgumentException("Expected " + columns.size() + " fields but found " + fields.size() + ".");
+        }
+
         EmployeeDTO employeeDTO = new EmployeeDTO();
-        employeeDTO.setId(employee.getId());
-        employeeDTO.setFirstName(employee.getFirstName());
-        employeeDTO.setLastName(employee.getLastName());
-        employeeDTO.setActive(employee.isActive());
 
-        DepartmentDTO departmentDTO = departmentService.parseResponse(employee.getDepartment());
-        employeeDTO.setDepartment(departmentDTO);
+        for (int i = 0; i < columns.size(); i++) {
+            String value = fields.get(i);
+
+            switch (columns.get(i)) {
+                case "id" -> employeeDTO.setId(value.isEmpty() ? 0 : parseCsvLong("id", value));
+                case "version" -> employeeDTO.setVersion(value.isEmpty() ? 0 : parseCsvLong("version", value));
+                case "firstName" -> employeeDTO.setFirstName(value);
+                case "lastName" -> employeeDTO.setLastName(value);
+                case "active" -> employeeDTO.setActive(parseCsvBoolean(value));
+                case "department" -> {
+                    DepartmentDTO department = departments.get(value);
+
+                    if (department == null) {
+                        throw new IllegalArgumentException("Unknown department \"" + value + "\".");
+                    }
+
+                    employeeDTO.setDepartment(department);
+                }
+                default -> {
+                }
+            }
+        }
 
         return employeeDTO;
     }
 
+    private static long parseCsvLong(String column, String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + column + " \"" + value + "\".");
+        }
+    }
+
+    private static boolean parseCsvBoolean(String value) {
+        if (value.equalsIgnoreCase("true")) {
+            return true;
+        } else if (value.equalsIgnoreCase("false")) {
+            return false;
+        } else {
+            throw new IllegalArgumentException("Invalid active flag \"" + value + "\".");
+        }
+    }
+
+    private List<BatchResultDTO<EmployeeDTO>> saveChunk(int offset, List<EmployeeDTO> chunk) {
+        List<Long> ids = chunk.stream().map(EmployeeDTO::getId).filter(id -> id != 0).toList();
+        Map<Long, Long> versions = new HashMap<>();
+        employeeRepository.findAllWithDepartmentByIdIn(ids).forEach(e -> versions.put(e.getId(), e.getVersion()));
+
+        List<BatchResultDTO<EmployeeDTO>> results = new ArrayList<>(chunk.size());
+        List<Employee> saved = new ArrayList<>(chunk.size());
+
+        for (int i = 0; i < chunk.size(); i++) {
+            EmployeeDTO employeeDTO = chunk.get(i);
+            long id = employeeDTO.getId();
+            boolean isUpdate = id != 0;
+            Long version = versions.get(id);
+
+            if (isUpdate && version == null) {
+                String error = new EntityNotFoundException("Employee", id).getMessage();
+                results.add(BatchResultDTO.failed(offset + i, BatchResultDTO.Status.NOT_FOUND, error));
+                saved.add(null);
+            } else if (isUpdate && version != employeeDTO.getVersion()) {
+                String error = new EntityConflictException("Employee", id, employeeDTO.getVersion()).getMessage();
+                results.add(BatchResultDTO.failed(offset + i, BatchResultDTO.Status.CONFLICT, error));
+                saved.add(null);
+            } else {
+                results.add(BatchResultDTO.saved(offset + i, isUpdate, null));
+                saved.add(employeeRepository.save(parseRequest(employeeDTO)));
+            }
+        }
+
+        // Flush the batched statements so the responses carry the new versions.
+        employeeRepository.flush();
+
+        for (int i = 0; i < saved.size(); i++) {
+            if (saved.get(i) != null) {
+                results.get(i).setItem(parseResponse(saved.get(i)));
+            }
+        }
+
+        return results;
+    }
+
+    public EmployeeDTO parseResponse(Employee employee) {
+        return PARSE_RESPONSE.record(() -> {
+            EmployeeDTO employeeDTO = new EmployeeDTO();
+            employeeDTO.setId(employee.getId());
+            employeeDTO.setFirstName(employee.getFirstName());
+            employeeDTO.setLastName(employee.getLastName());
+            employeeDTO.setActive(employee.isActive());
+            employeeDTO.setVersion(employee.getVersion());
+
+            DepartmentDTO departmentDTO = departmentService.parseResponse(employee.getDepartment());
+            employeeDTO.setDepartment(departmentDTO);
+
+            return employeeDTO;
+        });
+    }
+
+    private static EmployeeNameDTO parseName(Employee employee) {
+        return new EmployeeNameDTO(employee.getId(), employee.getFirstName(), employee.getLastName(),
+                employee.isActive());
+    }
+
+    private static EmployeeNameDTO parseName(EmployeeDTO employeeDTO) {
+        return new EmployeeNameDTO(employeeDTO.getId(), employeeDTO.getFirstName(), employeeDTO.getLastName(),
+                employeeDTO.isActive());
+    }
+
     public Employee parseRequest(EmployeeDTO employeeDTO) {
-        Employee employee = new Employee();
-        employee.setId(employeeDTO.getId());
-        employee.setFirstName(employeeDTO.getFirstName());
-        employee.setLastName(employeeDTO.getLastName());
-        employee.setActive(employeeDTO.isActive());
+        return PARSE_REQUEST.record(() -> {
+            Employee employee = new Employee();
+            employee.setId(employeeDTO.getId());
+            employee.setFirstName(employeeDTO.getFirstName());
+            employee.setLastName(employeeDTO.getLastName());
+            employee.setActive(employeeDTO.isActive());
+            employee.setVersion(employeeDTO.getVersion());
 
-        Department department = departmentService.parseRequest(employeeDTO.getDepartment());
-        employee.setDepartment(department);
+            Department department = departmentService.parseRequest(employeeDTO.getDepartment());
+            employee.setDepartment(department);
 
-        return employee;
+            return employee;
+        });
     }
 }
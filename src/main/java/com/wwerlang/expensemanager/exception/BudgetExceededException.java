@@ -0,0 +1,26 @@
+package com.wwerlang.expensemanager.exception;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+
+public class BudgetExceededException extends RuntimeException {
+
+    private final long departmentId;
+    private final YearMonth month;
+    private final BigDecimal remaining;
+    private final BigDecimal requested;
+
+    public BudgetExceededException(long departmentId, YearMonth month, BigDecimal remaining, BigDecimal requested) {
+        super();
+        this.departmentId = departmentId;
+        this.month = month;
+        this.remaining = remaining;
+        this.requested = requested;
+    }
+
+    @Override
+    public String getMessage() {
+        return "Department " + departmentId + " has " + remaining + " left of its budget for " + month
+                + ", not enough for " + requested + ".";
+    }
+}
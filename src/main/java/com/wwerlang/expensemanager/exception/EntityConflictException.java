@@ -0,0 +1,20 @@
+package com.wwerlang.expensemanager.exception;
+
+public class EntityConflictException extends RuntimeException {
+
+    private final String entity;
+    private final long id;
+    private final long version;
+
+    public EntityConflictException(String entity, long id, long version) {
+        super();
+        this.entity = entity;
+        this.id = id;
+        this.version = version;
+    }
+
+    @Override
+    public String getMessage() {
+        return entity + " with ID " + id + " was modified after version " + version + ".";
+    }
+}
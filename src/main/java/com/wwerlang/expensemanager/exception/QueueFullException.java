@@ -0,0 +1,20 @@
+package com.wwerlang.expensemanager.exception;
+
+public class QueueFullException extends RuntimeException {
+
+    private final String queue;
+    private final int requested;
+    private final int available;
+
+    public QueueFullException(String queue, int requested, int available) {
+        super();
+        this.queue = queue;
+        this.requested = requested;
+        this.available = available;
+    }
+
+    @Override
+    public String getMessage() {
+        return queue + " queue is full: " + requested + " items submitted but only " + available + " fit.";
+    }
+}
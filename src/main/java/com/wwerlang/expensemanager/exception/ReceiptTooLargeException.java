@@ -0,0 +1,16 @@
+package com.wwerlang.expensemanager.exception;
+
+public class ReceiptTooLargeException extends RuntimeException {
+
+    private final long maxSize;
+
+    public ReceiptTooLargeException(long maxSize) {
+        super();
+        this.maxSize = maxSize;
+    }
+
+    @Override
+    public String getMessage() {
+        return "Receipts are at most " + maxSize + " bytes.";
+    }
+}
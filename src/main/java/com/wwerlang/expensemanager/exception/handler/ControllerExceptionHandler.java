@@ -1,6 +1,11 @@
 package com.wwerlang.expensemanager.exception.handler;
 
+import com.wwerlang.expensemanager.exception.BudgetExceededException;
+import com.wwerlang.expensemanager.exception.EntityConflictException;
 import com.wwerlang.expensemanager.exception.EntityNotFoundException;
+import com.wwerlang.expensemanager.exception.QueueFullException;
+import com.wwerlang.expensemanager.exception.ReceiptTooLargeException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -13,4 +18,31 @@ public class ControllerExceptionHandler {
     private ResponseEntity<?> handleEntityNotFoundException(EntityNotFoundException e) {
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
     }
+
+    @ExceptionHandler(EntityConflictException.class)
+    private ResponseEntity<?> handleEntityConflictException(EntityConflictException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+
+    @ExceptionHandler(BudgetExceededException.class)
+    private ResponseEntity<?> handleBudgetExceededException(BudgetExceededException e) {
+        return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY).body(e.getMessage());
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    private ResponseEntity<?> handleIllegalArgumentException(IllegalArgumentException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+    }
+
+    @ExceptionHandler(ReceiptTooLargeException.class)
+    private ResponseEntity<?> handleReceiptTooLargeException(ReceiptTooLargeException e) {
+        return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(e.getMessage());
+    }
+
+    @ExceptionHandler(QueueFullException.class)
+    private ResponseEntity<?> handleQueueFullException(QueueFullException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(e.getMessage());
+    }
 }
@@ -0,0 +1,27 @@
+package com.wwerlang.expensemanager.expense;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * Month-end statement of one department: its employees with their expenses, and the department's total.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class DepartmentStatementDTO {
+
+    private long departmentId;
+    private String departmentName;
+    private YearMonth month;
+    private BigDecimal total;
+    private long count;
+    private List<EmployeeStatementDTO> employees;
+}
@@ -0,0 +1,23 @@
+package com.wwerlang.expensemanager.expense;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class EmployeeStatementDTO {
+
+    private long employeeId;
+    private String firstName;
+    private String lastName;
+    private BigDecimal total;
+    private long count;
+    private List<ExpenseDTO> expenses;
+}
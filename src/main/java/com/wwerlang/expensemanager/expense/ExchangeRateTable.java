@@ -0,0 +1,242 @@
+package com.wwerlang.expensemanager.expense;
+
+import com.wwerlang.expensemanager.common.CsvParser;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable exchange rates into the base currency, indexed by the ISO 4217 numeric code of the currency and the epoch
+ * day, so a conversion is two array reads and one multiplication in {@code long}s. A currency's rate holds from its
+ * date until the next one; days before its first rate have none, days after its last one keep it.
+ * <p>
+ * Rates are kept as given, as fixed-point numbers with the scale of the most precise rate of their currency, folded
+ * together with the difference in minor units between the currency and the base currency into a multiplier per day
+ * and one divisor per currency. Converted amounts are rounded half up, that is to the nearest minor unit and away from
+ * zero on ties, the same as {@link RoundingMode#HALF_UP}.
+ */
+public final class ExchangeRateTable {
+
+    /**
+     * Rates with more decimals are rounded half up to this many when loaded.
+     */
+    static final int MAX_RATE_SCALE = 12;
+
+    private static final int CODES = 1000;
+
+    private final Currency base;
+    private final int[] firstDays = new int[CODES];
+    // Multipliers by numeric code and by day since the first day of the currency, null for currencies without rates.
+    private final long[][] multipliers = new long[CODES][];
+    private final long[] divisors = new long[CODES];
+    private final int currencies;
+    private final LocalDate from;
+    private final LocalDate to;
+
+    private ExchangeRateTable(Currency base, Map<Currency, TreeMap<LocalDate, BigDecimal>> rates) {
+        this.base = base;
+        this.currencies = rates.size();
+
+        LocalDate first = null;
+        LocalDate last = null;
+
+        for (Map.Entry<Currency, TreeMap<LocalDate, BigDecimal>> entry : rates.entrySet()) {
+            Currency currency = entry.getKey();
+            TreeMap<LocalDate, BigDecimal> byDate = entry.getValue();
+            int code = currency.getNumericCode();
+
+            int scale = Math.max(0, byDate.values().stream().mapToInt(BigDecimal::scale).max().orElse(0));
+            // amount * rate * 10^(base digits - currency digits), with the rate as unscaled / 10^scale.
+            int exponent = scale - (base.getDefaultFractionDigits() - currency.getDefaultFractionDigits());
+
+            int firstDay = Math.toIntExact(byDate.firstKey().toEpochDay());
+            long[] byDay = new long[Math.toIntExact(byDate.lastKey().toEpochDay() - firstDay + 1)];
+            long multiplier = 0;
+
+            for (int day = 0; day < byDay.length; day++) {
+                BigDecimal rate = byDate.get(LocalDate.ofEpochDay(firstDay + day));
+
+                if (rate != null) {
+                    multiplier = rate.setScale(scale, RoundingMode.UNNECESSARY).unscaledValue()
+                            .multiply(BigInteger.TEN.pow(Math.max(0, -exponent))).longValueExact();
+                }
+
+                byDay[day] = multiplier;
+            }
+
+            firstDays[code] = firstDay;
+            multipliers[code] = byDay;
+            divisors[code] = BigInteger.TEN.pow(Math.max(0, exponent)).longValueExact();
+
+            first = first == null || byDate.firstKey().isBefore(first) ? byDate.firstKey() : first;
+            last = last == null || byDate.lastKey().isAfter(last) ? byDate.lastKey() : last;
+        }
+
+        this.from = first;
+        this.to = last;
+    }
+
+    /**
+     * A table without rates, which only converts the base currency into itself.
+     */
+    public static ExchangeRateTable empty(Currency base) {
+        return new ExchangeRateTable(base, Map.of());
+    }
+
+    /**
+     * Reads {@code date,currency,rate} lines after a header line, each rate being the value of one unit of the
+     * currency in the base currency. Rates of the base currency itself are ignored.
+     */
+    public static ExchangeRateTable parse(Currency base, BufferedReader reader) throws IOException {
+        Map<Currency, TreeMap<LocalDate, BigDecimal>> rates = new HashMap<>();
+        reader.readLine();
+
+        String line;
+        int lineNumber = 1;
+
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+
+            if (line.isBlank()) {
+                continue;
+            }
+
+            List<String> fields = CsvParser.split(line);
+
+            if (fields.size() != 3) {
+                throw new IllegalArgumentException("Line " + lineNumber + " does not have 3 fields.");
+            }
+
+            try {
+                LocalDate date = LocalDate.parse(fields.get(0));
+                Currency currency = currency(fields.get(1));
+                BigDecimal rate = new BigDecimal(fields.get(2));
+
+                if (rate.signum() <= 0) {
+                    throw new IllegalArgumentException("Exchange rates are above zero.");
+                }
+
+                if (!currency.equals(base)) {
+                    rates.computeIfAbsent(currency, c -> new TreeMap<>()).put(date, rate.scale() > MAX_RATE_SCALE
+                            ? rate.setScale(MAX_RATE_SCALE, RoundingMode.HALF_UP) : rate.stripTrailingZeros());
+                }
+            } catch (DateTimeParseException | IllegalArgumentException e) {
+                throw new IllegalArgumentException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+
+        return new ExchangeRateTable(base, rates);
+    }
+
+    /**
+     * The currency of the code, which must have a numeric code and minor units to be used for expenses.
+     */
+    public static Currency currency(String code) {
+        Currency currency = Currency.getInstance(code);
+
+        if (currency.getNumericCode() <= 0 || currency.getNumericCode() >= CODES
+                || currency.getDefaultFractionDigits() < 0) {
+            throw new IllegalArgumentException("Currency " + code + " cannot be used for expenses.");
+        }
+
+        return currency;
+    }
+
+    /**
+     * The amount in minor units of the currency, rounded half up when it has more decimals than the currency.
+     */
+    public static long minorUnits(BigDecimal amount, Currency currency) {
+        return amount.setScale(currency.getDefaultFractionDigits(), RoundingMode.HALF_UP).unscaledValue()
+                .longValueExact();
+    }
+
+    public static BigDecimal amount(long minorUnits, Currency currency) {
+        return BigDecimal.valueOf(minorUnits, currency.getDefaultFractionDigits());
+    }
+
+    public Currency base() {
+        return base;
+    }
+
+    /**
+     * Currencies with rates, not counting the base currency.
+     */
+    public int currencies() {
+        return currencies;
+    }
+
+    /**
+     * The date of the earliest rate, or null without rates.
+     */
+    public LocalDate from() {
+        return from;
+    }
+
+    /**
+     * The date of the latest rate, or null without rates.
+     */
+    public LocalDate to() {
+        return to;
+    }
+
+    public boolean hasRate(Currency currency, LocalDate date) {
+        int code = currency.getNumericCode();
+        return code == base.getNumericCode()
+                || (multipliers[code] != null && date.toEpochDay() >= firstDays[code]);
+    }
+
+    /**
+     * Converts the amount in minor units of the currency on the date into minor units of the base currency.
+     */
+    public long convert(long amount, Currency currency, LocalDate date) {
+        return convert(amount, currency.getNumericCode(), Math.toIntExact(date.toEpochDay()));
+    }
+
+    /**
+     * Same as {@link #convert(long, Currency, LocalDate)}, with the currency as numeric code and the date as epoch
+     * day, for scans holding them in primitive columns. Throws {@link IllegalArgumentException} when there is no rate.
+     */
+    public long convert(long amount, int currency, int epochDay) {
+        if (currency == base.getNumericCode()) {
+            return amount;
+        }
+
+        long[] byDay = multipliers[currency];
+        int day = epochDay - firstDays[currency];
+
+        if (byDay == null || day < 0) {
+            throw new IllegalArgumentException("No exchange rate for currency " + currency + " on "
+                    + LocalDate.ofEpochDay(epochDay) + ".");
+        }
+
+        return multiplyRounded(amount, byDay[Math.min(day, byDay.length - 1)], divisors[currency]);
+    }
+
+    /**
+     * {@code value * multiplier / divisor} rounded half up. The product is checked for overflow with
+     * {@link Math#multiplyHigh}; only products beyond 64 bits, far above any single expense, are computed with
+     * {@link BigDecimal}.
+     */
+    static long multiplyRounded(long value, long multiplier, long divisor) {
+        long product = value * multiplier;
+
+        if (Math.multiplyHigh(value, multiplier) != product >> 63) {
+            return BigDecimal.valueOf(value).multiply(BigDecimal.valueOf(multiplier))
+                    .divide(BigDecimal.valueOf(divisor), 0, RoundingMode.HALF_UP).longValueExact();
+        }
+
+        long quotient = product / divisor;
+        long remainder = Math.abs(product % divisor);
+        return remainder >= divisor - remainder ? quotient + Long.signum(product) : quotient;
+    }
+}
@@ -0,0 +1,139 @@
+package com.wwerlang.expensemanager.expense;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+
+/**
+ * The exchange rates expenses are converted with into the base currency, read from a CSV file into an
+ * {@link ExchangeRateTable}. A reload builds a new table and swaps it in at once, so a conversion sees either all old
+ * rates or all new ones; code converting many amounts takes the {@link #table()} once and converts with that.
+ * <p>
+ * The file is read again when it changed, checked every {@code expense.exchange-rates.reload-delay} milliseconds, or
+ * when asked to. A file that does not parse leaves the rates loaded before in place, as does one that no longer has
+ * rates for the days of stored expenses the loaded rates could convert: a currency dropped, or starting later. Without
+ * a file only expenses in the base currency can be written.
+ * <p>
+ * Totals kept by {@link ExpenseRollupService}, and the budget counters read from them, convert each expense when it
+ * is written; after rates of past days change they are brought in line by the next reconciliation.
+ */
+@Slf4j
+@Component
+public class ExchangeRates {
+
+    @Autowired
+    private ExpenseRepository expenseRepository;
+
+    @Value("${expense.currency.base:EUR}")
+    private String baseCurrency;
+
+    @Value("${expense.exchange-rates.file:exchange-rates.csv}")
+    private Path file;
+
+    private volatile ExchangeRateTable table;
+    private volatile FileTime loaded;
+
+    @PostConstruct
+    void start() {
+        table = ExchangeRateTable.empty(ExchangeRateTable.currency(baseCurrency));
+        reloadIfChanged();
+    }
+
+    public ExchangeRateTable table() {
+        return table;
+    }
+
+    public Currency base() {
+        return table.base();
+    }
+
+    /**
+     * The amount of the expense in minor units of the base currency.
+     */
+    public long toBase(Expense expense) {
+        return table.convert(expense.getAmount(), expense.getCurrency(), expense.getDate());
+    }
+
+    public ExchangeRatesDTO find() {
+        ExchangeRateTable table = this.table;
+        return new ExchangeRatesDTO(table.base().getCurrencyCode(), table.currencies(), table.from(), table.to());
+    }
+
+    /**
+     * Reads the file and swaps its rates in, whether it changed or not. As a rate holds until the next one, a table
+     * covers the expenses of a currency when it has a rate on the day of the earliest one.
+     */
+    public synchronized ExchangeRatesDTO reload() {
+        if (!Files.exists(file)) {
+            throw new IllegalArgumentException("There is no exchange rate file at " + file.toAbsolutePath() + ".");
+        }
+
+        try {
+            FileTime modified = Files.getLastModifiedTime(file);
+
+            ExchangeRateTable parsed;
+
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                parsed = ExchangeRateTable.parse(table.base(), reader);
+            }
+
+            List<String> uncovered = new ArrayList<>();
+
+            expenseRepository.findFirstDates().forEach((currency, date) -> {
+                if (table.hasRate(currency, date) && !parsed.hasRate(currency, date)) {
+                    uncovered.add(currency.getCurrencyCode() + " from " + date);
+                }
+            });
+
+            if (!uncovered.isEmpty()) {
+                throw new IllegalArgumentException("The exchange rates in " + file + " do not cover the stored "
+                        + "expenses in " + String.join(", ", uncovered) + ".");
+            }
+
+            table = parsed;
+            loaded = modified;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        log.info("Loaded exchange rates of {} currencies from {} to {}.", table.currencies(), table.from(),
+                table.to());
+        return find();
+    }
+
+    @Scheduled(fixedDelayString = "${expense.exchange-rates.reload-delay:60000}")
+    public synchronized void reloadIfChanged() {
+        try {
+            if (Files.exists(file) && !Files.getLastModifiedTime(file).equals(loaded)) {
+                reload();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Marked as loaded anyway, so a broken file is reported once rather than on every check.
+            loaded = lastModified();
+            log.error("Could not load exchange rates from {}, keeping the rates loaded before: {}", file,
+                    e.getMessage());
+        }
+    }
+
+    private FileTime lastModified() {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
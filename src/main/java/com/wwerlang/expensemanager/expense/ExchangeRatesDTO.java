@@ -0,0 +1,24 @@
+package com.wwerlang.expensemanager.expense;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDate;
+
+/**
+ * The exchange rates loaded: the currency everything is converted into, how many currencies have rates and the dates
+ * of the earliest and latest rate, null without rates.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExchangeRatesDTO {
+
+    private String baseCurrency;
+    private int currencies;
+    private LocalDate from;
+    private LocalDate to;
+}
@@ -0,0 +1,47 @@
+package com.wwerlang.expensemanager.expense;
+
+import com.wwerlang.expensemanager.category.Category;
+import com.wwerlang.expensemanager.department.Department;
+import com.wwerlang.expensemanager.employee.Employee;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDate;
+import java.util.Currency;
+
+/**
+ * An expense as stored in the monthly tables of {@link ExpensePartitions}. Not a JPA entity, since its table depends
+ * on its date; {@link ExpenseRepository} reads and writes it over JDBC.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class Expense {
+
+    private long id;
+
+    private Employee employee;
+
+    /**
+     * The department the employee belonged to when the expense was written; rollups are booked against it.
+     */
+    private Department department;
+
+    private Category category;
+
+    private LocalDate date;
+
+    /**
+     * In minor units of the currency, e.g. cents.
+     */
+    private long amount;
+
+    private Currency currency;
+
+    private String description;
+
+    private long version;
+}
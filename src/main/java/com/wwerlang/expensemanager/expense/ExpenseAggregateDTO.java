@@ -0,0 +1,25 @@
+package com.wwerlang.expensemanager.expense;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+
+/**
+ * Total in the base currency and count of the expenses in one group of an analytics query. Only the ids of the
+ * dimensions grouped by are set; department 0 stands for employees without a department.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExpenseAggregateDTO {
+
+    private Long departmentId;
+    private Long categoryId;
+    private Long employeeId;
+    private BigDecimal total;
+    private long count;
+}
@@ -0,0 +1,31 @@
+package com.wwerlang.expensemanager.expense;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+
+/**
+ * Most a department may spend on expenses per calendar month. Departments without one have no limit.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "expense_budget")
+public class ExpenseBudget {
+
+    @Id
+    @Column(name = "department_id")
+    private long departmentId;
+
+    @Column(name = "monthly_limit", nullable = false, precision = 19, scale = 2)
+    private BigDecimal monthlyLimit;
+}
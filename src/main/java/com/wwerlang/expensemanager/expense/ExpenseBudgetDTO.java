@@ -0,0 +1,26 @@
+package com.wwerlang.expensemanager.expense;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+
+/**
+ * Budget of a department and what it spent of it in one month, including writes still in flight. Limit and remaining
+ * are null for departments without a budget. Only the limit is read when saving a budget.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExpenseBudgetDTO {
+
+    private long departmentId;
+    private YearMonth month;
+    private BigDecimal monthlyLimit;
+    private BigDecimal spent;
+    private BigDecimal remaining;
+}
@@ -0,0 +1,8 @@
+package com.wwerlang.expensemanager.expense;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ExpenseBudgetRepository extends JpaRepository<ExpenseBudget, Long> {
+}
@@ -0,0 +1,350 @@
+package com.wwerlang.expensemanager.expense;
+
+import com.wwerlang.expensemanager.department.DepartmentRepository;
+import com.wwerlang.expensemanager.exception.BudgetExceededException;
+import com.wwerlang.expensemanager.exception.EntityNotFoundException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monthly budgets of the departments, enforced on every expense write against counters in memory instead of summing
+ * the department's expenses under a lock. Each department and month has a counter of the cents spent, that is minor
+ * units of the base currency the expenses are converted into by the {@link ExchangeRates}, and a write reserves what
+ * it adds with a compare-and-set that fails once the budget would be exceeded, so writes to the same department never
+ * wait on each other. What a write frees, by lowering an amount or deleting an expense, is only given back once it
+ * committed.
+ * <p>
+ * Expense writes take a {@link Reservation}, reserve inside their transaction and then commit or release it. The
+ * counters are loaded from the rollups before the web server starts and checked against them by
+ * {@link #reconcile()}, which corrects counters that drifted, e.g. after a write failed between its commit and the
+ * reservation's.
+ */
+@Slf4j
+@Component
+public class ExpenseBudgets implements SmartLifecycle {
+
+    private static final Counter CORRECTIONS = Counter.builder("expense.budgets.corrections")
+            .description("Budget counters found out of line with the expense rollups and corrected")
+            .register(Metrics.globalRegistry);
+
+    @Autowired
+    private ExpenseBudgetRepository expenseBudgetRepository;
+
+    @Autowired
+    private DepartmentRepository departmentRepository;
+
+    @Autowired
+    private ExchangeRates exchangeRates;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    // Limits in cents by department id, for departments with a budget.
+    private final Map<Long, Long> limits = new ConcurrentHashMap<>();
+    // Keyed by department id in the upper half and month index in the lower, see key().
+    private final Map<Long, Spending> spending = new ConcurrentHashMap<>();
+
+    private volatile boolean running;
+
+    public Reservation reservation() {
+        return new Reservation();
+    }
+
+    public ExpenseBudgetDTO find(long departmentId, YearMonth month) {
+        if (!departmentRepository.existsById(departmentId)) {
+            throw new EntityNotFoundException("Department", departmentId);
+        }
+
+        Long limit = limits.get(departmentId);
+        Spending counter = spending.get(key(departmentId, month));
+        long spent = counter == null ? 0 : counter.reserved.get();
+
+        return new ExpenseBudgetDTO(departmentId, month, limit == null ? null : amount(limit), amount(spent),
+                limit == null ? null : amount(Math.max(0, limit - spent)));
+    }
+
+    /**
+     * Sets the monthly budget of the department. A budget lowered below what was spent already only stops new
+     * expenses.
+     */
+    public ExpenseBudgetDTO save(long departmentId, BigDecimal monthlyLimit) {
+        if (monthlyLimit == null || monthlyLimit.signum() < 0) {
+            throw new IllegalArgumentException("A budget is an amount of zero or more.");
+        } else if (!departmentRepository.existsById(departmentId)) {
+            throw new EntityNotFoundException("Department", departmentId);
+        }
+
+        expenseBudgetRepository.save(new ExpenseBudget(departmentId, monthlyLimit));
+        limits.put(departmentId, cents(monthlyLimit));
+        return find(departmentId, YearMonth.now());
+    }
+
+    public void delete(long departmentId) {
+        if (!expenseBudgetRepository.existsById(departmentId)) {
+            throw new EntityNotFoundException("Expense budget", departmentId);
+        }
+
+        expenseBudgetRepository.deleteById(departmentId);
+        limits.remove(departmentId);
+    }
+
+    /**
+     * Forgets the counters of the month, for when its partition is dropped along with its expenses.
+     */
+    public void removeMonth(YearMonth month) {
+        int index = (int) monthIndex(month);
+        spending.keySet().removeIf(key -> (int) (long) key == index);
+    }
+
+    /**
+     * Compares the committed cents of every counter with the rollups and adds the difference where they disagree,
+     * returning the number of counters corrected.
+     * <p>
+     * Only counters without a write in flight from before the rollups were read until they are compared are corrected.
+     * The others are left for the next run, as such a write may be in the rollups already but not yet in its counter,
+     * and correcting for it would count it twice once it commits its reservation.
+     */
+    @Scheduled(cron = "${expense.budgets.reconcile-cron:0 */5 * * * *}")
+    public int reconcile() {
+        Map<Long, Long> before = new HashMap<>();
+        Map<Long, Long> begun = new HashMap<>();
+        spending.forEach((key, counter) -> {
+            // Ended before begun: a write ending in between is then either counted in both or still in flight.
+            long ended = counter.ended.get();
+            long started = counter.begun.get();
+
+            if (ended == started) {
+                before.put(key, counter.committed.get());
+                begun.put(key, started);
+            }
+        });
+
+        Map<Long, Long> totals = new HashMap<>();
+        jdbcTemplate.query("select month_start, department_id, sum(total) from expense_rollup "
+                + "group by month_start, department_id", (RowCallbackHandler) rs -> totals.put(
+                key(rs.getLong(2), YearMonth.from(rs.getObject(1, LocalDate.class))), rs.getLong(3)));
+
+        Set<Long> keys = new HashSet<>(before.keySet());
+        totals.keySet().stream().filter(key -> !spending.containsKey(key)).forEach(keys::add);
+        int corrections = 0;
+
+        for (long key : keys) {
+            long committed = before.getOrDefault(key, 0L);
+            long total = totals.getOrDefault(key, 0L);
+            Spending counter = spending.computeIfAbsent(key, k -> new Spending());
+
+            if (total == committed || counter.begun.get() != begun.getOrDefault(key, 0L)) {
+                continue;
+            }
+
+            counter.committed.addAndGet(total - committed);
+            counter.reserved.addAndGet(total - committed);
+            corrections++;
+
+            if (running) {
+                log.warn("Budget counter of department {} for {} was off by {} cents.", key >>> 32,
+                        month(key), total - committed);
+            }
+        }
+
+        if (running) {
+            CORRECTIONS.increment(corrections);
+        }
+
+        return corrections;
+    }
+
+    @Override
+    public void start() {
+        expenseBudgetRepository.findAll().forEach(b -> limits.put(b.getDepartmentId(), cents(b.getMonthlyLimit())));
+        reconcile();
+
+        running = true;
+        log.info("Loaded {} budgets and {} budget counters.", limits.size(), spending.size());
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Loads before the web server starts and before the ingester writes what was left in its journal.
+     */
+    @Override
+    public int getPhase() {
+        return DEFAULT_PHASE - 4096;
+    }
+
+    private Spending spending(long key) {
+        return spending.computeIfAbsent(key, k -> new Spending());
+    }
+
+    private static long key(Expense expense) {
+        long departmentId = expense.getDepartment() == null ? 0 : expense.getDepartment().getId();
+        return key(departmentId, YearMonth.from(expense.getDate()));
+    }
+
+    private static long key(long departmentId, YearMonth month) {
+        return departmentId << 32 | monthIndex(month);
+    }
+
+    private static long monthIndex(YearMonth month) {
+        return month.getYear() * 12L + month.getMonthValue() - 1;
+    }
+
+    private static YearMonth month(long key) {
+        int index = (int) key;
+        return YearMonth.of(index / 12, index % 12 + 1);
+    }
+
+    private long cents(BigDecimal amount) {
+        return ExchangeRateTable.minorUnits(amount, exchangeRates.base());
+    }
+
+    private BigDecimal amount(long cents) {
+        return ExchangeRateTable.amount(cents, exchangeRates.base());
+    }
+
+    /**
+     * Cents spent by a department in a month.
+     */
+    private static final class Spending {
+
+        // Committed plus reserved by writes still in flight; what the budget is checked against.
+        final AtomicLong reserved = new AtomicLong();
+        // Committed only, which is what the rollups hold.
+        final AtomicLong committed = new AtomicLong();
+        // Writes that reserved or freed cents here, and those of them that committed or released; see reconcile().
+        final AtomicLong begun = new AtomicLong();
+        final AtomicLong ended = new AtomicLong();
+
+        /**
+         * Adds the cents unless that takes the counter over the limit; retries only when another write got in between.
+         */
+        boolean tryReserve(long cents, Long limit) {
+            if (limit == null) {
+                reserved.addAndGet(cents);
+                return true;
+            }
+
+            long current;
+
+            do {
+                current = reserved.get();
+
+                if (current + cents > limit) {
+                    return false;
+                }
+            } while (!reserved.compareAndSet(current, current + cents));
+
+            return true;
+        }
+    }
+
+    /**
+     * What one expense write reserved and freed, per department and month. Not thread-safe.
+     */
+    public class Reservation {
+
+        private final Map<Long, Long> reserved = new HashMap<>();
+        private final Map<Long, Long> freed = new HashMap<>();
+        private final Set<Long> writing = new HashSet<>();
+
+        /**
+         * Reserves what the write adds to each department's month, net of what it removes there, all or nothing; an
+         * update passes the expense as it was in removed and as it is now in added.
+         *
+         * @throws BudgetExceededException if a department would go over its budget, in which case nothing is reserved
+         */
+        public void reserve(Collection<Expense> added, Collection<Expense> removed) {
+            Map<Long, Long> deltas = new TreeMap<>();
+            ExchangeRateTable rates = exchangeRates.table();
+            added.forEach(e -> deltas.merge(key(e), rates.convert(e.getAmount(), e.getCurrency(), e.getDate()),
+                    Long::sum));
+            removed.forEach(e -> deltas.merge(key(e), -rates.convert(e.getAmount(), e.getCurrency(), e.getDate()),
+                    Long::sum));
+            deltas.keySet().stream().filter(writing::add).forEach(key -> spending(key).begun.incrementAndGet());
+
+            Map<Long, Long> taken = new HashMap<>();
+
+            for (Map.Entry<Long, Long> delta : deltas.entrySet()) {
+                long key = delta.getKey();
+                long cents = delta.getValue();
+
+                if (cents <= 0) {
+                    continue;
+                }
+
+                Long limit = limits.get(key >>> 32);
+
+                if (!spending(key).tryReserve(cents, limit)) {
+                    taken.forEach((k, c) -> spending(k).reserved.addAndGet(-c));
+                    long remaining = Math.max(0, limit - spending(key).reserved.get());
+                    throw new BudgetExceededException(key >>> 32, month(key), amount(remaining), amount(cents));
+                }
+
+                taken.put(key, cents);
+            }
+
+            taken.forEach((k, c) -> reserved.merge(k, c, Long::sum));
+            deltas.forEach((k, c) -> {
+                if (c < 0) {
+                    freed.merge(k, c, Long::sum);
+                }
+            });
+        }
+
+        /**
+         * Counts what was reserved as spent and gives back what was freed, once the write committed.
+         */
+        public void commit() {
+            reserved.forEach((key, cents) -> spending(key).committed.addAndGet(cents));
+            freed.forEach((key, cents) -> {
+                Spending counter = spending(key);
+                counter.committed.addAndGet(cents);
+                counter.reserved.addAndGet(cents);
+            });
+            end();
+        }
+
+        /**
+         * Gives back what was reserved, when the write rolled back.
+         */
+        public void release() {
+            reserved.forEach((key, cents) -> spending(key).reserved.addAndGet(-cents));
+            end();
+        }
+
+        private void end() {
+            writing.forEach(key -> spending(key).ended.incrementAndGet());
+            reserved.clear();
+            freed.clear();
+            writing.clear();
+        }
+    }
+}
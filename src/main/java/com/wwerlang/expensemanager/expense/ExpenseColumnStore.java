@@ -0,0 +1,430 @@
+package com.wwerlang.expensemanager.expense;
+
+import com.wwerlang.expensemanager.common.LongIntHashMap;
+import com.wwerlang.expensemanager.expense.ExpenseQueryDTO.Dimension;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * In-memory copy of the expenses as one primitive array per column, for ad-hoc aggregates over any date range without
+ * going through JPA. Amounts are held in minor units of their currency next to its numeric code, dates as epoch days
+ * and ids as ints. Queries scan the columns in chunks of {@link #CHUNK_SIZE} rows on the common fork-join pool,
+ * converting amounts into the base currency with one {@link ExchangeRateTable} for the whole scan and summing into
+ * primitive hash tables, so a scan allocates per chunk and per group but never per row.
+ * <p>
+ * The copy is loaded before the web server starts and then kept current by {@link ExpenseService}, which passes each
+ * expense after its transaction committed. Rows carry the version they were written with and older versions are
+ * ignored, so writes reaching the store out of order cannot bring back old values, nor deleted expenses. Deleted
+ * expenses keep their row, marked dead, until their month is removed.
+ */
+@Slf4j
+@Component
+public class ExpenseColumnStore implements SmartLifecycle {
+
+    static final int CHUNK_SIZE = 1 << 16;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    @Autowired
+    private ExpenseRepository expenseRepository;
+
+    @Autowired
+    private ExchangeRates exchangeRates;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // Scans hold the read lock for their whole run, writes take the write lock, so a scan never sees half a row.
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private LongIntHashMap slots = new LongIntHashMap(INITIAL_CAPACITY);
+    private long[] versions = new long[INITIAL_CAPACITY];
+    private boolean[] live = new boolean[INITIAL_CAPACITY];
+    private int[] days = new int[INITIAL_CAPACITY];
+    private long[] amounts = new long[INITIAL_CAPACITY];
+    private short[] currencies = new short[INITIAL_CAPACITY];
+    private int[] employeeIds = new int[INITIAL_CAPACITY];
+    private int[] departmentIds = new int[INITIAL_CAPACITY];
+    private int[] categoryIds = new int[INITIAL_CAPACITY];
+    private int size;
+
+    private volatile boolean running;
+
+    public void put(Expense expense) {
+        putAll(List.of(expense));
+    }
+
+    public void putAll(Collection<Expense> expenses) {
+        lock.writeLock().lock();
+
+        try {
+            expenses.forEach(this::write);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Marks the expense deleted. It counts as one version past the deleted one, so a late write of that version or an
+     * earlier one is ignored.
+     */
+    public void remove(Expense expense) {
+        lock.writeLock().lock();
+
+        try {
+            write(expense.getId(), expense.getVersion() + 1, false, null, 0, null, 0, 0, 0);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Takes every expense of the month out, for when its partition is dropped. Their rows are removed and the columns
+     * shrunk to the rows left, so dropping old months frees their memory. No late write of those expenses can bring
+     * them back, as {@link ExpenseService} holds writes back while a partition is dropped.
+     */
+    public void removeMonth(YearMonth month) {
+        int first = epochDay(month.atDay(1));
+        int last = epochDay(month.atEndOfMonth());
+
+        lock.writeLock().lock();
+
+        try {
+            long[] ids = new long[size];
+            slots.forEach((id, slot) -> ids[slot] = id);
+            int kept = 0;
+
+            for (int i = 0; i < size; i++) {
+                if (days[i] >= first && days[i] <= last) {
+                    continue;
+                }
+
+                ids[kept] = ids[i];
+                versions[kept] = versions[i];
+                live[kept] = live[i];
+                days[kept] = days[i];
+                amounts[kept] = amounts[i];
+                currencies[kept] = currencies[i];
+                employeeIds[kept] = employeeIds[i];
+                departmentIds[kept] = departmentIds[i];
+                categoryIds[kept] = categoryIds[i];
+                kept++;
+            }
+
+            slots = new LongIntHashMap(Math.max(INITIAL_CAPACITY, kept));
+
+            for (int i = 0; i < kept; i++) {
+                slots.put(ids[i], i);
+            }
+
+            size = kept;
+            resize(Math.max(INITIAL_CAPACITY, kept));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rows held, including deleted ones.
+     */
+    public int size() {
+        return size;
+    }
+
+    public List<ExpenseAggregateDTO> aggregate(ExpenseQueryDTO query) {
+        List<Dimension> groupBy = query.getGroupBy() == null ? List.of() : query.getGroupBy();
+
+        if (groupBy.size() > 2 || groupBy.stream().distinct().count() != groupBy.size()) {
+            throw new IllegalArgumentException("Expenses can be grouped by up to two different dimensions.");
+        }
+
+        lock.readLock().lock();
+
+        try {
+            Scan scan = new Scan(exchangeRates.table(),
+                    query.getFrom() == null ? Integer.MIN_VALUE : epochDay(query.getFrom()),
+                    query.getTo() == null ? Integer.MAX_VALUE : epochDay(query.getTo()),
+                    filter(query.getDepartmentId()), filter(query.getCategoryId()), filter(query.getEmployeeId()),
+                    groupBy.isEmpty() ? null : column(groupBy.get(0)),
+                    groupBy.size() < 2 ? null : column(groupBy.get(1)));
+            // Ids are held as ints, so an id filtered on beyond them matches no row.
+            int rows = outOfRange(query.getDepartmentId()) || outOfRange(query.getCategoryId())
+                    || outOfRange(query.getEmployeeId()) ? 0 : size;
+
+            Groups groups = IntStream.range(0, (rows + CHUNK_SIZE - 1) / CHUNK_SIZE)
+                    .parallel()
+                    .mapToObj(chunk -> scan(scan, chunk * CHUNK_SIZE, Math.min(rows, (chunk + 1) * CHUNK_SIZE)))
+                    .reduce(Groups::merge)
+                    .orElseGet(Groups::new);
+
+            return groups.toList(groupBy, scan.rates().base());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void start() {
+        long started = System.nanoTime();
+
+        lock.writeLock().lock();
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<Expense> expenses = expenseRepository.streamAll()) {
+                    expenses.forEach(this::write);
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Gauge.builder("expense.columns.rows", this, ExpenseColumnStore::size)
+                .description("Rows held by the in-memory expense columns, including deleted ones")
+                .register(Metrics.globalRegistry);
+
+        running = true;
+        log.info("Loaded {} expenses into columns in {} ms.", size,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Loads before the web server starts, so no expense is written while the copy is being read.
+     */
+    @Override
+    public int getPhase() {
+        return DEFAULT_PHASE - 4096;
+    }
+
+    private void write(Expense expense) {
+        long departmentId = expense.getDepartment() == null ? 0 : expense.getDepartment().getId();
+        write(expense.getId(), expense.getVersion(), true, expense.getDate(), expense.getAmount(),
+                expense.getCurrency(), expense.getEmployee().getId(), departmentId, expense.getCategory().getId());
+    }
+
+    private void write(long id, long version, boolean isLive, LocalDate date, long amount, Currency currency,
+                       long employeeId, long departmentId, long categoryId) {
+        int slot = slots.get(id, -1);
+
+        if (slot < 0) {
+            slot = size;
+            ensureCapacity(size + 1);
+            slots.put(id, slot);
+            size++;
+        } else if (versions[slot] >= version) {
+            return;
+        }
+
+        versions[slot] = version;
+        live[slot] = isLive;
+
+        if (isLive) {
+            days[slot] = epochDay(date);
+            amounts[slot] = amount;
+            currencies[slot] = (short) currency.getNumericCode();
+            employeeIds[slot] = Math.toIntExact(employeeId);
+            departmentIds[slot] = Math.toIntExact(departmentId);
+            categoryIds[slot] = Math.toIntExact(categoryId);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= live.length) {
+            return;
+        }
+
+        resize(Math.max(capacity, live.length << 1));
+    }
+
+    private void resize(int capacity) {
+        versions = Arrays.copyOf(versions, capacity);
+        live = Arrays.copyOf(live, capacity);
+        days = Arrays.copyOf(days, capacity);
+        amounts = Arrays.copyOf(amounts, capacity);
+        currencies = Arrays.copyOf(currencies, capacity);
+        employeeIds = Arrays.copyOf(employeeIds, capacity);
+        departmentIds = Arrays.copyOf(departmentIds, capacity);
+        categoryIds = Arrays.copyOf(categoryIds, capacity);
+    }
+
+    private Groups scan(Scan scan, int start, int end) {
+        boolean[] live = this.live;
+        int[] days = this.days;
+        long[] amounts = this.amounts;
+        short[] currencies = this.currencies;
+        int[] departmentIds = this.departmentIds;
+        int[] categoryIds = this.categoryIds;
+        int[] employeeIds = this.employeeIds;
+        int[] first = scan.first();
+        int[] second = scan.second();
+
+        Groups groups = new Groups();
+
+        for (int i = start; i < end; i++) {
+            if (!live[i] || days[i] < scan.fromDay() || days[i] > scan.toDay()
+                    || (scan.departmentId() >= 0 && departmentIds[i] != scan.departmentId())
+                    || (scan.categoryId() >= 0 && categoryIds[i] != scan.categoryId())
+                    || (scan.employeeId() >= 0 && employeeIds[i] != scan.employeeId())) {
+                continue;
+            }
+
+            long key = first == null ? 0 : second == null ? first[i] : ((long) first[i] << 32) | second[i];
+            groups.add(key, scan.rates().convert(amounts[i], currencies[i], days[i]), 1);
+        }
+
+        return groups;
+    }
+
+    private int[] column(Dimension dimension) {
+        return switch (dimension) {
+            case DEPARTMENT -> departmentIds;
+            case CATEGORY -> categoryIds;
+            case EMPLOYEE -> employeeIds;
+        };
+    }
+
+    private static int filter(Long id) {
+        return id == null || outOfRange(id) ? -1 : id.intValue();
+    }
+
+    private static boolean outOfRange(Long id) {
+        return id != null && (id < 0 || id > Integer.MAX_VALUE);
+    }
+
+    private static int epochDay(LocalDate date) {
+        return Math.toIntExact(date.toEpochDay());
+    }
+
+    /**
+     * The query in primitives: the rates to convert with, bounds as epoch days, -1 for ids not filtered on, and the
+     * columns grouped by.
+     */
+    private record Scan(ExchangeRateTable rates, int fromDay, int toDay, int departmentId, int categoryId,
+                        int employeeId, int[] first, int[] second) {
+    }
+
+    /**
+     * Sum in minor units of the base currency and count per group key on flat arrays with linear probing. Keys are
+     * never negative, so -1 marks free slots.
+     */
+    private static class Groups {
+
+        private long[] keys = new long[16];
+        private long[] sums = new long[16];
+        private long[] counts = new long[16];
+        private int size;
+
+        Groups() {
+            Arrays.fill(keys, -1);
+        }
+
+        void add(long key, long sum, long count) {
+            int mask = keys.length - 1;
+            int i = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+
+            while (keys[i] != key && keys[i] != -1) {
+                i = (i + 1) & mask;
+            }
+
+            if (keys[i] == -1) {
+                keys[i] = key;
+                size++;
+            }
+
+            sums[i] += sum;
+            counts[i] += count;
+
+            if (size > keys.length >> 1) {
+                grow();
+            }
+        }
+
+        Groups merge(Groups other) {
+            for (int i = 0; i < other.keys.length; i++) {
+                if (other.keys[i] != -1) {
+                    add(other.keys[i], other.sums[i], other.counts[i]);
+                }
+            }
+
+            return this;
+        }
+
+        /**
+         * Lists the groups ordered by key, that is by the ids of the first dimension and then the second.
+         */
+        List<ExpenseAggregateDTO> toList(List<Dimension> groupBy, Currency base) {
+            long[] order = Arrays.stream(keys).filter(k -> k != -1).sorted().toArray();
+            List<ExpenseAggregateDTO> aggregates = new ArrayList<>(order.length);
+
+            for (long key : order) {
+                int i = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & (keys.length - 1);
+
+                while (keys[i] != key) {
+                    i = (i + 1) & (keys.length - 1);
+                }
+
+                ExpenseAggregateDTO aggregate = new ExpenseAggregateDTO(null, null, null,
+                        ExchangeRateTable.amount(sums[i], base), counts[i]);
+
+                for (int d = 0; d < groupBy.size(); d++) {
+                    long id = groupBy.size() == 1 ? key : d == 0 ? key >>> 32 : key & 0xFFFFFFFFL;
+
+                    switch (groupBy.get(d)) {
+                        case DEPARTMENT -> aggregate.setDepartmentId(id);
+                        case CATEGORY -> aggregate.setCategoryId(id);
+                        case EMPLOYEE -> aggregate.setEmployeeId(id);
+                    }
+                }
+
+                aggregates.add(aggregate);
+            }
+
+            return aggregates;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldSums = sums;
+            long[] oldCounts = counts;
+
+            keys = new long[oldKeys.length << 1];
+            sums = new long[oldKeys.length << 1];
+            counts = new long[oldKeys.length << 1];
+            Arrays.fill(keys, -1);
+            size = 0;
+
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != -1) {
+                    add(oldKeys[i], oldSums[i], oldCounts[i]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,348 @@
+package com.wwerlang.expensemanager.expense;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wwerlang.expensemanager.common.NdjsonWriter;
+import com.wwerlang.expensemanager.common.PageDTO;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+
+@RestController
+@RequestMapping("/expense")
+public class ExpenseController {
+
+    @Autowired
+    private ExpenseService expenseService;
+
+    @Autowired
+    private ExpenseRollupService expenseRollupService;
+
+    @Autowired
+    private ExpenseColumnStore expenseColumnStore;
+
+    @Autowired
+    private ExpenseSketches expenseSketches;
+
+    @Autowired
+    private ExpenseIngester expenseIngester;
+
+    @Autowired
+    private ExpenseBudgets expenseBudgets;
+
+    @Autowired
+    private ExpenseStatementService expenseStatementService;
+
+    @Autowired
+    private ExchangeRates exchangeRates;
+
+    @Autowired
+    private ExpenseReceipts expenseReceipts;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @GetMapping("/{id}")
+    private ResponseEntity<ExpenseDTO> find(@PathVariable("id") long id, WebRequest request) {
+        String eTag = expenseService.eTag();
+
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+
+        ExpenseDTO expense = expenseService.find(id);
+        return ResponseEntity.ok().eTag(eTag).body(expense);
+    }
+
+    @GetMapping
+    private ResponseEntity<PageDTO<ExpenseDTO>> list(@RequestParam(name = "after", defaultValue = "0") long after,
+                                                     @RequestParam(name = "limit", defaultValue = "100") int limit,
+                                                     @RequestParam(name = "from", required = false) LocalDate from,
+                                                     @RequestParam(name = "to", required = false) LocalDate to,
+                                                     WebRequest request) {
+        String eTag = expenseService.eTag();
+
+        if (request.checkNotModified(eTag)) {
+            return null;
+        }
+
+        PageDTO<ExpenseDTO> expenses = expenseService.list(after, limit, from, to);
+        return ResponseEntity.ok().eTag(eTag).body(expenses);
+    }
+
+    @PostMapping
+    private ResponseEntity<ExpenseDTO> save(@RequestBody ExpenseDTO expense) {
+        expense = expenseService.save(expense);
+        return ResponseEntity.ok(expense);
+    }
+
+    @DeleteMapping("/{id}")
+    private ResponseEntity<Void> delete(@PathVariable("id") long id) throws IOException {
+        expenseService.delete(id);
+        return ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/{id}/receipts")
+    private ResponseEntity<List<ExpenseReceiptDTO>> listReceipts(@PathVariable("id") long id) {
+        List<ExpenseReceiptDTO> receipts = expenseReceipts.list(id);
+        return ResponseEntity.ok(receipts);
+    }
+
+    /**
+     * Attaches the request body as a receipt, an image or PDF sent as is with its own content type rather than as a
+     * multipart form, so it is streamed to disk.
+     */
+    @PostMapping("/{id}/receipts")
+    private ResponseEntity<ExpenseReceiptDTO> saveReceipt(
+            @PathVariable("id") long id,
+            @RequestParam(name = "fileName", required = false) String fileName,
+            @RequestHeader(name = HttpHeaders.CONTENT_TYPE, required = false) String contentType,
+            InputStream content) throws IOException {
+        ExpenseReceiptDTO receipt = expenseReceipts.save(id, fileName, contentType, content);
+        return ResponseEntity.ok(receipt);
+    }
+
+    @GetMapping("/{id}/receipts/{receiptId}")
+    private ResponseEntity<ExpenseReceiptDTO> findReceipt(@PathVariable("id") long id,
+                                                          @PathVariable("receiptId") long receiptId) {
+        ExpenseReceiptDTO receipt = expenseReceipts.find(id, receiptId);
+        return ResponseEntity.ok(receipt);
+    }
+
+    /**
+     * The content of the receipt, or one range of it for a {@code Range} header; requests for several ranges get all
+     * of it. Sent by the container with sendfile where it can.
+     */
+    @GetMapping("/{id}/receipts/{receiptId}/content")
+    private ResponseEntity<StreamingResponseBody> downloadReceipt(
+            @PathVariable("id") long id,
+            @PathVariable("receiptId") long receiptId,
+            @RequestHeader(name = HttpHeaders.RANGE, required = false) String range,
+            HttpServletRequest request) {
+        ExpenseReceiptDTO receipt = expenseReceipts.find(id, receiptId);
+        long size = receipt.getSize();
+        long start = 0;
+        long end = size - 1;
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+
+        if (range != null) {
+            try {
+                List<HttpRange> ranges = HttpRange.parseRanges(range);
+
+                if (ranges.size() == 1) {
+                    start = ranges.get(0).getRangeStart(size);
+                    end = ranges.get(0).getRangeEnd(size);
+
+                    if (end < start) {
+                        throw new IllegalArgumentException("Empty range " + range + ".");
+                    }
+
+                    response = ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                            .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + size);
+                }
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + size)
+                        .build();
+            }
+        }
+
+        long position = start;
+        long count = end - start + 1;
+        StreamingResponseBody body = expenseReceipts.sendfile(receipt, position, count, request) ? null
+                : outputStream -> expenseReceipts.write(receipt, position, count, outputStream);
+
+        return response
+                .contentType(MediaType.parseMediaType(receipt.getContentType()))
+                .contentLength(count)
+                .eTag("\"" + receipt.getHash() + "\"")
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.inline()
+                        .filename(receipt.getFileName() == null ? "receipt-" + receipt.getId() : receipt.getFileName(),
+                                StandardCharsets.UTF_8)
+                        .build().toString())
+                .body(body);
+    }
+
+    @DeleteMapping("/{id}/receipts/{receiptId}")
+    private ResponseEntity<Void> deleteReceipt(@PathVariable("id") long id,
+                                               @PathVariable("receiptId") long receiptId) throws IOException {
+        expenseReceipts.delete(id, receiptId);
+        return ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/partitions")
+    private ResponseEntity<List<ExpensePartitionDTO>> listPartitions() {
+        List<ExpensePartitionDTO> partitions = expenseService.listPartitions();
+        return ResponseEntity.ok(partitions);
+    }
+
+    /**
+     * Drops every expense of the month at once by dropping its table; with {@code archive=true} they are written to
+     * a CSV file first.
+     */
+    @DeleteMapping("/partitions/{month}")
+    private ResponseEntity<Void> dropPartition(
+            @PathVariable("month") YearMonth month,
+            @RequestParam(name = "archive", defaultValue = "false") boolean archive) {
+        expenseService.dropPartition(month, archive);
+        return ResponseEntity.noContent().build();
+    }
+
+    /**
+     * The department's budget and what it spent of it in the month, the current one by default.
+     */
+    @GetMapping("/budgets/{departmentId}")
+    private ResponseEntity<ExpenseBudgetDTO> findBudget(
+            @PathVariable("departmentId") long departmentId,
+            @RequestParam(name = "month", required = false) YearMonth month) {
+        ExpenseBudgetDTO budget = expenseBudgets.find(departmentId, month == null ? YearMonth.now() : month);
+        return ResponseEntity.ok(budget);
+    }
+
+    @PutMapping("/budgets/{departmentId}")
+    private ResponseEntity<ExpenseBudgetDTO> saveBudget(@PathVariable("departmentId") long departmentId,
+                                                        @RequestBody ExpenseBudgetDTO budget) {
+        budget = expenseBudgets.save(departmentId, budget.getMonthlyLimit());
+        return ResponseEntity.ok(budget);
+    }
+
+    @DeleteMapping("/budgets/{departmentId}")
+    private ResponseEntity<Void> deleteBudget(@PathVariable("departmentId") long departmentId) {
+        expenseBudgets.delete(departmentId);
+        return ResponseEntity.noContent().build();
+    }
+
+    @GetMapping("/exchange-rates")
+    private ResponseEntity<ExchangeRatesDTO> findExchangeRates() {
+        ExchangeRatesDTO rates = exchangeRates.find();
+        return ResponseEntity.ok(rates);
+    }
+
+    /**
+     * Reads the exchange rate file again and swaps the new rates in; the old ones stay if it does not parse.
+     */
+    @PostMapping("/exchange-rates/reload")
+    private ResponseEntity<ExchangeRatesDTO> reloadExchangeRates() {
+        ExchangeRatesDTO rates = exchangeRates.reload();
+        return ResponseEntity.ok(rates);
+    }
+
+    /**
+     * Totals per month, department and category from {@code from} to {@code to} (inclusive, defaulting to
+     * {@code from}), read from the rollups.
+     */
+    @GetMapping("/summary")
+    private ResponseEntity<List<ExpenseSummaryDTO>> summary(
+            @RequestParam("from") YearMonth from,
+            @RequestParam(name = "to", required = false) YearMonth to,
+            @RequestParam(name = "departmentId", required = false) Long departmentId) {
+        List<ExpenseSummaryDTO> summary = expenseRollupService.summary(from, to == null ? from : to, departmentId);
+        return ResponseEntity.ok(summary);
+    }
+
+    /**
+     * Month-end statements of all departments, written out as each department is done: one statement per line as
+     * NDJSON, or flattened into rows with {@code format=csv}.
+     */
+    @GetMapping("/statements/{month}")
+    private ResponseEntity<StreamingResponseBody> statements(
+            @PathVariable("month") YearMonth month,
+            @RequestParam(name = "format", defaultValue = "json") String format) {
+        StreamingResponseBody body;
+        MediaType contentType;
+
+        if (format.equals("csv")) {
+            body = outputStream -> {
+                try (ExpenseStatementCsvWriter writer = new ExpenseStatementCsvWriter(outputStream)) {
+                    expenseStatementService.write(month, writer);
+                }
+            };
+            contentType = new MediaType("text", "csv");
+        } else if (format.equals("json")) {
+            body = outputStream -> {
+                try (NdjsonWriter<DepartmentStatementDTO> writer =
+                             new NdjsonWriter<>(objectMapper, DepartmentStatementDTO.class, outputStream)) {
+                    expenseStatementService.write(month, writer);
+                }
+            };
+            contentType = MediaType.APPLICATION_NDJSON;
+        } else {
+            throw new IllegalArgumentException("Statements are written as json or csv, not " + format + ".");
+        }
+
+        return ResponseEntity.ok().contentType(contentType).body(body);
+    }
+
+    /**
+     * Ad-hoc totals from the in-memory columns, e.g. {@code groupBy=DEPARTMENT,CATEGORY} for spend by category per
+     * department over the given date range.
+     */
+    @GetMapping("/analytics")
+    private ResponseEntity<List<ExpenseAggregateDTO>> analytics(
+            @RequestParam(name = "from", required = false) LocalDate from,
+            @RequestParam(name = "to", required = false) LocalDate to,
+            @RequestParam(name = "departmentId", required = false) Long departmentId,
+            @RequestParam(name = "categoryId", required = false) Long categoryId,
+            @RequestParam(name = "employeeId", required = false) Long employeeId,
+            @RequestParam(name = "groupBy", required = false) List<ExpenseQueryDTO.Dimension> groupBy) {
+        ExpenseQueryDTO query = new ExpenseQueryDTO(from, to, departmentId, categoryId, employeeId, groupBy);
+        List<ExpenseAggregateDTO> aggregates = expenseColumnStore.aggregate(query);
+        return ResponseEntity.ok(aggregates);
+    }
+
+    /**
+     * Approximate distinct employees and amount quantiles of one department or category over the date range, merged
+     * from per day sketches, e.g. {@code categoryId=3&quantiles=0.95} for the p95 amount of a category.
+     */
+    @GetMapping("/sketches")
+    private ResponseEntity<ExpenseSketchDTO> sketches(
+            @RequestParam("from") LocalDate from,
+            @RequestParam("to") LocalDate to,
+            @RequestParam(name = "departmentId", required = false) Long departmentId,
+            @RequestParam(name = "categoryId", required = false) Long categoryId,
+            @RequestParam(name = "quantiles", defaultValue = "0.5,0.9,0.95,0.99") List<Double> quantiles) {
+        ExpenseSketchDTO sketch = expenseSketches.estimate(from, to, departmentId, categoryId, quantiles);
+        return ResponseEntity.ok(sketch);
+    }
+
+    /**
+     * Queues the expenses for writing and answers right away; they show up in reads once the writer got to them.
+     */
+    @PostMapping("/ingest")
+    private ResponseEntity<IngestStatsDTO> ingest(@RequestBody List<ExpenseDTO> expenses) {
+        expenseIngester.submit(expenses);
+        return ResponseEntity.accepted().body(expenseIngester.stats());
+    }
+
+    @GetMapping("/ingest/stats")
+    private ResponseEntity<IngestStatsDTO> ingestStats() {
+        IngestStatsDTO stats = expenseIngester.stats();
+        return ResponseEntity.ok(stats);
+    }
+
+    /**
+     * The ingested expenses that were accepted but could not be written, with the reason, oldest first.
+     */
+    @GetMapping("/ingest/failures")
+    private ResponseEntity<PageDTO<IngestFailureDTO>> ingestFailures(
+            @RequestParam(name = "after", defaultValue = "0") long after,
+            @RequestParam(name = "limit", defaultValue = "100") int limit) {
+        PageDTO<IngestFailureDTO> failures = expenseIngester.failures(after, limit);
+        return ResponseEntity.ok(failures);
+    }
+}
@@ -0,0 +1,29 @@
+package com.wwerlang.expensemanager.expense;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * An expense with its employee and category given by id only, which is what card feeds send. The currency is an ISO
+ * 4217 code, the base currency when left out.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExpenseDTO {
+
+    private long id;
+    private long employeeId;
+    private long categoryId;
+    private LocalDate date;
+    private BigDecimal amount;
+    private String currency;
+    private String description;
+    private long version;
+}
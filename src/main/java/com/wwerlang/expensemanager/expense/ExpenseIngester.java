@@ -0,0 +1,503 @@
+package com.wwerlang.expensemanager.expense;
+
+import com.wwerlang.expensemanager.common.Journal;
+import com.wwerlang.expensemanager.common.PageDTO;
+import com.wwerlang.expensemanager.exception.QueueFullException;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.RecoverableDataAccessException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Accepts expenses into an append-only {@link Journal} on disk and writes them from a single thread, committing
+ * everything that was journaled meanwhile (up to the batch size) in one transaction. {@link #submit(List)} returns as
+ * soon as the expenses are in the journal, without waiting for the database. Capacity is counted until an expense is
+ * written, so a slow database fills the journal up to the capacity and submissions start being rejected instead of
+ * piling up without limit.
+ * <p>
+ * The journal position written up to is saved with every batch, in the same transaction, and in the journal itself
+ * afterwards. On start the expenses after it are written again, so those accepted before a crash are not lost and,
+ * with a database that survives the crash, not written twice either. A batch that fails is retried one expense at a
+ * time, and expenses that still fail, e.g. over budget, are saved as {@link IngestFailure}s for the client to look up.
+ * <p>
+ * When the database cannot be reached, nothing is given up: the writer keeps the expenses in the journal and tries
+ * again after a pause, reporting itself down in the health check until it gets through. Stopping does not wait for the
+ * journal to be written out; the writer finishes the batch it is on and the rest is written after the next start. A
+ * corrupt record is saved as a failure and skipped together with the rest of its segment, see
+ * {@link Journal#skip(long)}.
+ */
+@Slf4j
+@Component
+public class ExpenseIngester implements SmartLifecycle, HealthIndicator {
+
+    private static final String CHECKPOINT = "expense-ingest";
+    private static final long RETRY_DELAY_MILLIS = 1000;
+    private static final int MAX_ERROR_LENGTH = 1000;
+
+    @Value("${expense.ingest.capacity:100000}")
+    private int capacity;
+
+    @Value("${expense.ingest.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${expense.ingest.journal.dir:journal}")
+    private Path journalDirectory;
+
+    @Value("${expense.ingest.journal.segment-size:67108864}")
+    private int segmentSize;
+
+    @Value("${expense.ingest.journal.force:false}")
+    private boolean force;
+
+    @Autowired
+    private ExpenseService expenseService;
+
+    @Autowired
+    private IngestCheckpointRepository ingestCheckpointRepository;
+
+    @Autowired
+    private IngestFailureRepository ingestFailureRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private Journal journal;
+    private long position;
+    private Semaphore permits;
+    private Thread writer;
+    private volatile boolean running;
+    // Why the writer could not get on, until it gets through again.
+    private volatile String stalled;
+
+    /**
+     * Journals all expenses or none of them.
+     *
+     * @throws QueueFullException if they do not all fit, or the ingester is not running
+     */
+    public void submit(List<ExpenseDTO> expenses) {
+        List<byte[]> records = expenses.stream().map(ExpenseIngester::encode).toList();
+
+        synchronized (this) {
+            if (!running || !permits.tryAcquire(expenses.size())) {
+                int available = running ? Math.max(0, permits.availablePermits()) : 0;
+                throw new QueueFullException("Expense ingest", expenses.size(), available);
+            }
+
+            try {
+                journal.append(records);
+            } catch (RuntimeException e) {
+                permits.release(expenses.size());
+                throw e;
+            }
+        }
+
+        LockSupport.unpark(writer);
+    }
+
+    public IngestStatsDTO stats() {
+        int queued = running ? capacity - permits.availablePermits() : 0;
+        return new IngestStatsDTO(queued, capacity, written.get(), failed.get());
+    }
+
+    /**
+     * One page of the expenses that were accepted but could not be written, oldest first.
+     */
+    public PageDTO<IngestFailureDTO> failures(long after, int limit) {
+        limit = PageDTO.limit(limit);
+        List<IngestFailureDTO> failures = ingestFailureRepository
+                .findByIdGreaterThanOrderByIdAsc(after, Limit.of(limit + 1)).stream()
+                .map(ExpenseIngester::parseResponse)
+                .toList();
+        return PageDTO.of(failures, limit, IngestFailureDTO::getId);
+    }
+
+    /**
+     * Down while running without a writer, or with a writer that cannot get the accepted expenses written.
+     */
+    @Override
+    public Health health() {
+        if (!running) {
+            return Health.unknown().build();
+        }
+
+        Health.Builder health = writer.isAlive() && stalled == null ? Health.up() : Health.down();
+
+        if (stalled != null) {
+            health.withDetail("error", stalled);
+        }
+
+        IngestStatsDTO stats = stats();
+        return health.withDetail("queued", stats.getQueued())
+                .withDetail("written", stats.getWritten())
+                .withDetail("failed", stats.getFailed())
+                .build();
+    }
+
+    /**
+     * Opens the journal and counts the expenses in it not written yet, which the writer starts with.
+     */
+    @Override
+    public void start() {
+        try {
+            journal = new Journal(journalDirectory, segmentSize, force);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the expense journal in " + journalDirectory, e);
+        }
+
+        position = Math.max(journal.checkpoint(), ingestCheckpointRepository.findById(CHECKPOINT)
+                .map(IngestCheckpoint::getPosition)
+                .orElse(0L));
+        int pending = pending(position);
+
+        if (pending > 0) {
+            log.info("Writing {} expenses left in the journal.", pending);
+        }
+
+        // Goes negative if more expenses are left over than fit, which then keeps new ones out until they are written.
+        permits = new Semaphore(capacity - pending);
+        running = true;
+
+        writer = new Thread(this::drain, "expense-ingest");
+        writer.start();
+
+        Gauge.builder("expense.ingest.queued", () -> capacity - permits.availablePermits())
+                .description("Expenses accepted but not yet written")
+                .register(Metrics.globalRegistry);
+        FunctionCounter.builder("expense.ingest.written", written, AtomicLong::get)
+                .register(Metrics.globalRegistry);
+        FunctionCounter.builder("expense.ingest.failed", failed, AtomicLong::get)
+                .register(Metrics.globalRegistry);
+    }
+
+    /**
+     * Stops accepting expenses and waits for the writer to finish its batch. What is left in the journal is written
+     * after the next start, so stopping does not depend on the database being reachable.
+     */
+    @Override
+    public void stop() {
+        synchronized (this) {
+            running = false;
+        }
+
+        LockSupport.unpark(writer);
+
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        journal.close();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Starts after the expense columns, so expenses left in the journal are written to them too, and before the web
+     * server, so requests still coming in during shutdown are not turned away.
+     */
+    @Override
+    public int getPhase() {
+        return DEFAULT_PHASE - 3072;
+    }
+
+    /**
+     * Runs until stopped. Any exception is caught here, so the writer thread never dies while expenses are waiting; it
+     * pauses and goes on from the last expense done.
+     */
+    private void drain() {
+        List<Journal.Entry> batch = new ArrayList<>(batchSize);
+
+        while (running) {
+            try {
+                long next;
+
+                try {
+                    next = journal.read(position, batchSize, batch);
+                } catch (IllegalStateException e) {
+                    next = skip(e);
+                }
+
+                if (batch.isEmpty()) {
+                    position = next;
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                    continue;
+                }
+
+                write(batch);
+                stalled = null;
+            } catch (RuntimeException e) {
+                stalled = e.getMessage() == null ? e.getClass().getName() : e.getMessage();
+                log.error("Writing ingested expenses failed, trying again in {} ms.", RETRY_DELAY_MILLIS, e);
+
+                if (running) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(RETRY_DELAY_MILLIS));
+                }
+
+                continue;
+            } finally {
+                batch.clear();
+            }
+
+            try {
+                journal.checkpoint(position);
+            } catch (UncheckedIOException e) {
+                // The position saved with the batch is what restarts go by when it is further on.
+                log.warn("Could not save the journal checkpoint: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Writes the batch, moving the position past each expense once it is written or saved as failed. Throws when the
+     * database cannot be reached, leaving the expenses from the position on to be tried again.
+     */
+    private void write(List<Journal.Entry> batch) {
+        long end = batch.get(batch.size() - 1).getNext();
+
+        try {
+            expenseService.insertAll(batch.stream().map(e -> decode(e.getRecord())).toList(), () -> checkpoint(end));
+            written.addAndGet(batch.size());
+            done(end, batch.size());
+            return;
+        } catch (RuntimeException e) {
+            if (isTransient(e)) {
+                throw e;
+            }
+
+            log.warn("Writing {} expenses failed, retrying them one by one: {}", batch.size(), e.getMessage());
+        }
+
+        for (Journal.Entry entry : batch) {
+            ExpenseDTO expense = decode(entry.getRecord());
+
+            try {
+                expenseService.insertAll(List.of(expense), () -> checkpoint(entry.getNext()));
+                written.incrementAndGet();
+            } catch (RuntimeException e) {
+                if (isTransient(e)) {
+                    throw e;
+                }
+
+                fail(entry, expense, e);
+            }
+
+            done(entry.getNext(), 1);
+        }
+    }
+
+    private void done(long next, int expenses) {
+        position = next;
+        permits.release(expenses);
+    }
+
+    /**
+     * Saves the expense as failed together with the checkpoint past it, so it is neither written nor saved again after
+     * a restart.
+     */
+    private void fail(Journal.Entry entry, ExpenseDTO expense, RuntimeException cause) {
+        String error = cause.getMessage() == null ? cause.getClass().getName() : cause.getMessage();
+        IngestFailure failure = new IngestFailure(0, expense.getEmployeeId(), expense.getCategoryId(),
+                expense.getDate(), expense.getAmount(), expense.getCurrency(), expense.getDescription(),
+                truncate(error), Instant.now());
+
+        if (save(failure, entry.getNext())) {
+            log.warn("Expense of employee {} on {} failed: {}", expense.getEmployeeId(), expense.getDate(), error);
+        } else {
+            log.error("Dropped expense of employee {} on {}: {}", expense.getEmployeeId(), expense.getDate(), error);
+        }
+
+        failed.incrementAndGet();
+    }
+
+    /**
+     * Saves a failure for the corrupt record at the position and moves past it, returning where reading goes on. The
+     * expenses given up with it are no longer counted against the capacity.
+     */
+    private long skip(IllegalStateException corrupt) {
+        long next = journal.skip(position);
+        String error = corrupt.getMessage() + " Skipped to position " + next + ".";
+
+        if (!save(new IngestFailure(0, 0, 0, null, null, null, null, truncate(error), Instant.now()), next)) {
+            log.error("Could not save the failure of a corrupt journal record.");
+        }
+
+        log.error(error);
+        failed.incrementAndGet();
+
+        synchronized (this) {
+            position = next;
+            permits.release(Math.max(0, capacity - pending(next) - permits.availablePermits()));
+        }
+
+        return next;
+    }
+
+    /**
+     * Saves the failure together with the checkpoint, returning whether it was saved. Throws only when the database
+     * cannot be reached, for the writer to try again.
+     */
+    private boolean save(IngestFailure failure, long next) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                ingestFailureRepository.save(failure);
+                checkpoint(next);
+            });
+            return true;
+        } catch (RuntimeException e) {
+            if (isTransient(e)) {
+                throw e;
+            }
+
+            log.error("Could not save the ingest failure.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Number of records from the position on that will be written, leaving out those skipped with corrupt ones.
+     */
+    private int pending(long position) {
+        int pending = 0;
+        List<Journal.Entry> entries = new ArrayList<>();
+
+        while (position < journal.end()) {
+            try {
+                position = journal.read(position, batchSize, entries);
+            } catch (IllegalStateException e) {
+                position = journal.skip(position);
+            }
+
+            pending += entries.size();
+            entries.clear();
+        }
+
+        return pending;
+    }
+
+    private static String truncate(String error) {
+        return error.length() > MAX_ERROR_LENGTH ? error.substring(0, MAX_ERROR_LENGTH) : error;
+    }
+
+    /**
+     * Failures of the database or the connection to it rather than of the expense, which trying again later may get
+     * past.
+     */
+    static boolean isTransient(RuntimeException e) {
+        return e instanceof TransientDataAccessException || e instanceof RecoverableDataAccessException
+                || e instanceof DataAccessResourceFailureException || e instanceof CannotCreateTransactionException;
+    }
+
+    private void checkpoint(long position) {
+        ingestCheckpointRepository.save(new IngestCheckpoint(CHECKPOINT, position));
+    }
+
+    private static IngestFailureDTO parseResponse(IngestFailure failure) {
+        ExpenseDTO expense = new ExpenseDTO(0, failure.getEmployeeId(), failure.getCategoryId(), failure.getDate(),
+                failure.getAmount(), failure.getCurrency(), failure.getDescription(), 0);
+        return new IngestFailureDTO(failure.getId(), expense, failure.getError(), failure.getFailedAt());
+    }
+
+    /**
+     * Employee, category, date as epoch day, amount as scale and unscaled bytes, and currency and description as UTF-8
+     * bytes. Ids and versions are left out since ingesting only creates expenses; missing values are kept so they fail
+     * when written, like they would have when saved directly.
+     */
+    static byte[] encode(ExpenseDTO expense) {
+        LocalDate date = expense.getDate();
+        BigDecimal amount = expense.getAmount();
+        byte[] unscaled = amount == null ? new byte[0] : amount.unscaledValue().toByteArray();
+        byte[] currency = bytes(expense.getCurrency());
+        byte[] description = bytes(expense.getDescription());
+
+        ByteBuffer buffer = ByteBuffer.allocate(3 * Long.BYTES + 4 * Integer.BYTES + unscaled.length
+                + (currency == null ? 0 : currency.length) + (description == null ? 0 : description.length));
+        buffer.putLong(expense.getEmployeeId());
+        buffer.putLong(expense.getCategoryId());
+        buffer.putLong(date == null ? Long.MIN_VALUE : date.toEpochDay());
+        buffer.putInt(amount == null ? 0 : amount.scale());
+        buffer.putInt(unscaled.length).put(unscaled);
+        put(buffer, currency);
+        put(buffer, description);
+        return buffer.array();
+    }
+
+    static ExpenseDTO decode(byte[] record) {
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        ExpenseDTO expense = new ExpenseDTO();
+        expense.setEmployeeId(buffer.getLong());
+        expense.setCategoryId(buffer.getLong());
+
+        long epochDay = buffer.getLong();
+        expense.setDate(epochDay == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(epochDay));
+
+        int scale = buffer.getInt();
+        byte[] unscaled = new byte[buffer.getInt()];
+        buffer.get(unscaled);
+        expense.setAmount(unscaled.length == 0 ? null : new BigDecimal(new BigInteger(unscaled), scale));
+        expense.setCurrency(string(buffer));
+        expense.setDescription(string(buffer));
+        return expense;
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the length, -1 for null, followed by the bytes.
+     */
+    private static void put(ByteBuffer buffer, byte[] value) {
+        buffer.putInt(value == null ? -1 : value.length);
+
+        if (value != null) {
+            buffer.put(value);
+        }
+    }
+
+    private static String string(ByteBuffer buffer) {
+        int length = buffer.getInt();
+
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,155 @@
+package com.wwerlang.expensemanager.expense;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The monthly tables expenses are stored in, named {@code expense_yyyyMM}. A table is created the first time an
+ * expense of its month is written, with a check constraint keeping other dates out, and can be dropped as a whole.
+ * <p>
+ * DDL runs on a connection of its own: H2 commits the open transaction on DDL, which would otherwise commit half of
+ * the write that needed the new table.
+ */
+@Slf4j
+@Component
+@DependsOn("entityManagerFactory")
+public class ExpensePartitions {
+
+    private static final String PREFIX = "expense_";
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final NavigableSet<YearMonth> months = new ConcurrentSkipListSet<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public static String table(YearMonth month) {
+        return PREFIX + month.format(SUFFIX);
+    }
+
+    /**
+     * Picks up the tables already there and creates the id sequence shared by all of them.
+     */
+    @PostConstruct
+    void discover() {
+        execute("create sequence if not exists expense_seq");
+
+        jdbcTemplate.queryForList("select table_name from information_schema.tables where table_schema = 'PUBLIC' "
+                + "and lower(table_name) like 'expense\\_%'", String.class).forEach(name -> {
+            String suffix = name.substring(PREFIX.length());
+
+            if (suffix.matches("\\d{6}")) {
+                months.add(YearMonth.parse(suffix, SUFFIX));
+            }
+        });
+    }
+
+    /**
+     * Held for reading by expense writes from their transaction until every in-memory copy has them, and for writing by
+     * what must not run in between: dropping a partition, so no write targets a table being dropped or reaches the
+     * copies after its month is gone, and putting a rebuilt day into the sketches.
+     */
+    public ReadWriteLock lock() {
+        return lock;
+    }
+
+    /**
+     * All months with a table, oldest first.
+     */
+    public NavigableSet<YearMonth> all() {
+        return months;
+    }
+
+    /**
+     * The months with a table that can hold dates from {@code from} to {@code to}, each open when null.
+     */
+    public NavigableSet<YearMonth> between(LocalDate from, LocalDate to) {
+        if (months.isEmpty()) {
+            return months;
+        }
+
+        YearMonth first = from == null ? months.first() : YearMonth.from(from);
+        YearMonth last = to == null ? months.last() : YearMonth.from(to);
+        return first.isAfter(last) ? new ConcurrentSkipListSet<>() : months.subSet(first, true, last, true);
+    }
+
+    /**
+     * Creates the table of the month unless there is one. Callers must keep the table from being dropped until they
+     * are done writing to it, which {@link ExpenseService} does by holding writes and drops apart.
+     */
+    public void ensure(YearMonth month) {
+        if (months.contains(month)) {
+            return;
+        }
+
+        synchronized (this) {
+            if (!months.contains(month)) {
+                LocalDate start = month.atDay(1);
+                execute("create table if not exists " + table(month) + " ("
+                        + "id bigint primary key, "
+                        + "employee_id bigint not null references employee (id), "
+                        + "department_id bigint references department (id), "
+                        + "category_id bigint not null references category (id), "
+                        + "expense_date date not null check (expense_date >= date '" + start + "' "
+                        + "and expense_date < date '" + start.plusMonths(1) + "'), "
+                        + "amount bigint not null, "
+                        + "currency char(3) not null, "
+                        + "description varchar(255), "
+                        + "version bigint not null)");
+                months.add(month);
+                log.info("Created expense partition {}.", table(month));
+            }
+        }
+    }
+
+    /**
+     * Drops the table of the month, optionally writing its rows to a CSV file first. Returns false if there is none.
+     */
+    public synchronized boolean drop(YearMonth month, Path archive) {
+        if (!months.contains(month)) {
+            return false;
+        }
+
+        if (archive != null) {
+            execute("call csvwrite('" + archive.toAbsolutePath().toString().replace("'", "''") + "', "
+                    + "'select * from " + table(month) + " order by id')");
+        }
+
+        months.remove(month);
+        execute("drop table if exists " + table(month));
+        log.info("Dropped expense partition {}{}.", table(month), archive == null ? "" : " to " + archive);
+        return true;
+    }
+
+    private void execute(String sql) {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            connection.setAutoCommit(true);
+            statement.execute(sql);
+        } catch (SQLException e) {
+            throw new DataAccessResourceFailureException("Could not run " + sql, e);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.wwerlang.expensemanager.expense;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * An analytics query: the expenses from {@code from} to {@code to} (both inclusive, open when null) matching every id
+ * given, grouped by up to two dimensions.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExpenseQueryDTO {
+
+    public enum Dimension {
+        DEPARTMENT, CATEGORY, EMPLOYEE
+    }
+
+    private LocalDate from;
+    private LocalDate to;
+    private Long departmentId;
+    private Long categoryId;
+    private Long employeeId;
+    private List<Dimension> groupBy;
+}
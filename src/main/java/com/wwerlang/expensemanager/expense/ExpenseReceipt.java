@@ -0,0 +1,43 @@
+package com.wwerlang.expensemanager.expense;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * A receipt attached to an expense. Only what describes it is kept here; the content is a file named after its SHA-256
+ * hash in the receipt directory, shared by all receipts with the same content.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "expense_receipt", indexes = {
+        @Index(name = "expense_receipt_expense_id", columnList = "expense_id"),
+        @Index(name = "expense_receipt_hash", columnList = "hash")})
+public class ExpenseReceipt {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "expense_receipt_seq")
+    @SequenceGenerator(name = "expense_receipt_seq", sequenceName = "expense_receipt_seq", allocationSize = 50)
+    @Column(name = "id")
+    private long id;
+
+    @Column(name = "expense_id", nullable = false)
+    private long expenseId;
+
+    @Column(name = "file_name")
+    private String fileName;
+
+    @Column(name = "content_type", nullable = false, length = 100)
+    private String contentType;
+
+    @Column(name = "size", nullable = false)
+    private long size;
+
+    @Column(name = "hash", nullable = false, length = 64)
+    private String hash;
+}
@@ -0,0 +1,23 @@
+package com.wwerlang.expensemanager.expense;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * A receipt of an expense, without its content. The hash is the hex SHA-256 of the content, also sent as its ETag.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExpenseReceiptDTO {
+
+    private long id;
+    private long expenseId;
+    private String fileName;
+    private String contentType;
+    private long size;
+    private String hash;
+}
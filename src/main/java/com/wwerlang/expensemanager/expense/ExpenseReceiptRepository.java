@@ -0,0 +1,17 @@
+package com.wwerlang.expensemanager.expense;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ExpenseReceiptRepository extends JpaRepository<ExpenseReceipt, Long> {
+
+    List<ExpenseReceipt> findByExpenseIdOrderByIdAsc(long expenseId);
+
+    Optional<ExpenseReceipt> findByIdAndExpenseId(long id, long expenseId);
+
+    boolean existsByHash(String hash);
+}
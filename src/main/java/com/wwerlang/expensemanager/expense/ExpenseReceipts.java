@@ -0,0 +1,267 @@
+package com.wwerlang.expensemanager.expense;
+
+import com.wwerlang.expensemanager.exception.EntityNotFoundException;
+import com.wwerlang.expensemanager.exception.ReceiptTooLargeException;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+/**
+ * Receipts of expenses, kept as files named after the SHA-256 hash of their content, with one metadata row per receipt
+ * in the database. Identical uploads share one file, which is removed with the last receipt pointing at it.
+ * <p>
+ * Uploads are copied to a temporary file through one fixed buffer while being hashed, then moved into place, so
+ * neither uploads nor downloads hold more than a buffer of a receipt in memory however large it or how many run at
+ * once. Downloads are handed to the container's sendfile where it has one, as Tomcat's NIO connector does, so the
+ * bytes go from the page cache to the socket without being copied through the heap. Elsewhere they are written with
+ * {@link FileChannel#transferTo}, from any position for range requests.
+ * <p>
+ * Adding and removing receipts of the same content is serialized on a lock per hash, each metadata row committed
+ * while holding it, so a file is never removed right after a new receipt started pointing at it. Receipts of expenses
+ * in dropped partitions are kept.
+ */
+@Component
+public class ExpenseReceipts {
+
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int LOCKS = 64;
+
+    @Value("${expense.receipts.dir:receipts}")
+    private Path directory;
+
+    @Value("${expense.receipts.max-size:20971520}")
+    private long maxSize;
+
+    @Autowired
+    private ExpenseReceiptRepository expenseReceiptRepository;
+
+    @Autowired
+    private ExpenseRepository expenseRepository;
+
+    private final Object[] locks = new Object[LOCKS];
+
+    public ExpenseReceipts() {
+        for (int i = 0; i < LOCKS; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * Creates the receipt directory and clears uploads left unfinished by the last run.
+     */
+    @PostConstruct
+    void start() throws IOException {
+        Files.createDirectories(uploads());
+
+        try (Stream<Path> files = Files.list(uploads())) {
+            for (Path file : files.toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    public List<ExpenseReceiptDTO> list(long expenseId) {
+        requireExpense(expenseId);
+        return expenseReceiptRepository.findByExpenseIdOrderByIdAsc(expenseId).stream()
+                .map(ExpenseReceipts::parseResponse)
+                .toList();
+    }
+
+    public ExpenseReceiptDTO find(long expenseId, long id) {
+        return parseResponse(findReceipt(expenseId, id));
+    }
+
+    /**
+     * Reads the receipt from the stream until it ends and attaches it to the expense. Only images and PDFs are taken;
+     * parameters of the content type, such as a charset, are dropped.
+     */
+    public ExpenseReceiptDTO save(long expenseId, String fileName, String contentType, InputStream content)
+            throws IOException {
+        requireExpense(expenseId);
+        String type = contentType == null ? null : contentType.split(";", 2)[0].trim().toLowerCase(Locale.ROOT);
+
+        if (type == null || !(type.startsWith("image/") || type.equals("application/pdf"))) {
+            throw new IllegalArgumentException("Receipts are images or PDFs, not " + contentType + ".");
+        }
+
+        Path upload = Files.createTempFile(uploads(), "receipt", null);
+
+        try {
+            MessageDigest digest = sha256();
+            long size = copy(content, upload, digest);
+            String hash = HexFormat.of().formatHex(digest.digest());
+
+            synchronized (lock(hash)) {
+                Path file = file(hash);
+
+                if (Files.exists(file)) {
+                    Files.delete(upload);
+                } else {
+                    Files.createDirectories(file.getParent());
+                    Files.move(upload, file, StandardCopyOption.ATOMIC_MOVE);
+                }
+
+                ExpenseReceipt receipt = new ExpenseReceipt(0, expenseId, fileName, type, size, hash);
+                return parseResponse(expenseReceiptRepository.save(receipt));
+            }
+        } finally {
+            Files.deleteIfExists(upload);
+        }
+    }
+
+    /**
+     * Leaves sending {@code count} bytes of the receipt's content from {@code position} on to the container, once the
+     * request is handled without a body. Returns false if the container cannot send files, for the content to be
+     * {@link #write written} instead.
+     */
+    public boolean sendfile(ExpenseReceiptDTO receipt, long position, long count, HttpServletRequest request) {
+        Path file = file(receipt.getHash());
+
+        if (!Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT)) || !Files.isReadable(file)) {
+            return false;
+        }
+
+        request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+        request.setAttribute(SENDFILE_START, position);
+        request.setAttribute(SENDFILE_END, position + count);
+        return true;
+    }
+
+    /**
+     * Writes {@code count} bytes of the receipt's content from {@code position} on to the stream.
+     */
+    public void write(ExpenseReceiptDTO receipt, long position, long count, OutputStream outputStream)
+            throws IOException {
+        WritableByteChannel target = Channels.newChannel(outputStream);
+
+        try (FileChannel channel = FileChannel.open(file(receipt.getHash()), StandardOpenOption.READ)) {
+            long end = position + count;
+
+            while (position < end) {
+                long written = channel.transferTo(position, end - position, target);
+
+                if (written <= 0) {
+                    throw new IOException("Receipt " + receipt.getId() + " ends before byte " + end + ".");
+                }
+
+                position += written;
+            }
+        }
+    }
+
+    public void delete(long expenseId, long id) throws IOException {
+        delete(findReceipt(expenseId, id));
+    }
+
+    /**
+     * Removes the receipts of a deleted expense.
+     */
+    public void deleteAll(long expenseId) throws IOException {
+        for (ExpenseReceipt receipt : expenseReceiptRepository.findByExpenseIdOrderByIdAsc(expenseId)) {
+            delete(receipt);
+        }
+    }
+
+    private void delete(ExpenseReceipt receipt) throws IOException {
+        synchronized (lock(receipt.getHash())) {
+            expenseReceiptRepository.delete(receipt);
+
+            if (!expenseReceiptRepository.existsByHash(receipt.getHash())) {
+                Files.deleteIfExists(file(receipt.getHash()));
+            }
+        }
+    }
+
+    private ExpenseReceipt findReceipt(long expenseId, long id) {
+        return expenseReceiptRepository.findByIdAndExpenseId(id, expenseId)
+                .orElseThrow(() -> new EntityNotFoundException("Receipt", id));
+    }
+
+    private void requireExpense(long expenseId) {
+        if (expenseRepository.findById(expenseId).isEmpty()) {
+            throw new EntityNotFoundException("Expense", expenseId);
+        }
+    }
+
+    /**
+     * Copies the stream to the file and into the digest, returning the number of bytes copied. Stops as soon as the
+     * receipt is over the maximum size.
+     */
+    private long copy(InputStream content, Path file, MessageDigest digest) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        long size = 0;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            int read;
+
+            while ((read = content.read(buffer.array())) >= 0) {
+                size += read;
+
+                if (size > maxSize) {
+                    throw new ReceiptTooLargeException(maxSize);
+                }
+
+                digest.update(buffer.array(), 0, read);
+                buffer.clear().limit(read);
+
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+
+                buffer.clear();
+            }
+        }
+
+        return size;
+    }
+
+    private Path file(String hash) {
+        return directory.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private Path uploads() {
+        return directory.resolve("uploads");
+    }
+
+    private Object lock(String hash) {
+        return locks[Math.floorMod(hash.hashCode(), LOCKS)];
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ExpenseReceiptDTO parseResponse(ExpenseReceipt receipt) {
+        return new ExpenseReceiptDTO(receipt.getId(), receipt.getExpenseId(), receipt.getFileName(),
+                receipt.getContentType(), receipt.getSize(), receipt.getHash());
+    }
+}
@@ -0,0 +1,293 @@
+package com.wwerlang.expensemanager.expense;
+
+import com.wwerlang.expensemanager.category.Category;
+import com.wwerlang.expensemanager.department.Department;
+import com.wwerlang.expensemanager.employee.Employee;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Currency;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Expenses stored across the monthly tables of {@link ExpensePartitions}. Writes go to the table of the expense's
+ * month, and reads with a date range only touch the tables of the months in it. Reads by id alone look the id up in
+ * every table, one primary key lookup each.
+ * <p>
+ * Runs on the JDBC connection of the current JPA transaction, so expense writes commit together with their rollups.
+ */
+@Repository
+public class ExpenseRepository {
+
+    private static final String COLUMNS =
+            "id, employee_id, department_id, category_id, expense_date, amount, currency, description, version";
+
+    private static final RowMapper<Expense> ROW_MAPPER = ExpenseRepository::mapRow;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ExpensePartitions expensePartitions;
+
+    /**
+     * The months are copied once, as a table created or dropped between building the statement and its arguments
+     * would leave their counts apart.
+     */
+    public Optional<Expense> findById(long id) {
+        List<YearMonth> months = List.copyOf(expensePartitions.all());
+
+        if (months.isEmpty()) {
+            return Optional.empty();
+        }
+
+        String sql = months.stream()
+                .map(m -> "select " + COLUMNS + " from " + ExpensePartitions.table(m) + " where id = ?")
+                .collect(Collectors.joining(" union all "));
+        Object[] ids = months.stream().map(m -> id).toArray();
+
+        return jdbcTemplate.query(sql, ROW_MAPPER, ids).stream().findFirst();
+    }
+
+    /**
+     * Keyset page of the expenses after the given id, limited to dates from {@code from} to {@code to} (each open when
+     * null). Each table in range returns at most {@code limit} rows from its primary key index before they are merged.
+     */
+    public List<Expense> findByIdGreaterThanOrderByIdAsc(long id, LocalDate from, LocalDate to, int limit) {
+        // One copy for the statement and its arguments, as in findById.
+        List<YearMonth> months = List.copyOf(expensePartitions.between(from, to));
+
+        if (months.isEmpty()) {
+            return List.of();
+        }
+
+        String filter = "id > ?"
+                + (from == null ? "" : " and expense_date >= ?")
+                + (to == null ? "" : " and expense_date <= ?");
+        String sql = "select * from ("
+                + months.stream()
+                        .map(m -> "(select " + COLUMNS + " from " + ExpensePartitions.table(m) + " where " + filter
+                                + " order by id fetch first ? rows only)")
+                        .collect(Collectors.joining(" union all "))
+                + ") order by id fetch first ? rows only";
+
+        List<Object> args = new ArrayList<>();
+
+        for (int i = 0; i < months.size(); i++) {
+            args.add(id);
+
+            if (from != null) {
+                args.add(from);
+            }
+
+            if (to != null) {
+                args.add(to);
+            }
+
+            args.add(limit);
+        }
+
+        args.add(limit);
+        return jdbcTemplate.query(sql, ROW_MAPPER, args.toArray());
+    }
+
+    public Expense insert(Expense expense) {
+        insertAll(List.of(expense));
+        return expense;
+    }
+
+    /**
+     * Assigns ids to the expenses from one sequence call and inserts them as one JDBC batch per month.
+     */
+    public void insertAll(List<Expense> expenses) {
+        if (expenses.isEmpty()) {
+            return;
+        }
+
+        List<Long> ids = jdbcTemplate.queryForList("select next value for expense_seq from system_range(1, ?)",
+                Long.class, expenses.size());
+
+        Map<YearMonth, List<Expense>> byMonth = new TreeMap<>();
+
+        for (int i = 0; i < expenses.size(); i++) {
+            Expense expense = expenses.get(i);
+            expense.setId(ids.get(i));
+            byMonth.computeIfAbsent(YearMonth.from(expense.getDate()), m -> new ArrayList<>()).add(expense);
+        }
+
+        byMonth.forEach((month, rows) -> {
+            expensePartitions.ensure(month);
+            jdbcTemplate.batchUpdate("insert into " + ExpensePartitions.table(month) + " (" + COLUMNS + ") "
+                    + "values (?, ?, ?, ?, ?, ?, ?, ?, ?)", rows, rows.size(), ExpenseRepository::setValues);
+        });
+    }
+
+    /**
+     * Optimistic update of the expense stored as {@code old}; returns 0 when it is missing or its version moved on.
+     * An expense whose date moves to another month is deleted from the old table and inserted into the new one.
+     */
+    public int updateIfVersionMatches(Expense old, Expense expense) {
+        YearMonth oldMonth = YearMonth.from(old.getDate());
+        YearMonth month = YearMonth.from(expense.getDate());
+
+        if (!oldMonth.equals(month)) {
+            if (deleteIfVersionMatches(old.getId(), expense.getVersion(), oldMonth) != 1) {
+                return 0;
+            }
+
+            expensePartitions.ensure(month);
+            return jdbcTemplate.update("insert into " + ExpensePartitions.table(month) + " (" + COLUMNS + ") "
+                    + "values (?, ?, ?, ?, ?, ?, ?, ?, ?)", ps -> {
+                setValues(ps, expense);
+                ps.setLong(9, expense.getVersion() + 1);
+            });
+        }
+
+        Department department = expense.getDepartment();
+        return jdbcTemplate.update("update " + ExpensePartitions.table(month) + " set employee_id = ?, "
+                        + "department_id = ?, category_id = ?, expense_date = ?, amount = ?, currency = ?, "
+                        + "description = ?, version = version + 1 where id = ? and version = ?",
+                expense.getEmployee().getId(), department == null ? null : department.getId(),
+                expense.getCategory().getId(), expense.getDate(), expense.getAmount(),
+                expense.getCurrency().getCurrencyCode(), expense.getDescription(), expense.getId(),
+                expense.getVersion());
+    }
+
+    /**
+     * Returns 0 when the expense is missing or its version moved on.
+     */
+    public int deleteIfVersionMatches(Expense expense) {
+        return deleteIfVersionMatches(expense.getId(), expense.getVersion(), YearMonth.from(expense.getDate()));
+    }
+
+    /**
+     * Aggregates the raw expenses per day, department, category and currency, one table at a time, in minor units of
+     * the currency. Used to check the rollups against, which converts each group into the base currency.
+     */
+    public void summarize(Consumer<DailyTotal> consumer) {
+        for (YearMonth month : expensePartitions.all()) {
+            jdbcTemplate.query("select expense_date, coalesce(department_id, 0), category_id, currency, sum(amount), "
+                            + "count(*) from " + ExpensePartitions.table(month) + " group by expense_date, "
+                            + "coalesce(department_id, 0), category_id, currency",
+                    (RowCallbackHandler) rs -> consumer.accept(new DailyTotal(rs.getObject(1, LocalDate.class),
+                            rs.getLong(2), rs.getLong(3), Currency.getInstance(rs.getString(4)), rs.getLong(5),
+                            rs.getLong(6))));
+        }
+    }
+
+    /**
+     * Streams every expense, one table after the other. Must be consumed inside a transaction and closed afterwards.
+     */
+    public Stream<Expense> streamAll() {
+        return List.copyOf(expensePartitions.all()).stream().flatMap(month ->
+                jdbcTemplate.queryForStream("select " + COLUMNS + " from " + ExpensePartitions.table(month),
+                        ROW_MAPPER));
+    }
+
+    /**
+     * The day of the earliest expense of each currency stored, across all tables.
+     */
+    public Map<Currency, LocalDate> findFirstDates() {
+        Map<Currency, LocalDate> firstDates = new TreeMap<>(Comparator.comparing(Currency::getCurrencyCode));
+
+        for (YearMonth month : expensePartitions.all()) {
+            jdbcTemplate.query("select currency, min(expense_date) from " + ExpensePartitions.table(month)
+                            + " group by currency",
+                    (RowCallbackHandler) rs -> firstDates.merge(Currency.getInstance(rs.getString(1)),
+                            rs.getObject(2, LocalDate.class), (first, other) -> first.isBefore(other) ? first : other));
+        }
+
+        return firstDates;
+    }
+
+    public List<Expense> findByDate(LocalDate date) {
+        YearMonth month = YearMonth.from(date);
+
+        if (!expensePartitions.all().contains(month)) {
+            return List.of();
+        }
+
+        return jdbcTemplate.query("select " + COLUMNS + " from " + ExpensePartitions.table(month)
+                + " where expense_date = ?", ROW_MAPPER, date);
+    }
+
+    public long count(YearMonth month) {
+        Long count = jdbcTemplate.queryForObject("select count(*) from " + ExpensePartitions.table(month), Long.class);
+        return count == null ? 0 : count;
+    }
+
+    private int deleteIfVersionMatches(long id, long version, YearMonth month) {
+        if (!expensePartitions.all().contains(month)) {
+            return 0;
+        }
+
+        return jdbcTemplate.update("delete from " + ExpensePartitions.table(month) + " where id = ? and version = ?",
+                id, version);
+    }
+
+    private static void setValues(PreparedStatement ps, Expense expense) throws SQLException {
+        ps.setLong(1, expense.getId());
+        ps.setLong(2, expense.getEmployee().getId());
+
+        if (expense.getDepartment() == null) {
+            ps.setNull(3, Types.BIGINT);
+        } else {
+            ps.setLong(3, expense.getDepartment().getId());
+        }
+
+        ps.setLong(4, expense.getCategory().getId());
+        ps.setObject(5, expense.getDate());
+        ps.setLong(6, expense.getAmount());
+        ps.setString(7, expense.getCurrency().getCurrencyCode());
+        ps.setString(8, expense.getDescription());
+        ps.setLong(9, expense.getVersion());
+    }
+
+    /**
+     * Employee, department and category only carry their ids, which is all expenses are read for.
+     */
+    private static Expense mapRow(ResultSet rs, int rowNum) throws SQLException {
+        Employee employee = new Employee();
+        employee.setId(rs.getLong("employee_id"));
+
+        long departmentId = rs.getLong("department_id");
+        Department department = null;
+
+        if (!rs.wasNull()) {
+            department = new Department();
+            department.setId(departmentId);
+        }
+
+        Category category = new Category();
+        category.setId(rs.getLong("category_id"));
+
+        return new Expense(rs.getLong("id"), employee, department, category, rs.getObject("expense_date",
+                LocalDate.class), rs.getLong("amount"), Currency.getInstance(rs.getString("currency")),
+                rs.getString("description"), rs.getLong("version"));
+    }
+
+    /**
+     * Sum in minor units of the currency and count of the expenses of one day, department and category in one
+     * currency. Department 0 stands for employees without a department.
+     */
+    public record DailyTotal(LocalDate date, long departmentId, long categoryId, Currency currency, long amount,
+                             long count) {
+    }
+}
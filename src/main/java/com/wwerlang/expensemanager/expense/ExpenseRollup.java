@@ -0,0 +1,29 @@
+package com.wwerlang.expensemanager.expense;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Running total and count of the expenses in one {@link ExpenseRollupKey group}, kept up to date by every expense
+ * write in the same transaction. The total is in minor units of the base currency.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "expense_rollup", indexes = @Index(name = "expense_rollup_month", columnList = "month_start"))
+public class ExpenseRollup {
+
+    @EmbeddedId
+    private ExpenseRollupKey id;
+
+    @Column(name = "total", nullable = false)
+    private long total;
+
+    @Column(name = "expense_count", nullable = false)
+    private long expenseCount;
+}
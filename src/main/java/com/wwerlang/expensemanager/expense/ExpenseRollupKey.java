@@ -0,0 +1,49 @@
+package com.wwerlang.expensemanager.expense;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.Comparator;
+
+/**
+ * A rollup group: the first day of a month, a department (0 for expenses of employees without one) and a category.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@Embeddable
+public class ExpenseRollupKey implements Serializable, Comparable<ExpenseRollupKey> {
+
+    private static final Comparator<ExpenseRollupKey> ORDER = Comparator.comparing(ExpenseRollupKey::getMonth)
+            .thenComparingLong(ExpenseRollupKey::getDepartmentId)
+            .thenComparingLong(ExpenseRollupKey::getCategoryId);
+
+    @Column(name = "month_start")
+    private LocalDate month;
+
+    @Column(name = "department_id")
+    private long departmentId;
+
+    @Column(name = "category_id")
+    private long categoryId;
+
+    public static ExpenseRollupKey of(Expense expense) {
+        return new ExpenseRollupKey(expense.getDate().withDayOfMonth(1),
+                expense.getDepartment() == null ? 0 : expense.getDepartment().getId(),
+                expense.getCategory().getId());
+    }
+
+    @Override
+    public int compareTo(ExpenseRollupKey other) {
+        return ORDER.compare(this, other);
+    }
+}
@@ -0,0 +1,53 @@
+package com.wwerlang.expensemanager.expense;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface ExpenseRollupRepository extends JpaRepository<ExpenseRollup, ExpenseRollupKey> {
+
+    @Query("select r from ExpenseRollup r where r.id.month between :from and :to and r.expenseCount > 0 "
+            + "and (:departmentId is null or r.id.departmentId = :departmentId) "
+            + "order by r.id.month, r.id.departmentId, r.id.categoryId")
+    List<ExpenseRollup> findByMonthBetween(@Param("from") LocalDate from, @Param("to") LocalDate to,
+                                           @Param("departmentId") Long departmentId);
+
+    @Transactional
+    @Modifying
+    @Query("delete from ExpenseRollup r where r.id.month = :month")
+    int deleteByMonth(@Param("month") LocalDate month);
+
+    /**
+     * Adds the total and count of the delta to its group, creating the group on first use.
+     */
+    default void add(ExpenseRollup delta) {
+        ExpenseRollupKey id = delta.getId();
+        add(id.getMonth(), id.getDepartmentId(), id.getCategoryId(), delta.getTotal(), delta.getExpenseCount());
+    }
+
+    /**
+     * Increments in the database rather than read-modify-write, so concurrent writers to a group only wait on its row
+     * lock instead of overwriting each other.
+     */
+    @Transactional
+    @Modifying
+    @Query(nativeQuery = true, value = "merge into expense_rollup r "
+            + "using (values (cast(:month as date), cast(:departmentId as bigint), cast(:categoryId as bigint), "
+            + "cast(:total as bigint), cast(:count as bigint))) "
+            + "d (month_start, department_id, category_id, total, expense_count) "
+            + "on r.month_start = d.month_start and r.department_id = d.department_id "
+            + "and r.category_id = d.category_id "
+            + "when matched then update set total = r.total + d.total, "
+            + "expense_count = r.expense_count + d.expense_count "
+            + "when not matched then insert (month_start, department_id, category_id, total, expense_count) "
+            + "values (d.month_start, d.department_id, d.category_id, d.total, d.expense_count)")
+    int add(@Param("month") LocalDate month, @Param("departmentId") long departmentId,
+            @Param("categoryId") long categoryId, @Param("total") long total, @Param("count") long count);
+}
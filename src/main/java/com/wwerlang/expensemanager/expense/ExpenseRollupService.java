@@ -0,0 +1,145 @@
+package com.wwerlang.expensemanager.expense;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps per month, department and category totals of the expenses, so summaries are read from one small table
+ * instead of aggregating every expense ever written. Expense writes pass their changes to {@link #apply} in their own
+ * transaction, and {@link #reconcile()} periodically checks the totals against the raw expenses.
+ * <p>
+ * Totals are kept in minor units of the base currency, each expense converted with the {@link ExchangeRates} of the
+ * moment it is written. Reconciling converts the raw expenses with the current rates, so totals follow changed rates
+ * of past days at the next run.
+ */
+@Slf4j
+@Service
+public class ExpenseRollupService {
+
+    private static final Counter CORRECTIONS = Counter.builder("expense.rollup.corrections")
+            .description("Rollup groups found out of line with the raw expenses and corrected")
+            .register(Metrics.globalRegistry);
+
+    @Autowired
+    private ExpenseRollupRepository expenseRollupRepository;
+
+    @Autowired
+    private ExpenseRepository expenseRepository;
+
+    @Autowired
+    private ExchangeRates exchangeRates;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    /**
+     * Adds the added expenses to their groups and takes the removed ones out; an update passes the expense as it was
+     * in removed and as it is now in added. Must be called in the transaction writing the expenses.
+     */
+    public void apply(Collection<Expense> added, Collection<Expense> removed) {
+        // Sorted, so concurrent writers lock the rows of the groups they share in the same order.
+        Map<ExpenseRollupKey, ExpenseRollup> deltas = new TreeMap<>();
+        ExchangeRateTable rates = exchangeRates.table();
+        added.forEach(e -> accumulate(deltas, ExpenseRollupKey.of(e),
+                rates.convert(e.getAmount(), e.getCurrency(), e.getDate()), 1));
+        removed.forEach(e -> accumulate(deltas, ExpenseRollupKey.of(e),
+                -rates.convert(e.getAmount(), e.getCurrency(), e.getDate()), -1));
+
+        for (ExpenseRollup delta : deltas.values()) {
+            if (!isZero(delta)) {
+                expenseRollupRepository.add(delta);
+            }
+        }
+    }
+
+    public void removeMonth(YearMonth month) {
+        expenseRollupRepository.deleteByMonth(month.atDay(1));
+    }
+
+    public List<ExpenseSummaryDTO> summary(YearMonth from, YearMonth to, Long departmentId) {
+        List<ExpenseRollup> rollups = expenseRollupRepository.findByMonthBetween(from.atDay(1), to.atDay(1),
+                departmentId);
+
+        List<ExpenseSummaryDTO> summary = new ArrayList<>(rollups.size());
+        rollups.forEach(r -> summary.add(parseResponse(r)));
+        return summary;
+    }
+
+    /**
+     * Compares every group with the aggregate of the raw expenses and adds the difference where they disagree,
+     * returning the number of groups corrected.
+     * <p>
+     * Both are read from the same snapshot, so expenses written meanwhile do not show up as differences. The
+     * correction is added rather than set, which keeps the increments those writers made in the meantime.
+     */
+    @Scheduled(cron = "${expense.rollup.reconcile-cron:0 0 3 * * *}")
+    public int reconcile() {
+        TransactionTemplate snapshot = new TransactionTemplate(transactionManager);
+        snapshot.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        snapshot.setReadOnly(true);
+
+        ExchangeRateTable rates = exchangeRates.table();
+
+        List<ExpenseRollup> corrections = snapshot.execute(status -> {
+            Map<ExpenseRollupKey, ExpenseRollup> deltas = new TreeMap<>();
+
+            expenseRepository.summarize(raw -> {
+                ExpenseRollupKey key = new ExpenseRollupKey(raw.date().withDayOfMonth(1), raw.departmentId(),
+                        raw.categoryId());
+                accumulate(deltas, key, rates.convert(raw.amount(), raw.currency(), raw.date()), raw.count());
+            });
+
+            for (ExpenseRollup rollup : expenseRollupRepository.findAll()) {
+                accumulate(deltas, rollup.getId(), -rollup.getTotal(), -rollup.getExpenseCount());
+            }
+
+            return deltas.values().stream().filter(d -> !isZero(d)).toList();
+        });
+
+        if (!corrections.isEmpty()) {
+            for (ExpenseRollup delta : corrections) {
+                ExpenseRollupKey id = delta.getId();
+                log.warn("Expense rollup of {} for department {} and category {} was off by {} expenses and {}.",
+                        YearMonth.from(id.getMonth()), id.getDepartmentId(), id.getCategoryId(),
+                        delta.getExpenseCount(), ExchangeRateTable.amount(delta.getTotal(), rates.base()));
+            }
+
+            new TransactionTemplate(transactionManager).executeWithoutResult(status ->
+                    corrections.forEach(expenseRollupRepository::add));
+            CORRECTIONS.increment(corrections.size());
+        }
+
+        return corrections.size();
+    }
+
+    public ExpenseSummaryDTO parseResponse(ExpenseRollup rollup) {
+        ExpenseRollupKey id = rollup.getId();
+        return new ExpenseSummaryDTO(YearMonth.from(id.getMonth()), id.getDepartmentId(), id.getCategoryId(),
+                ExchangeRateTable.amount(rollup.getTotal(), exchangeRates.base()), rollup.getExpenseCount());
+    }
+
+    private static void accumulate(Map<ExpenseRollupKey, ExpenseRollup> deltas, ExpenseRollupKey key,
+                                   long total, long count) {
+        ExpenseRollup delta = deltas.computeIfAbsent(key, k -> new ExpenseRollup(k, 0, 0));
+        delta.setTotal(delta.getTotal() + total);
+        delta.setExpenseCount(delta.getExpenseCount() + count);
+    }
+
+    private static boolean isZero(ExpenseRollup delta) {
+        return delta.getExpenseCount() == 0 && delta.getTotal() == 0;
+    }
+}
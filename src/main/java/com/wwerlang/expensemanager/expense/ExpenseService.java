@@ -0,0 +1,362 @@
+package com.wwerlang.expensemanager.expense;
+
+import com.wwerlang.expensemanager.category.Category;
+import com.wwerlang.expensemanager.common.ChangeVersion;
+import com.wwerlang.expensemanager.common.PageDTO;
+import com.wwerlang.expensemanager.employee.Employee;
+import com.wwerlang.expensemanager.employee.EmployeeRepository;
+import com.wwerlang.expensemanager.exception.EntityConflictException;
+import com.wwerlang.expensemanager.exception.EntityNotFoundException;
+import com.wwerlang.expensemanager.metrics.MappingTimers;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+@Service
+public class ExpenseService {
+
+    private static final Timer PARSE_RESPONSE = MappingTimers.response("expense");
+    private static final Timer PARSE_REQUEST = MappingTimers.request("expense");
+    private static final DateTimeFormatter PARTITION_ID = DateTimeFormatter.ofPattern("yyyyMM");
+
+    @Value("${expense.partitions.archive-dir:archive}")
+    private Path archiveDirectory;
+
+    @Autowired
+    private ExpenseRepository expenseRepository;
+
+    @Autowired
+    private ExpensePartitions expensePartitions;
+
+    @Autowired
+    private ExpenseRollupService expenseRollupService;
+
+    @Autowired
+    private ExpenseColumnStore expenseColumnStore;
+
+    @Autowired
+    private ExpenseSketches expenseSketches;
+
+    @Autowired
+    private ExpenseBudgets expenseBudgets;
+
+    @Autowired
+    private ExchangeRates exchangeRates;
+
+    @Autowired
+    private ExpenseReceipts expenseReceipts;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final ChangeVersion changeVersion = new ChangeVersion("expense");
+
+    /**
+     * ETag of every find and list response, changing with each write to expenses.
+     */
+    public String eTag() {
+        return changeVersion.eTag();
+    }
+
+    public ExpenseDTO find(long id) {
+        Optional<Expense> expenseOptional = expenseRepository.findById(id);
+
+        if (expenseOptional.isPresent()) {
+            Expense expense = expenseOptional.get();
+            return parseResponse(expense);
+        } else {
+            throw new EntityNotFoundException("Expense", id);
+        }
+    }
+
+    /**
+     * Lists expenses by id, optionally only those from {@code from} to {@code to}, which reads only the monthly tables
+     * in that range.
+     */
+    public PageDTO<ExpenseDTO> list(long after, int limit, LocalDate from, LocalDate to) {
+        limit = PageDTO.limit(limit);
+        List<Expense> rows = expenseRepository.findByIdGreaterThanOrderByIdAsc(after, from, to, limit + 1);
+
+        List<ExpenseDTO> expenses = new ArrayList<>(rows.size());
+        rows.forEach(e -> expenses.add(parseResponse(e)));
+        return PageDTO.of(expenses, limit, ExpenseDTO::getId);
+    }
+
+    public ExpenseDTO save(ExpenseDTO expenseDTO) {
+        boolean isUpdate = expenseDTO.getId() != 0;
+        Expense expense = parseRequest(expenseDTO);
+
+        List<LocalDate> changedDays = new ArrayList<>(2);
+        Expense saved;
+        expensePartitions.lock().readLock().lock();
+
+        try {
+            saved = inTransaction(reservation ->
+                    isUpdate ? update(expense, reservation, changedDays) : create(expense, reservation));
+            expenseColumnStore.put(saved);
+            changeVersion.bump();
+
+            if (isUpdate) {
+                expenseSketches.markStale(changedDays);
+            } else {
+                expenseSketches.add(saved);
+            }
+        } finally {
+            expensePartitions.lock().readLock().unlock();
+        }
+
+        return parseResponse(saved);
+    }
+
+    public void delete(long id) throws IOException {
+        expensePartitions.lock().readLock().lock();
+
+        try {
+            Expense deleted = inTransaction(reservation -> {
+                Expense expense = expenseRepository.findById(id)
+                        .orElseThrow(() -> new EntityNotFoundException("Expense", id));
+                reservation.reserve(List.of(), List.of(expense));
+
+                if (expenseRepository.deleteIfVersionMatches(expense) != 1) {
+                    throw new EntityConflictException("Expense", id, expense.getVersion());
+                }
+
+                expenseRollupService.apply(List.of(), List.of(expense));
+                return expense;
+            });
+
+            expenseColumnStore.remove(deleted);
+            changeVersion.bump();
+            expenseSketches.markStale(List.of(deleted.getDate()));
+        } finally {
+            expensePartitions.lock().readLock().unlock();
+        }
+
+        expenseReceipts.deleteAll(id);
+    }
+
+    /**
+     * Inserts all expenses in one transaction, sent as one JDBC batch per month. Ids and versions in the request are
+     * ignored, so this only ever creates expenses.
+     */
+    public void insertAll(List<ExpenseDTO> expenseDTOs) {
+        insertAll(expenseDTOs, () -> {});
+    }
+
+    /**
+     * Same as {@link #insertAll(List)}, also running {@code alsoInTransaction} before the transaction commits.
+     */
+    public void insertAll(List<ExpenseDTO> expenseDTOs, Runnable alsoInTransaction) {
+        List<Expense> expenses = new ArrayList<>(expenseDTOs.size());
+
+        for (ExpenseDTO expenseDTO : expenseDTOs) {
+            Expense expense = parseRequest(expenseDTO);
+            expense.setId(0);
+            expense.setVersion(0);
+            expenses.add(expense);
+        }
+
+        expensePartitions.lock().readLock().lock();
+
+        try {
+            inTransaction(reservation -> {
+                assignDepartments(expenses);
+                reservation.reserve(expenses, List.of());
+                expenseRepository.insertAll(expenses);
+                expenseRollupService.apply(expenses, List.of());
+                alsoInTransaction.run();
+                return null;
+            });
+
+            expenseColumnStore.putAll(expenses);
+            changeVersion.bump();
+            expenseSketches.addAll(expenses);
+        } finally {
+            expensePartitions.lock().readLock().unlock();
+        }
+    }
+
+    /**
+     * Runs the write in a transaction with a budget reservation, which is committed after the transaction or released
+     * when it fails.
+     */
+    private <T> T inTransaction(Function<ExpenseBudgets.Reservation, T> write) {
+        ExpenseBudgets.Reservation reservation = expenseBudgets.reservation();
+        T result;
+
+        try {
+            result = transactionTemplate.execute(status -> write.apply(reservation));
+        } catch (RuntimeException e) {
+            reservation.release();
+            throw e;
+        }
+
+        reservation.commit();
+        return result;
+    }
+
+    private Expense create(Expense expense, ExpenseBudgets.Reservation reservation) {
+        assignDepartments(List.of(expense));
+        reservation.reserve(List.of(expense), List.of());
+        expense = expenseRepository.insert(expense);
+        expenseRollupService.apply(List.of(expense), List.of());
+        return expense;
+    }
+
+    /**
+     * Reads the expense as it is before updating it, since its old values have to come out of the rollups. The update
+     * still checks the version itself, so the expense read is exactly the one replaced. The days of both go to
+     * {@code changedDays}.
+     */
+    private Expense update(Expense expense, ExpenseBudgets.Reservation reservation, List<LocalDate> changedDays) {
+        long id = expense.getId();
+        Expense old = expenseRepository.findById(id).orElseThrow(() -> new EntityNotFoundException("Expense", id));
+
+        assignDepartments(List.of(expense));
+        reservation.reserve(List.of(expense), List.of(old));
+
+        if (old.getVersion() != expense.getVersion() || expenseRepository.updateIfVersionMatches(old, expense) != 1) {
+            throw new EntityConflictException("Expense", id, expense.getVersion());
+        }
+
+        expense.setVersion(expense.getVersion() + 1);
+        expenseRollupService.apply(List.of(expense), List.of(old));
+        changedDays.add(old.getDate());
+        changedDays.add(expense.getDate());
+        return expense;
+    }
+
+    /**
+     * Books each expense to the current department of its employee, looking all employees up in one statement.
+     * Expenses of unknown employees are left as they are and fail on the foreign key when written.
+     */
+    private void assignDepartments(List<Expense> expenses) {
+        Set<Long> employeeIds = new HashSet<>();
+        expenses.forEach(e -> employeeIds.add(e.getEmployee().getId()));
+
+        Map<Long, Employee> employees = new HashMap<>();
+        employeeRepository.findAllWithDepartmentByIdIn(employeeIds).forEach(e -> employees.put(e.getId(), e));
+
+        for (Expense expense : expenses) {
+            Employee employee = employees.get(expense.getEmployee().getId());
+
+            if (employee != null) {
+                expense.setEmployee(employee);
+                expense.setDepartment(employee.getDepartment());
+            }
+        }
+    }
+
+    public List<ExpensePartitionDTO> listPartitions() {
+        List<ExpensePartitionDTO> partitions = new ArrayList<>();
+
+        for (YearMonth month : expensePartitions.all()) {
+            long rows = expenseRepository.count(month);
+            partitions.add(new ExpensePartitionDTO(month, ExpensePartitions.table(month), rows));
+        }
+
+        return partitions;
+    }
+
+    /**
+     * Drops the table of the month with all its expenses, optionally writing them to a CSV file in the archive
+     * directory first, and takes them out of the rollups, the in-memory columns, the sketches and the budgets. Waits
+     * for running writes to finish and holds back new ones until all of it is done.
+     */
+    public void dropPartition(YearMonth month, boolean archive) {
+        Path file = archive ? archiveDirectory.resolve(ExpensePartitions.table(month) + ".csv") : null;
+        expensePartitions.lock().writeLock().lock();
+
+        try {
+            if (!expensePartitions.drop(month, file)) {
+                throw new EntityNotFoundException("Expense partition", Long.parseLong(month.format(PARTITION_ID)));
+            }
+
+            transactionTemplate.executeWithoutResult(status -> expenseRollupService.removeMonth(month));
+            expenseColumnStore.removeMonth(month);
+            expenseSketches.removeMonth(month);
+            expenseBudgets.removeMonth(month);
+            changeVersion.bump();
+        } finally {
+            expensePartitions.lock().writeLock().unlock();
+        }
+    }
+
+    public ExpenseDTO parseResponse(Expense expense) {
+        return PARSE_RESPONSE.record(() -> {
+            ExpenseDTO expenseDTO = new ExpenseDTO();
+            expenseDTO.setId(expense.getId());
+            expenseDTO.setEmployeeId(expense.getEmployee().getId());
+            expenseDTO.setCategoryId(expense.getCategory().getId());
+            expenseDTO.setDate(expense.getDate());
+            expenseDTO.setAmount(ExchangeRateTable.amount(expense.getAmount(), expense.getCurrency()));
+            expenseDTO.setCurrency(expense.getCurrency().getCurrencyCode());
+            expenseDTO.setDescription(expense.getDescription());
+            expenseDTO.setVersion(expense.getVersion());
+            return expenseDTO;
+        });
+    }
+
+    /**
+     * Takes the amount in minor units of its currency, rounded half up when it has more decimals. Expenses need a rate
+     * of their currency on their date, so they can be converted into the base currency.
+     */
+    public Expense parseRequest(ExpenseDTO expenseDTO) {
+        return PARSE_REQUEST.record(() -> {
+            Currency currency = expenseDTO.getCurrency() == null ? exchangeRates.base()
+                    : ExchangeRateTable.currency(expenseDTO.getCurrency());
+
+            if (expenseDTO.getAmount() == null) {
+                throw new IllegalArgumentException("An expense needs an amount.");
+            } else if (expenseDTO.getDate() == null) {
+                throw new IllegalArgumentException("An expense needs a date.");
+            } else if (expenseDTO.getEmployeeId() <= 0) {
+                throw new IllegalArgumentException("An expense needs an employee id.");
+            } else if (expenseDTO.getCategoryId() <= 0) {
+                throw new IllegalArgumentException("An expense needs a category id.");
+            } else if (!exchangeRates.table().hasRate(currency, expenseDTO.getDate())) {
+                throw new IllegalArgumentException("There is no exchange rate for " + currency + " on "
+                        + expenseDTO.getDate() + ".");
+            }
+
+            Expense expense = new Expense();
+            expense.setId(expenseDTO.getId());
+            expense.setDate(expenseDTO.getDate());
+            expense.setAmount(ExchangeRateTable.minorUnits(expenseDTO.getAmount(), currency));
+            expense.setCurrency(currency);
+            expense.setDescription(expenseDTO.getDescription());
+            expense.setVersion(expenseDTO.getVersion());
+
+            // Only the ids are needed to write the foreign keys.
+            Employee employee = new Employee();
+            employee.setId(expenseDTO.getEmployeeId());
+            expense.setEmployee(employee);
+
+            Category category = new Category();
+            category.setId(expenseDTO.getCategoryId());
+            expense.setCategory(category);
+
+            return expense;
+        });
+    }
+}
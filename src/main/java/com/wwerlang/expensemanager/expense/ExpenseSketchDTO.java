@@ -0,0 +1,30 @@
+package com.wwerlang.expensemanager.expense;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.SortedMap;
+
+/**
+ * Approximate statistics of the expenses of one department or category from {@code from} to {@code to}: the number
+ * of distinct employees with expenses and the amounts at the requested quantiles, keyed by quantile. The count is
+ * exact.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExpenseSketchDTO {
+
+    private LocalDate from;
+    private LocalDate to;
+    private Long departmentId;
+    private Long categoryId;
+    private long count;
+    private long distinctEmployees;
+    private SortedMap<Double, BigDecimal> amounts;
+}
@@ -0,0 +1,397 @@
+package com.wwerlang.expensemanager.expense;
+
+import com.wwerlang.expensemanager.common.HyperLogLog;
+import com.wwerlang.expensemanager.common.KllSketch;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Sketches of the expenses of every department and every category per day: a {@link HyperLogLog} of the employees
+ * with expenses and a {@link KllSketch} of the amounts in cents of the base currency. The days of each month are also
+ * kept merged into a month sketch, so any date range is answered by merging the sketches of the months it covers whole
+ * and of the days left over, at most a dozen a year and a few dozen days, without reading a single expense. Distinct
+ * employees are within 3.3% of the true count 95% of the time and quantiles within 1.65% of rank 99% of the time,
+ * however long the range.
+ * <p>
+ * Like {@link ExpenseColumnStore}, the sketches are loaded before the web server starts and then kept current by
+ * {@link ExpenseService} once each write committed. A sketch cannot take values out, so updates and deletions mark
+ * the days they touch stale instead, and {@link #rebuildStale()} recomputes those days from the stored expenses.
+ * Until then the days still count the old values. Amounts are converted with the exchange rates of when they were
+ * added or their day last rebuilt.
+ */
+@Slf4j
+@Component
+public class ExpenseSketches implements SmartLifecycle {
+
+    @Autowired
+    private ExpenseRepository expenseRepository;
+
+    @Autowired
+    private ExchangeRates exchangeRates;
+
+    @Autowired
+    private ExpensePartitions expensePartitions;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final SketchIndex departments = new SketchIndex();
+    private final SketchIndex categories = new SketchIndex();
+    private final TreeSet<LocalDate> stale = new TreeSet<>();
+
+    // The day being rebuilt and the expenses of it passed in since its expenses were read, see rebuildStale().
+    private LocalDate rebuilding;
+    private final List<Expense> addedWhileRebuilding = new ArrayList<>();
+
+    private volatile boolean running;
+
+    public void add(Expense expense) {
+        addAll(List.of(expense));
+    }
+
+    public void addAll(Collection<Expense> expenses) {
+        lock.writeLock().lock();
+
+        try {
+            for (Expense expense : expenses) {
+                write(expense, true);
+
+                if (expense.getDate().equals(rebuilding)) {
+                    addedWhileRebuilding.add(expense);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Marks days whose expenses changed other than by being added, to be rebuilt.
+     */
+    public void markStale(Collection<LocalDate> days) {
+        lock.writeLock().lock();
+
+        try {
+            stale.addAll(days);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops the sketches of every day of the month, for when its partition is dropped.
+     */
+    public void removeMonth(YearMonth month) {
+        lock.writeLock().lock();
+
+        try {
+            for (SketchIndex index : List.of(departments, categories)) {
+                index.removeDays(month.atDay(1), month.atEndOfMonth());
+                index.removeMonth(month);
+            }
+
+            stale.subSet(month.atDay(1), true, month.atEndOfMonth(), true).clear();
+
+            if (rebuilding != null && YearMonth.from(rebuilding).equals(month)) {
+                rebuilding = null;
+                addedWhileRebuilding.clear();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Days waiting to be rebuilt.
+     */
+    public int staleDays() {
+        lock.readLock().lock();
+
+        try {
+            return stale.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Estimates for the expenses of one department or one category from {@code from} to {@code to}, inclusive.
+     */
+    public ExpenseSketchDTO estimate(LocalDate from, LocalDate to, Long departmentId, Long categoryId,
+                                     List<Double> quantiles) {
+        if ((departmentId == null) == (categoryId == null)) {
+            throw new IllegalArgumentException("Give either a departmentId or a categoryId.");
+        } else if (from.isAfter(to)) {
+            throw new IllegalArgumentException("The range from " + from + " to " + to + " is empty.");
+        } else if (quantiles.stream().anyMatch(q -> !(q >= 0 && q <= 1))) {
+            throw new IllegalArgumentException("Quantiles are between 0 and 1.");
+        }
+
+        SketchIndex index = departmentId != null ? departments : categories;
+        long id = departmentId != null ? departmentId : categoryId;
+        Sketch sketch = new Sketch();
+
+        lock.readLock().lock();
+
+        try {
+            index.mergeInto(sketch, id, from, to);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        long[] values = sketch.amounts().quantiles(quantiles.stream().mapToDouble(Double::doubleValue).toArray());
+        SortedMap<Double, BigDecimal> quantileAmounts = new TreeMap<>();
+
+        for (int i = 0; i < values.length; i++) {
+            quantileAmounts.put(quantiles.get(i), ExchangeRateTable.amount(values[i], exchangeRates.base()));
+        }
+
+        return new ExpenseSketchDTO(from, to, departmentId, categoryId, sketch.amounts().count(),
+                sketch.employees().estimate(), quantileAmounts);
+    }
+
+    /**
+     * Recomputes the sketches of the stale days from their expenses, returning the number of days rebuilt.
+     * <p>
+     * A day's expenses are read without holding any lock, and the day is replaced holding the partition write lock,
+     * when no write is between its commit and passing its expenses in. Every expense committed before the read has
+     * been passed in by then, and the ones passed in since the read that it missed are added on top of it. So no
+     * expense is lost or counted twice, and estimates and writes only wait for the replacement, not for the query.
+     */
+    @Scheduled(fixedDelayString = "${expense.sketches.rebuild-delay:60000}")
+    public int rebuildStale() {
+        int rebuilt = 0;
+        LocalDate day;
+
+        while ((day = nextStale()) != null) {
+            List<Expense> expenses;
+
+            try {
+                expenses = expenseRepository.findByDate(day);
+            } catch (RuntimeException e) {
+                endRebuild(day, true);
+                throw e;
+            }
+
+            expensePartitions.lock().writeLock().lock();
+            lock.writeLock().lock();
+
+            try {
+                // Left alone when its month was dropped meanwhile.
+                if (day.equals(rebuilding)) {
+                    Set<Long> read = new HashSet<>();
+                    expenses.forEach(e -> read.add(e.getId()));
+
+                    departments.removeDays(day, day);
+                    categories.removeDays(day, day);
+                    expenses.forEach(e -> write(e, false));
+                    addedWhileRebuilding.stream().filter(e -> !read.contains(e.getId())).forEach(e -> write(e, false));
+                    departments.rebuildMonth(YearMonth.from(day));
+                    categories.rebuildMonth(YearMonth.from(day));
+                    rebuilt++;
+                }
+
+                endRebuild(day, false);
+            } finally {
+                lock.writeLock().unlock();
+                expensePartitions.lock().writeLock().unlock();
+            }
+        }
+
+        return rebuilt;
+    }
+
+    private LocalDate nextStale() {
+        lock.writeLock().lock();
+
+        try {
+            rebuilding = stale.pollFirst();
+            return rebuilding;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void endRebuild(LocalDate day, boolean failed) {
+        lock.writeLock().lock();
+
+        try {
+            if (failed && day.equals(rebuilding)) {
+                stale.add(day);
+            }
+
+            rebuilding = null;
+            addedWhileRebuilding.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void start() {
+        long started = System.nanoTime();
+
+        lock.writeLock().lock();
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                try (Stream<Expense> expenses = expenseRepository.streamAll()) {
+                    expenses.forEach(e -> write(e, true));
+                }
+            });
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Gauge.builder("expense.sketches.stale.days", this, ExpenseSketches::staleDays)
+                .description("Days whose expense sketches wait to be rebuilt after updates or deletions")
+                .register(Metrics.globalRegistry);
+
+        running = true;
+        log.info("Built expense sketches of {} department days and {} category days in {} ms.",
+                departments.days.size(), categories.days.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Loads before the web server starts, so no expense is written while they are being built.
+     */
+    @Override
+    public int getPhase() {
+        return DEFAULT_PHASE - 4096;
+    }
+
+    private void write(Expense expense, boolean toMonth) {
+        LocalDate date = expense.getDate();
+        long departmentId = expense.getDepartment() == null ? 0 : expense.getDepartment().getId();
+        long employeeId = expense.getEmployee().getId();
+        long cents = exchangeRates.toBase(expense);
+
+        departments.add(departmentId, date, employeeId, cents, toMonth);
+        categories.add(expense.getCategory().getId(), date, employeeId, cents, toMonth);
+    }
+
+    private static long key(long id, long period) {
+        return id << 32 | (period & 0xFFFFFFFFL);
+    }
+
+    private static long monthIndex(YearMonth month) {
+        return month.getYear() * 12L + month.getMonthValue() - 1;
+    }
+
+    /**
+     * Day and month sketches of every department or of every category, keyed by id in the upper half and epoch day
+     * or month index in the lower, see {@link #key}.
+     */
+    private static class SketchIndex {
+
+        private final Map<Long, Sketch> days = new HashMap<>();
+        private final Map<Long, Sketch> months = new HashMap<>();
+
+        void add(long id, LocalDate date, long employeeId, long cents, boolean toMonth) {
+            days.computeIfAbsent(key(id, date.toEpochDay()), k -> new Sketch()).add(employeeId, cents);
+
+            if (toMonth) {
+                months.computeIfAbsent(key(id, monthIndex(YearMonth.from(date))), k -> new Sketch())
+                        .add(employeeId, cents);
+            }
+        }
+
+        void mergeInto(Sketch sketch, long id, LocalDate from, LocalDate to) {
+            LocalDate day = from;
+
+            while (!day.isAfter(to)) {
+                YearMonth month = YearMonth.from(day);
+
+                if (day.getDayOfMonth() == 1 && !month.atEndOfMonth().isAfter(to)) {
+                    sketch.merge(months.get(key(id, monthIndex(month))));
+                    day = month.plusMonths(1).atDay(1);
+                } else {
+                    sketch.merge(days.get(key(id, day.toEpochDay())));
+                    day = day.plusDays(1);
+                }
+            }
+        }
+
+        void removeDays(LocalDate from, LocalDate to) {
+            long first = from.toEpochDay();
+            long last = to.toEpochDay();
+            days.keySet().removeIf(key -> (int) (long) key >= first && (int) (long) key <= last);
+        }
+
+        void removeMonth(YearMonth month) {
+            int index = (int) monthIndex(month);
+            months.keySet().removeIf(key -> (int) (long) key == index);
+        }
+
+        /**
+         * Replaces the month sketches of the month with the merge of its day sketches.
+         */
+        void rebuildMonth(YearMonth month) {
+            removeMonth(month);
+
+            long first = month.atDay(1).toEpochDay();
+            long last = month.atEndOfMonth().toEpochDay();
+
+            days.forEach((key, sketch) -> {
+                if ((int) (long) key >= first && (int) (long) key <= last) {
+                    months.computeIfAbsent(key(key >>> 32, monthIndex(month)), k -> new Sketch()).merge(sketch);
+                }
+            });
+        }
+    }
+
+    private record Sketch(HyperLogLog employees, KllSketch amounts) {
+
+        Sketch() {
+            this(new HyperLogLog(), new KllSketch());
+        }
+
+        void add(long employeeId, long cents) {
+            employees.add(employeeId);
+            amounts.add(cents);
+        }
+
+        void merge(Sketch other) {
+            if (other != null) {
+                employees.merge(other.employees);
+                amounts.merge(other.amounts);
+            }
+        }
+    }
+}
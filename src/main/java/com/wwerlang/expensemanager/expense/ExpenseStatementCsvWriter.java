@@ -0,0 +1,95 @@
+package com.wwerlang.expensemanager.expense;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Flattens department statements into CSV: one {@code expense} row per expense, followed by an
+ * {@code employee_total} row per employee and a {@code department_total} row per department. Totals are in the base
+ * currency and leave the currency empty. Each department is flushed once written.
+ */
+public class ExpenseStatementCsvWriter implements Consumer<DepartmentStatementDTO>, Closeable {
+
+    static final String HEADER = "type,month,department_id,department_name,employee_id,first_name,last_name,"
+            + "expense_id,date,category_id,description,amount,currency,count";
+
+    private final Writer writer;
+
+    public ExpenseStatementCsvWriter(OutputStream outputStream) throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        writer.write(HEADER);
+        writer.write('\n');
+    }
+
+    @Override
+    public void accept(DepartmentStatementDTO department) {
+        try {
+            for (EmployeeStatementDTO employee : department.getEmployees()) {
+                for (ExpenseDTO expense : employee.getExpenses()) {
+                    row("expense", department, employee, expense.getId(), expense.getDate(), expense.getCategoryId(),
+                            expense.getDescription(), expense.getAmount(), expense.getCurrency(), null);
+                }
+
+                row("employee_total", department, employee, null, null, null, null, employee.getTotal(), null,
+                        employee.getCount());
+            }
+
+            row("department_total", department, null, null, null, null, null, department.getTotal(), null,
+                    department.getCount());
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.flush();
+    }
+
+    private void row(String type, DepartmentStatementDTO department, EmployeeStatementDTO employee, Object... rest)
+            throws IOException {
+        writer.write(type);
+        field(department.getMonth());
+        field(department.getDepartmentId());
+        field(department.getDepartmentName());
+        field(employee == null ? null : employee.getEmployeeId());
+        field(employee == null ? null : employee.getFirstName());
+        field(employee == null ? null : employee.getLastName());
+
+        for (Object value : rest) {
+            field(value);
+        }
+
+        writer.write('\n');
+    }
+
+    /**
+     * Quotes values holding a comma, quote or line break, doubling the quotes inside.
+     */
+    private void field(Object value) throws IOException {
+        writer.write(',');
+
+        if (value == null) {
+            return;
+        }
+
+        String text = value instanceof BigDecimal amount ? amount.toPlainString() : value.toString();
+
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            writer.write(text);
+        } else {
+            writer.write('"');
+            writer.write(text.replace("\"", "\"\""));
+            writer.write('"');
+        }
+    }
+}
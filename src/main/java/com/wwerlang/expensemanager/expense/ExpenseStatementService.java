@@ -0,0 +1,222 @@
+package com.wwerlang.expensemanager.expense;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Month-end statements per department: every employee currently in the department with their expenses of the month
+ * and the totals in the base currency. Departments are built on a fork-join pool, each split into slices of up to
+ * {@link #SLICE_SIZE} employees that are read by a query of their own, and handed to the consumer in department order
+ * as they complete, so only a few departments are held in memory at a time.
+ * <p>
+ * A semaphore shared by all statements caps the queries running at once at the configured parallelism, which keeps
+ * the rest of the connection pool free for requests. Slices are read on separate connections, so a month that is
+ * still being written to may come out with expenses of different moments; statements are meant for closed months.
+ */
+@Service
+public class ExpenseStatementService {
+
+    static final int SLICE_SIZE = 250;
+
+    @Value("${expense.statements.parallelism:4}")
+    private int parallelism;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ExpensePartitions expensePartitions;
+
+    @Autowired
+    private ExchangeRates exchangeRates;
+
+    private ForkJoinPool pool;
+    private Semaphore queries;
+
+    @PostConstruct
+    void start() {
+        pool = new ForkJoinPool(parallelism);
+        queries = new Semaphore(parallelism);
+    }
+
+    @PreDestroy
+    void stop() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * Hands the statement of every department to the consumer, ordered by department id, on the calling thread.
+     */
+    public void write(YearMonth month, Consumer<DepartmentStatementDTO> consumer) {
+        String table = expensePartitions.all().contains(month) ? ExpensePartitions.table(month) : null;
+        List<DepartmentStatementDTO> departments = query(() -> jdbcTemplate.query(
+                "select id, name from department order by id", (rs, rowNum) -> new DepartmentStatementDTO(
+                        rs.getLong("id"), rs.getString("name"), month, BigDecimal.ZERO, 0, List.of())));
+
+        // Keeps one department ahead of each thread, so the pool has work while the consumer writes.
+        Deque<ForkJoinTask<DepartmentStatementDTO>> pending = new ArrayDeque<>();
+
+        try {
+            for (DepartmentStatementDTO department : departments) {
+                pending.add(pool.submit(new DepartmentTask(department, table)));
+
+                if (pending.size() > parallelism) {
+                    consumer.accept(pending.poll().join());
+                }
+            }
+
+            while (!pending.isEmpty()) {
+                consumer.accept(pending.poll().join());
+            }
+        } finally {
+            pending.forEach(task -> task.cancel(false));
+        }
+    }
+
+    private <T> T query(Supplier<T> query) {
+        queries.acquireUninterruptibly();
+
+        try {
+            return query.get();
+        } finally {
+            queries.release();
+        }
+    }
+
+    private class DepartmentTask extends RecursiveTask<DepartmentStatementDTO> {
+
+        private final DepartmentStatementDTO department;
+        private final String table;
+
+        DepartmentTask(DepartmentStatementDTO department, String table) {
+            this.department = department;
+            this.table = table;
+        }
+
+        @Override
+        protected DepartmentStatementDTO compute() {
+            List<Long> ids = query(() -> jdbcTemplate.queryForList(
+                    "select id from employee where department_id = ? order by id", Long.class,
+                    department.getDepartmentId()));
+            List<EmployeeStatementDTO> employees = ids.isEmpty() ? List.of()
+                    : new SliceTask(department.getDepartmentId(), table, ids, 0, ids.size()).invoke();
+
+            BigDecimal total = BigDecimal.ZERO;
+            long count = 0;
+
+            for (EmployeeStatementDTO employee : employees) {
+                total = total.add(employee.getTotal());
+                count += employee.getCount();
+            }
+
+            return new DepartmentStatementDTO(department.getDepartmentId(), department.getDepartmentName(),
+                    department.getMonth(), total, count, employees);
+        }
+    }
+
+    /**
+     * Statements of the employees from {@code ids[from]} to {@code ids[to - 1]}, split in halves down to slices.
+     */
+    private class SliceTask extends RecursiveTask<List<EmployeeStatementDTO>> {
+
+        private final long departmentId;
+        private final String table;
+        private final List<Long> ids;
+        private final int from;
+        private final int to;
+
+        SliceTask(long departmentId, String table, List<Long> ids, int from, int to) {
+            this.departmentId = departmentId;
+            this.table = table;
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<EmployeeStatementDTO> compute() {
+            if (to - from <= SLICE_SIZE) {
+                return query(this::read);
+            }
+
+            int middle = (from + to) >>> 1;
+            SliceTask left = new SliceTask(departmentId, table, ids, from, middle);
+            left.fork();
+            List<EmployeeStatementDTO> right = new SliceTask(departmentId, table, ids, middle, to).compute();
+
+            List<EmployeeStatementDTO> employees = new ArrayList<>(left.join());
+            employees.addAll(right);
+            return employees;
+        }
+
+        /**
+         * One row per expense, or a single row without an expense for employees that have none, ordered by employee.
+         */
+        private List<EmployeeStatementDTO> read() {
+            String sql = table == null
+                    ? "select e.id employee_id, e.first_name, e.last_name, null id, null category_id, "
+                    + "null expense_date, null amount, null currency, null description, null version "
+                    + "from employee e where e.department_id = ? and e.id between ? and ? order by e.id"
+                    : "select e.id employee_id, e.first_name, e.last_name, x.id, x.category_id, x.expense_date, "
+                    + "x.amount, x.currency, x.description, x.version "
+                    + "from employee e left join " + table + " x on x.employee_id = e.id "
+                    + "where e.department_id = ? and e.id between ? and ? order by e.id, x.expense_date, x.id";
+
+            List<EmployeeStatementDTO> employees = new ArrayList<>(to - from);
+            // Totals in minor units of the base currency, by position in employees.
+            long[] totals = new long[to - from];
+            ExchangeRateTable rates = exchangeRates.table();
+
+            jdbcTemplate.query(sql, (RowCallbackHandler) rs -> {
+                long employeeId = rs.getLong("employee_id");
+                EmployeeStatementDTO employee = employees.isEmpty() ? null : employees.get(employees.size() - 1);
+
+                if (employee == null || employee.getEmployeeId() != employeeId) {
+                    employee = new EmployeeStatementDTO(employeeId, rs.getString("first_name"),
+                            rs.getString("last_name"), null, 0, new ArrayList<>());
+                    employees.add(employee);
+                }
+
+                String code = rs.getString("currency");
+
+                if (code != null) {
+                    Currency currency = Currency.getInstance(code);
+                    LocalDate date = rs.getObject("expense_date", LocalDate.class);
+                    long amount = rs.getLong("amount");
+
+                    employee.getExpenses().add(new ExpenseDTO(rs.getLong("id"), employeeId, rs.getLong("category_id"),
+                            date, ExchangeRateTable.amount(amount, currency), code, rs.getString("description"),
+                            rs.getLong("version")));
+                    totals[employees.size() - 1] += rates.convert(amount, currency, date);
+                    employee.setCount(employee.getCount() + 1);
+                }
+            }, departmentId, ids.get(from), ids.get(to - 1));
+
+            for (int i = 0; i < employees.size(); i++) {
+                employees.get(i).setTotal(ExchangeRateTable.amount(totals[i], rates.base()));
+            }
+
+            return employees;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.wwerlang.expensemanager.expense;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.YearMonth;
+
+/**
+ * Total in the base currency and count of the expenses of one month, department and category. Department 0 stands for
+ * employees without a department.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExpenseSummaryDTO {
+
+    private YearMonth month;
+    private long departmentId;
+    private long categoryId;
+    private BigDecimal total;
+    private long count;
+}
@@ -0,0 +1,29 @@
+package com.wwerlang.expensemanager.expense;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Journal position up to which ingested expenses have been written, saved in the same transaction as they are.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "ingest_checkpoint")
+public class IngestCheckpoint {
+
+    @Id
+    @Column(name = "name", length = 50)
+    private String name;
+
+    @Column(name = "journal_position", nullable = false)
+    private long position;
+}
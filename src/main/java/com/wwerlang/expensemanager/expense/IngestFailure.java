@@ -0,0 +1,54 @@
+package com.wwerlang.expensemanager.expense;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * An ingested expense that was acknowledged but could not be written, kept as it was submitted together with the
+ * reason, so the client can look it up and submit it again once fixed.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Entity
+@Table(name = "ingest_failure")
+public class IngestFailure {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "ingest_failure_seq")
+    @SequenceGenerator(name = "ingest_failure_seq", sequenceName = "ingest_failure_seq", allocationSize = 50)
+    @Column(name = "id")
+    private long id;
+
+    @Column(name = "employee_id", nullable = false)
+    private long employeeId;
+
+    @Column(name = "category_id", nullable = false)
+    private long categoryId;
+
+    @Column(name = "expense_date")
+    private LocalDate date;
+
+    @Column(name = "amount", precision = 38, scale = 10)
+    private BigDecimal amount;
+
+    @Column(name = "currency")
+    private String currency;
+
+    @Column(name = "description", length = 10000)
+    private String description;
+
+    @Column(name = "error", length = 1000)
+    private String error;
+
+    @Column(name = "failed_at", nullable = false)
+    private Instant failedAt;
+}
@@ -0,0 +1,20 @@
+package com.wwerlang.expensemanager.expense;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestFailureDTO {
+
+    private long id;
+    private ExpenseDTO expense;
+    private String error;
+    private Instant failedAt;
+}
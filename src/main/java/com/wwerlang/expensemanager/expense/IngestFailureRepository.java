@@ -0,0 +1,13 @@
+package com.wwerlang.expensemanager.expense;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface IngestFailureRepository extends JpaRepository<IngestFailure, Long> {
+
+    List<IngestFailure> findByIdGreaterThanOrderByIdAsc(long id, Limit limit);
+}
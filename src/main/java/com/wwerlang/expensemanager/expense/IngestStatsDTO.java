@@ -0,0 +1,18 @@
+package com.wwerlang.expensemanager.expense;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestStatsDTO {
+
+    private int queued;
+    private int capacity;
+    private long written;
+    private long failed;
+}
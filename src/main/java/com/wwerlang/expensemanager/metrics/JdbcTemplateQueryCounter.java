@@ -0,0 +1,37 @@
+package com.wwerlang.expensemanager.metrics;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Adds the statements run through the {@link JdbcTemplate} to the {@link QueryCounter}, as the expense tables are
+ * read and written with it rather than with Hibernate. Each call of a method running SQL counts as one statement; a
+ * batch counts once, as it does when Hibernate prepares it.
+ */
+public class JdbcTemplateQueryCounter implements BeanPostProcessor {
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof JdbcTemplate)) {
+            return bean;
+        }
+
+        ProxyFactory factory = new ProxyFactory(bean);
+        factory.setProxyTargetClass(true);
+        factory.addAdvice((MethodInterceptor) invocation -> {
+            if (runsStatement(invocation.getMethod().getName())) {
+                QueryCounter.count();
+            }
+
+            return invocation.proceed();
+        });
+        return factory.getProxy();
+    }
+
+    private static boolean runsStatement(String method) {
+        return method.startsWith("query") || method.startsWith("update") || method.startsWith("batchUpdate")
+                || method.equals("execute") || method.equals("call");
+    }
+}
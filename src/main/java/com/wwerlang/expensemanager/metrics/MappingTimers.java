@@ -0,0 +1,32 @@
+package com.wwerlang.expensemanager.metrics;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Timers for the entity/DTO mappers, registered on the global registry so that services can hold them in static fields.
+ * Spring Boot adds its registries to the global one; without it, as in unit tests, the timers record nothing.
+ */
+public final class MappingTimers {
+
+    public static final String METRIC = "expensemanager.mapping";
+
+    private MappingTimers() {
+    }
+
+    public static Timer response(String entity) {
+        return of(entity, "response");
+    }
+
+    public static Timer request(String entity) {
+        return of(entity, "request");
+    }
+
+    private static Timer of(String entity, String direction) {
+        return Timer.builder(METRIC)
+                .description("Time spent mapping between entities and DTOs")
+                .tag("entity", entity)
+                .tag("direction", direction)
+                .register(Metrics.globalRegistry);
+    }
+}
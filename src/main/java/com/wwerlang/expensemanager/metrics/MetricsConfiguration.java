@@ -0,0 +1,28 @@
+package com.wwerlang.expensemanager.metrics;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class MetricsConfiguration implements WebMvcConfigurer {
+
+    /**
+     * Static, as post processors are created before the configuration they are declared in.
+     */
+    @Bean
+    public static JdbcTemplateQueryCounter jdbcTemplateQueryCounter() {
+        return new JdbcTemplateQueryCounter();
+    }
+
+    @Bean
+    public HandlerObservationConvention handlerObservationConvention() {
+        return new HandlerObservationConvention();
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new QueryCountInterceptor());
+    }
+}
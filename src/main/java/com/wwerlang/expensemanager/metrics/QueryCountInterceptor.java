@@ -0,0 +1,57 @@
+package com.wwerlang.expensemanager.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Records the number of SQL statements each request ran as {@code http.server.requests.queries}, tagged like the
+ * request latency so both can be read side by side. Statements of Hibernate and of the {@code JdbcTemplate} count
+ * alike. For async requests only the statements run before the handler returned are counted.
+ */
+public class QueryCountInterceptor implements AsyncHandlerInterceptor {
+
+    public static final String METRIC = "http.server.requests.queries";
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // Async and error dispatches run the interceptor again for a request that was already counted.
+        if (request.getDispatcherType() == DispatcherType.REQUEST) {
+            QueryCounter.start();
+        }
+
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response,
+                                               Object handler) {
+        record(request, handler, QueryCounter.stop());
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+                                Exception ex) {
+        record(request, handler, QueryCounter.stop());
+    }
+
+    private void record(HttpServletRequest request, Object handler, int count) {
+        if (count < 0) {
+            return;
+        }
+
+        Object uri = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        DistributionSummary.builder(METRIC)
+                .description("SQL statements run per request")
+                .tag("method", request.getMethod())
+                .tag("uri", uri == null ? "UNKNOWN" : uri.toString())
+                .tag("handler", HandlerObservationConvention.handlerName(handler))
+                .publishPercentileHistogram()
+                .register(Metrics.globalRegistry)
+                .record(count);
+    }
+}
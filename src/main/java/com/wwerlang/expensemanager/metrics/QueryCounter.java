@@ -0,0 +1,41 @@
+package com.wwerlang.expensemanager.metrics;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Counts the SQL statements Hibernate prepares on the current thread between {@link #start()} and {@link #stop()}.
+ * Registered through {@code hibernate.session_factory.statement_inspector}, so Hibernate creates the instance and the
+ * count lives in a thread local. Statements run through the {@code JdbcTemplate}, which Hibernate never sees, are
+ * added by {@link JdbcTemplateQueryCounter}.
+ */
+public class QueryCounter implements StatementInspector {
+
+    private static final ThreadLocal<int[]> COUNT = new ThreadLocal<>();
+
+    public static void start() {
+        COUNT.set(new int[1]);
+    }
+
+    /**
+     * Returns the statements counted since {@link #start()}, or -1 when counting was not started on this thread.
+     */
+    public static int stop() {
+        int[] count = COUNT.get();
+        COUNT.remove();
+        return count == null ? -1 : count[0];
+    }
+
+    @Override
+    public String inspect(String sql) {
+        count();
+        return sql;
+    }
+
+    static void count() {
+        int[] count = COUNT.get();
+
+        if (count != null) {
+            count[0]++;
+        }
+    }
+}
@@ -6,17 +6,28 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -26,8 +37,8 @@ public class CategoryControllerTest {
     private static final String PATH = "/category";
 
     private static final List<Category> CATEGORIES = List.of(
-            new Category(1, "Meal", "Lunch, dinner and breakfast.", true),
-            new Category(2, "Hotel", "Home accommodation.", false)
+            new Category(1, "Meal", "Lunch, dinner and breakfast.", true, 0),
+            new Category(2, "Hotel", "Home accommodation.", false, 0)
     );
 
     @Autowired
@@ -39,6 +50,9 @@ public class CategoryControllerTest {
     @MockBean
     private CategoryRepository categoryRepository;
 
+    @MockBean
+    private TransactionTemplate transactionTemplate;
+
     @BeforeEach
     void mockCategoryRepository() {
         lenient().when(categoryRepository.findById(anyLong())).thenAnswer(invocationOnMock -> {
@@ -46,7 +60,11 @@ public class CategoryControllerTest {
             return CATEGORIES.stream().filter(e -> e.getId() == id).findFirst();
         });
 
-        lenient().when(categoryRepository.findAll()).thenReturn(CATEGORIES);
+        lenient().when(categoryRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any(Limit.class))).thenAnswer(invocationOnMock -> {
+            long id = invocationOnMock.getArgument(0);
+            Limit limit = invocationOnMock.getArgument(1);
+            return CATEGORIES.stream().filter(e -> e.getId() > id).limit(limit.max()).toList();
+        });
 
         lenient().when(categoryRepository.save(any(Category.class))).thenAnswer(invocationOnMock -> {
             Category category = invocationOnMock.getArgument(0);
@@ -54,10 +72,29 @@ public class CategoryControllerTest {
             return category;
         });
 
+        lenient().when(categoryRepository.findAllById(anyIterable())).thenAnswer(invocationOnMock -> {
+            Iterable<Long> ids = invocationOnMock.getArgument(0);
+            List<Long> idList = new ArrayList<>();
+            ids.forEach(idList::add);
+            return CATEGORIES.stream().filter(e -> idList.contains(e.getId())).toList();
+        });
+
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocationOnMock -> {
+            TransactionCallback<?> callback = invocationOnMock.getArgument(0);
+            return callback.doInTransaction(null);
+        });
+
         lenient().when(categoryRepository.existsById(anyLong())).thenAnswer(invocationOnMock -> {
             long id = invocationOnMock.getArgument(0);
             return CATEGORIES.stream().anyMatch(e -> e.getId() == id);
         });
+
+        lenient().when(categoryRepository.updateIfVersionMatches(any(Category.class))).thenAnswer(invocationOnMock -> {
+            Category category = invocationOnMock.getArgument(0);
+            return (int) CATEGORIES.stream()
+                    .filter(e -> e.getId() == category.getId() && e.getVersion() == category.getVersion())
+                    .count();
+        });
     }
 
     @Test
@@ -83,15 +120,61 @@ public class CategoryControllerTest {
     void testList() throws Exception {
         mockMvc.perform(get(PATH))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$").isArray())
-                .andExpect(jsonPath("$[0].id").value("1"))
-                .andExpect(jsonPath("$[0].name").value("Meal"))
-                .andExpect(jsonPath("$[0].description").value("Lunch, dinner and breakfast."))
-                .andExpect(jsonPath("$[0].active").value(true))
-                .andExpect(jsonPath("$[1].id").value("2"))
-                .andExpect(jsonPath("$[1].name").value("Hotel"))
-                .andExpect(jsonPath("$[1].description").value("Home accommodation."))
-                .andExpect(jsonPath("$[1].active").value(false));
+                .andExpect(jsonPath("$.items").isArray())
+                .andExpect(jsonPath("$.next").doesNotExist())
+                .andExpect(jsonPath("$.items[0].id").value("1"))
+                .andExpect(jsonPath("$.items[0].name").value("Meal"))
+                .andExpect(jsonPath("$.items[0].description").value("Lunch, dinner and breakfast."))
+                .andExpect(jsonPath("$.items[0].active").value(true))
+                .andExpect(jsonPath("$.items[1].id").value("2"))
+                .andExpect(jsonPath("$.items[1].name").value("Hotel"))
+                .andExpect(jsonPath("$.items[1].description").value("Home accommodation."))
+                .andExpect(jsonPath("$.items[1].active").value(false));
+    }
+
+    @Test
+    void testListNotModified() throws Exception {
+        String eTag = mockMvc.perform(get(PATH))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get(PATH).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, eTag))
+                .andExpect(content().string(""));
+
+        verify(categoryService, times(1)).list(0, 100, null);
+    }
+
+    @Test
+    void testListModifiedAfterSave() throws Exception {
+        String eTag = mockMvc.perform(get(PATH))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        String input = "{ \"id\": \"2\", \"name\": \"Hotel\", \"active\": true }";
+        mockMvc.perform(post(PATH).contentType(MediaType.APPLICATION_JSON).content(input))
+                .andExpect(status().isOk());
+
+        String next = mockMvc.perform(get(PATH).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(2))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        assertNotEquals(eTag, next);
+    }
+
+    @Test
+    void testListNextPage() throws Exception {
+        mockMvc.perform(get(PATH).param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(1))
+                .andExpect(jsonPath("$.items[0].id").value("1"))
+                .andExpect(jsonPath("$.next").value(1));
+
+        mockMvc.perform(get(PATH).param("after", "1").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(1))
+                .andExpect(jsonPath("$.items[0].id").value("2"))
+                .andExpect(jsonPath("$.next").doesNotExist());
     }
 
     @Test
@@ -128,4 +211,36 @@ public class CategoryControllerTest {
 
         assertEquals("Category not found with ID 3.", response);
     }
+
+    @Test
+    void testUpdateConflict() throws Exception {
+        String input = "{ \"id\": \"2\", \"name\": \"Hotel\", \"description\": \"Home accommodation.\", \"active\": true, \"version\": 5 }";
+
+        String response = mockMvc.perform(post(PATH).contentType(MediaType.APPLICATION_JSON).content(input))
+                .andExpect(status().isConflict())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals("Category with ID 2 was modified after version 5.", response);
+    }
+
+    @Test
+    void testSaveAll() throws Exception {
+        String input = "[ " + "{ \"name\": \"Flight\", \"description\": \"Air flights.\", \"active\": true }" + ", "
+                + "{ \"id\": \"2\", \"name\": \"Hotel\", \"description\": \"Home accommodation.\", \"active\": true }" + ", "
+                + "{ \"id\": \"3\", \"name\": \"Taxi\", \"description\": \"Cab rides.\", \"active\": true }" + " ]";
+
+        mockMvc.perform(post(PATH + "/batch").contentType(MediaType.APPLICATION_JSON).content(input))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].index").value(0))
+                .andExpect(jsonPath("$[0].status").value("CREATED"))
+                .andExpect(jsonPath("$[0].item.id").value(3))
+                .andExpect(jsonPath("$[0].item.name").value("Flight"))
+                .andExpect(jsonPath("$[1].index").value(1))
+                .andExpect(jsonPath("$[1].status").value("UPDATED"))
+                .andExpect(jsonPath("$[1].item.id").value(2))
+                .andExpect(jsonPath("$[2].index").value(2))
+                .andExpect(jsonPath("$[2].status").value("NOT_FOUND"))
+                .andExpect(jsonPath("$[2].error").value("Category not found with ID 3."));
+    }
 }
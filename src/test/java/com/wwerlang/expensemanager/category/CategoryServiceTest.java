@@ -1,5 +1,9 @@
 package com.wwerlang.expensemanager.category;
 
+import com.wwerlang.expensemanager.common.BatchResultDTO;
+import com.wwerlang.expensemanager.common.CacheStatsDTO;
+import com.wwerlang.expensemanager.common.PageDTO;
+import com.wwerlang.expensemanager.exception.EntityConflictException;
 import com.wwerlang.expensemanager.exception.EntityNotFoundException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -7,20 +11,28 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyIterable;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 @ExtendWith(MockitoExtension.class)
 class CategoryServiceTest {
 
     private static final List<Category> CATEGORIES = List.of(
-            new Category(1, "Meal", "Lunch, dinner and breakfast.", true),
-            new Category(2, "Hotel", "Home accommodation.", false)
+            new Category(1, "Meal", "Lunch, dinner and breakfast.", true, 0),
+            new Category(2, "Hotel", "Home accommodation.", false, 0)
     );
 
     @InjectMocks
@@ -29,6 +41,9 @@ class CategoryServiceTest {
     @Mock
     private CategoryRepository categoryRepository;
 
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
     @BeforeEach
     void mockCategoryRepository() {
         lenient().when(categoryRepository.findById(anyLong())).thenAnswer(invocationOnMock -> {
@@ -36,7 +51,20 @@ class CategoryServiceTest {
             return CATEGORIES.stream().filter(e -> e.getId() == id).findFirst();
         });
 
-        lenient().when(categoryRepository.findAll()).thenReturn(CATEGORIES);
+        lenient().when(categoryRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any(Limit.class))).thenAnswer(invocationOnMock -> {
+            long id = invocationOnMock.getArgument(0);
+            Limit limit = invocationOnMock.getArgument(1);
+            return CATEGORIES.stream().filter(e -> e.getId() > id).limit(limit.max()).toList();
+        });
+
+        lenient().when(categoryRepository.findByActiveAndIdGreaterThanOrderByIdAsc(anyBoolean(), anyLong(),
+                any(Limit.class))).thenAnswer(invocationOnMock -> {
+            boolean active = invocationOnMock.getArgument(0);
+            long id = invocationOnMock.getArgument(1);
+            Limit limit = invocationOnMock.getArgument(2);
+            return CATEGORIES.stream().filter(e -> e.isActive() == active && e.getId() > id)
+                    .limit(limit.max()).toList();
+        });
 
         lenient().when(categoryRepository.save(any(Category.class))).thenAnswer(invocationOnMock -> {
             Category category = invocationOnMock.getArgument(0);
@@ -44,10 +72,29 @@ class CategoryServiceTest {
             return category;
         });
 
+        lenient().when(categoryRepository.findAllById(anyIterable())).thenAnswer(invocationOnMock -> {
+            Iterable<Long> ids = invocationOnMock.getArgument(0);
+            List<Long> idList = new ArrayList<>();
+            ids.forEach(idList::add);
+            return CATEGORIES.stream().filter(e -> idList.contains(e.getId())).toList();
+        });
+
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocationOnMock -> {
+            TransactionCallback<?> callback = invocationOnMock.getArgument(0);
+            return callback.doInTransaction(null);
+        });
+
         lenient().when(categoryRepository.existsById(anyLong())).thenAnswer(invocationOnMock -> {
             long id = invocationOnMock.getArgument(0);
             return CATEGORIES.stream().anyMatch(e -> e.getId() == id);
         });
+
+        lenient().when(categoryRepository.updateIfVersionMatches(any(Category.class))).thenAnswer(invocationOnMock -> {
+            Category category = invocationOnMock.getArgument(0);
+            return (int) CATEGORIES.stream()
+                    .filter(e -> e.getId() == category.getId() && e.getVersion() == category.getVersion())
+                    .count();
+        });
     }
 
     @Test
@@ -65,9 +112,38 @@ class CategoryServiceTest {
         assertEquals("Category not found with ID 3.", e.getMessage());
     }
 
+    @Test
+    void testFindCached() {
+        categoryService.find(1L);
+        categoryService.find(1L);
+        verify(categoryRepository, times(1)).findById(1L);
+
+        CacheStatsDTO stats = categoryService.cacheStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+    }
+
+    @Test
+    void testUpdateInvalidatesCache() {
+        categoryService.find(2L);
+        categoryService.list(0, 100, null);
+
+        CategoryDTO category = categoryService.find(2L);
+        category.setActive(true);
+        categoryService.save(category);
+
+        categoryService.find(2L);
+        categoryService.list(0, 100, null);
+        verify(categoryRepository, times(2)).findById(2L);
+        verify(categoryRepository, times(2)).findByIdGreaterThanOrderByIdAsc(0L, Limit.of(101));
+    }
+
     @Test
     void testList() {
-        List<CategoryDTO> categories = categoryService.list();
+        PageDTO<CategoryDTO> page = categoryService.list(0, 100, null);
+        assertNull(page.getNext());
+
+        List<CategoryDTO> categories = page.getItems();
         assertEquals(2, categories.size());
 
         assertEquals(1, categories.get(0).getId());
@@ -81,9 +157,38 @@ class CategoryServiceTest {
         assertFalse(categories.get(1).isActive());
     }
 
+    @Test
+    void testListActive() {
+        PageDTO<CategoryDTO> active = categoryService.list(0, 100, true);
+        assertEquals(1, active.getItems().size());
+        assertEquals("Meal", active.getItems().get(0).getName());
+
+        PageDTO<CategoryDTO> inactive = categoryService.list(0, 100, false);
+        assertEquals(1, inactive.getItems().size());
+        assertEquals(2, inactive.getItems().get(0).getId());
+
+        // Filtered pages are cached apart from each other and from the unfiltered one.
+        assertEquals(2, categoryService.list(0, 100, null).getItems().size());
+        categoryService.list(0, 100, true);
+        verify(categoryRepository, times(1)).findByActiveAndIdGreaterThanOrderByIdAsc(true, 0L, Limit.of(101));
+    }
+
+    @Test
+    void testListNextPage() {
+        PageDTO<CategoryDTO> first = categoryService.list(0, 1, null);
+        assertEquals(1, first.getItems().size());
+        assertEquals(1, first.getItems().get(0).getId());
+        assertEquals(1, first.getNext());
+
+        PageDTO<CategoryDTO> second = categoryService.list(first.getNext(), 1, null);
+        assertEquals(1, second.getItems().size());
+        assertEquals(2, second.getItems().get(0).getId());
+        assertNull(second.getNext());
+    }
+
     @Test
     void testCreate() {
-        CategoryDTO category = new CategoryDTO(0, "Flight", "Air flights.", true);
+        CategoryDTO category = new CategoryDTO(0, "Flight", "Air flights.", true, 0);
         category = categoryService.save(category);
 
         assertEquals(3, category.getId());
@@ -94,7 +199,7 @@ class CategoryServiceTest {
 
     @Test
     void testUpdate() {
-        CategoryDTO category = new CategoryDTO(2, "Hotel", "Home accommodations.", true);
+        CategoryDTO category = new CategoryDTO(2, "Hotel", "Home accommodations.", true, 0);
         category = categoryService.save(category);
 
         assertEquals(2, category.getId());
@@ -105,14 +210,46 @@ class CategoryServiceTest {
 
     @Test
     void testUpdateNonExistent() {
-        CategoryDTO category = new CategoryDTO(3, "Flight", "Air flights.", true);
+        CategoryDTO category = new CategoryDTO(3, "Flight", "Air flights.", true, 0);
         EntityNotFoundException e = assertThrows(EntityNotFoundException.class, () -> categoryService.save(category));
         assertEquals("Category not found with ID 3.", e.getMessage());
     }
 
+    @Test
+    void testUpdateConflict() {
+        CategoryDTO category = new CategoryDTO(2, "Hotel", "Home accommodations.", true, 5);
+        EntityConflictException e = assertThrows(EntityConflictException.class, () -> categoryService.save(category));
+        assertEquals("Category with ID 2 was modified after version 5.", e.getMessage());
+    }
+
+    @Test
+    void testSaveAll() {
+        List<CategoryDTO> categories = List.of(
+                new CategoryDTO(0, "Flight", "Air flights.", true, 0),
+                new CategoryDTO(2, "Hotel", "Home accommodations.", true, 0),
+                new CategoryDTO(3, "Taxi", "Cab rides.", true, 0)
+        );
+        List<BatchResultDTO<CategoryDTO>> results = categoryService.saveAll(categories);
+        assertEquals(3, results.size());
+
+        assertEquals(0, results.get(0).getIndex());
+        assertEquals(BatchResultDTO.Status.CREATED, results.get(0).getStatus());
+        assertEquals(3, results.get(0).getItem().getId());
+        assertEquals("Flight", results.get(0).getItem().getName());
+
+        assertEquals(1, results.get(1).getIndex());
+        assertEquals(BatchResultDTO.Status.UPDATED, results.get(1).getStatus());
+        assertEquals(2, results.get(1).getItem().getId());
+
+        assertEquals(2, results.get(2).getIndex());
+        assertEquals(BatchResultDTO.Status.NOT_FOUND, results.get(2).getStatus());
+        assertNull(results.get(2).getItem());
+        assertEquals("Category not found with ID 3.", results.get(2).getError());
+    }
+
     @Test
     void testParseResponse() {
-        Category category = new Category(1, "Meal", "Lunch, dinner and breakfast.", true);
+        Category category = new Category(1, "Meal", "Lunch, dinner and breakfast.", true, 0);
         CategoryDTO categoryDTO = categoryService.parseResponse(category);
 
         assertEquals(1, categoryDTO.getId());
@@ -123,7 +260,7 @@ class CategoryServiceTest {
 
     @Test
     void testParseRequest() {
-        CategoryDTO categoryDTO = new CategoryDTO(2, "Hotel", "Home accommodations.", false);
+        CategoryDTO categoryDTO = new CategoryDTO(2, "Hotel", "Home accommodations.", false, 0);
         Category category = categoryService.parseRequest(categoryDTO);
 
         assertEquals(2, category.getId());
@@ -0,0 +1,52 @@
+package com.wwerlang.expensemanager.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChangeVersionTest {
+
+    @Test
+    void testETagChangesWithBump() {
+        ChangeVersion version = new ChangeVersion("category");
+        String eTag = version.eTag();
+
+        assertTrue(eTag.startsWith("W/\"") && eTag.endsWith("-category.0\""), eTag);
+        assertEquals(eTag, version.eTag());
+
+        version.bump();
+        assertNotEquals(eTag, version.eTag());
+        assertEquals(1, version.get());
+    }
+
+    @Test
+    void testCombinedETag() {
+        ChangeVersion employees = new ChangeVersion("employee");
+        ChangeVersion departments = new ChangeVersion("department");
+        String eTag = ChangeVersion.eTag(employees, departments);
+
+        assertTrue(eTag.endsWith("-employee.0-department.0\""), eTag);
+
+        departments.bump();
+        assertNotEquals(eTag, ChangeVersion.eTag(employees, departments));
+    }
+
+    @Test
+    void testConcurrentBumps() {
+        ChangeVersion version = new ChangeVersion("expense");
+
+        try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+            IntStream.range(0, 8).forEach(i -> executor.submit(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    version.bump();
+                }
+            }));
+        }
+
+        assertEquals(80_000, version.get());
+    }
+}
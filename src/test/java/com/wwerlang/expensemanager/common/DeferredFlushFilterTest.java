@@ -0,0 +1,67 @@
+package com.wwerlang.expensemanager.common;
+
+import jakarta.servlet.ServletOutputStream;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeferredFlushFilterTest {
+
+    private final DeferredFlushFilter filter = new DeferredFlushFilter();
+
+    @Test
+    void testFlushDoesNotCommit() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/employee/1"), response, (req, res) -> {
+            res.setContentType("application/json");
+            ServletOutputStream outputStream = res.getOutputStream();
+            outputStream.write("{\"id\":1}".getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+            res.flushBuffer();
+
+            assertFalse(res.isCommitted());
+            assertSame(outputStream, res.getOutputStream());
+        });
+
+        assertEquals("{\"id\":1}", response.getContentAsString());
+    }
+
+    @Test
+    void testWriterFlushDoesNotCommit() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/employee/1"), response, (req, res) -> {
+            res.setContentType("application/problem+json");
+            PrintWriter writer = res.getWriter();
+            writer.write("{\"status\":404}");
+            writer.flush();
+
+            assertFalse(res.isCommitted());
+        });
+
+        assertEquals("{\"status\":404}", response.getContentAsString());
+    }
+
+    @Test
+    void testStreamsAreFlushed() throws Exception {
+        for (String contentType : List.of("application/x-ndjson", "text/csv", "image/png")) {
+            MockHttpServletResponse response = new MockHttpServletResponse();
+
+            filter.doFilter(new MockHttpServletRequest("GET", "/expense/statements/2023-12"), response, (req, res) -> {
+                res.setContentType(contentType);
+                ServletOutputStream outputStream = res.getOutputStream();
+                outputStream.write("{\"id\":1}\n".getBytes(StandardCharsets.UTF_8));
+                outputStream.flush();
+
+                assertTrue(res.isCommitted(), contentType);
+            });
+        }
+    }
+}
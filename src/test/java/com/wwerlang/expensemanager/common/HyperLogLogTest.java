@@ -0,0 +1,64 @@
+package com.wwerlang.expensemanager.common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HyperLogLogTest {
+
+    @Test
+    void testEmpty() {
+        assertEquals(0, new HyperLogLog().estimate());
+    }
+
+    @Test
+    void testSmallSetsAreNearlyExact() {
+        HyperLogLog sketch = new HyperLogLog();
+
+        for (int i = 0; i < 3; i++) {
+            for (long id = 1; id <= 100; id++) {
+                sketch.add(id);
+            }
+        }
+
+        assertEquals(100, sketch.estimate(), 2);
+    }
+
+    @Test
+    void testLargeSetsWithinThreeStandardErrors() {
+        HyperLogLog sketch = new HyperLogLog();
+
+        for (long id = 0; id < 1_000_000; id++) {
+            sketch.add(id);
+        }
+
+        assertEquals(1_000_000, sketch.estimate(), 1_000_000 * 0.05);
+    }
+
+    @Test
+    void testMergeGivesUnion() {
+        HyperLogLog sparse = new HyperLogLog();
+        HyperLogLog dense = new HyperLogLog();
+        HyperLogLog both = new HyperLogLog();
+
+        for (long id = 0; id < 100; id++) {
+            sparse.add(id);
+            both.add(id);
+        }
+
+        // Overlaps the first and is well past the sparse limit.
+        for (long id = 50; id < 10_050; id++) {
+            dense.add(id);
+            both.add(id);
+        }
+
+        HyperLogLog merged = new HyperLogLog();
+        merged.merge(sparse);
+        merged.merge(dense);
+        assertEquals(both.estimate(), merged.estimate());
+
+        sparse.merge(dense);
+        assertEquals(both.estimate(), sparse.estimate());
+        assertEquals(10_050, sparse.estimate(), 10_050 * 0.05);
+    }
+}
@@ -0,0 +1,179 @@
+package com.wwerlang.expensemanager.common;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JournalTest {
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void testAppendAndRead() throws IOException {
+        try (Journal journal = new Journal(directory, 1024, false)) {
+            long end = journal.append(records("a", "bb", "ccc"));
+
+            List<Journal.Entry> entries = new ArrayList<>();
+            long next = journal.read(journal.start(), 2, entries);
+
+            assertEquals(List.of("a", "bb"), strings(entries));
+            assertEquals(next, entries.get(1).getNext());
+
+            entries.clear();
+            assertEquals(end, journal.read(next, 10, entries));
+            assertEquals(List.of("ccc"), strings(entries));
+            assertEquals(end, journal.end());
+        }
+    }
+
+    @Test
+    void testRollsOverToNewSegments() throws IOException {
+        try (Journal journal = new Journal(directory, 64, false)) {
+            // 16 bytes each with the header, so four of them fit into a segment.
+            List<String> values = IntStream.range(0, 10).mapToObj(i -> "record-" + i).toList();
+            journal.append(records(values.toArray(String[]::new)));
+
+            assertEquals(3, segments());
+            assertEquals(values, readAll(journal, journal.start()));
+        }
+    }
+
+    @Test
+    void testRejectsRecordsThatDoNotFit() throws IOException {
+        try (Journal journal = new Journal(directory, 64, false)) {
+            assertThrows(IllegalArgumentException.class, () -> journal.append(records("a", "x".repeat(57))));
+            assertThrows(IllegalArgumentException.class, () -> journal.append(records("")));
+            assertEquals(0, journal.end());
+        }
+    }
+
+    @Test
+    void testCheckpointDeletesSegmentsBeforeIt() throws IOException {
+        try (Journal journal = new Journal(directory, 64, false)) {
+            journal.append(records("record-0", "record-1", "record-2", "record-3", "record-4"));
+
+            List<Journal.Entry> entries = new ArrayList<>();
+            journal.read(journal.start(), 4, entries);
+            journal.checkpoint(entries.get(3).getNext());
+
+            assertEquals(1, segments());
+            assertEquals(64, journal.start());
+            assertEquals(List.of("record-4"), readAll(journal, journal.checkpoint()));
+        }
+
+        try (Journal journal = new Journal(directory, 64, false)) {
+            assertEquals(List.of("record-4"), readAll(journal, journal.checkpoint()));
+        }
+    }
+
+    @Test
+    void testReopenContinuesAfterLastRecord() throws IOException {
+        try (Journal journal = new Journal(directory, 1024, false)) {
+            journal.append(records("a", "bb"));
+            assertEquals(journal.start(), journal.checkpoint());
+        }
+
+        try (Journal journal = new Journal(directory, 1024, false)) {
+            assertEquals(19, journal.end());
+            journal.append(records("ccc"));
+            assertEquals(List.of("a", "bb", "ccc"), readAll(journal, journal.start()));
+        }
+    }
+
+    @Test
+    void testReopenDiscardsTornRecord() throws IOException {
+        try (Journal journal = new Journal(directory, 1024, false)) {
+            journal.append(records("a", "bb", "ccc"));
+        }
+
+        // A crash halfway through the last record: its header made it to the file but not all of its bytes.
+        overwrite(directory.resolve("00000000000000000000.journal"), 19 + 8 + 1, (byte) 0);
+
+        try (Journal journal = new Journal(directory, 1024, false)) {
+            assertEquals(19, journal.end());
+            journal.append(records("d"));
+            assertEquals(List.of("a", "bb", "d"), readAll(journal, journal.start()));
+        }
+    }
+
+    @Test
+    void testReadDetectsCorruptRecord() throws IOException {
+        try (Journal journal = new Journal(directory, 64, false)) {
+            journal.append(records("record-0", "record-1", "record-2", "record-3", "record-4"));
+        }
+
+        // Only the last segment is checked on opening, so this one is left for reading to find.
+        overwrite(directory.resolve("00000000000000000000.journal"), 8, (byte) 'R');
+
+        try (Journal journal = new Journal(directory, 64, false)) {
+            IllegalStateException e = assertThrows(IllegalStateException.class,
+                    () -> readAll(journal, journal.start()));
+            assertEquals("Journal record at position 0 is corrupt.", e.getMessage());
+        }
+    }
+
+    @Test
+    void testSkipsPastCorruptRecord() throws IOException {
+        try (Journal journal = new Journal(directory, 64, false)) {
+            journal.append(records("record-0", "record-1", "record-2", "record-3", "record-4"));
+        }
+
+        overwrite(directory.resolve("00000000000000000000.journal"), 24, (byte) 'R');
+
+        try (Journal journal = new Journal(directory, 64, false)) {
+            // The read stops before the corrupt record, and only reading from it fails.
+            List<Journal.Entry> entries = new ArrayList<>();
+            assertEquals(16, journal.read(0, 100, entries));
+            assertEquals(List.of("record-0"), strings(entries));
+            assertThrows(IllegalStateException.class, () -> journal.read(16, 100, new ArrayList<>()));
+
+            assertEquals(64, journal.skip(16));
+            assertEquals(List.of("record-4"), readAll(journal, journal.skip(16)));
+            assertEquals(journal.end(), journal.skip(journal.end() - 16));
+        }
+    }
+
+    private static List<byte[]> records(String... values) {
+        return Stream.of(values).map(v -> v.getBytes(StandardCharsets.UTF_8)).toList();
+    }
+
+    private static List<String> strings(List<Journal.Entry> entries) {
+        return entries.stream().map(e -> new String(e.getRecord(), StandardCharsets.UTF_8)).toList();
+    }
+
+    private static List<String> readAll(Journal journal, long position) {
+        List<Journal.Entry> entries = new ArrayList<>();
+
+        while (position < journal.end()) {
+            position = journal.read(position, 100, entries);
+        }
+
+        return strings(entries);
+    }
+
+    private long segments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(f -> f.toString().endsWith(".journal")).count();
+        }
+    }
+
+    private static void overwrite(Path file, long position, byte value) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{value}), position);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.wwerlang.expensemanager.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KllSketchTest {
+
+    @Test
+    void testEmpty() {
+        KllSketch sketch = new KllSketch();
+        assertEquals(0, sketch.count());
+        assertEquals(0, sketch.quantiles(0.5).length);
+    }
+
+    @Test
+    void testExactBelowK() {
+        KllSketch sketch = new KllSketch();
+
+        for (long value = 100; value > 0; value--) {
+            sketch.add(value);
+        }
+
+        assertArrayEquals(new long[]{1, 50, 95, 100}, sketch.quantiles(0, 0.5, 0.95, 1));
+    }
+
+    @Test
+    void testRankErrorOnLargeStream() {
+        KllSketch sketch = new KllSketch();
+        SplittableRandom random = new SplittableRandom(1);
+
+        // A permutation of 0 to 999,999, so the value at quantile q is q * 1,000,000.
+        int n = 1_000_000;
+        long[] values = new long[n];
+
+        for (int i = 0; i < n; i++) {
+            values[i] = i;
+        }
+
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+
+        for (long value : values) {
+            sketch.add(value);
+        }
+
+        long[] quantiles = sketch.quantiles(0.5, 0.95, 0.99);
+        assertEquals(n, sketch.count());
+        assertEquals(n * 0.5, quantiles[0], n * 0.0165);
+        assertEquals(n * 0.95, quantiles[1], n * 0.0165);
+        assertEquals(n * 0.99, quantiles[2], n * 0.0165);
+    }
+
+    @Test
+    void testMerge() {
+        KllSketch low = new KllSketch();
+        KllSketch high = new KllSketch();
+
+        for (long value = 0; value < 10_000; value++) {
+            low.add(value);
+            high.add(value + 10_000);
+        }
+
+        low.merge(high);
+
+        assertEquals(20_000, low.count());
+        assertEquals(10_000, low.quantiles(0.5)[0], 20_000 * 0.0165);
+        assertEquals(19_000, low.quantiles(0.95)[0], 20_000 * 0.0165);
+    }
+}
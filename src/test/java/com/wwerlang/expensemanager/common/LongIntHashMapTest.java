@@ -0,0 +1,58 @@
+package com.wwerlang.expensemanager.common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LongIntHashMapTest {
+
+    @Test
+    void testPutAndGet() {
+        LongIntHashMap map = new LongIntHashMap(4);
+        map.put(7, 1);
+        map.put(-3, 2);
+        map.put(7, 3);
+
+        assertEquals(3, map.get(7, -1));
+        assertEquals(2, map.get(-3, -1));
+        assertEquals(-1, map.get(8, -1));
+        assertEquals(2, map.size());
+    }
+
+    @Test
+    void testGrows() {
+        LongIntHashMap map = new LongIntHashMap(1);
+
+        for (int i = 0; i < 100_000; i++) {
+            map.put(i * 50L, i);
+        }
+
+        assertEquals(100_000, map.size());
+
+        for (int i = 0; i < 100_000; i++) {
+            assertEquals(i, map.get(i * 50L, -1));
+        }
+    }
+
+    @Test
+    void testForEach() {
+        LongIntHashMap map = new LongIntHashMap(1);
+
+        for (int i = 0; i < 1000; i++) {
+            map.put(i * 3L, i);
+        }
+
+        long[] keys = new long[1000];
+        map.forEach((key, value) -> keys[value] = key);
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i * 3L, keys[i]);
+        }
+    }
+
+    @Test
+    void testReservedKey() {
+        LongIntHashMap map = new LongIntHashMap(1);
+        assertThrows(IllegalArgumentException.class, () -> map.put(Long.MIN_VALUE, 1));
+    }
+}
@@ -0,0 +1,94 @@
+package com.wwerlang.expensemanager.common;
+
+import com.wwerlang.expensemanager.exception.EntityNotFoundException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReferenceCacheTest {
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final ReferenceCache<String> cache = new ReferenceCache<>(100, Duration.ofMinutes(1), nanos::get);
+
+    @Test
+    void testFind() {
+        assertEquals("1", cache.find(1, this::load));
+        assertEquals("1", cache.find(1, this::load));
+        assertEquals(1, loads.get());
+
+        CacheStatsDTO stats = cache.stats();
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+    }
+
+    @Test
+    void testFindNonExistent() {
+        assertThrows(EntityNotFoundException.class, () -> cache.find(3, id -> {
+            throw new EntityNotFoundException("Category", id);
+        }));
+        assertEquals("3", cache.find(3, this::load));
+    }
+
+    @Test
+    void testInvalidate() {
+        cache.find(1, this::load);
+        cache.invalidate(1);
+        cache.find(1, this::load);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testInvalidateOnlyCoveringPages() {
+        cache.list(0, 2, () -> page(List.of("1", "2"), 2L));
+        cache.list(2, 2, () -> page(List.of("3"), null));
+        assertEquals(2, loads.get());
+
+        // A new item past the last page's cursor only affects the last page.
+        cache.invalidate(4);
+        cache.list(0, 2, () -> page(List.of("1", "2"), 2L));
+        cache.list(2, 2, () -> page(List.of("3", "4"), 4L));
+        assertEquals(3, loads.get());
+
+        // An updated item only affects the page whose range holds it.
+        cache.invalidate(1);
+        cache.list(0, 2, () -> page(List.of("1", "2"), 2L));
+        cache.list(2, 2, () -> page(List.of("3", "4"), 4L));
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void testExpire() {
+        cache.find(1, this::load);
+        nanos.addAndGet(Duration.ofMinutes(2).toNanos());
+        cache.find(1, this::load);
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void testEvict() {
+        ReferenceCache<String> small = new ReferenceCache<>(2, Duration.ofMinutes(1), nanos::get);
+        small.list(0, 10, () -> page(List.of("1", "2", "3"), null));
+        small.cleanUp();
+
+        CacheStatsDTO stats = small.stats();
+        assertEquals(1, stats.getEvictions());
+        assertEquals(0, stats.getSize());
+    }
+
+    private String load(long id) {
+        loads.incrementAndGet();
+        return String.valueOf(id);
+    }
+
+    private PageDTO<String> page(List<String> items, Long next) {
+        loads.incrementAndGet();
+        return new PageDTO<>(items, next);
+    }
+}
@@ -6,17 +6,26 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
@@ -26,8 +35,8 @@ public class DepartmentControllerTest {
     private static final String PATH = "/department";
 
     private static final List<Department> DEPARTMENTS = List.of(
-            new Department(1, "IT", "Fix computers.", true),
-            new Department(2, "HR", "Hires people.", false)
+            new Department(1, "IT", "Fix computers.", true, 0),
+            new Department(2, "HR", "Hires people.", false, 0)
     );
 
     @Autowired
@@ -39,6 +48,9 @@ public class DepartmentControllerTest {
     @MockBean
     private DepartmentRepository departmentRepository;
 
+    @MockBean
+    private TransactionTemplate transactionTemplate;
+
     @BeforeEach
     void mockDepartmentRepository() {
         lenient().when(departmentRepository.findById(anyLong())).thenAnswer(invocationOnMock -> {
@@ -46,7 +58,11 @@ public class DepartmentControllerTest {
             return DEPARTMENTS.stream().filter(e -> e.getId() == id).findFirst();
         });
 
-        lenient().when(departmentRepository.findAll()).thenReturn(DEPARTMENTS);
+        lenient().when(departmentRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any(Limit.class))).thenAnswer(invocationOnMock -> {
+            long id = invocationOnMock.getArgument(0);
+            Limit limit = invocationOnMock.getArgument(1);
+            return DEPARTMENTS.stream().filter(e -> e.getId() > id).limit(limit.max()).toList();
+        });
 
         lenient().when(departmentRepository.save(any(Department.class))).thenAnswer(invocationOnMock -> {
             Department department = invocationOnMock.getArgument(0);
@@ -54,10 +70,29 @@ public class DepartmentControllerTest {
             return department;
         });
 
+        lenient().when(departmentRepository.findAllById(anyIterable())).thenAnswer(invocationOnMock -> {
+            Iterable<Long> ids = invocationOnMock.getArgument(0);
+            List<Long> idList = new ArrayList<>();
+            ids.forEach(idList::add);
+            return DEPARTMENTS.stream().filter(e -> idList.contains(e.getId())).toList();
+        });
+
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocationOnMock -> {
+            TransactionCallback<?> callback = invocationOnMock.getArgument(0);
+            return callback.doInTransaction(null);
+        });
+
         lenient().when(departmentRepository.existsById(anyLong())).thenAnswer(invocationOnMock -> {
             long id = invocationOnMock.getArgument(0);
             return DEPARTMENTS.stream().anyMatch(e -> e.getId() == id);
         });
+
+        lenient().when(departmentRepository.updateIfVersionMatches(any(Department.class))).thenAnswer(invocationOnMock -> {
+            Department department = invocationOnMock.getArgument(0);
+            return (int) DEPARTMENTS.stream()
+                    .filter(e -> e.getId() == department.getId() && e.getVersion() == department.getVersion())
+                    .count();
+        });
     }
 
     @Test
@@ -70,6 +105,19 @@ public class DepartmentControllerTest {
                 .andExpect(jsonPath("$.active").value(true));
     }
 
+    @Test
+    void testFindNotModified() throws Exception {
+        String eTag = mockMvc.perform(get(PATH + "/{id}", 1))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get(PATH + "/{id}", 1).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+
+        verify(departmentService, times(1)).find(1L);
+    }
+
     @Test
     void testFindNonExistent() throws Exception {
         String response = mockMvc.perform(get(PATH + "/{id}", 3))
@@ -83,15 +131,31 @@ public class DepartmentControllerTest {
     void testList() throws Exception {
         mockMvc.perform(get(PATH))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$").isArray())
-                .andExpect(jsonPath("$[0].id").value("1"))
-                .andExpect(jsonPath("$[0].name").value("IT"))
-                .andExpect(jsonPath("$[0].description").value("Fix computers."))
-                .andExpect(jsonPath("$[0].active").value(true))
-                .andExpect(jsonPath("$[1].id").value("2"))
-                .andExpect(jsonPath("$[1].name").value("HR"))
-                .andExpect(jsonPath("$[1].description").value("Hires people."))
-                .andExpect(jsonPath("$[1].active").value(false));
+                .andExpect(jsonPath("$.items").isArray())
+                .andExpect(jsonPath("$.next").doesNotExist())
+                .andExpect(jsonPath("$.items[0].id").value("1"))
+                .andExpect(jsonPath("$.items[0].name").value("IT"))
+                .andExpect(jsonPath("$.items[0].description").value("Fix computers."))
+                .andExpect(jsonPath("$.items[0].active").value(true))
+                .andExpect(jsonPath("$.items[1].id").value("2"))
+                .andExpect(jsonPath("$.items[1].name").value("HR"))
+                .andExpect(jsonPath("$.items[1].description").value("Hires people."))
+                .andExpect(jsonPath("$.items[1].active").value(false));
+    }
+
+    @Test
+    void testListNextPage() throws Exception {
+        mockMvc.perform(get(PATH).param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(1))
+                .andExpect(jsonPath("$.items[0].id").value("1"))
+                .andExpect(jsonPath("$.next").value(1));
+
+        mockMvc.perform(get(PATH).param("after", "1").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(1))
+                .andExpect(jsonPath("$.items[0].id").value("2"))
+                .andExpect(jsonPath("$.next").doesNotExist());
     }
 
     @Test
@@ -128,4 +192,36 @@ public class DepartmentControllerTest {
 
         assertEquals("Department not found with ID 3.", response);
     }
+
+    @Test
+    void testUpdateConflict() throws Exception {
+        String input = "{ \"id\": \"2\", \"name\": \"HR\", \"description\": \"Hires people.\", \"active\": true, \"version\": 5 }";
+
+        String response = mockMvc.perform(post(PATH).contentType(MediaType.APPLICATION_JSON).content(input))
+                .andExpect(status().isConflict())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals("Department with ID 2 was modified after version 5.", response);
+    }
+
+    @Test
+    void testSaveAll() throws Exception {
+        String input = "[ " + "{ \"name\": \"Sales\", \"description\": \"Sells products.\", \"active\": true }" + ", "
+                + "{ \"id\": \"2\", \"name\": \"HR\", \"description\": \"Hires people.\", \"active\": true }" + ", "
+                + "{ \"id\": \"3\", \"name\": \"Legal\", \"description\": \"Reads contracts.\", \"active\": true }" + " ]";
+
+        mockMvc.perform(post(PATH + "/batch").contentType(MediaType.APPLICATION_JSON).content(input))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].index").value(0))
+                .andExpect(jsonPath("$[0].status").value("CREATED"))
+                .andExpect(jsonPath("$[0].item.id").value(3))
+                .andExpect(jsonPath("$[0].item.name").value("Sales"))
+                .andExpect(jsonPath("$[1].index").value(1))
+                .andExpect(jsonPath("$[1].status").value("UPDATED"))
+                .andExpect(jsonPath("$[1].item.id").value(2))
+                .andExpect(jsonPath("$[2].index").value(2))
+                .andExpect(jsonPath("$[2].status").value("NOT_FOUND"))
+                .andExpect(jsonPath("$[2].error").value("Department not found with ID 3."));
+    }
 }
@@ -1,5 +1,9 @@
 package com.wwerlang.expensemanager.department;
 
+import com.wwerlang.expensemanager.common.BatchResultDTO;
+import com.wwerlang.expensemanager.common.CacheStatsDTO;
+import com.wwerlang.expensemanager.common.PageDTO;
+import com.wwerlang.expensemanager.exception.EntityConflictException;
 import com.wwerlang.expensemanager.exception.EntityNotFoundException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -7,20 +11,30 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyIterable;
 import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 @ExtendWith(MockitoExtension.class)
 class DepartmentServiceTest {
 
     private static final List<Department> DEPARTMENTS = List.of(
-            new Department(1, "IT", "Fix computers.", true),
-            new Department(2, "HR", "Hires people.", false)
+            new Department(1, "IT", "Fix computers.", true, 0),
+            new Department(2, "HR", "Hires people.", false, 0)
     );
 
     @InjectMocks
@@ -29,6 +43,9 @@ class DepartmentServiceTest {
     @Mock
     private DepartmentRepository departmentRepository;
 
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
     @BeforeEach
     void mockDepartmentRepository() {
         lenient().when(departmentRepository.findById(anyLong())).thenAnswer(invocationOnMock -> {
@@ -36,7 +53,22 @@ class DepartmentServiceTest {
             return DEPARTMENTS.stream().filter(e -> e.getId() == id).findFirst();
         });
 
-        lenient().when(departmentRepository.findAll()).thenReturn(DEPARTMENTS);
+        lenient().when(departmentRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any(Limit.class))).thenAnswer(invocationOnMock -> {
+            long id = invocationOnMock.getArgument(0);
+            Limit limit = invocationOnMock.getArgument(1);
+            return DEPARTMENTS.stream().filter(e -> e.getId() > id).limit(limit.max()).toList();
+        });
+
+        lenient().when(departmentRepository.findByActiveAndIdGreaterThanOrderByIdAsc(anyBoolean(), anyLong(),
+                any(Limit.class))).thenAnswer(invocationOnMock -> {
+            boolean active = invocationOnMock.getArgument(0);
+            long id = invocationOnMock.getArgument(1);
+            Limit limit = invocationOnMock.getArgument(2);
+            return DEPARTMENTS.stream().filter(e -> e.isActive() == active && e.getId() > id)
+                    .limit(limit.max()).toList();
+        });
+
+        lenient().when(departmentRepository.findAll(any(Sort.class))).thenReturn(DEPARTMENTS);
 
         lenient().when(departmentRepository.save(any(Department.class))).thenAnswer(invocationOnMock -> {
             Department department = invocationOnMock.getArgument(0);
@@ -44,10 +76,29 @@ class DepartmentServiceTest {
             return department;
         });
 
+        lenient().when(departmentRepository.findAllById(anyIterable())).thenAnswer(invocationOnMock -> {
+            Iterable<Long> ids = invocationOnMock.getArgument(0);
+            List<Long> idList = new ArrayList<>();
+            ids.forEach(idList::add);
+            return DEPARTMENTS.stream().filter(e -> idList.contains(e.getId())).toList();
+        });
+
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocationOnMock -> {
+            TransactionCallback<?> callback = invocationOnMock.getArgument(0);
+            return callback.doInTransaction(null);
+        });
+
         lenient().when(departmentRepository.existsById(anyLong())).thenAnswer(invocationOnMock -> {
             long id = invocationOnMock.getArgument(0);
             return DEPARTMENTS.stream().anyMatch(e -> e.getId() == id);
         });
+
+        lenient().when(departmentRepository.updateIfVersionMatches(any(Department.class))).thenAnswer(invocationOnMock -> {
+            Department department = invocationOnMock.getArgument(0);
+            return (int) DEPARTMENTS.stream()
+                    .filter(e -> e.getId() == department.getId() && e.getVersion() == department.getVersion())
+                    .count();
+        });
     }
 
     @Test
@@ -65,9 +116,38 @@ class DepartmentServiceTest {
         assertEquals("Department not found with ID 3.", e.getMessage());
     }
 
+    @Test
+    void testFindCached() {
+        departmentService.find(1L);
+        departmentService.find(1L);
+        verify(departmentRepository, times(1)).findById(1L);
+
+        CacheStatsDTO stats = departmentService.cacheStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+    }
+
+    @Test
+    void testUpdateInvalidatesCache() {
+        departmentService.find(2L);
+        departmentService.list(0, 100, null);
+
+        DepartmentDTO department = departmentService.find(2L);
+        department.setActive(true);
+        departmentService.save(department);
+
+        departmentService.find(2L);
+        departmentService.list(0, 100, null);
+        verify(departmentRepository, times(2)).findById(2L);
+        verify(departmentRepository, times(2)).findByIdGreaterThanOrderByIdAsc(0L, Limit.of(101));
+    }
+
     @Test
     void testList() {
-        List<DepartmentDTO> departments = departmentService.list();
+        PageDTO<DepartmentDTO> page = departmentService.list(0, 100, null);
+        assertNull(page.getNext());
+
+        List<DepartmentDTO> departments = page.getItems();
         assertEquals(2, departments.size());
 
         assertEquals(1, departments.get(0).getId());
@@ -81,9 +161,46 @@ class DepartmentServiceTest {
         assertFalse(departments.get(1).isActive());
     }
 
+    @Test
+    void testListActive() {
+        PageDTO<DepartmentDTO> active = departmentService.list(0, 100, true);
+        assertEquals(1, active.getItems().size());
+        assertEquals("IT", active.getItems().get(0).getName());
+
+        PageDTO<DepartmentDTO> inactive = departmentService.list(0, 100, false);
+        assertEquals(1, inactive.getItems().size());
+        assertEquals(2, inactive.getItems().get(0).getId());
+
+        // Filtered pages are cached apart from each other and from the unfiltered one.
+        assertEquals(2, departmentService.list(0, 100, null).getItems().size());
+        departmentService.list(0, 100, true);
+        verify(departmentRepository, times(1)).findByActiveAndIdGreaterThanOrderByIdAsc(true, 0L, Limit.of(101));
+    }
+
+    @Test
+    void testListNextPage() {
+        PageDTO<DepartmentDTO> first = departmentService.list(0, 1, null);
+        assertEquals(1, first.getItems().size());
+        assertEquals(1, first.getItems().get(0).getId());
+        assertEquals(1, first.getNext());
+
+        PageDTO<DepartmentDTO> second = departmentService.list(first.getNext(), 1, null);
+        assertEquals(1, second.getItems().size());
+        assertEquals(2, second.getItems().get(0).getId());
+        assertNull(second.getNext());
+    }
+
+    @Test
+    void testMapByName() {
+        Map<String, DepartmentDTO> departments = departmentService.mapByName();
+        assertEquals(2, departments.size());
+        assertEquals(1, departments.get("IT").getId());
+        assertEquals(2, departments.get("HR").getId());
+    }
+
     @Test
     void testCreate() {
-        DepartmentDTO department = new DepartmentDTO(0, "Sales", "Sell, sell, sell!", true);
+        DepartmentDTO department = new DepartmentDTO(0, "Sales", "Sell, sell, sell!", true, 0);
         department = departmentService.save(department);
 
         assertEquals(3, department.getId());
@@ -94,7 +211,7 @@ class DepartmentServiceTest {
 
     @Test
     void testUpdate() {
-        DepartmentDTO department = new DepartmentDTO(2, "HR", "Hires people.", true);
+        DepartmentDTO department = new DepartmentDTO(2, "HR", "Hires people.", true, 0);
         department = departmentService.save(department);
 
         assertEquals(2, department.getId());
@@ -105,14 +222,46 @@ class DepartmentServiceTest {
 
     @Test
     void testUpdateNonExistent() {
-        DepartmentDTO department = new DepartmentDTO(3, "Sales", "Sell, sell, sell!", true);
+        DepartmentDTO department = new DepartmentDTO(3, "Sales", "Sell, sell, sell!", true, 0);
         EntityNotFoundException e = assertThrows(EntityNotFoundException.class, () -> departmentService.save(department));
         assertEquals("Department not found with ID 3.", e.getMessage());
     }
 
+    @Test
+    void testUpdateConflict() {
+        DepartmentDTO department = new DepartmentDTO(2, "HR", "Hires people.", true, 5);
+        EntityConflictException e = assertThrows(EntityConflictException.class, () -> departmentService.save(department));
+        assertEquals("Department with ID 2 was modified after version 5.", e.getMessage());
+    }
+
+    @Test
+    void testSaveAll() {
+        List<DepartmentDTO> departments = List.of(
+                new DepartmentDTO(0, "Sales", "Sells products.", true, 0),
+                new DepartmentDTO(2, "HR", "Hires people.", true, 0),
+                new DepartmentDTO(3, "Legal", "Reads contracts.", true, 0)
+        );
+        List<BatchResultDTO<DepartmentDTO>> results = departmentService.saveAll(departments);
+        assertEquals(3, results.size());
+
+        assertEquals(0, results.get(0).getIndex());
+        assertEquals(BatchResultDTO.Status.CREATED, results.get(0).getStatus());
+        assertEquals(3, results.get(0).getItem().getId());
+        assertEquals("Sales", results.get(0).getItem().getName());
+
+        assertEquals(1, results.get(1).getIndex());
+        assertEquals(BatchResultDTO.Status.UPDATED, results.get(1).getStatus());
+        assertEquals(2, results.get(1).getItem().getId());
+
+        assertEquals(2, results.get(2).getIndex());
+        assertEquals(BatchResultDTO.Status.NOT_FOUND, results.get(2).getStatus());
+        assertNull(results.get(2).getItem());
+        assertEquals("Department not found with ID 3.", results.get(2).getError());
+    }
+
     @Test
     void testParseResponse() {
-        Department department = new Department(1, "IT", "Fix computers.", true);
+        Department department = new Department(1, "IT", "Fix computers.", true, 0);
         DepartmentDTO departmentDTO = departmentService.parseResponse(department);
 
         assertEquals(1, departmentDTO.getId());
@@ -123,7 +272,7 @@ class DepartmentServiceTest {
 
     @Test
     void testParseRequest() {
-        DepartmentDTO departmentDTO = new DepartmentDTO(2, "HR", "Hires people.", false);
+        DepartmentDTO departmentDTO = new DepartmentDTO(2, "HR", "Hires people.", false, 0);
         Department department = departmentService.parseRequest(departmentDTO);
 
         assertEquals(2, department.getId());
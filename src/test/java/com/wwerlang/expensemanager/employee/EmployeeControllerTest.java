@@ -1,36 +1,66 @@
 package com.wwerlang.expensemanager.employee;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import com.wwerlang.expensemanager.common.JacksonConfiguration;
 import com.wwerlang.expensemanager.department.Department;
 import com.wwerlang.expensemanager.department.DepartmentRepository;
 import com.wwerlang.expensemanager.department.DepartmentService;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(EmployeeController.class)
+@Import(JacksonConfiguration.class)
 public class EmployeeControllerTest {
 
     private static final String PATH = "/employee";
 
     private static final List<Employee> EMPLOYEES = List.of(
-            new Employee(1, "John", "Johnson", true, new Department(1, "IT", "Fix computers.", true)),
-            new Employee(2, "Smith", "Smithson", false, new Department(2, "HR", "Hires people.", false))
+            new Employee(1, "John", "Johnson", true, new Department(1, "IT", "Fix computers.", true, 0), 0),
+            new Employee(2, "Smith", "Smithson", false, new Department(2, "HR", "Hires people.", false, 0), 0)
     );
 
     @Autowired
@@ -42,12 +72,20 @@ public class EmployeeControllerTest {
     @MockBean
     private EmployeeRepository employeeRepository;
 
+    @MockBean
+    private TransactionTemplate transactionTemplate;
+
     @SpyBean
     private DepartmentService departmentService;
 
     @MockBean
     private DepartmentRepository departmentRepository;
 
+    @MockBean
+    private EntityManager entityManager;
+
+    @SpyBean
+    private EmployeeSearchIndex employeeSearchIndex;
 
     @BeforeEach
     void mockEmployeeRepository() {
@@ -56,7 +94,21 @@ public class EmployeeControllerTest {
             return EMPLOYEES.stream().filter(e -> e.getId() == id).findFirst();
         });
 
-        lenient().when(employeeRepository.findAll()).thenReturn(EMPLOYEES);
+        lenient().when(employeeRepository.listByIdGreaterThan(anyLong(), any(Limit.class))).thenAnswer(invocationOnMock -> {
+            long id = invocationOnMock.getArgument(0);
+            Limit limit = invocationOnMock.getArgument(1);
+            return EMPLOYEES.stream().filter(e -> e.getId() > id).limit(limit.max())
+                    .map(e -> new EmployeeDTO(e.getId(), e.getFirstName(), e.getLastName(), e.isActive(), e.getVersion(),
+                            e.getDepartment().getId(), e.getDepartment().getName(),
+                            e.getDepartment().getDescription(), e.getDepartment().isActive(),
+                            e.getDepartment().getVersion()))
+                    .toList();
+        });
+
+        lenient().when(departmentRepository.findAll(any(Sort.class))).thenReturn(
+                EMPLOYEES.stream().map(Employee::getDepartment).toList());
+
+        lenient().when(employeeRepository.streamAll()).thenAnswer(invocationOnMock -> EMPLOYEES.stream());
 
         lenient().when(employeeRepository.save(any(Employee.class))).thenAnswer(invocationOnMock -> {
             Employee employee = invocationOnMock.getArgument(0);
@@ -64,10 +116,34 @@ public class EmployeeControllerTest {
             return employee;
         });
 
+        lenient().when(employeeRepository.findAllWithDepartmentByIdIn(anyCollection())).thenAnswer(invocationOnMock -> {
+            Iterable<Long> ids = invocationOnMock.getArgument(0);
+            List<Long> idList = new ArrayList<>();
+            ids.forEach(idList::add);
+            return EMPLOYEES.stream().filter(e -> idList.contains(e.getId())).toList();
+        });
+
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocationOnMock -> {
+            TransactionCallback<?> callback = invocationOnMock.getArgument(0);
+            return callback.doInTransaction(null);
+        });
+
         lenient().when(employeeRepository.existsById(anyLong())).thenAnswer(invocationOnMock -> {
             long id = invocationOnMock.getArgument(0);
             return EMPLOYEES.stream().anyMatch(e -> e.getId() == id);
         });
+
+        lenient().when(employeeRepository.updateIfVersionMatches(any(Employee.class))).thenAnswer(invocationOnMock -> {
+            Employee employee = invocationOnMock.getArgument(0);
+            return (int) EMPLOYEES.stream()
+                    .filter(e -> e.getId() == employee.getId() && e.getVersion() == employee.getVersion())
+                    .count();
+        });
+
+        lenient().when(departmentRepository.findById(anyLong())).thenAnswer(invocationOnMock -> {
+            long id = invocationOnMock.getArgument(0);
+            return EMPLOYEES.stream().map(Employee::getDepartment).filter(e -> e.getId() == id).findFirst();
+        });
     }
 
     @Test
@@ -83,6 +159,21 @@ public class EmployeeControllerTest {
                 .andExpect(jsonPath("$.department.description").value("Fix computers."));
     }
 
+    @Test
+    void testFindFields() throws Exception {
+        when(employeeRepository.findFieldsById(any(EmployeeFields.class), eq(1L))).thenReturn(Optional.of(
+                Map.of("id", 1L, "department", Map.of("id", 1L, "name", "IT"))));
+
+        mockMvc.perform(get(PATH + "/{id}", 1).param("fields", "department.name"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(1))
+                .andExpect(jsonPath("$.department.name").value("IT"))
+                .andExpect(jsonPath("$.firstName").doesNotExist())
+                .andExpect(jsonPath("$.department.description").doesNotExist());
+
+        verify(employeeRepository, never()).findById(anyLong());
+    }
+
     @Test
     void testFindNonExistent() throws Exception {
         String response = mockMvc.perform(get(PATH + "/{id}", 3))
@@ -96,19 +187,170 @@ public class EmployeeControllerTest {
     void testList() throws Exception {
         mockMvc.perform(get(PATH))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$").isArray())
-                .andExpect(jsonPath("$[0].id").value("1"))
-                .andExpect(jsonPath("$[0].firstName").value("John"))
-                .andExpect(jsonPath("$[0].lastName").value("Johnson"))
-                .andExpect(jsonPath("$[0].active").value(true))
-                .andExpect(jsonPath("$[0].department.id").value(1))
-                .andExpect(jsonPath("$[0].department.name").value("IT"))
-                .andExpect(jsonPath("$[1].id").value("2"))
-                .andExpect(jsonPath("$[1].firstName").value("Smith"))
-                .andExpect(jsonPath("$[1].lastName").value("Smithson"))
-                .andExpect(jsonPath("$[1].active").value(false))
-                .andExpect(jsonPath("$[1].department.id").value(2))
-                .andExpect(jsonPath("$[1].department.name").value("HR"));
+                .andExpect(jsonPath("$.items").isArray())
+                .andExpect(jsonPath("$.next").doesNotExist())
+                .andExpect(jsonPath("$.items[0].id").value("1"))
+                .andExpect(jsonPath("$.items[0].firstName").value("John"))
+                .andExpect(jsonPath("$.items[0].lastName").value("Johnson"))
+                .andExpect(jsonPath("$.items[0].active").value(true))
+                .andExpect(jsonPath("$.items[0].department.id").value(1))
+                .andExpect(jsonPath("$.items[0].department.name").value("IT"))
+                .andExpect(jsonPath("$.items[1].id").value("2"))
+                .andExpect(jsonPath("$.items[1].firstName").value("Smith"))
+                .andExpect(jsonPath("$.items[1].lastName").value("Smithson"))
+                .andExpect(jsonPath("$.items[1].active").value(false))
+                .andExpect(jsonPath("$.items[1].department.id").value(2))
+                .andExpect(jsonPath("$.items[1].department.name").value("HR"));
+    }
+
+    @Test
+    void testListAsSmile() throws Exception {
+        byte[] response = mockMvc.perform(get(PATH).accept("application/x-jackson-smile"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-jackson-smile"))
+                .andReturn().getResponse().getContentAsByteArray();
+        byte[] json = mockMvc.perform(get(PATH))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        JsonNode employees = new SmileMapper().readTree(response).get("items");
+        assertEquals(2, employees.size());
+        assertEquals("Smith", employees.get(1).get("firstName").asText());
+        assertEquals("HR", employees.get(1).get("department").get("name").asText());
+        assertTrue(response.length < json.length);
+    }
+
+    @Test
+    void testListFiltered() throws Exception {
+        mockMvc.perform(get(PATH).param("departmentId", "2").param("active", "false"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items").isArray());
+
+        verify(employeeService).list(0, 100, 2L, false);
+        verify(employeeRepository).listByDepartmentIdAndActiveAndIdGreaterThan(2L, false, 0L, Limit.of(101));
+    }
+
+    @Test
+    void testListFields() throws Exception {
+        when(employeeRepository.listFieldsByIdGreaterThan(any(EmployeeFields.class), eq(0L), eq(null), eq(true),
+                eq(Limit.of(101)))).thenReturn(List.of(Map.of("id", 1L, "firstName", "John", "lastName", "Johnson")));
+
+        mockMvc.perform(get(PATH).param("active", "true").param("fields", "firstName,lastName"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(1))
+                .andExpect(jsonPath("$.items[0].firstName").value("John"))
+                .andExpect(jsonPath("$.items[0].active").doesNotExist())
+                .andExpect(jsonPath("$.items[0].department").doesNotExist())
+                .andExpect(jsonPath("$.next").doesNotExist());
+
+        verify(employeeService, never()).list(anyLong(), anyInt(), any(), any());
+    }
+
+    @Test
+    void testListFieldsUnknown() throws Exception {
+        String response = mockMvc.perform(get(PATH).param("fields", "firstName,salary"))
+                .andExpect(status().isBadRequest())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals("Unknown employee field \"salary\".", response);
+    }
+
+    @Test
+    void testListNotModifiedUntilDepartmentsChange() throws Exception {
+        String eTag = mockMvc.perform(get(PATH))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get(PATH).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+        verify(employeeService, times(1)).list(0, 100, null, null);
+
+        // Employees carry their department, so a department write changes them too.
+        departmentService.changeVersion().bump();
+
+        mockMvc.perform(get(PATH).header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(2));
+    }
+
+    @Test
+    void testListNextPage() throws Exception {
+        mockMvc.perform(get(PATH).param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(1))
+                .andExpect(jsonPath("$.items[0].id").value("1"))
+                .andExpect(jsonPath("$.next").value(1));
+
+        mockMvc.perform(get(PATH).param("after", "1").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items.length()").value(1))
+                .andExpect(jsonPath("$.items[0].id").value("2"))
+                .andExpect(jsonPath("$.next").doesNotExist());
+    }
+
+    @Test
+    void testSearch() throws Exception {
+        employeeSearchIndex.putAll(EMPLOYEES.stream()
+                .map(e -> new EmployeeNameDTO(e.getId(), e.getFirstName(), e.getLastName(), e.isActive()))
+                .toList());
+
+        mockMvc.perform(get(PATH + "/search").param("q", "smith"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].id").value(2))
+                .andExpect(jsonPath("$[0].firstName").value("Smith"))
+                .andExpect(jsonPath("$[0].lastName").value("Smithson"))
+                .andExpect(jsonPath("$[0].active").value(false));
+
+        mockMvc.perform(get(PATH + "/search").param("q", "jo").param("limit", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].id").value(1));
+    }
+
+    @Test
+    void testExport() throws Exception {
+        MvcResult result = mockMvc.perform(get(PATH + "/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String response = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = response.split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("{\"id\":1,\"firstName\":\"John\",\"lastName\":\"Johnson\",\"active\":true,"
+                + "\"department\":{\"id\":1,\"name\":\"IT\",\"description\":\"Fix computers.\",\"active\":true,"
+                + "\"version\":0},\"version\":0}", lines[0]);
+        assertEquals("{\"id\":2,\"firstName\":\"Smith\",\"lastName\":\"Smithson\",\"active\":false,"
+                + "\"department\":{\"id\":2,\"name\":\"HR\",\"description\":\"Hires people.\",\"active\":false,"
+                + "\"version\":0},\"version\":0}", lines[1]);
+        assertTrue(response.endsWith("\n"));
+    }
+
+    @Test
+    void testExportFlushesFirstEmployee() throws Exception {
+        CountDownLatch firstWritten = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocationOnMock -> {
+            Consumer<EmployeeDTO> consumer = invocationOnMock.getArgument(0);
+            consumer.accept(new EmployeeDTO(1, "John", "Johnson", true, null, 0));
+            firstWritten.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return null;
+        }).when(employeeService).export(any());
+
+        MvcResult result = mockMvc.perform(get(PATH + "/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // Sent before the export goes on, not held back until the buffer fills up.
+        assertTrue(firstWritten.await(5, TimeUnit.SECONDS));
+        assertTrue(result.getResponse().isCommitted());
+        assertTrue(result.getResponse().getContentAsString().startsWith("{\"id\":1,"));
+
+        release.countDown();
+        mockMvc.perform(asyncDispatch(result)).andExpect(status().isOk());
     }
 
     @Test
@@ -149,4 +391,53 @@ public class EmployeeControllerTest {
 
         assertEquals("Employee not found with ID 3.", response);
     }
+
+    @Test
+    void testUpdateConflict() throws Exception {
+        String input = "{ \"id\": \"2\", \"firstName\": \"Smith\", \"lastName\": \"Smithson\", \"active\": true, \"department\": { \"id\": 2 }, \"version\": 5 }";
+
+        String response = mockMvc.perform(post(PATH).contentType(MediaType.APPLICATION_JSON).content(input))
+                .andExpect(status().isConflict())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals("Employee with ID 2 was modified after version 5.", response);
+    }
+
+    @Test
+    void testSaveAll() throws Exception {
+        String input = "[ " + "{ \"firstName\": \"Gunnar\", \"lastName\": \"Gunnarson\", \"active\": true, \"department\": { \"id\": 1 } }" + ", "
+                + "{ \"id\": \"2\", \"firstName\": \"Smith\", \"lastName\": \"Smithson\", \"active\": true, \"department\": { \"id\": 1 } }" + ", "
+                + "{ \"id\": \"3\", \"firstName\": \"Olaf\", \"lastName\": \"Olafson\", \"active\": true, \"department\": { \"id\": 1 } }" + " ]";
+
+        mockMvc.perform(post(PATH + "/batch").contentType(MediaType.APPLICATION_JSON).content(input))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(3))
+                .andExpect(jsonPath("$[0].index").value(0))
+                .andExpect(jsonPath("$[0].status").value("CREATED"))
+                .andExpect(jsonPath("$[0].item.id").value(3))
+                .andExpect(jsonPath("$[0].item.firstName").value("Gunnar"))
+                .andExpect(jsonPath("$[1].index").value(1))
+                .andExpect(jsonPath("$[1].status").value("UPDATED"))
+                .andExpect(jsonPath("$[1].item.id").value(2))
+                .andExpect(jsonPath("$[2].index").value(2))
+                .andExpect(jsonPath("$[2].status").value("NOT_FOUND"))
+                .andExpect(jsonPath("$[2].error").value("Employee not found with ID 3."));
+    }
+
+    @Test
+    void testImportCsv() throws Exception {
+        String input = """
+                firstName,lastName,active,department
+                Gunnar,Gunnarson,true,IT
+                Olaf,Olafson,true,Legal
+                """;
+
+        mockMvc.perform(post(PATH + "/import").contentType("text/csv").content(input))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.rows").value(2))
+                .andExpect(jsonPath("$.imported").value(1))
+                .andExpect(jsonPath("$.failed").value(1))
+                .andExpect(jsonPath("$.errors[0].line").value(3))
+                .andExpect(jsonPath("$.errors[0].error").value("Unknown department \"Legal\"."));
+    }
 }
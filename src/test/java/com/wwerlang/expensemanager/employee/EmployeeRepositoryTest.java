@@ -0,0 +1,267 @@
+package com.wwerlang.expensemanager.employee;
+
+import com.wwerlang.expensemanager.department.Department;
+import org.hibernate.SessionFactory;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = {"spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+                + "com.wwerlang.expensemanager.employee.EmployeeRepositoryTest$LastStatement"})
+class EmployeeRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManager.getEntityManager().getEntityManagerFactory()
+                .unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @Test
+    void testListByIdGreaterThan() {
+        persistEmployees(3);
+
+        List<EmployeeDTO> employees = employeeRepository.listByIdGreaterThan(0, Limit.of(2));
+        assertEquals(2, employees.size());
+        assertTrue(employees.get(0).getId() < employees.get(1).getId());
+        assertEquals("First0", employees.get(0).getFirstName());
+        assertEquals("Department0", employees.get(0).getDepartment().getName());
+
+        List<EmployeeDTO> next = employeeRepository.listByIdGreaterThan(employees.get(1).getId(), Limit.of(2));
+        assertEquals(1, next.size());
+        assertEquals("First2", next.get(0).getFirstName());
+    }
+
+    @Test
+    void testListFiltered() {
+        persistEmployees(3);
+        Employee inactive = employeeRepository.findAll().get(1);
+        inactive.setActive(false);
+        employeeRepository.saveAndFlush(inactive);
+        long departmentId = inactive.getDepartment().getId();
+
+        List<EmployeeDTO> byDepartment = employeeRepository.listByDepartmentIdAndIdGreaterThan(departmentId, 0,
+                Limit.of(10));
+        assertEquals(List.of(inactive.getId()), byDepartment.stream().map(EmployeeDTO::getId).toList());
+
+        List<EmployeeDTO> active = employeeRepository.listByActiveAndIdGreaterThan(true, 0, Limit.of(10));
+        assertEquals(2, active.size());
+        assertTrue(active.stream().noneMatch(e -> e.getId() == inactive.getId()));
+
+        assertEquals(1, employeeRepository.listByDepartmentIdAndActiveAndIdGreaterThan(departmentId, false, 0,
+                Limit.of(10)).size());
+        assertEquals(0, employeeRepository.listByDepartmentIdAndActiveAndIdGreaterThan(departmentId, true, 0,
+                Limit.of(10)).size());
+    }
+
+    @Test
+    void testListFieldsReadsOnlyThoseColumns() {
+        persistEmployees(3);
+        statistics.clear();
+
+        List<Map<String, Object>> employees = employeeRepository.listFieldsByIdGreaterThan(
+                EmployeeFields.parse("firstName,lastName"), 0, null, null, Limit.of(2));
+        assertEquals(2, employees.size());
+        assertEquals(List.of("id", "firstName", "lastName"), List.copyOf(employees.get(0).keySet()));
+        assertEquals("First0", employees.get(0).get("firstName"));
+        assertEquals(0, statistics.getEntityLoadCount());
+
+        String sql = LastStatement.sql;
+        assertFalse(sql.contains("join"), sql);
+        assertFalse(sql.contains("active"), sql);
+        assertFalse(sql.contains("version"), sql);
+
+        List<Map<String, Object>> next = employeeRepository.listFieldsByIdGreaterThan(
+                EmployeeFields.parse("firstName"), (Long) employees.get(1).get("id"), null, null, Limit.of(2));
+        assertEquals(1, next.size());
+        assertEquals("First2", next.get(0).get("firstName"));
+    }
+
+    @Test
+    void testListFieldsJoinsDepartmentOnlyForItsColumns() {
+        persistEmployees(2);
+        Employee employee = employeeRepository.findAll().get(1);
+        long departmentId = employee.getDepartment().getId();
+        entityManager.persistAndFlush(new Employee(0, "John", "Johnson", true, null, 0));
+
+        List<Map<String, Object>> byDepartment = employeeRepository.listFieldsByIdGreaterThan(
+                EmployeeFields.parse("department.id"), 0, departmentId, true, Limit.of(10));
+        assertEquals(List.of(Map.of("id", employee.getId(), "department", Map.of("id", departmentId))), byDepartment);
+        assertFalse(LastStatement.sql.contains("join"), LastStatement.sql);
+
+        List<Map<String, Object>> employees = employeeRepository.listFieldsByIdGreaterThan(
+                EmployeeFields.parse("lastName,department.name"), 0, null, null, Limit.of(10));
+        assertTrue(LastStatement.sql.contains("join"), LastStatement.sql);
+        assertEquals(3, employees.size());
+        assertEquals(Map.of("id", departmentId, "name", "Department1"), employees.get(1).get("department"));
+        assertTrue(employees.get(2).containsKey("department"));
+        assertNull(employees.get(2).get("department"));
+    }
+
+    @Test
+    void testFindFieldsById() {
+        persistEmployees(1);
+        Employee employee = employeeRepository.findAll().get(0);
+
+        Map<String, Object> found = employeeRepository.findFieldsById(EmployeeFields.parse("active,department"),
+                employee.getId()).orElseThrow();
+        assertEquals(List.of("id", "active", "department"), List.copyOf(found.keySet()));
+
+        Map<?, ?> department = (Map<?, ?>) found.get("department");
+        assertEquals(List.of("id", "name", "description", "active", "version"), List.copyOf(department.keySet()));
+        assertEquals("Department0", department.get("name"));
+        assertNull(department.get("description"));
+
+        assertTrue(employeeRepository.findFieldsById(EmployeeFields.parse("firstName"), 0).isEmpty());
+    }
+
+    /**
+     * The filters are index lookups: H2 names the index it reads in the plan, or the table and its scan without one.
+     */
+    @Test
+    void testFiltersUseIndexes() {
+        String byDepartment = plan("select * from employee where department_id = 1 and id > 0 order by id limit 10");
+        assertTrue(byDepartment.contains("EMPLOYEE_DEPARTMENT_ID: DEPARTMENT_ID ="), byDepartment);
+
+        String byActive = plan("select * from employee where active = true and id > 0 order by id limit 10");
+        assertTrue(byActive.contains("EMPLOYEE_ACTIVE: ACTIVE = TRUE"), byActive);
+
+        String categories = plan("select * from category where active = true and id > 0 order by id limit 10");
+        assertTrue(categories.contains("CATEGORY_ACTIVE: ACTIVE = TRUE"), categories);
+
+        String departments = plan("select * from department where active = true and id > 0 order by id limit 10");
+        assertTrue(departments.contains("DEPARTMENT_ACTIVE: ACTIVE = TRUE"), departments);
+    }
+
+    @Test
+    void testListStatementCountIsConstant() {
+        assertEquals(1, countListStatements(10));
+        assertEquals(1, countListStatements(200));
+    }
+
+    @Test
+    void testStreamAllStatementCountIsConstant() {
+        persistEmployees(50);
+        statistics.clear();
+
+        try (var employees = employeeRepository.streamAll()) {
+            assertEquals(50, employees.filter(e -> e.getDepartment() != null).count());
+        }
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void testStreamNames() {
+        persistEmployees(3);
+        statistics.clear();
+
+        try (var names = employeeRepository.streamNames()) {
+            List<EmployeeNameDTO> employees = names.toList();
+            assertEquals(3, employees.size());
+            assertTrue(employees.stream().anyMatch(e -> e.getFirstName().equals("First1")
+                    && e.getLastName().equals("Last1") && e.isActive()));
+        }
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+
+    @Test
+    void testInsertsAreBatched() {
+        Department department = entityManager.persistAndFlush(new Department(0, "IT", null, true, 0));
+        statistics.clear();
+
+        for (int i = 0; i < 100; i++) {
+            employeeRepository.save(new Employee(0, "First" + i, "Last" + i, true, department, 0));
+        }
+
+        entityManager.flush();
+
+        // Two insert batches of 50 plus the pooled sequence calls, instead of one statement per row.
+        assertEquals(100, statistics.getEntityInsertCount());
+        assertTrue(statistics.getPrepareStatementCount() <= 5);
+    }
+
+    @Test
+    void testUpdateIfVersionMatches() {
+        Department department = entityManager.persist(new Department(0, "IT", null, true, 0));
+        Employee employee = entityManager.persistAndFlush(new Employee(0, "John", "Johnson", true, department, 0));
+        entityManager.clear();
+        statistics.clear();
+
+        Employee update = new Employee(employee.getId(), "John", "Smith", false, department, 0);
+        assertEquals(1, employeeRepository.updateIfVersionMatches(update));
+        assertEquals(1, statistics.getPrepareStatementCount());
+
+        // The version moved on, so the same request is now stale.
+        assertEquals(0, employeeRepository.updateIfVersionMatches(update));
+
+        Employee saved = entityManager.find(Employee.class, employee.getId());
+        assertEquals("Smith", saved.getLastName());
+        assertFalse(saved.isActive());
+        assertEquals(1, saved.getVersion());
+    }
+
+    private String plan(String sql) {
+        return (String) entityManager.getEntityManager().createNativeQuery("explain " + sql).getSingleResult();
+    }
+
+    private long countListStatements(int count) {
+        persistEmployees(count);
+        statistics.clear();
+
+        List<EmployeeDTO> employees = employeeRepository.listByIdGreaterThan(0, Limit.of(count));
+        assertEquals(count, employees.size());
+        assertEquals(0, statistics.getEntityLoadCount());
+
+        return statistics.getPrepareStatementCount();
+    }
+
+    /**
+     * Gives every employee its own department, the worst case for per-row department selects.
+     */
+    private void persistEmployees(int count) {
+        employeeRepository.deleteAll();
+
+        for (int i = 0; i < count; i++) {
+            Department department = entityManager.persist(new Department(0, "Department" + i, null, true, 0));
+            entityManager.persist(new Employee(0, "First" + i, "Last" + i, true, department, 0));
+        }
+
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    /**
+     * Keeps the last SQL statement Hibernate prepared, to check which columns and joins a query reads.
+     */
+    public static class LastStatement implements StatementInspector {
+
+        static volatile String sql;
+
+        @Override
+        public String inspect(String sql) {
+            LastStatement.sql = sql;
+            return sql;
+        }
+    }
+}
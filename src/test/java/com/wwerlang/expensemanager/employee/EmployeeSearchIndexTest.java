@@ -0,0 +1,118 @@
+package com.wwerlang.expensemanager.employee;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmployeeSearchIndexTest {
+
+    private final EmployeeSearchIndex index = new EmployeeSearchIndex();
+
+    @Test
+    void testRanksExactThenShorterThenAlphabetical() {
+        index.putAll(List.of(
+                employee(1, "Johanna", "Berg"),
+                employee(2, "Jon", "Snow"),
+                employee(3, "John", "Smith"),
+                employee(4, "Anna", "Johnson"),
+                employee(5, "Jo", "March"),
+                employee(6, "Mary", "Jones")));
+
+        assertEquals(List.of(5L, 2L, 3L, 6L, 1L, 4L), ids(index.search("jo", 10)));
+        assertEquals(List.of(3L, 4L), ids(index.search("John", 10)));
+        assertEquals(List.of(5L, 2L), ids(index.search("jo", 2)));
+        assertEquals(List.of(), ids(index.search("xavier", 10)));
+        assertEquals(List.of(), ids(index.search(" - ", 10)));
+    }
+
+    @Test
+    void testEveryWordMustStartAWordOfTheName() {
+        index.putAll(List.of(
+                employee(1, "John", "Smith"),
+                employee(2, "John", "Johnson"),
+                employee(3, "Smith", "Jones"),
+                employee(4, "Mary", "Smith")));
+
+        assertEquals(List.of(1L, 3L), ids(index.search("sm jo", 10)));
+        assertEquals(List.of(2L), ids(index.search("john johns", 10)));
+        assertEquals(List.of(), ids(index.search("john john john", 10)));
+    }
+
+    @Test
+    void testIgnoresCaseAccentsAndPunctuation() {
+        index.putAll(List.of(
+                employee(1, "Zoë", "O'Brien"),
+                employee(2, "José", "García-Márquez")));
+
+        assertEquals(List.of(1L), ids(index.search("ZOE", 10)));
+        assertEquals(List.of(1L), ids(index.search("obri", 10)));
+        assertEquals(List.of(2L), ids(index.search("marq", 10)));
+        assertEquals(List.of(2L), ids(index.search("jose garcia", 10)));
+    }
+
+    @Test
+    void testUpdates() {
+        index.putAll(List.of(employee(1, "John", "Smith"), employee(2, "Mary", "Jones")));
+        index.put(employee(1, "Jonathan", "Smith"));
+        index.put(new EmployeeNameDTO(2, "Mary", "Jones", false));
+
+        assertEquals(List.of(), ids(index.search("john", 10)));
+        assertEquals(List.of(1L), ids(index.search("jonath", 10)));
+        assertFalse(index.search("mary", 10).get(0).isActive());
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void testMergesDeltaIntoMain() {
+        int employees = EmployeeSearchIndex.DELTA_LIMIT * 2;
+        IntStream.rangeClosed(1, employees).forEach(i -> index.put(employee(i, "Name" + i, "Smith")));
+        index.put(employee(7, "Renamed", "Smith"));
+
+        assertEquals(List.of(7L), ids(index.search("renamed", 10)));
+        assertEquals(List.of(70L), ids(index.search("name7", 1)));
+        assertEquals(List.of(1234L), ids(index.search("name1234", 10)));
+        assertEquals(EmployeeSearchIndex.MAX_RESULTS, index.search("smith", 1000).size());
+    }
+
+    @Test
+    void testCompactsOldSlotsOnMerge() {
+        int renames = EmployeeSearchIndex.DELTA_LIMIT * 4;
+        IntStream.rangeClosed(1, 10).forEach(i -> index.put(employee(i, "Name" + i, "Smith")));
+        IntStream.range(0, renames).forEach(i -> index.put(employee(i % 10 + 1, "Renamed" + i, "Jones")));
+
+        assertEquals(List.of(), ids(index.search("name", 10)));
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L), ids(index.search("jones", 100)).stream()
+                .sorted().toList());
+        assertEquals(List.of((renames - 1) % 10 + 1L), ids(index.search("renamed" + (renames - 1), 10)));
+        assertEquals(10, index.size());
+
+        // Only the slots and strings of renames since the last merge are left over.
+        Object snapshot = ReflectionTestUtils.getField(index, "snapshot");
+        int slots = ReflectionTestUtils.invokeMethod(snapshot, "size");
+        Map<?, ?> strings = (Map<?, ?>) ReflectionTestUtils.getField(index, "strings");
+        assertTrue(slots <= EmployeeSearchIndex.DELTA_LIMIT / 2 + 10);
+        assertTrue(strings.size() <= EmployeeSearchIndex.DELTA_LIMIT * 2);
+    }
+
+    @Test
+    void testLongWords() {
+        String longName = "Wolfeschlegelsteinhausenbergerdorffwelchevoralternwarengewissenhaft";
+        index.putAll(List.of(employee(1, "Hubert", longName), employee(2, "Hubert", longName.substring(0, 40))));
+
+        assertEquals(List.of(1L), ids(index.search(longName.substring(0, 50), 10)));
+        assertEquals(List.of(1L, 2L), ids(index.search(longName.substring(0, 40), 10)));
+    }
+
+    private static EmployeeNameDTO employee(long id, String firstName, String lastName) {
+        return new EmployeeNameDTO(id, firstName, lastName, true);
+    }
+
+    private static List<Long> ids(List<EmployeeNameDTO> employees) {
+        return employees.stream().map(EmployeeNameDTO::getId).toList();
+    }
+}
@@ -1,30 +1,53 @@
 package com.wwerlang.expensemanager.employee;
 
+import com.wwerlang.expensemanager.common.BatchResultDTO;
+import com.wwerlang.expensemanager.common.ImportResultDTO;
+import com.wwerlang.expensemanager.common.PageDTO;
 import com.wwerlang.expensemanager.department.Department;
 import com.wwerlang.expensemanager.department.DepartmentDTO;
 import com.wwerlang.expensemanager.department.DepartmentService;
+import com.wwerlang.expensemanager.exception.EntityConflictException;
 import com.wwerlang.expensemanager.exception.EntityNotFoundException;
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 @ExtendWith(MockitoExtension.class)
 class EmployeeServiceTest {
 
     private static final List<Employee> EMPLOYEES = List.of(
-            new Employee(1, "John", "Johnson", true, new Department(1, "IT", "Fix computers.", true)),
-            new Employee(2, "Smith", "Smithson", false, new Department(2, "HR", "Hires people.", false))
+            new Employee(1, "John", "Johnson", true, new Department(1, "IT", "Fix computers.", true, 0), 0),
+            new Employee(2, "Smith", "Smithson", false, new Department(2, "HR", "Hires people.", false, 0), 0)
     );
 
     @InjectMocks
@@ -33,9 +56,18 @@ class EmployeeServiceTest {
     @Mock
     private EmployeeRepository employeeRepository;
 
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
     @Spy
     private DepartmentService departmentService;
 
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private EmployeeSearchIndex employeeSearchIndex;
+
     @BeforeEach
     void mockEmployeeRepository() {
         lenient().when(employeeRepository.findById(anyLong())).thenAnswer(invocationOnMock -> {
@@ -43,7 +75,18 @@ class EmployeeServiceTest {
             return EMPLOYEES.stream().filter(e -> e.getId() == id).findFirst();
         });
 
-        lenient().when(employeeRepository.findAll()).thenReturn(EMPLOYEES);
+        lenient().when(employeeRepository.listByIdGreaterThan(anyLong(), any(Limit.class))).thenAnswer(invocationOnMock -> {
+            long id = invocationOnMock.getArgument(0);
+            Limit limit = invocationOnMock.getArgument(1);
+            return EMPLOYEES.stream().filter(e -> e.getId() > id).limit(limit.max())
+                    .map(e -> new EmployeeDTO(e.getId(), e.getFirstName(), e.getLastName(), e.isActive(), e.getVersion(),
+                            e.getDepartment().getId(), e.getDepartment().getName(),
+                            e.getDepartment().getDescription(), e.getDepartment().isActive(),
+                            e.getDepartment().getVersion()))
+                    .toList();
+        });
+
+        lenient().when(employeeRepository.streamAll()).thenAnswer(invocationOnMock -> EMPLOYEES.stream());
 
         lenient().when(employeeRepository.save(any(Employee.class))).thenAnswer(invocationOnMock -> {
             Employee employee = invocationOnMock.getArgument(0);
@@ -51,10 +94,35 @@ class EmployeeServiceTest {
             return employee;
         });
 
+        lenient().when(employeeRepository.findAllWithDepartmentByIdIn(anyCollection())).thenAnswer(invocationOnMock -> {
+            Iterable<Long> ids = invocationOnMock.getArgument(0);
+            List<Long> idList = new ArrayList<>();
+            ids.forEach(idList::add);
+            return EMPLOYEES.stream().filter(e -> idList.contains(e.getId())).toList();
+        });
+
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocationOnMock -> {
+            TransactionCallback<?> callback = invocationOnMock.getArgument(0);
+            return callback.doInTransaction(null);
+        });
+
         lenient().when(employeeRepository.existsById(anyLong())).thenAnswer(invocationOnMock -> {
             long id = invocationOnMock.getArgument(0);
             return EMPLOYEES.stream().anyMatch(e -> e.getId() == id);
         });
+
+        lenient().when(employeeRepository.updateIfVersionMatches(any(Employee.class))).thenAnswer(invocationOnMock -> {
+            Employee employee = invocationOnMock.getArgument(0);
+            return (int) EMPLOYEES.stream()
+                    .filter(e -> e.getId() == employee.getId() && e.getVersion() == employee.getVersion())
+                    .count();
+        });
+
+        lenient().doAnswer(invocationOnMock -> {
+            long id = invocationOnMock.getArgument(0);
+            return EMPLOYEES.stream().map(Employee::getDepartment).filter(e -> e.getId() == id).findFirst()
+                    .map(departmentService::parseResponse).orElseThrow();
+        }).when(departmentService).find(anyLong());
     }
 
     @Test
@@ -76,7 +144,10 @@ class EmployeeServiceTest {
 
     @Test
     void testList() {
-        List<EmployeeDTO> employees = employeeService.list();
+        PageDTO<EmployeeDTO> page = employeeService.list(0, 100, null, null);
+        assertNull(page.getNext());
+
+        List<EmployeeDTO> employees = page.getItems();
         assertEquals(2, employees.size());
 
         assertEquals(1, employees.get(0).getId());
@@ -94,10 +165,127 @@ class EmployeeServiceTest {
         assertEquals("HR", employees.get(1).getDepartment().getName());
     }
 
+    @Test
+    void testListFilters() {
+        employeeService.list(0, 100, 1L, null);
+        verify(employeeRepository).listByDepartmentIdAndIdGreaterThan(1L, 0L, Limit.of(101));
+
+        employeeService.list(0, 100, null, false);
+        verify(employeeRepository).listByActiveAndIdGreaterThan(false, 0L, Limit.of(101));
+
+        employeeService.list(0, 100, 1L, true);
+        verify(employeeRepository).listByDepartmentIdAndActiveAndIdGreaterThan(1L, true, 0L, Limit.of(101));
+
+        verify(employeeRepository, never()).listByIdGreaterThan(anyLong(), any(Limit.class));
+    }
+
+    @Test
+    void testListFields() {
+        doReturn(List.of(Map.of("id", 1L, "firstName", "John"), Map.of("id", 2L, "firstName", "Smith")))
+                .when(employeeRepository).listFieldsByIdGreaterThan(any(EmployeeFields.class), anyLong(), any(), any(),
+                        any(Limit.class));
+
+        PageDTO<Map<String, Object>> page = employeeService.listFields(0, 1, 1L, true, "firstName");
+        assertEquals(List.of(Map.of("id", 1L, "firstName", "John")), page.getItems());
+        assertEquals(1, page.getNext());
+        verify(employeeRepository).listFieldsByIdGreaterThan(any(EmployeeFields.class), eq(0L), eq(1L), eq(true),
+                eq(Limit.of(2)));
+        verify(employeeRepository, never()).listByDepartmentIdAndActiveAndIdGreaterThan(anyLong(), anyBoolean(),
+                anyLong(), any(Limit.class));
+    }
+
+    @Test
+    void testFindFieldsNonExistent() {
+        EntityNotFoundException e = assertThrows(EntityNotFoundException.class,
+                () -> employeeService.findFields(3L, "firstName"));
+        assertEquals("Employee not found with ID 3.", e.getMessage());
+    }
+
+    @Test
+    void testFieldsUnknown() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> employeeService.listFields(0, 100, null, null, "firstName,salary"));
+        assertEquals("Unknown employee field \"salary\".", e.getMessage());
+    }
+
+    @Test
+    void testListNextPage() {
+        PageDTO<EmployeeDTO> first = employeeService.list(0, 1, null, null);
+        assertEquals(1, first.getItems().size());
+        assertEquals(1, first.getItems().get(0).getId());
+        assertEquals(1, first.getNext());
+
+        PageDTO<EmployeeDTO> second = employeeService.list(first.getNext(), 1, null, null);
+        assertEquals(1, second.getItems().size());
+        assertEquals(2, second.getItems().get(0).getId());
+        assertNull(second.getNext());
+    }
+
+    @Test
+    void testExport() {
+        List<EmployeeDTO> employees = new ArrayList<>();
+        employeeService.export(employees::add);
+        assertEquals(2, employees.size());
+
+        assertEquals(1, employees.get(0).getId());
+        assertEquals("John", employees.get(0).getFirstName());
+        assertEquals(1, employees.get(0).getDepartment().getId());
+
+        assertEquals(2, employees.get(1).getId());
+        assertEquals("Smith", employees.get(1).getFirstName());
+        assertEquals(2, employees.get(1).getDepartment().getId());
+
+        verify(entityManager).detach(EMPLOYEES.get(0));
+        verify(entityManager).detach(EMPLOYEES.get(1));
+    }
+
+    @Test
+    void testImportCsv() throws IOException {
+        doReturn(Map.of("IT", new DepartmentDTO(1, "IT", "Fix computers.", true, 0))).when(departmentService).mapByName();
+
+        String csv = """
+                firstName,lastName,active,department
+                Gunnar,Gunnarson,true,IT
+                "Olaf, Jr.",Olafson,false,IT
+
+                Erik,Erikson,maybe,IT
+                Sven,Svenson,true,Sales
+                """;
+        ImportResultDTO result = employeeService.importCsv(new BufferedReader(new StringReader(csv)));
+
+        assertEquals(4, result.getRows());
+        assertEquals(2, result.getImported());
+        assertEquals(2, result.getFailed());
+        assertEquals(5, result.getErrors().get(0).getLine());
+        assertEquals("Invalid active flag \"maybe\".", result.getErrors().get(0).getError());
+        assertEquals(6, result.getErrors().get(1).getLine());
+        assertEquals("Unknown department \"Sales\".", result.getErrors().get(1).getError());
+
+        ArgumentCaptor<Employee> employees = ArgumentCaptor.forClass(Employee.class);
+        verify(employeeRepository, times(2)).save(employees.capture());
+        assertEquals("Olaf, Jr.", employees.getAllValues().get(1).getFirstName());
+        assertFalse(employees.getAllValues().get(1).isActive());
+        assertEquals(1, employees.getAllValues().get(1).getDepartment().getId());
+    }
+
+    @Test
+    void testImportCsvMissingColumns() throws IOException {
+        String csv = """
+                firstName,lastName
+                Gunnar,Gunnarson
+                """;
+        ImportResultDTO result = employeeService.importCsv(new BufferedReader(new StringReader(csv)));
+
+        assertEquals(0, result.getRows());
+        assertEquals(0, result.getImported());
+        assertEquals(1, result.getErrors().get(0).getLine());
+        assertEquals("Missing columns [active, department].", result.getErrors().get(0).getError());
+    }
+
     @Test
     void testCreate() {
-        DepartmentDTO department = new DepartmentDTO(1, "IT", "Fix computers.", true);
-        EmployeeDTO employee = new EmployeeDTO(0, "John", "Johnson", true, department);
+        DepartmentDTO department = new DepartmentDTO(1, "IT", "Fix computers.", true, 0);
+        EmployeeDTO employee = new EmployeeDTO(0, "John", "Johnson", true, department, 0);
         employee = employeeService.save(employee);
 
         assertEquals(3, employee.getId());
@@ -106,12 +294,40 @@ class EmployeeServiceTest {
         assertTrue(employee.isActive());
         assertEquals(1, employee.getDepartment().getId());
         assertEquals("IT", employee.getDepartment().getName());
+        verify(employeeSearchIndex).put(argThat(e -> e.getId() == 3 && e.getFirstName().equals("John")));
+    }
+
+    @Test
+    void testSaveAnswersWithCopyOfStoredDepartment() {
+        DepartmentDTO cached = new DepartmentDTO(1, "IT", "Fix computers.", true, 0);
+        doReturn(cached).when(departmentService).find(1);
+
+        // Only the department id is sent.
+        EmployeeDTO employee = new EmployeeDTO(0, "John", "Johnson", true,
+                new DepartmentDTO(1, null, null, false, 0), 0);
+        employee = employeeService.save(employee);
+
+        assertEquals("IT", employee.getDepartment().getName());
+        assertEquals("Fix computers.", employee.getDepartment().getDescription());
+        assertNotSame(cached, employee.getDepartment());
+    }
+
+    @Test
+    void testSaveUnknownDepartment() {
+        doThrow(new EntityNotFoundException("Department", 9)).when(departmentService).find(9);
+
+        EmployeeDTO employee = new EmployeeDTO(0, "John", "Johnson", true,
+                new DepartmentDTO(9, null, null, false, 0), 0);
+        assertThrows(EntityNotFoundException.class, () -> employeeService.save(employee));
+
+        verify(employeeRepository, never()).save(any(Employee.class));
+        verify(employeeSearchIndex, never()).put(any(EmployeeNameDTO.class));
     }
 
     @Test
     void testUpdate() {
-        DepartmentDTO department = new DepartmentDTO(2, "HR", "Hires people.", true);
-        EmployeeDTO employee = new EmployeeDTO(2, "Smith", "Smithson", true, department);
+        DepartmentDTO department = new DepartmentDTO(2, "HR", "Hires people.", true, 0);
+        EmployeeDTO employee = new EmployeeDTO(2, "Smith", "Smithson", true, department, 0);
         employee = employeeService.save(employee);
 
         assertEquals(2, employee.getId());
@@ -124,16 +340,53 @@ class EmployeeServiceTest {
 
     @Test
     void testUpdateNonExistent() {
-        DepartmentDTO department = new DepartmentDTO(2, "HR", "Hires people.", true);
-        EmployeeDTO employee = new EmployeeDTO(3, "Gunnar", "Gunnarson", true, department);
+        DepartmentDTO department = new DepartmentDTO(2, "HR", "Hires people.", true, 0);
+        EmployeeDTO employee = new EmployeeDTO(3, "Gunnar", "Gunnarson", true, department, 0);
         EntityNotFoundException e = assertThrows(EntityNotFoundException.class, () -> employeeService.save(employee));
         assertEquals("Employee not found with ID 3.", e.getMessage());
     }
 
+    @Test
+    void testUpdateConflict() {
+        DepartmentDTO department = new DepartmentDTO(2, "HR", "Hires people.", true, 0);
+        EmployeeDTO employee = new EmployeeDTO(2, "Smith", "Smithson", true, department, 5);
+        EntityConflictException e = assertThrows(EntityConflictException.class, () -> employeeService.save(employee));
+        assertEquals("Employee with ID 2 was modified after version 5.", e.getMessage());
+    }
+
+    @Test
+    void testSaveAll() {
+        DepartmentDTO department = new DepartmentDTO(1, "IT", "Fix computers.", true, 0);
+        List<EmployeeDTO> employees = List.of(
+                new EmployeeDTO(0, "Gunnar", "Gunnarson", true, department, 0),
+                new EmployeeDTO(2, "Smith", "Smithson", true, department, 0),
+                new EmployeeDTO(3, "Olaf", "Olafson", true, department, 0)
+        );
+        List<BatchResultDTO<EmployeeDTO>> results = employeeService.saveAll(employees);
+        assertEquals(3, results.size());
+
+        assertEquals(0, results.get(0).getIndex());
+        assertEquals(BatchResultDTO.Status.CREATED, results.get(0).getStatus());
+        assertEquals(3, results.get(0).getItem().getId());
+        assertEquals("Gunnar", results.get(0).getItem().getFirstName());
+
+        assertEquals(1, results.get(1).getIndex());
+        assertEquals(BatchResultDTO.Status.UPDATED, results.get(1).getStatus());
+        assertEquals(2, results.get(1).getItem().getId());
+
+        assertEquals(2, results.get(2).getIndex());
+        assertEquals(BatchResultDTO.Status.NOT_FOUND, results.get(2).getStatus());
+        assertNull(results.get(2).getItem());
+        assertEquals("Employee not found with ID 3.", results.get(2).getError());
+
+        verify(employeeSearchIndex).putAll(argThat(e -> e.stream().map(EmployeeNameDTO::getId).toList()
+                .equals(List.of(3L, 2L))));
+    }
+
     @Test
     void testParseResponse() {
-        Department department = new Department(1, "IT", "Fix computers.", true);
-        Employee employee = new Employee(1, "John", "Johnson", true, department);
+        Department department = new Department(1, "IT", "Fix computers.", true, 0);
+        Employee employee = new Employee(1, "John", "Johnson", true, department, 0);
         EmployeeDTO employeeDTO = employeeService.parseResponse(employee);
 
         assertEquals(1, employeeDTO.getId());
@@ -146,8 +399,8 @@ class EmployeeServiceTest {
 
     @Test
     void testParseRequest() {
-        DepartmentDTO departmentDTO = new DepartmentDTO(2, "HR", "Hires people.", true);
-        EmployeeDTO employeeDTO = new EmployeeDTO(2, "Smith", "Smithson", false, departmentDTO);
+        DepartmentDTO departmentDTO = new DepartmentDTO(2, "HR", "Hires people.", true, 0);
+        EmployeeDTO employeeDTO = new EmployeeDTO(2, "Smith", "Smithson", false, departmentDTO, 0);
         Employee employee = employeeService.parseRequest(employeeDTO);
 
         assertEquals(2, employeeDTO.getId());
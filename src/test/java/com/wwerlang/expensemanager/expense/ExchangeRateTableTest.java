@@ -0,0 +1,102 @@
+package com.wwerlang.expensemanager.expense;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.Currency;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExchangeRateTableTest {
+
+    private static final Currency EUR = Currency.getInstance("EUR");
+    private static final Currency USD = Currency.getInstance("USD");
+    private static final Currency JPY = Currency.getInstance("JPY");
+    private static final LocalDate DAY = LocalDate.of(2023, 12, 1);
+
+    @Test
+    void testConvert() throws IOException {
+        ExchangeRateTable table = parse("2023-12-01,USD,0.9", "2023-12-01,JPY,0.0064");
+
+        assertEquals(900, table.convert(1000, USD, DAY));
+        assertEquals(640, table.convert(1000, JPY, DAY));
+        assertEquals(1234, table.convert(1234, EUR, DAY));
+        assertEquals(2, table.currencies());
+        assertEquals(DAY, table.from());
+        assertEquals(DAY, table.to());
+    }
+
+    @Test
+    void testConvertRoundsHalfUp() throws IOException {
+        ExchangeRateTable table = parse("2023-12-01,USD,0.9", "2023-12-01,JPY,0.0064");
+
+        assertEquals(5, table.convert(5, USD, DAY));
+        assertEquals(-5, table.convert(-5, USD, DAY));
+        assertEquals(4, table.convert(4, USD, DAY));
+        // 0.0064 euros are 0.64 cents, rounded to one.
+        assertEquals(1, table.convert(1, JPY, DAY));
+        assertEquals(-1, table.convert(-1, JPY, DAY));
+
+        for (long amount = -1000; amount <= 1000; amount++) {
+            BigDecimal expected = BigDecimal.valueOf(amount).multiply(new BigDecimal("0.0064"))
+                    .setScale(2, RoundingMode.HALF_UP);
+            assertEquals(expected.unscaledValue().longValueExact(), table.convert(amount, JPY, DAY), "" + amount);
+        }
+    }
+
+    @Test
+    void testRateHoldsUntilTheNextOne() throws IOException {
+        ExchangeRateTable table = parse("2023-12-05,USD,0.8123", "2023-12-01,USD,0.9");
+
+        assertFalse(table.hasRate(USD, DAY.minusDays(1)));
+        assertThrows(IllegalArgumentException.class, () -> table.convert(1000, USD, DAY.minusDays(1)));
+        assertTrue(table.hasRate(USD, DAY));
+        assertEquals(900, table.convert(1000, USD, DAY.plusDays(3)));
+        assertEquals(812, table.convert(1000, USD, DAY.plusDays(4)));
+        assertEquals(812, table.convert(1000, USD, DAY.plusYears(1)));
+        assertFalse(table.hasRate(JPY, DAY));
+        assertTrue(table.hasRate(EUR, DAY.minusYears(1)));
+    }
+
+    @Test
+    void testMultiplyRoundedBeyondLong() {
+        long value = Long.MAX_VALUE / 2;
+
+        assertEquals(BigDecimal.valueOf(value).multiply(BigDecimal.valueOf(3))
+                        .divide(BigDecimal.valueOf(4), 0, RoundingMode.HALF_UP).longValueExact(),
+                ExchangeRateTable.multiplyRounded(value, 3, 4));
+        assertEquals(-ExchangeRateTable.multiplyRounded(value, 3, 4), ExchangeRateTable.multiplyRounded(-value, 3, 4));
+        assertThrows(ArithmeticException.class, () -> ExchangeRateTable.multiplyRounded(Long.MAX_VALUE, 3, 1));
+    }
+
+    @Test
+    void testParseRejectsBadLines() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> parse("2023-12-01,USD,0.9", "2023-12-02,USD,-1"));
+        assertEquals("Line 3: Exchange rates are above zero.", e.getMessage());
+
+        assertThrows(IllegalArgumentException.class, () -> parse("2023-12-01,USD"));
+        assertThrows(IllegalArgumentException.class, () -> parse("2023-13-01,USD,0.9"));
+        assertThrows(IllegalArgumentException.class, () -> parse("2023-12-01,XXY,0.9"));
+        assertThrows(IllegalArgumentException.class, () -> parse("2023-12-01,USD,abc"));
+    }
+
+    @Test
+    void testParseIgnoresBaseCurrency() throws IOException {
+        ExchangeRateTable table = parse("2023-12-01,EUR,2");
+
+        assertEquals(0, table.currencies());
+        assertNull(table.from());
+        assertEquals(1000, table.convert(1000, EUR, DAY));
+    }
+
+    private ExchangeRateTable parse(String... lines) throws IOException {
+        String csv = "date,currency,rate\n" + String.join("\n", lines) + "\n";
+        return ExchangeRateTable.parse(EUR, new BufferedReader(new StringReader(csv)));
+    }
+}
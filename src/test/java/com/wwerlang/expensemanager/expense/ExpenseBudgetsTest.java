@@ -0,0 +1,318 @@
+package com.wwerlang.expensemanager.expense;
+
+import com.wwerlang.expensemanager.department.Department;
+import com.wwerlang.expensemanager.department.DepartmentRepository;
+import com.wwerlang.expensemanager.exception.BudgetExceededException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ExpenseBudgetsTest {
+
+    private static final YearMonth DECEMBER = YearMonth.of(2023, 12);
+    private static final Currency EUR = Currency.getInstance("EUR");
+    private static final Department IT = new Department(4, "IT", null, true, 0);
+    private static final Department SALES = new Department(5, "Sales", null, true, 0);
+
+    @InjectMocks
+    private ExpenseBudgets budgets;
+
+    @Mock
+    private ExpenseBudgetRepository expenseBudgetRepository;
+
+    @Mock
+    private DepartmentRepository departmentRepository;
+
+    @Mock
+    private ExchangeRates exchangeRates;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ExchangeRateTable rates = ExchangeRateTable.parse(EUR, new BufferedReader(new StringReader("""
+                date,currency,rate
+                2023-12-01,USD,0.9
+                """)));
+        lenient().when(exchangeRates.table()).thenReturn(rates);
+        lenient().when(exchangeRates.base()).thenReturn(EUR);
+        lenient().when(departmentRepository.existsById(anyLong())).thenReturn(true);
+        budgets.save(IT.getId(), new BigDecimal("100.00"));
+    }
+
+    @Test
+    void testReservesWithinBudget() {
+        ExpenseBudgets.Reservation reservation = budgets.reservation();
+        reservation.reserve(List.of(expense(IT, "60.00"), expense(IT, "40.00")), List.of());
+        reservation.commit();
+
+        assertBudget("100.00", "0.00");
+
+        BudgetExceededException e = assertThrows(BudgetExceededException.class,
+                () -> budgets.reservation().reserve(List.of(expense(IT, "0.01")), List.of()));
+        assertEquals("Department 4 has 0.00 left of its budget for 2023-12, not enough for 0.01.", e.getMessage());
+    }
+
+    @Test
+    void testRejectsAllOrNothing() {
+        budgets.save(SALES.getId(), new BigDecimal("10.00"));
+
+        assertThrows(BudgetExceededException.class, () -> budgets.reservation().reserve(
+                List.of(expense(IT, "50.00"), expense(SALES, "10.01")), List.of()));
+
+        assertBudget("0.00", "100.00");
+        assertEquals(new BigDecimal("0.00"), budgets.find(SALES.getId(), DECEMBER).getSpent());
+    }
+
+    @Test
+    void testReleaseGivesBack() {
+        ExpenseBudgets.Reservation reservation = budgets.reservation();
+        reservation.reserve(List.of(expense(IT, "80.00")), List.of());
+        assertBudget("80.00", "20.00");
+
+        reservation.release();
+        assertBudget("0.00", "100.00");
+    }
+
+    @Test
+    void testUpdateReservesDifference() {
+        Expense expense = expense(IT, "90.00");
+        ExpenseBudgets.Reservation reservation = budgets.reservation();
+        reservation.reserve(List.of(expense), List.of());
+        reservation.commit();
+
+        // Only the 5.00 more is reserved, so the update fits.
+        reservation = budgets.reservation();
+        reservation.reserve(List.of(expense(IT, "95.00")), List.of(expense));
+        reservation.commit();
+        assertBudget("95.00", "5.00");
+
+        // Lowering the amount frees the difference once committed only.
+        reservation = budgets.reservation();
+        reservation.reserve(List.of(expense(IT, "20.00")), List.of(expense(IT, "95.00")));
+        assertBudget("95.00", "5.00");
+        reservation.commit();
+        assertBudget("20.00", "80.00");
+    }
+
+    @Test
+    void testConvertsIntoBaseCurrency() {
+        Expense expense = expense(IT, "50.00");
+        expense.setCurrency(Currency.getInstance("USD"));
+
+        ExpenseBudgets.Reservation reservation = budgets.reservation();
+        reservation.reserve(List.of(expense, expense(IT, "55.00")), List.of());
+        reservation.commit();
+
+        // 50.00 USD at 0.9 are 45.00 EUR.
+        assertBudget("100.00", "0.00");
+    }
+
+    @Test
+    void testDepartmentsWithoutBudgetAreCounted() {
+        ExpenseBudgets.Reservation reservation = budgets.reservation();
+        reservation.reserve(List.of(expense(SALES, "1000000.00")), List.of());
+        reservation.commit();
+
+        ExpenseBudgetDTO budget = budgets.find(SALES.getId(), DECEMBER);
+        assertNull(budget.getMonthlyLimit());
+        assertNull(budget.getRemaining());
+        assertEquals(new BigDecimal("1000000.00"), budget.getSpent());
+    }
+
+    @Test
+    void testReconcile() throws Exception {
+        ExpenseBudgets.Reservation reservation = budgets.reservation();
+        reservation.reserve(List.of(expense(IT, "30.00")), List.of());
+        reservation.commit();
+
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getObject(1, LocalDate.class)).thenReturn(DECEMBER.atDay(1));
+        when(rs.getLong(2)).thenReturn(IT.getId());
+        when(rs.getLong(3)).thenReturn(4500L);
+        doAnswer(invocationOnMock -> {
+            RowCallbackHandler handler = invocationOnMock.getArgument(1);
+            handler.processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+
+        assertEquals(1, budgets.reconcile());
+        assertBudget("45.00", "55.00");
+        assertEquals(0, budgets.reconcile());
+    }
+
+    /**
+     * A delete committed in the database, and so missing from the rollups, before its reservation commits. Correcting
+     * the counter for it then would free its cents twice.
+     */
+    @Test
+    void testReconcileSkipsWritesInFlight() throws Exception {
+        Expense expense = expense(IT, "30.00");
+        ExpenseBudgets.Reservation reservation = budgets.reservation();
+        reservation.reserve(List.of(expense), List.of());
+        reservation.commit();
+
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getObject(1, LocalDate.class)).thenReturn(DECEMBER.atDay(1));
+        when(rs.getLong(2)).thenReturn(IT.getId());
+        when(rs.getLong(3)).thenReturn(0L);
+        doAnswer(invocationOnMock -> {
+            RowCallbackHandler handler = invocationOnMock.getArgument(1);
+            handler.processRow(rs);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+
+        ExpenseBudgets.Reservation delete = budgets.reservation();
+        delete.reserve(List.of(), List.of(expense));
+
+        assertEquals(0, budgets.reconcile());
+        delete.commit();
+        assertBudget("0.00", "100.00");
+        assertEquals(0, budgets.reconcile());
+        assertBudget("0.00", "100.00");
+    }
+
+    @Test
+    void testRemoveMonth() {
+        ExpenseBudgets.Reservation reservation = budgets.reservation();
+        reservation.reserve(List.of(expense(IT, "30.00")), List.of());
+        reservation.commit();
+
+        budgets.removeMonth(DECEMBER);
+        assertBudget("0.00", "100.00");
+    }
+
+    @Test
+    void testInvalidBudget() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> budgets.save(IT.getId(), new BigDecimal("-1.00")));
+        assertEquals("A budget is an amount of zero or more.", e.getMessage());
+    }
+
+    /**
+     * Threads create expenses of up to 1.00 against a budget of 100.00, some rolled back, and delete some of those
+     * they created. The counter must never go over the budget and must end at exactly what was committed.
+     */
+    @Test
+    void testConcurrentSubmissions() throws Exception {
+        int threads = 8;
+        int attempts = 20_000;
+        long limit = 10_000;
+        AtomicLong committed = new AtomicLong();
+        AtomicLong rejected = new AtomicLong();
+        AtomicLong overLimit = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            long seed = t;
+            futures.add(executor.submit(() -> {
+                SplittableRandom random = new SplittableRandom(seed);
+                List<Expense> own = new ArrayList<>();
+                start.await();
+
+                for (int i = 0; i < attempts; i++) {
+                    ExpenseBudgets.Reservation reservation = budgets.reservation();
+
+                    if (!own.isEmpty() && random.nextInt(5) == 0) {
+                        Expense deleted = own.remove(own.size() - 1);
+                        reservation.reserve(List.of(), List.of(deleted));
+                        reservation.commit();
+                        committed.addAndGet(-cents(deleted));
+                        continue;
+                    }
+
+                    Expense expense = expense(IT, BigDecimal.valueOf(random.nextInt(1, 101), 2).toPlainString());
+
+                    try {
+                        reservation.reserve(List.of(expense), List.of());
+                    } catch (BudgetExceededException e) {
+                        rejected.incrementAndGet();
+                        continue;
+                    }
+
+                    if (cents(budgets.find(IT.getId(), DECEMBER).getSpent()) > limit) {
+                        overLimit.incrementAndGet();
+                    }
+
+                    if (random.nextInt(10) == 0) {
+                        reservation.release();
+                    } else {
+                        reservation.commit();
+                        committed.addAndGet(cents(expense));
+                        own.add(expense);
+                    }
+                }
+
+                return null;
+            }));
+        }
+
+        start.countDown();
+
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+
+        executor.shutdown();
+
+        assertEquals(0, overLimit.get());
+        assertTrue(rejected.get() > 0);
+        assertEquals(committed.get(), cents(budgets.find(IT.getId(), DECEMBER).getSpent()));
+        assertTrue(committed.get() <= limit);
+    }
+
+    private void assertBudget(String spent, String remaining) {
+        ExpenseBudgetDTO budget = budgets.find(IT.getId(), DECEMBER);
+        assertEquals(new BigDecimal(spent), budget.getSpent());
+        assertEquals(new BigDecimal(remaining), budget.getRemaining());
+    }
+
+    private static Expense expense(Department department, String amount) {
+        return new Expense(0, null, department, null, DECEMBER.atDay(5), cents(new BigDecimal(amount)), EUR, null,
+                0);
+    }
+
+    private static long cents(Expense expense) {
+        return expense.getAmount();
+    }
+
+    private static long cents(BigDecimal amount) {
+        return amount.movePointRight(2).longValueExact();
+    }
+}
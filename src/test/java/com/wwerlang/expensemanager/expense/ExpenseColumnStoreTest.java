@@ -0,0 +1,249 @@
+package com.wwerlang.expensemanager.expense;
+
+import com.wwerlang.expensemanager.category.Category;
+import com.wwerlang.expensemanager.department.Department;
+import com.wwerlang.expensemanager.employee.Employee;
+import com.wwerlang.expensemanager.expense.ExpenseQueryDTO.Dimension;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ExpenseColumnStoreTest {
+
+    private static final LocalDate DAY = LocalDate.of(2023, 12, 1);
+    private static final Currency EUR = Currency.getInstance("EUR");
+
+    private final ExpenseColumnStore store = new ExpenseColumnStore();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ExchangeRateTable rates = ExchangeRateTable.parse(EUR, new BufferedReader(new StringReader("""
+                date,currency,rate
+                2023-12-01,USD,0.9
+                2023-12-02,USD,0.95
+                2023-12-01,JPY,0.0064
+                """)));
+        ExchangeRates exchangeRates = mock(ExchangeRates.class);
+        when(exchangeRates.table()).thenReturn(rates);
+        ReflectionTestUtils.setField(store, "exchangeRates", exchangeRates);
+    }
+
+    @Test
+    void testAggregateByDepartmentAndCategory() {
+        store.putAll(List.of(
+                expense(1, 1, 1, 1, DAY, "10.00"),
+                expense(2, 1, 1, 1, DAY.plusDays(1), "2.50"),
+                expense(3, 2, 2, 1, DAY, "7.00"),
+                expense(4, 2, 2, 2, DAY, "1.25"),
+                expense(5, 3, 0, 2, DAY, "3.00")
+        ));
+
+        List<ExpenseAggregateDTO> aggregates = store.aggregate(query(null, null, Dimension.DEPARTMENT,
+                Dimension.CATEGORY));
+
+        assertEquals(4, aggregates.size());
+        assertAggregate(aggregates.get(0), 0L, 2L, null, "3.00", 1);
+        assertAggregate(aggregates.get(1), 1L, 1L, null, "12.50", 2);
+        assertAggregate(aggregates.get(2), 2L, 1L, null, "7.00", 1);
+        assertAggregate(aggregates.get(3), 2L, 2L, null, "1.25", 1);
+    }
+
+    @Test
+    void testConvertsIntoBaseCurrency() {
+        store.putAll(List.of(
+                expense(1, 1, 1, 1, DAY, "10.00"),
+                expense(2, 1, 1, 1, DAY, "10.00", "USD"),
+                expense(3, 1, 1, 1, DAY.plusDays(3), "10.00", "USD"),
+                expense(4, 2, 2, 1, DAY, "1001", "JPY")
+        ));
+
+        List<ExpenseAggregateDTO> aggregates = store.aggregate(query(null, null, Dimension.EMPLOYEE));
+
+        // 10.00 + 10.00 USD at 0.9 + 10.00 USD at 0.95, the rate of the 2nd still holding on the 4th.
+        assertAggregate(aggregates.get(0), null, null, 1L, "28.50", 3);
+        // 1001 JPY at 0.0064 are 6.4064 EUR, rounded to 6.41.
+        assertAggregate(aggregates.get(1), null, null, 2L, "6.41", 1);
+    }
+
+    @Test
+    void testFilters() {
+        store.putAll(List.of(
+                expense(1, 1, 1, 1, DAY, "10.00"),
+                expense(2, 1, 1, 2, DAY.plusDays(1), "2.50"),
+                expense(3, 2, 2, 1, DAY.plusDays(2), "7.00")
+        ));
+
+        ExpenseQueryDTO query = query(DAY.plusDays(1), DAY.plusDays(2), Dimension.EMPLOYEE);
+        List<ExpenseAggregateDTO> aggregates = store.aggregate(query);
+        assertEquals(2, aggregates.size());
+        assertAggregate(aggregates.get(0), null, null, 1L, "2.50", 1);
+        assertAggregate(aggregates.get(1), null, null, 2L, "7.00", 1);
+
+        query.setCategoryId(1L);
+        aggregates = store.aggregate(query);
+        assertEquals(1, aggregates.size());
+        assertAggregate(aggregates.get(0), null, null, 2L, "7.00", 1);
+
+        query.setCategoryId(null);
+        query.setDepartmentId(0L);
+        assertTrue(store.aggregate(query).isEmpty());
+    }
+
+    @Test
+    void testFiltersOnIdsBeyondInt() {
+        store.put(expense(1, 1, 1, 1, DAY, "10.00"));
+
+        ExpenseQueryDTO query = query(null, null, Dimension.EMPLOYEE);
+        query.setEmployeeId(Integer.MAX_VALUE + 2L);
+        assertTrue(store.aggregate(query).isEmpty());
+
+        query.setEmployeeId(null);
+        query.setCategoryId(-1L);
+        assertTrue(store.aggregate(query).isEmpty());
+
+        query.setCategoryId(null);
+        query.setDepartmentId(Long.MAX_VALUE);
+        query.setGroupBy(List.of());
+        assertTrue(store.aggregate(query).isEmpty());
+    }
+
+    @Test
+    void testTotalWithoutGroups() {
+        assertAggregate(aggregateAll(), null, null, null, "0.00", 0);
+
+        store.put(expense(1, 1, 1, 1, DAY, "0.10"));
+        store.put(expense(2, 1, 1, 1, DAY, "0.20"));
+        assertAggregate(aggregateAll(), null, null, null, "0.30", 2);
+    }
+
+    @Test
+    void testUpdateAndDelete() {
+        store.put(expense(1, 1, 1, 1, DAY, "10.00"));
+
+        Expense updated = expense(1, 1, 1, 1, DAY, "12.00");
+        updated.setVersion(1);
+        store.put(updated);
+        assertAggregate(aggregateAll(), null, null, null, "12.00", 1);
+
+        // A write of an older version arriving late is ignored.
+        store.put(expense(1, 1, 1, 1, DAY, "10.00"));
+        assertAggregate(aggregateAll(), null, null, null, "12.00", 1);
+
+        store.remove(updated);
+        assertAggregate(aggregateAll(), null, null, null, "0.00", 0);
+
+        store.put(updated);
+        assertAggregate(aggregateAll(), null, null, null, "0.00", 0);
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void testRemoveBeforePut() {
+        Expense expense = expense(1, 1, 1, 1, DAY, "10.00");
+        store.remove(expense);
+        store.put(expense);
+
+        assertAggregate(aggregateAll(), null, null, null, "0.00", 0);
+    }
+
+    @Test
+    void testRemoveMonthDropsItsRows() {
+        List<Expense> expenses = new ArrayList<>();
+
+        for (int i = 1; i <= 3000; i++) {
+            expenses.add(expense(i, 1, 1, 1, i % 3 == 0 ? DAY.minusMonths(1) : DAY, "1.00"));
+        }
+
+        store.putAll(expenses);
+        store.remove(expenses.get(0));
+        store.removeMonth(YearMonth.from(DAY));
+
+        assertEquals(1000, store.size());
+        assertAggregate(aggregateAll(), null, null, null, "1000.00", 1000);
+
+        // The rows left are still found by id, and the dropped ones can be written again.
+        Expense updated = expense(3, 1, 1, 1, DAY.minusMonths(1), "5.00");
+        updated.setVersion(1);
+        store.putAll(List.of(updated, expense(1, 1, 1, 1, DAY, "2.00")));
+        assertEquals(1001, store.size());
+        assertAggregate(aggregateAll(), null, null, null, "1006.00", 1001);
+    }
+
+    @Test
+    void testScansAllChunks() {
+        int rows = ExpenseColumnStore.CHUNK_SIZE * 3 + 17;
+        List<Expense> expenses = new ArrayList<>(rows);
+
+        for (int i = 1; i <= rows; i++) {
+            expenses.add(expense(i, i % 100, i % 7, i % 3, DAY.plusDays(i % 30), "0.01"));
+        }
+
+        store.putAll(expenses);
+
+        List<ExpenseAggregateDTO> aggregates = store.aggregate(query(null, null, Dimension.CATEGORY));
+        assertEquals(3, aggregates.size());
+        assertEquals(rows, aggregates.stream().mapToLong(ExpenseAggregateDTO::getCount).sum());
+        assertEquals(BigDecimal.valueOf(rows, 2),
+                aggregates.stream().map(ExpenseAggregateDTO::getTotal).reduce(BigDecimal.ZERO, BigDecimal::add));
+    }
+
+    @Test
+    void testInvalidGroupBy() {
+        assertThrows(IllegalArgumentException.class, () -> store.aggregate(query(null, null, Dimension.CATEGORY,
+                Dimension.CATEGORY)));
+        assertThrows(IllegalArgumentException.class, () -> store.aggregate(query(null, null, Dimension.CATEGORY,
+                Dimension.DEPARTMENT, Dimension.EMPLOYEE)));
+    }
+
+    private ExpenseAggregateDTO aggregateAll() {
+        List<ExpenseAggregateDTO> aggregates = store.aggregate(query(null, null));
+        return aggregates.isEmpty() ? new ExpenseAggregateDTO(null, null, null, new BigDecimal("0.00"), 0)
+                : aggregates.get(0);
+    }
+
+    private ExpenseQueryDTO query(LocalDate from, LocalDate to, Dimension... groupBy) {
+        return new ExpenseQueryDTO(from, to, null, null, null, List.of(groupBy));
+    }
+
+    private Expense expense(long id, long employeeId, long departmentId, long categoryId, LocalDate date,
+                            String amount) {
+        return expense(id, employeeId, departmentId, categoryId, date, amount, "EUR");
+    }
+
+    private Expense expense(long id, long employeeId, long departmentId, long categoryId, LocalDate date,
+                            String amount, String currencyCode) {
+        Employee employee = new Employee();
+        employee.setId(employeeId);
+        Department department = departmentId == 0 ? null : new Department(departmentId, null, null, true, 0);
+        Category category = new Category();
+        category.setId(categoryId);
+
+        Currency currency = Currency.getInstance(currencyCode);
+
+        return new Expense(id, employee, department, category, date,
+                ExchangeRateTable.minorUnits(new BigDecimal(amount), currency), currency, null, 0);
+    }
+
+    private void assertAggregate(ExpenseAggregateDTO aggregate, Long departmentId, Long categoryId, Long employeeId,
+                                 String total, long count) {
+        assertEquals(departmentId, aggregate.getDepartmentId());
+        assertEquals(categoryId, aggregate.getCategoryId());
+        assertEquals(employeeId, aggregate.getEmployeeId());
+        assertEquals(new BigDecimal(total), aggregate.getTotal());
+        assertEquals(count, aggregate.getCount());
+    }
+}
@@ -0,0 +1,733 @@
+package com.wwerlang.expensemanager.expense;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.wwerlang.expensemanager.category.Category;
+import com.wwerlang.expensemanager.common.JacksonConfiguration;
+import com.wwerlang.expensemanager.common.PageDTO;
+import com.wwerlang.expensemanager.employee.Employee;
+import com.wwerlang.expensemanager.employee.EmployeeRepository;
+import com.wwerlang.expensemanager.exception.BudgetExceededException;
+import com.wwerlang.expensemanager.exception.QueueFullException;
+import com.wwerlang.expensemanager.exception.ReceiptTooLargeException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Currency;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(ExpenseController.class)
+@Import(JacksonConfiguration.class)
+public class ExpenseControllerTest {
+
+    private static final String PATH = "/expense";
+
+    private static final Employee EMPLOYEE = new Employee(1, "John", "Johnson", true, null, 0);
+    private static final Category CATEGORY = new Category(1, "Meal", "Lunch, dinner and breakfast.", true, 0);
+
+    private static final Currency EUR = Currency.getInstance("EUR");
+
+    private static final byte[] RECEIPT_CONTENT = "0123456789".getBytes(StandardCharsets.US_ASCII);
+    private static final ExpenseReceiptDTO RECEIPT = new ExpenseReceiptDTO(3, 1, "lunch.png", "image/png", 10,
+            "84d89877f0d4041efb6bf91a16f0248f2fd573e6af05c19f96bedb9f882f7882");
+
+    private static final List<Expense> EXPENSES = List.of(
+            new Expense(1, EMPLOYEE, null, CATEGORY, LocalDate.of(2023, 12, 1), 1250, EUR, "Lunch.", 0),
+            new Expense(2, EMPLOYEE, null, CATEGORY, LocalDate.of(2023, 12, 2), 3000, EUR, null, 0)
+    );
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @SpyBean
+    private ExpenseService expenseService;
+
+    @MockBean
+    private ExpenseRepository expenseRepository;
+
+    @MockBean
+    private ExpensePartitions expensePartitions;
+
+    @MockBean
+    private ExpenseRollupService expenseRollupService;
+
+    @MockBean
+    private EmployeeRepository employeeRepository;
+
+    @MockBean
+    private ExpenseColumnStore expenseColumnStore;
+
+    @MockBean
+    private ExpenseSketches expenseSketches;
+
+    @MockBean
+    private ExpenseIngester expenseIngester;
+
+    @MockBean
+    private ExpenseBudgets expenseBudgets;
+
+    @MockBean
+    private ExpenseStatementService expenseStatementService;
+
+    @MockBean
+    private ExchangeRates exchangeRates;
+
+    @MockBean
+    private ExpenseReceipts expenseReceipts;
+
+    @MockBean
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void mockExchangeRates() {
+        lenient().when(exchangeRates.table()).thenReturn(ExchangeRateTable.empty(EUR));
+        lenient().when(exchangeRates.base()).thenReturn(EUR);
+    }
+
+    @BeforeEach
+    void mockExpensePartitions() {
+        lenient().when(expensePartitions.lock()).thenReturn(new ReentrantReadWriteLock());
+    }
+
+    @BeforeEach
+    void mockExpenseRepository() {
+        lenient().when(expenseRepository.findById(anyLong())).thenAnswer(invocationOnMock -> {
+            long id = invocationOnMock.getArgument(0);
+            return EXPENSES.stream().filter(e -> e.getId() == id).findFirst();
+        });
+
+        lenient().when(expenseRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any(), any(), anyInt())).thenAnswer(invocationOnMock -> {
+            long id = invocationOnMock.getArgument(0);
+            int limit = invocationOnMock.getArgument(3);
+            return EXPENSES.stream().filter(e -> e.getId() > id).limit(limit).toList();
+        });
+
+        lenient().when(expenseRepository.insert(any(Expense.class))).thenAnswer(invocationOnMock -> {
+            Expense expense = invocationOnMock.getArgument(0);
+            expense.setId(expense.getId() == 0 ? 3 : expense.getId());
+            return expense;
+        });
+
+        lenient().when(expenseRepository.deleteIfVersionMatches(any(Expense.class))).thenReturn(1);
+
+        lenient().when(expenseBudgets.reservation()).thenReturn(mock(ExpenseBudgets.Reservation.class));
+
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocationOnMock -> {
+            TransactionCallback<?> callback = invocationOnMock.getArgument(0);
+            return callback.doInTransaction(null);
+        });
+
+        lenient().doAnswer(invocationOnMock -> {
+            Consumer<TransactionStatus> callback = invocationOnMock.getArgument(0);
+            callback.accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @Test
+    void testFind() throws Exception {
+        mockMvc.perform(get(PATH + "/{id}", 1))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value("1"))
+                .andExpect(jsonPath("$.employeeId").value("1"))
+                .andExpect(jsonPath("$.categoryId").value("1"))
+                .andExpect(jsonPath("$.date").value("2023-12-01"))
+                .andExpect(jsonPath("$.amount").value(12.5))
+                .andExpect(jsonPath("$.currency").value("EUR"))
+                .andExpect(jsonPath("$.description").value("Lunch."));
+    }
+
+    @Test
+    void testFindAsCbor() throws Exception {
+        byte[] response = mockMvc.perform(get(PATH + "/{id}", 1).accept("application/cbor"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/cbor"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        // Same Jackson settings as JSON, so dates are still ISO strings rather than arrays.
+        JsonNode expense = new CBORMapper().readTree(response);
+        assertEquals(1, expense.get("id").asLong());
+        assertEquals("2023-12-01", expense.get("date").asText());
+        assertEquals("EUR", expense.get("currency").asText());
+    }
+
+    @Test
+    void testFindNonExistent() throws Exception {
+        String response = mockMvc.perform(get(PATH + "/{id}", 3))
+                .andExpect(status().isNotFound())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals("Expense not found with ID 3.", response);
+    }
+
+    @Test
+    void testList() throws Exception {
+        mockMvc.perform(get(PATH))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items").isArray())
+                .andExpect(jsonPath("$.next").doesNotExist())
+                .andExpect(jsonPath("$.items[0].id").value("1"))
+                .andExpect(jsonPath("$.items[1].id").value("2"))
+                .andExpect(jsonPath("$.items[1].amount").value(30.0));
+    }
+
+    @Test
+    void testCreate() throws Exception {
+        String input = "{ \"employeeId\": 1, \"categoryId\": 1, \"date\": \"2023-12-03\", \"amount\": 8.90 }";
+
+        mockMvc.perform(post(PATH).contentType(MediaType.APPLICATION_JSON).content(input))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value("3"))
+                .andExpect(jsonPath("$.date").value("2023-12-03"))
+                .andExpect(jsonPath("$.amount").value(8.9));
+    }
+
+    @Test
+    void testCreateWithoutExchangeRate() throws Exception {
+        String input = "{ \"employeeId\": 1, \"categoryId\": 1, \"date\": \"2023-12-03\", \"amount\": 8.90, "
+                + "\"currency\": \"USD\" }";
+
+        String response = mockMvc.perform(post(PATH).contentType(MediaType.APPLICATION_JSON).content(input))
+                .andExpect(status().isBadRequest())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals("There is no exchange rate for USD on 2023-12-03.", response);
+    }
+
+    @Test
+    void testCreateWithoutDate() throws Exception {
+        String input = "{ \"employeeId\": 1, \"categoryId\": 1, \"amount\": 8.90 }";
+
+        String response = mockMvc.perform(post(PATH).contentType(MediaType.APPLICATION_JSON).content(input))
+                .andExpect(status().isBadRequest())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals("An expense needs a date.", response);
+    }
+
+    @Test
+    void testCreateWithoutEmployee() throws Exception {
+        String input = "{ \"categoryId\": 1, \"date\": \"2023-12-03\", \"amount\": 8.90 }";
+
+        String response = mockMvc.perform(post(PATH).contentType(MediaType.APPLICATION_JSON).content(input))
+                .andExpect(status().isBadRequest())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals("An expense needs an employee id.", response);
+    }
+
+    @Test
+    void testCreateWithoutCategory() throws Exception {
+        String input = "{ \"employeeId\": 1, \"categoryId\": -1, \"date\": \"2023-12-03\", \"amount\": 8.90 }";
+
+        String response = mockMvc.perform(post(PATH).contentType(MediaType.APPLICATION_JSON).content(input))
+                .andExpect(status().isBadRequest())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals("An expense needs a category id.", response);
+    }
+
+    @Test
+    void testCreateOverBudget() throws Exception {
+        ExpenseBudgets.Reservation reservation = mock(ExpenseBudgets.Reservation.class);
+        doThrow(new BudgetExceededException(4, YearMonth.of(2023, 12), new BigDecimal("5.00"), new BigDecimal("8.90")))
+                .when(reservation).reserve(anyCollection(), anyCollection());
+        when(expenseBudgets.reservation()).thenReturn(reservation);
+
+        String input = "{ \"employeeId\": 1, \"categoryId\": 1, \"date\": \"2023-12-03\", \"amount\": 8.90 }";
+
+        String response = mockMvc.perform(post(PATH).contentType(MediaType.APPLICATION_JSON).content(input))
+                .andExpect(status().isUnprocessableEntity())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals("Department 4 has 5.00 left of its budget for 2023-12, not enough for 8.90.", response);
+    }
+
+    @Test
+    void testDelete() throws Exception {
+        mockMvc.perform(delete(PATH + "/{id}", 2))
+                .andExpect(status().isNoContent());
+
+        verify(expenseRepository).deleteIfVersionMatches(EXPENSES.get(1));
+    }
+
+    @Test
+    void testDeleteNonExistent() throws Exception {
+        mockMvc.perform(delete(PATH + "/{id}", 3))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testListWithDateRange() throws Exception {
+        mockMvc.perform(get(PATH).param("from", "2023-12-02").param("to", "2023-12-31").param("limit", "1"))
+                .andExpect(status().isOk());
+
+        verify(expenseRepository).findByIdGreaterThanOrderByIdAsc(0, LocalDate.of(2023, 12, 2),
+                LocalDate.of(2023, 12, 31), 2);
+    }
+
+    @Test
+    void testDropPartition() throws Exception {
+        when(expensePartitions.drop(any(), any())).thenReturn(true);
+
+        mockMvc.perform(delete(PATH + "/partitions/{month}", "2023-12"))
+                .andExpect(status().isNoContent());
+
+        verify(expensePartitions).drop(YearMonth.of(2023, 12), null);
+        verify(expenseColumnStore).removeMonth(YearMonth.of(2023, 12));
+    }
+
+    @Test
+    void testDropNonExistentPartition() throws Exception {
+        String response = mockMvc.perform(delete(PATH + "/partitions/{month}", "2023-11"))
+                .andExpect(status().isNotFound())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals("Expense partition not found with ID 202311.", response);
+    }
+
+    @Test
+    void testSummary() throws Exception {
+        when(expenseRollupService.summary(YearMonth.of(2023, 11), YearMonth.of(2023, 12), null)).thenReturn(List.of(
+                new ExpenseSummaryDTO(YearMonth.of(2023, 12), 4, 1, new BigDecimal("42.50"), 2)
+        ));
+
+        mockMvc.perform(get(PATH + "/summary").param("from", "2023-11").param("to", "2023-12"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].month").value("2023-12"))
+                .andExpect(jsonPath("$[0].departmentId").value(4))
+                .andExpect(jsonPath("$[0].categoryId").value(1))
+                .andExpect(jsonPath("$[0].total").value(42.5))
+                .andExpect(jsonPath("$[0].count").value(2));
+    }
+
+    @Test
+    void testSummaryOfOneMonth() throws Exception {
+        mockMvc.perform(get(PATH + "/summary").param("from", "2023-12").param("departmentId", "4"))
+                .andExpect(status().isOk());
+
+        verify(expenseRollupService).summary(YearMonth.of(2023, 12), YearMonth.of(2023, 12), 4L);
+    }
+
+    @Test
+    void testStatements() throws Exception {
+        mockStatements();
+        MvcResult result = mockMvc.perform(get(PATH + "/statements/{month}", "2023-12"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String response = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals("{\"departmentId\":4,\"departmentName\":\"IT\",\"month\":\"2023-12\",\"total\":42.50,"
+                + "\"count\":2,\"employees\":[{\"employeeId\":1,\"firstName\":\"John\",\"lastName\":\"Johnson\","
+                + "\"total\":42.50,\"count\":2,\"expenses\":[{\"id\":1,\"employeeId\":1,\"categoryId\":1,"
+                + "\"date\":\"2023-12-01\",\"amount\":12.50,\"currency\":\"EUR\",\"description\":\"Lunch.\","
+                + "\"version\":0},{\"id\":2,\"employeeId\":1,\"categoryId\":1,\"date\":\"2023-12-02\","
+                + "\"amount\":30.00,\"currency\":\"EUR\",\"description\":null,"
+                + "\"version\":0}]}]}\n", response);
+    }
+
+    @Test
+    void testStatementsAsCsv() throws Exception {
+        mockStatements();
+        MvcResult result = mockMvc.perform(get(PATH + "/statements/{month}", "2023-12").param("format", "csv"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        String response = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("text/csv"))
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals(ExpenseStatementCsvWriter.HEADER + "\n"
+                + "expense,2023-12,4,IT,1,John,Johnson,1,2023-12-01,1,Lunch.,12.50,EUR,\n"
+                + "expense,2023-12,4,IT,1,John,Johnson,2,2023-12-02,1,,30.00,EUR,\n"
+                + "employee_total,2023-12,4,IT,1,John,Johnson,,,,,42.50,,2\n"
+                + "department_total,2023-12,4,IT,,,,,,,,42.50,,2\n", response);
+    }
+
+    @Test
+    void testStatementsInvalidFormat() throws Exception {
+        String response = mockMvc.perform(get(PATH + "/statements/{month}", "2023-12").param("format", "xml"))
+                .andExpect(status().isBadRequest())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals("Statements are written as json or csv, not xml.", response);
+    }
+
+    @Test
+    void testAnalytics() throws Exception {
+        when(expenseColumnStore.aggregate(any(ExpenseQueryDTO.class))).thenReturn(List.of(
+                new ExpenseAggregateDTO(4L, 1L, null, new BigDecimal("42.50"), 2)
+        ));
+
+        mockMvc.perform(get(PATH + "/analytics")
+                        .param("from", "2023-12-01")
+                        .param("to", "2023-12-31")
+                        .param("employeeId", "1")
+                        .param("groupBy", "DEPARTMENT,CATEGORY"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].departmentId").value(4))
+                .andExpect(jsonPath("$[0].categoryId").value(1))
+                .andExpect(jsonPath("$[0].employeeId").doesNotExist())
+                .andExpect(jsonPath("$[0].total").value(42.5))
+                .andExpect(jsonPath("$[0].count").value(2));
+
+        verify(expenseColumnStore).aggregate(argThat(q -> q.getFrom().equals(LocalDate.of(2023, 12, 1))
+                && q.getTo().equals(LocalDate.of(2023, 12, 31)) && q.getEmployeeId() == 1
+                && q.getDepartmentId() == null
+                && q.getGroupBy().equals(List.of(ExpenseQueryDTO.Dimension.DEPARTMENT, ExpenseQueryDTO.Dimension.CATEGORY))));
+    }
+
+    @Test
+    void testAnalyticsInvalidGroupBy() throws Exception {
+        when(expenseColumnStore.aggregate(any(ExpenseQueryDTO.class)))
+                .thenThrow(new IllegalArgumentException("Expenses can be grouped by up to two different dimensions."));
+
+        String response = mockMvc.perform(get(PATH + "/analytics").param("groupBy", "CATEGORY,CATEGORY"))
+                .andExpect(status().isBadRequest())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals("Expenses can be grouped by up to two different dimensions.", response);
+    }
+
+    @Test
+    void testSketches() throws Exception {
+        TreeMap<Double, BigDecimal> amounts = new TreeMap<>();
+        amounts.put(0.5, new BigDecimal("12.50"));
+        amounts.put(0.95, new BigDecimal("30.00"));
+        when(expenseSketches.estimate(any(), any(), any(), any(), anyList())).thenReturn(new ExpenseSketchDTO(
+                LocalDate.of(2023, 10, 1), LocalDate.of(2023, 12, 31), null, 1L, 2, 1, amounts));
+
+        mockMvc.perform(get(PATH + "/sketches")
+                        .param("from", "2023-10-01")
+                        .param("to", "2023-12-31")
+                        .param("categoryId", "1")
+                        .param("quantiles", "0.5,0.95"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.categoryId").value(1))
+                .andExpect(jsonPath("$.departmentId").doesNotExist())
+                .andExpect(jsonPath("$.count").value(2))
+                .andExpect(jsonPath("$.distinctEmployees").value(1))
+                .andExpect(jsonPath("$.amounts['0.5']").value(12.5))
+                .andExpect(jsonPath("$.amounts['0.95']").value(30.0));
+
+        verify(expenseSketches).estimate(LocalDate.of(2023, 10, 1), LocalDate.of(2023, 12, 31), null, 1L,
+                List.of(0.5, 0.95));
+    }
+
+    @Test
+    void testSketchesDefaultQuantiles() throws Exception {
+        mockMvc.perform(get(PATH + "/sketches")
+                        .param("from", "2023-10-01")
+                        .param("to", "2023-12-31")
+                        .param("departmentId", "4"))
+                .andExpect(status().isOk());
+
+        verify(expenseSketches).estimate(LocalDate.of(2023, 10, 1), LocalDate.of(2023, 12, 31), 4L, null,
+                List.of(0.5, 0.9, 0.95, 0.99));
+    }
+
+    @Test
+    void testSketchesWithoutDepartmentOrCategory() throws Exception {
+        when(expenseSketches.estimate(any(), any(), any(), any(), anyList())).thenThrow(
+                new IllegalArgumentException("Give either a departmentId or a categoryId."));
+
+        String response = mockMvc.perform(get(PATH + "/sketches")
+                        .param("from", "2023-10-01")
+                        .param("to", "2023-12-31"))
+                .andExpect(status().isBadRequest())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals("Give either a departmentId or a categoryId.", response);
+    }
+
+    @Test
+    void testFindBudget() throws Exception {
+        when(expenseBudgets.find(4, YearMonth.of(2023, 12))).thenReturn(new ExpenseBudgetDTO(4, YearMonth.of(2023, 12),
+                new BigDecimal("1000.00"), new BigDecimal("42.50"), new BigDecimal("957.50")));
+
+        mockMvc.perform(get(PATH + "/budgets/{departmentId}", 4).param("month", "2023-12"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.departmentId").value(4))
+                .andExpect(jsonPath("$.month").value("2023-12"))
+                .andExpect(jsonPath("$.monthlyLimit").value(1000.0))
+                .andExpect(jsonPath("$.spent").value(42.5))
+                .andExpect(jsonPath("$.remaining").value(957.5));
+    }
+
+    @Test
+    void testSaveBudget() throws Exception {
+        when(expenseBudgets.save(4, new BigDecimal("1000.00"))).thenReturn(new ExpenseBudgetDTO(4,
+                YearMonth.of(2023, 12), new BigDecimal("1000.00"), BigDecimal.ZERO, new BigDecimal("1000.00")));
+
+        mockMvc.perform(put(PATH + "/budgets/{departmentId}", 4)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{ \"monthlyLimit\": 1000.00 }"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.remaining").value(1000.0));
+    }
+
+    @Test
+    void testDeleteBudget() throws Exception {
+        mockMvc.perform(delete(PATH + "/budgets/{departmentId}", 4))
+                .andExpect(status().isNoContent());
+
+        verify(expenseBudgets).delete(4);
+    }
+
+    private void mockStatements() {
+        doAnswer(invocationOnMock -> {
+            Consumer<DepartmentStatementDTO> consumer = invocationOnMock.getArgument(1);
+            EmployeeStatementDTO employee = new EmployeeStatementDTO(1, "John", "Johnson", new BigDecimal("42.50"), 2,
+                    EXPENSES.stream().map(expenseService::parseResponse).toList());
+            consumer.accept(new DepartmentStatementDTO(4, "IT", YearMonth.of(2023, 12), new BigDecimal("42.50"), 2,
+                    List.of(employee)));
+            return null;
+        }).when(expenseStatementService).write(any(), any());
+    }
+
+    @Test
+    void testFindExchangeRates() throws Exception {
+        when(exchangeRates.find()).thenReturn(new ExchangeRatesDTO("EUR", 2, LocalDate.of(2023, 1, 2),
+                LocalDate.of(2023, 12, 29)));
+
+        mockMvc.perform(get(PATH + "/exchange-rates"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.baseCurrency").value("EUR"))
+                .andExpect(jsonPath("$.currencies").value(2))
+                .andExpect(jsonPath("$.to").value("2023-12-29"));
+    }
+
+    @Test
+    void testReloadExchangeRates() throws Exception {
+        when(exchangeRates.reload()).thenReturn(new ExchangeRatesDTO("EUR", 1, LocalDate.of(2023, 1, 2),
+                LocalDate.of(2023, 1, 2)));
+
+        mockMvc.perform(post(PATH + "/exchange-rates/reload"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.currencies").value(1));
+
+        verify(exchangeRates).reload();
+    }
+
+    @Test
+    void testSaveReceipt() throws Exception {
+        when(expenseReceipts.save(eq(1L), eq("lunch.png"), any(), any())).thenReturn(RECEIPT);
+
+        mockMvc.perform(post(PATH + "/{id}/receipts", 1)
+                        .param("fileName", "lunch.png")
+                        .contentType(MediaType.IMAGE_PNG)
+                        .content(RECEIPT_CONTENT))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(3))
+                .andExpect(jsonPath("$.size").value(10))
+                .andExpect(jsonPath("$.hash").value(RECEIPT.getHash()));
+    }
+
+    @Test
+    void testSaveReceiptTooLarge() throws Exception {
+        when(expenseReceipts.save(anyLong(), any(), any(), any())).thenThrow(new ReceiptTooLargeException(5));
+
+        String response = mockMvc.perform(post(PATH + "/{id}/receipts", 1)
+                        .contentType(MediaType.IMAGE_PNG)
+                        .content(RECEIPT_CONTENT))
+                .andExpect(status().isPayloadTooLarge())
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals("Receipts are at most 5 bytes.", response);
+    }
+
+    @Test
+    void testDownloadReceipt() throws Exception {
+        mockReceipt();
+        MvcResult result = mockMvc.perform(get(PATH + "/{id}/receipts/{receiptId}/content", 1, 3))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.IMAGE_PNG))
+                .andExpect(header().string(HttpHeaders.CONTENT_LENGTH, "10"))
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + RECEIPT.getHash() + "\""))
+                .andExpect(header().string(HttpHeaders.CONTENT_DISPOSITION,
+                        "inline; filename=\"=?UTF-8?Q?lunch.png?=\"; filename*=UTF-8''lunch.png"))
+                .andExpect(content().bytes(RECEIPT_CONTENT));
+    }
+
+    @Test
+    void testDownloadReceiptRange() throws Exception {
+        mockReceipt();
+        MvcResult result = mockMvc.perform(get(PATH + "/{id}/receipts/{receiptId}/content", 1, 3)
+                        .header(HttpHeaders.RANGE, "bytes=2-5"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+                .andExpect(header().string(HttpHeaders.CONTENT_LENGTH, "4"))
+                .andExpect(content().string("2345"));
+
+        result = mockMvc.perform(get(PATH + "/{id}/receipts/{receiptId}/content", 1, 3)
+                        .header(HttpHeaders.RANGE, "bytes=-3"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 7-9/10"))
+                .andExpect(content().string("789"));
+    }
+
+    @Test
+    void testDownloadReceiptWithSendfile() throws Exception {
+        when(expenseReceipts.find(1, 3)).thenReturn(RECEIPT);
+        when(expenseReceipts.sendfile(eq(RECEIPT), eq(2L), eq(4L), any())).thenReturn(true);
+
+        mockMvc.perform(get(PATH + "/{id}/receipts/{receiptId}/content", 1, 3)
+                        .header(HttpHeaders.RANGE, "bytes=2-5"))
+                .andExpect(request().asyncNotStarted())
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-5/10"))
+                .andExpect(header().string(HttpHeaders.CONTENT_LENGTH, "4"))
+                .andExpect(content().string(""));
+
+        verify(expenseReceipts, never()).write(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void testDownloadReceiptRangeNotSatisfiable() throws Exception {
+        when(expenseReceipts.find(1, 3)).thenReturn(RECEIPT);
+
+        mockMvc.perform(get(PATH + "/{id}/receipts/{receiptId}/content", 1, 3)
+                        .header(HttpHeaders.RANGE, "bytes=10-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"));
+    }
+
+    @Test
+    void testListReceipts() throws Exception {
+        when(expenseReceipts.list(1)).thenReturn(List.of(RECEIPT));
+
+        mockMvc.perform(get(PATH + "/{id}/receipts", 1))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].fileName").value("lunch.png"))
+                .andExpect(jsonPath("$[0].contentType").value("image/png"));
+    }
+
+    @Test
+    void testDeleteReceipt() throws Exception {
+        mockMvc.perform(delete(PATH + "/{id}/receipts/{receiptId}", 1, 3))
+                .andExpect(status().isNoContent());
+
+        verify(expenseReceipts).delete(1, 3);
+    }
+
+    /**
+     * Writes the requested part of {@link #RECEIPT_CONTENT}, as the receipt store would from its file.
+     */
+    private void mockReceipt() throws IOException {
+        when(expenseReceipts.find(1, 3)).thenReturn(RECEIPT);
+        doAnswer(invocationOnMock -> {
+            long position = invocationOnMock.getArgument(1);
+            long count = invocationOnMock.getArgument(2);
+            OutputStream outputStream = invocationOnMock.getArgument(3);
+            outputStream.write(RECEIPT_CONTENT, (int) position, (int) count);
+            return null;
+        }).when(expenseReceipts).write(eq(RECEIPT), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    void testIngest() throws Exception {
+        when(expenseIngester.stats()).thenReturn(new IngestStatsDTO(2, 100, 0, 0));
+        String input = "[ { \"employeeId\": 1, \"categoryId\": 1, \"date\": \"2023-12-03\", \"amount\": 8.90 }, "
+                + "{ \"employeeId\": 1, \"categoryId\": 1, \"date\": \"2023-12-04\", \"amount\": 2.50 } ]";
+
+        mockMvc.perform(post(PATH + "/ingest").contentType(MediaType.APPLICATION_JSON).content(input))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.queued").value(2))
+                .andExpect(jsonPath("$.capacity").value(100));
+
+        verify(expenseIngester).submit(anyList());
+    }
+
+    @Test
+    void testIngestQueueFull() throws Exception {
+        doThrow(new QueueFullException("Expense ingest", 1, 0)).when(expenseIngester).submit(anyList());
+        String input = "[ { \"employeeId\": 1, \"categoryId\": 1, \"date\": \"2023-12-03\", \"amount\": 8.90 } ]";
+
+        String response = mockMvc.perform(post(PATH + "/ingest").contentType(MediaType.APPLICATION_JSON).content(input))
+                .andExpect(status().isTooManyRequests())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"))
+                .andReturn().getResponse().getContentAsString();
+
+        assertEquals("Expense ingest queue is full: 1 items submitted but only 0 fit.", response);
+    }
+
+    @Test
+    void testIngestFailures() throws Exception {
+        ExpenseDTO expense = new ExpenseDTO(0, 1, 1, LocalDate.of(2023, 12, 3), new BigDecimal("8.90"), "EUR", null, 0);
+        IngestFailureDTO failure = new IngestFailureDTO(7, expense, "Over budget",
+                Instant.parse("2023-12-03T10:00:00Z"));
+        when(expenseIngester.failures(5, 10)).thenReturn(new PageDTO<>(List.of(failure), null));
+
+        mockMvc.perform(get(PATH + "/ingest/failures?after=5&limit=10"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.items[0].id").value(7))
+                .andExpect(jsonPath("$.items[0].expense.employeeId").value(1))
+                .andExpect(jsonPath("$.items[0].error").value("Over budget"));
+    }
+}
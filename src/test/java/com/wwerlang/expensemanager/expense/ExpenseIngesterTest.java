@@ -0,0 +1,348 @@
+package com.wwerlang.expensemanager.expense;
+
+import com.wwerlang.expensemanager.common.Journal;
+import com.wwerlang.expensemanager.exception.QueueFullException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ExpenseIngesterTest {
+
+    @InjectMocks
+    private ExpenseIngester expenseIngester;
+
+    @Mock
+    private ExpenseService expenseService;
+
+    @Mock
+    private IngestCheckpointRepository ingestCheckpointRepository;
+
+    @Mock
+    private IngestFailureRepository ingestFailureRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @TempDir
+    private Path directory;
+
+    private final List<ExpenseDTO> inserted = Collections.synchronizedList(new ArrayList<>());
+    private final List<Integer> batches = Collections.synchronizedList(new ArrayList<>());
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(expenseIngester, "capacity", 10);
+        ReflectionTestUtils.setField(expenseIngester, "batchSize", 4);
+        ReflectionTestUtils.setField(expenseIngester, "journalDirectory", directory);
+        // Small enough for a handful of expenses to span several segments.
+        ReflectionTestUtils.setField(expenseIngester, "segmentSize", 256);
+        lenient().doAnswer(invocationOnMock -> {
+            Consumer<TransactionStatus> action = invocationOnMock.getArgument(0);
+            action.accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (expenseIngester.isRunning()) {
+            expenseIngester.stop();
+        }
+    }
+
+    @Test
+    void testWritesInBatches() {
+        recordInserts();
+        expenseIngester.start();
+
+        List<ExpenseDTO> expenses = expenses(10);
+        expenseIngester.submit(expenses);
+        awaitWritten();
+        expenseIngester.stop();
+
+        assertEquals(amounts(expenses), amounts(inserted));
+        assertTrue(batches.stream().allMatch(size -> size <= 4));
+        assertEquals(10, expenseIngester.stats().getWritten());
+    }
+
+    @Test
+    void testRejectsWhenFull() throws InterruptedException {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocationOnMock -> {
+            blocked.countDown();
+            release.await();
+            return null;
+        }).when(expenseService).insertAll(anyList(), any());
+        expenseIngester.start();
+
+        expenseIngester.submit(expenses(6));
+        blocked.await();
+
+        // The batch being written still holds its capacity.
+        QueueFullException e = assertThrows(QueueFullException.class, () -> expenseIngester.submit(expenses(5)));
+        assertEquals("Expense ingest queue is full: 5 items submitted but only 4 fit.", e.getMessage());
+        assertEquals(6, expenseIngester.stats().getQueued());
+
+        expenseIngester.submit(expenses(4));
+        release.countDown();
+    }
+
+    @Test
+    void testRejectsWhenStopped() {
+        QueueFullException e = assertThrows(QueueFullException.class, () -> expenseIngester.submit(expenses(1)));
+        assertEquals("Expense ingest queue is full: 1 items submitted but only 0 fit.", e.getMessage());
+    }
+
+    @Test
+    void testRetriesFailedBatchOneByOne() {
+        doAnswer(invocationOnMock -> {
+            List<ExpenseDTO> batch = invocationOnMock.getArgument(0);
+
+            if (batch.stream().anyMatch(e -> e.getEmployeeId() == 0)) {
+                throw new IllegalStateException("Unknown employee.");
+            }
+
+            inserted.addAll(batch);
+            return null;
+        }).when(expenseService).insertAll(anyList(), any());
+        expenseIngester.start();
+
+        List<ExpenseDTO> expenses = expenses(3);
+        expenses.get(1).setEmployeeId(0);
+        expenseIngester.submit(expenses);
+        awaitWritten();
+        expenseIngester.stop();
+
+        assertEquals(amounts(List.of(expenses.get(0), expenses.get(2))), amounts(inserted));
+        assertEquals(2, expenseIngester.stats().getWritten());
+        assertEquals(1, expenseIngester.stats().getFailed());
+        verify(ingestFailureRepository).save(argThat(f -> f.getEmployeeId() == 0
+                && f.getAmount().equals(expenses.get(1).getAmount()) && f.getError().equals("Unknown employee.")));
+    }
+
+    @Test
+    void testSavesFailureWithCheckpoint() {
+        doThrow(new IllegalStateException("Unknown employee.")).when(expenseService).insertAll(anyList(), any());
+        expenseIngester.start();
+        expenseIngester.submit(expenses(1));
+        awaitWritten();
+        expenseIngester.stop();
+
+        InOrder inOrder = inOrder(transactionTemplate, ingestFailureRepository, ingestCheckpointRepository);
+        inOrder.verify(transactionTemplate).executeWithoutResult(any());
+        inOrder.verify(ingestFailureRepository).save(any());
+        inOrder.verify(ingestCheckpointRepository).save(argThat(c -> c.getPosition() > 0));
+    }
+
+    @Test
+    void testKeepsExpensesWhileDatabaseIsDown() {
+        AtomicBoolean down = new AtomicBoolean(true);
+        doAnswer(invocationOnMock -> {
+            if (down.get()) {
+                throw new CannotCreateTransactionException("Connection refused.");
+            }
+
+            inserted.addAll(invocationOnMock.getArgument(0));
+            return null;
+        }).when(expenseService).insertAll(anyList(), any());
+        expenseIngester.start();
+
+        List<ExpenseDTO> expenses = expenses(3);
+        expenseIngester.submit(expenses);
+        await(() -> expenseIngester.health().getStatus().equals(Status.DOWN));
+
+        assertEquals("Connection refused.", expenseIngester.health().getDetails().get("error"));
+        assertEquals(3, expenseIngester.stats().getQueued());
+
+        down.set(false);
+        awaitWritten();
+        expenseIngester.stop();
+
+        assertEquals(amounts(expenses), amounts(inserted));
+        assertEquals(0, expenseIngester.stats().getFailed());
+        verify(ingestFailureRepository, never()).save(any());
+    }
+
+    @Test
+    void testKeepsWritingWhenJournalCheckpointFails() {
+        recordInserts();
+        expenseIngester.start();
+        Journal journal = spy((Journal) ReflectionTestUtils.getField(expenseIngester, "journal"));
+        doThrow(new UncheckedIOException(new IOException("Disk full."))).when(journal).checkpoint(anyLong());
+        ReflectionTestUtils.setField(expenseIngester, "journal", journal);
+
+        expenseIngester.submit(expenses(2));
+        await(() -> inserted.size() == 2);
+        assertEquals(Status.UP, expenseIngester.health().getStatus());
+
+        List<ExpenseDTO> expenses = expenses(3);
+        expenseIngester.submit(expenses);
+        awaitWritten();
+        expenseIngester.stop();
+
+        assertEquals(amounts(expenses), amounts(inserted.subList(2, 5)));
+        assertEquals(5, expenseIngester.stats().getWritten());
+    }
+
+    @Test
+    void testWritesJournaledExpensesOnStart() throws Exception {
+        List<ExpenseDTO> expenses = expenses(3);
+        expenses.get(2).setDescription("Dinner.");
+        expenses.get(2).setCurrency("USD");
+
+        try (Journal journal = new Journal(directory, 256, false)) {
+            long written = journal.append(List.of(ExpenseIngester.encode(expenses.get(0))));
+            journal.append(List.of(ExpenseIngester.encode(expenses.get(1)), ExpenseIngester.encode(expenses.get(2))));
+            when(ingestCheckpointRepository.findById("expense-ingest"))
+                    .thenReturn(Optional.of(new IngestCheckpoint("expense-ingest", written)));
+        }
+
+        recordInserts();
+        expenseIngester.start();
+        awaitWritten();
+        expenseIngester.stop();
+
+        assertEquals(2, inserted.size());
+        assertEquals(expenses.get(1).getAmount(), inserted.get(0).getAmount());
+        assertEquals("Dinner.", inserted.get(1).getDescription());
+        assertEquals("USD", inserted.get(1).getCurrency());
+        assertNull(inserted.get(0).getCurrency());
+        assertEquals(LocalDate.of(2023, 12, 1), inserted.get(1).getDate());
+    }
+
+    @Test
+    void testSavesCheckpointWithBatch() {
+        recordInserts();
+        expenseIngester.start();
+        expenseIngester.submit(expenses(2));
+        awaitWritten();
+        expenseIngester.stop();
+
+        verify(ingestCheckpointRepository).save(argThat(c -> c.getName().equals("expense-ingest")
+                && c.getPosition() > 0));
+    }
+
+    @Test
+    void testStopsWhileDatabaseIsDown() {
+        doThrow(new CannotCreateTransactionException("Connection refused."))
+                .when(expenseService).insertAll(anyList(), any());
+        expenseIngester.start();
+        List<ExpenseDTO> expenses = expenses(3);
+        expenseIngester.submit(expenses);
+        await(() -> expenseIngester.health().getStatus().equals(Status.DOWN));
+
+        // Returns without waiting for the database, and the expenses are written after the next start.
+        expenseIngester.stop();
+        assertEquals(0, expenseIngester.stats().getWritten());
+
+        recordInserts();
+        expenseIngester.start();
+        awaitWritten();
+        assertEquals(amounts(expenses), amounts(inserted));
+    }
+
+    @Test
+    void testSkipsCorruptRecord() throws Exception {
+        // 49 bytes with the header, so five expenses fit into a segment.
+        List<ExpenseDTO> expenses = expenses(7);
+
+        try (Journal journal = new Journal(directory, 256, false)) {
+            journal.append(expenses.stream().map(ExpenseIngester::encode).toList());
+        }
+
+        try (FileChannel channel = FileChannel.open(directory.resolve("00000000000000000000.journal"),
+                StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{42}), 49 + 8);
+        }
+
+        recordInserts();
+        expenseIngester.start();
+        awaitWritten();
+
+        // The corrupt second expense takes the rest of its segment along.
+        assertEquals(amounts(List.of(expenses.get(0), expenses.get(5), expenses.get(6))), amounts(inserted));
+        assertEquals(1, expenseIngester.stats().getFailed());
+        verify(ingestFailureRepository).save(argThat(f -> f.getError().equals(
+                "Journal record at position 49 is corrupt. Skipped to position 256.")));
+        assertEquals(Status.UP, expenseIngester.health().getStatus());
+
+        // Only the expenses written took capacity, so all of it is free again.
+        expenseIngester.submit(expenses(10));
+        awaitWritten();
+    }
+
+    private void awaitWritten() {
+        await(() -> expenseIngester.stats().getQueued() == 0);
+    }
+
+    private void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out waiting for the writer.");
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+    }
+
+    private void recordInserts() {
+        doAnswer(invocationOnMock -> {
+            List<ExpenseDTO> batch = invocationOnMock.getArgument(0);
+            Runnable alsoInTransaction = invocationOnMock.getArgument(1);
+            batches.add(batch.size());
+            inserted.addAll(batch);
+            alsoInTransaction.run();
+            return null;
+        }).when(expenseService).insertAll(anyList(), any());
+    }
+
+    private List<BigDecimal> amounts(List<ExpenseDTO> expenses) {
+        return expenses.stream().map(ExpenseDTO::getAmount).toList();
+    }
+
+    private List<ExpenseDTO> expenses(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new ExpenseDTO(0, 1, 1, LocalDate.of(2023, 12, 1), BigDecimal.valueOf(i), null, null,
+                        0))
+                .toList();
+    }
+}
@@ -0,0 +1,175 @@
+package com.wwerlang.expensemanager.expense;
+
+import com.wwerlang.expensemanager.exception.EntityNotFoundException;
+import com.wwerlang.expensemanager.exception.ReceiptTooLargeException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class ExpenseReceiptsTest {
+
+    @InjectMocks
+    private ExpenseReceipts expenseReceipts;
+
+    @Mock
+    private ExpenseReceiptRepository expenseReceiptRepository;
+
+    @Mock
+    private ExpenseRepository expenseRepository;
+
+    @TempDir
+    private Path directory;
+
+    private final List<ExpenseReceipt> saved = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() throws IOException {
+        ReflectionTestUtils.setField(expenseReceipts, "directory", directory);
+        ReflectionTestUtils.setField(expenseReceipts, "maxSize", 1024L);
+        expenseReceipts.start();
+
+        AtomicLong ids = new AtomicLong();
+        lenient().when(expenseRepository.findById(anyLong())).thenAnswer(i -> i.<Long>getArgument(0) == 1
+                ? Optional.of(new Expense()) : Optional.empty());
+        lenient().when(expenseReceiptRepository.save(any())).thenAnswer(i -> {
+            ExpenseReceipt receipt = i.getArgument(0);
+            receipt.setId(ids.incrementAndGet());
+            saved.add(receipt);
+            return receipt;
+        });
+        lenient().when(expenseReceiptRepository.existsByHash(anyString())).thenAnswer(i ->
+                saved.stream().anyMatch(r -> r.getHash().equals(i.getArgument(0))));
+        lenient().doAnswer(i -> saved.remove(i.<ExpenseReceipt>getArgument(0)))
+                .when(expenseReceiptRepository).delete(any());
+        lenient().when(expenseReceiptRepository.findByIdAndExpenseId(anyLong(), anyLong())).thenAnswer(i ->
+                saved.stream().filter(r -> r.getId() == i.<Long>getArgument(0)).findFirst());
+    }
+
+    @Test
+    void testSaveAndWrite() throws IOException {
+        ExpenseReceiptDTO receipt = expenseReceipts.save(1, "lunch.png", "image/PNG; charset=UTF-8",
+                content("Lunch receipt."));
+
+        assertEquals(1, receipt.getExpenseId());
+        assertEquals("image/png", receipt.getContentType());
+        assertEquals(14, receipt.getSize());
+        assertEquals(64, receipt.getHash().length());
+        assertEquals("Lunch receipt.", read(receipt, 0, 14));
+        assertEquals("receipt", read(receipt, 6, 7));
+        assertTrue(Files.exists(directory.resolve(receipt.getHash().substring(0, 2)).resolve(receipt.getHash())));
+        assertEquals(List.of(), uploads());
+    }
+
+    @Test
+    void testSendfile() throws IOException {
+        ExpenseReceiptDTO receipt = expenseReceipts.save(1, "lunch.png", "image/png", content("Lunch receipt."));
+        MockHttpServletRequest request = new MockHttpServletRequest();
+
+        assertFalse(expenseReceipts.sendfile(receipt, 6, 7, request));
+        assertNull(request.getAttribute("org.apache.tomcat.sendfile.filename"));
+
+        request.setAttribute("org.apache.tomcat.sendfile.support", true);
+        assertTrue(expenseReceipts.sendfile(receipt, 6, 7, request));
+        assertEquals(directory.resolve(receipt.getHash().substring(0, 2)).resolve(receipt.getHash()).toAbsolutePath()
+                .toString(), request.getAttribute("org.apache.tomcat.sendfile.filename"));
+        assertEquals(6L, request.getAttribute("org.apache.tomcat.sendfile.start"));
+        assertEquals(13L, request.getAttribute("org.apache.tomcat.sendfile.end"));
+    }
+
+    @Test
+    void testSameContentSharesOneFile() throws IOException {
+        ExpenseReceiptDTO first = expenseReceipts.save(1, "lunch.png", "image/png", content("Lunch receipt."));
+        ExpenseReceiptDTO second = expenseReceipts.save(1, "copy.png", "image/png", content("Lunch receipt."));
+        Path file = directory.resolve(first.getHash().substring(0, 2)).resolve(first.getHash());
+
+        assertEquals(first.getHash(), second.getHash());
+        assertNotEquals(first.getId(), second.getId());
+
+        expenseReceipts.delete(1, first.getId());
+        assertTrue(Files.exists(file));
+
+        expenseReceipts.delete(1, second.getId());
+        assertFalse(Files.exists(file));
+    }
+
+    @Test
+    void testSaveTooLarge() {
+        assertThrows(ReceiptTooLargeException.class, () ->
+                expenseReceipts.save(1, null, "application/pdf", new ByteArrayInputStream(new byte[1025])));
+
+        verify(expenseReceiptRepository, never()).save(any());
+        assertEquals(List.of(), uploads());
+    }
+
+    @Test
+    void testSaveRejectsOtherContent() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () ->
+                expenseReceipts.save(1, null, "text/plain", content("Lunch receipt.")));
+
+        assertEquals("Receipts are images or PDFs, not text/plain.", e.getMessage());
+        assertEquals(List.of(), uploads());
+    }
+
+    @Test
+    void testSaveForNonExistentExpense() {
+        EntityNotFoundException e = assertThrows(EntityNotFoundException.class, () ->
+                expenseReceipts.save(2, null, "image/png", content("Lunch receipt.")));
+
+        assertEquals("Expense not found with ID 2.", e.getMessage());
+    }
+
+    @Test
+    void testStartClearsUnfinishedUploads() throws IOException {
+        Files.writeString(directory.resolve("uploads").resolve("receipt123.tmp"), "Half a rece");
+
+        expenseReceipts.start();
+
+        assertEquals(List.of(), uploads());
+    }
+
+    private static InputStream content(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String read(ExpenseReceiptDTO receipt, long position, long count) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        expenseReceipts.write(receipt, position, count, outputStream);
+        return outputStream.toString(StandardCharsets.UTF_8);
+    }
+
+    private List<Path> uploads() {
+        try (Stream<Path> files = Files.list(directory.resolve("uploads"))) {
+            return files.toList();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
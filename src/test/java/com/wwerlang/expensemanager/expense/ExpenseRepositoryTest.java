@@ -0,0 +1,176 @@
+package com.wwerlang.expensemanager.expense;
+
+import com.wwerlang.expensemanager.category.Category;
+import com.wwerlang.expensemanager.department.Department;
+import com.wwerlang.expensemanager.employee.Employee;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Currency;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import({ExpenseRepository.class, ExpensePartitions.class})
+class ExpenseRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ExpenseRepository expenseRepository;
+
+    @Autowired
+    private ExpensePartitions expensePartitions;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Department department;
+    private Employee employee;
+    private Category category;
+
+    @BeforeEach
+    void setUp() {
+        department = entityManager.persist(new Department(0, "IT", null, true, 0));
+        employee = entityManager.persist(new Employee(0, "John", "Johnson", true, department, 0));
+        category = entityManager.persist(new Category(0, "Meal", null, true, 0));
+        entityManager.flush();
+    }
+
+    @Test
+    void testInsertCreatesMonthlyTables() {
+        Expense november = expense(LocalDate.of(2022, 11, 30), "10.00");
+        Expense december = expense(LocalDate.of(2022, 12, 1), "20.00");
+        expenseRepository.insertAll(List.of(november, december));
+
+        assertTrue(expensePartitions.all().containsAll(List.of(YearMonth.of(2022, 11), YearMonth.of(2022, 12))));
+        assertEquals(1, expenseRepository.count(YearMonth.of(2022, 11)));
+        assertEquals(1, expenseRepository.count(YearMonth.of(2022, 12)));
+        assertTrue(december.getId() > november.getId());
+
+        Expense found = expenseRepository.findById(december.getId()).orElseThrow();
+        assertEquals(LocalDate.of(2022, 12, 1), found.getDate());
+        assertEquals(2000, found.getAmount());
+        assertEquals(Currency.getInstance("EUR"), found.getCurrency());
+        assertEquals(department.getId(), found.getDepartment().getId());
+    }
+
+    @Test
+    void testListOnlyReadsMonthsInRange() {
+        expenseRepository.insertAll(List.of(
+                expense(LocalDate.of(2021, 1, 10), "1.00"),
+                expense(LocalDate.of(2021, 2, 10), "2.00"),
+                expense(LocalDate.of(2021, 2, 20), "3.00"),
+                expense(LocalDate.of(2021, 3, 10), "4.00")));
+
+        assertEquals(List.of(YearMonth.of(2021, 2)),
+                List.copyOf(expensePartitions.between(LocalDate.of(2021, 2, 15), LocalDate.of(2021, 2, 28))));
+
+        List<Expense> page = expenseRepository.findByIdGreaterThanOrderByIdAsc(0, LocalDate.of(2021, 2, 15),
+                LocalDate.of(2021, 3, 31), 10);
+        assertEquals(List.of("3.00", "4.00"), page.stream().map(this::amount).toList());
+
+        List<Expense> first = expenseRepository.findByIdGreaterThanOrderByIdAsc(0, LocalDate.of(2021, 1, 1),
+                LocalDate.of(2021, 3, 31), 2);
+        List<Expense> next = expenseRepository.findByIdGreaterThanOrderByIdAsc(first.get(1).getId(),
+                LocalDate.of(2021, 1, 1), LocalDate.of(2021, 3, 31), 2);
+        assertEquals(List.of("1.00", "2.00", "3.00", "4.00"), Stream.concat(first.stream(),
+                next.stream()).map(this::amount).toList());
+    }
+
+    @Test
+    void testUpdateMovesBetweenMonths() {
+        Expense expense = expenseRepository.insert(expense(LocalDate.of(2020, 5, 31), "10.00"));
+        Expense moved = expense(LocalDate.of(2020, 6, 1), "12.00");
+        moved.setId(expense.getId());
+
+        assertEquals(1, expenseRepository.updateIfVersionMatches(expense, moved));
+        assertEquals(0, expenseRepository.count(YearMonth.of(2020, 5)));
+
+        Expense found = expenseRepository.findById(expense.getId()).orElseThrow();
+        assertEquals(LocalDate.of(2020, 6, 1), found.getDate());
+        assertEquals(1, found.getVersion());
+
+        assertEquals(0, expenseRepository.updateIfVersionMatches(expense, moved));
+        assertEquals(1, expenseRepository.deleteIfVersionMatches(found));
+        assertTrue(expenseRepository.findById(expense.getId()).isEmpty());
+    }
+
+    @Test
+    void testSummarizesPerDayAndCurrency() {
+        Expense dollars = expense(LocalDate.of(2017, 3, 1), "5.00");
+        dollars.setCurrency(Currency.getInstance("USD"));
+        expenseRepository.insertAll(List.of(expense(LocalDate.of(2017, 3, 1), "1.00"),
+                expense(LocalDate.of(2017, 3, 1), "2.50"), dollars, expense(LocalDate.of(2017, 3, 2), "4.00")));
+
+        List<ExpenseRepository.DailyTotal> totals = new ArrayList<>();
+        expenseRepository.summarize(t -> {
+            if (YearMonth.from(t.date()).equals(YearMonth.of(2017, 3))) {
+                totals.add(t);
+            }
+        });
+        totals.sort(Comparator.comparing(ExpenseRepository.DailyTotal::date)
+                .thenComparing(t -> t.currency().getCurrencyCode()));
+
+        long departmentId = department.getId();
+        long categoryId = category.getId();
+        Currency eur = Currency.getInstance("EUR");
+        assertEquals(List.of(
+                new ExpenseRepository.DailyTotal(LocalDate.of(2017, 3, 1), departmentId, categoryId, eur, 350, 2),
+                new ExpenseRepository.DailyTotal(LocalDate.of(2017, 3, 1), departmentId, categoryId,
+                        Currency.getInstance("USD"), 500, 1),
+                new ExpenseRepository.DailyTotal(LocalDate.of(2017, 3, 2), departmentId, categoryId, eur, 400, 1)
+        ), totals);
+    }
+
+    @Test
+    void testDateOutsideTableIsRejected() {
+        expensePartitions.ensure(YearMonth.of(2019, 1));
+
+        assertThrows(DataIntegrityViolationException.class, () -> jdbcTemplate.update(
+                "insert into expense_201901 (id, employee_id, category_id, expense_date, amount, currency, version) "
+                        + "values (next value for expense_seq, ?, ?, date '2019-02-01', 1, 'EUR', 0)",
+                employee.getId(), category.getId()));
+    }
+
+    @Test
+    void testDropWithArchive(@TempDir Path directory) throws Exception {
+        // Left empty: the table is archived and dropped from another connection, which the open test transaction
+        // would hold up.
+        expensePartitions.ensure(YearMonth.of(2018, 7));
+        Path archive = directory.resolve("expense_201807.csv");
+
+        assertTrue(expensePartitions.drop(YearMonth.of(2018, 7), archive));
+
+        assertFalse(expensePartitions.all().contains(YearMonth.of(2018, 7)));
+        assertTrue(Files.readString(archive).startsWith("\"ID\",\"EMPLOYEE_ID\""));
+        assertFalse(expensePartitions.drop(YearMonth.of(2018, 7), archive));
+    }
+
+    private Expense expense(LocalDate date, String amount) {
+        Currency eur = Currency.getInstance("EUR");
+        return new Expense(0, employee, department, category, date,
+                ExchangeRateTable.minorUnits(new BigDecimal(amount), eur), eur, null, 0);
+    }
+
+    private String amount(Expense expense) {
+        return ExchangeRateTable.amount(expense.getAmount(), expense.getCurrency()).toPlainString();
+    }
+}
@@ -0,0 +1,229 @@
+package com.wwerlang.expensemanager.expense;
+
+import com.wwerlang.expensemanager.category.Category;
+import com.wwerlang.expensemanager.department.Department;
+import com.wwerlang.expensemanager.employee.Employee;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Currency;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+@Import({ExpenseService.class, ExpenseRepository.class, ExpensePartitions.class, ExpenseRollupService.class,
+        ExpenseColumnStore.class, ExpenseSketches.class, ExpenseBudgets.class, ExchangeRates.class})
+class ExpenseRollupServiceTest {
+
+    private static final YearMonth NOVEMBER = YearMonth.of(2023, 11);
+    private static final YearMonth DECEMBER = YearMonth.of(2023, 12);
+    private static final YearMonth JANUARY = YearMonth.of(2024, 1);
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ExpenseService expenseService;
+
+    @Autowired
+    private ExpenseRollupService expenseRollupService;
+
+    @Autowired
+    private ExchangeRates exchangeRates;
+
+    @MockBean
+    private ExpenseReceipts expenseReceipts;
+
+    private Department it;
+    private Department sales;
+    private Employee employee;
+    private Category meal;
+    private Category travel;
+
+    @BeforeEach
+    void setUp() {
+        it = entityManager.persist(new Department(0, "IT", null, true, 0));
+        sales = entityManager.persist(new Department(0, "Sales", null, true, 0));
+        employee = entityManager.persist(new Employee(0, "John", "Johnson", true, it, 0));
+        meal = entityManager.persist(new Category(0, "Meal", null, true, 0));
+        travel = entityManager.persist(new Category(0, "Travel", null, true, 0));
+        entityManager.flush();
+    }
+
+    @Test
+    void testCreateUpdateAndDelete() throws IOException {
+        ExpenseDTO lunch = save(expense(meal, LocalDate.of(2023, 12, 1), "10.00"));
+        ExpenseDTO dinner = save(expense(meal, LocalDate.of(2023, 12, 15), "5.50"));
+        save(expense(travel, LocalDate.of(2023, 11, 30), "100.00"));
+
+        assertSummary(expenseRollupService.summary(NOVEMBER, DECEMBER, null),
+                row(NOVEMBER, it, travel, "100.00", 1),
+                row(DECEMBER, it, meal, "15.50", 2));
+
+        dinner.setAmount(new BigDecimal("7.50"));
+        dinner.setDate(LocalDate.of(2024, 1, 2));
+        save(dinner);
+
+        assertSummary(expenseRollupService.summary(DECEMBER, JANUARY, null),
+                row(DECEMBER, it, meal, "10.00", 1),
+                row(JANUARY, it, meal, "7.50", 1));
+
+        expenseService.delete(lunch.getId());
+        entityManager.clear();
+
+        assertSummary(expenseRollupService.summary(DECEMBER, JANUARY, null),
+                row(JANUARY, it, meal, "7.50", 1));
+        assertEquals(0, expenseRollupService.reconcile());
+    }
+
+    @Test
+    void testDepartmentIsTheOneAtWriteTime() {
+        save(expense(meal, LocalDate.of(2023, 12, 1), "10.00"));
+
+        employee.setDepartment(sales);
+        entityManager.merge(employee);
+        entityManager.flush();
+        save(expense(meal, LocalDate.of(2023, 12, 2), "20.00"));
+
+        assertSummary(expenseRollupService.summary(DECEMBER, DECEMBER, null),
+                row(DECEMBER, it, meal, "10.00", 1),
+                row(DECEMBER, sales, meal, "20.00", 1));
+        assertSummary(expenseRollupService.summary(DECEMBER, DECEMBER, sales.getId()),
+                row(DECEMBER, sales, meal, "20.00", 1));
+    }
+
+    @Test
+    void testInsertAll() {
+        expenseService.insertAll(List.of(
+                expense(meal, LocalDate.of(2023, 12, 1), "1.00"),
+                expense(meal, LocalDate.of(2023, 12, 31), "2.00"),
+                expense(travel, LocalDate.of(2023, 12, 10), "3.00")
+        ));
+        entityManager.clear();
+
+        assertSummary(expenseRollupService.summary(DECEMBER, DECEMBER, null),
+                row(DECEMBER, it, meal, "3.00", 2),
+                row(DECEMBER, it, travel, "3.00", 1));
+    }
+
+    @Test
+    void testReconcile() {
+        save(expense(meal, LocalDate.of(2023, 12, 1), "10.00"));
+        save(expense(travel, LocalDate.of(2023, 12, 1), "20.00"));
+
+        entityManager.getEntityManager()
+                .createNativeQuery("update expense_rollup set total = total + 1 where category_id = " + meal.getId())
+                .executeUpdate();
+        entityManager.getEntityManager()
+                .createNativeQuery("delete from expense_rollup where category_id = " + travel.getId())
+                .executeUpdate();
+
+        assertEquals(2, expenseRollupService.reconcile());
+        entityManager.clear();
+
+        assertSummary(expenseRollupService.summary(DECEMBER, DECEMBER, null),
+                row(DECEMBER, it, meal, "10.00", 1),
+                row(DECEMBER, it, travel, "20.00", 1));
+        assertEquals(0, expenseRollupService.reconcile());
+    }
+
+    @Test
+    void testConvertsIntoBaseCurrency(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("exchange-rates.csv");
+        Files.writeString(file, "date,currency,rate\n2023-12-01,USD,0.9\n");
+        ReflectionTestUtils.setField(exchangeRates, "file", file);
+        exchangeRates.reload();
+
+        ExpenseDTO dollars = expense(meal, LocalDate.of(2023, 12, 5), "10.00");
+        dollars.setCurrency("USD");
+        save(dollars);
+        save(expense(meal, LocalDate.of(2023, 12, 6), "1.00"));
+
+        assertSummary(expenseRollupService.summary(DECEMBER, DECEMBER, null),
+                row(DECEMBER, it, meal, "10.00", 2));
+
+        // Totals keep the rate of when the expense was written until reconciled with the new one.
+        Files.writeString(file, "date,currency,rate\n2023-12-01,USD,0.8\n");
+        exchangeRates.reload();
+        assertSummary(expenseRollupService.summary(DECEMBER, DECEMBER, null),
+                row(DECEMBER, it, meal, "10.00", 2));
+
+        assertEquals(1, expenseRollupService.reconcile());
+        entityManager.clear();
+        assertSummary(expenseRollupService.summary(DECEMBER, DECEMBER, null),
+                row(DECEMBER, it, meal, "9.00", 2));
+    }
+
+    @Test
+    void testKeepsRatesCoveringStoredExpenses(@TempDir Path directory) throws IOException {
+        Path file = directory.resolve("exchange-rates.csv");
+        Files.writeString(file, "date,currency,rate\n2023-12-01,USD,0.9\n2023-12-01,JPY,0.0064\n");
+        ReflectionTestUtils.setField(exchangeRates, "file", file);
+        exchangeRates.reload();
+
+        ExpenseDTO dollars = expense(meal, LocalDate.of(2023, 12, 5), "10.00");
+        dollars.setCurrency("USD");
+        save(dollars);
+
+        // USD starting after the stored expense, and then dropped, would leave it without a rate.
+        Files.writeString(file, "date,currency,rate\n2023-12-06,USD,0.8\n2023-12-01,JPY,0.0064\n");
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, exchangeRates::reload);
+        assertTrue(e.getMessage().contains("USD from 2023-12-05"));
+
+        Files.writeString(file, "date,currency,rate\n2023-12-01,JPY,0.0064\n");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(0));
+        exchangeRates.reloadIfChanged();
+        assertEquals(2, exchangeRates.find().getCurrencies());
+        assertEquals(900, exchangeRates.table().convert(1000, Currency.getInstance("USD"), LocalDate.of(2023, 12, 5)));
+
+        // Dropping a currency no stored expense is in is fine.
+        Files.writeString(file, "date,currency,rate\n2023-12-01,USD,0.8\n");
+        exchangeRates.reload();
+        assertEquals(1, exchangeRates.find().getCurrencies());
+    }
+
+    /**
+     * Saves and clears the persistence context, as if each save came in its own request.
+     */
+    private ExpenseDTO save(ExpenseDTO expense) {
+        ExpenseDTO saved = expenseService.save(expense);
+        entityManager.flush();
+        entityManager.clear();
+        return saved;
+    }
+
+    private ExpenseDTO expense(Category category, LocalDate date, String amount) {
+        return new ExpenseDTO(0, employee.getId(), category.getId(), date, new BigDecimal(amount), null, null, 0);
+    }
+
+    private ExpenseSummaryDTO row(YearMonth month, Department department, Category category, String total, long count) {
+        return new ExpenseSummaryDTO(month, department.getId(), category.getId(), new BigDecimal(total), count);
+    }
+
+    private void assertSummary(List<ExpenseSummaryDTO> actual, ExpenseSummaryDTO... expected) {
+        assertEquals(expected.length, actual.size());
+
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].getMonth(), actual.get(i).getMonth());
+            assertEquals(expected[i].getDepartmentId(), actual.get(i).getDepartmentId());
+            assertEquals(expected[i].getCategoryId(), actual.get(i).getCategoryId());
+            assertEquals(0, expected[i].getTotal().compareTo(actual.get(i).getTotal()));
+            assertEquals(expected[i].getCount(), actual.get(i).getCount());
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package com.wwerlang.expensemanager.expense;
+
+import com.wwerlang.expensemanager.category.Category;
+import com.wwerlang.expensemanager.common.PageDTO;
+import com.wwerlang.expensemanager.employee.Employee;
+import com.wwerlang.expensemanager.employee.EmployeeRepository;
+import com.wwerlang.expensemanager.exception.BudgetExceededException;
+import com.wwerlang.expensemanager.exception.EntityConflictException;
+import com.wwerlang.expensemanager.exception.EntityNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ExpenseServiceTest {
+
+    private static final Employee EMPLOYEE = new Employee(1, "John", "Johnson", true, null, 0);
+    private static final Category CATEGORY = new Category(1, "Meal", "Lunch, dinner and breakfast.", true, 0);
+
+    private static final Currency EUR = Currency.getInstance("EUR");
+
+    private static final List<Expense> EXPENSES = List.of(
+            new Expense(1, EMPLOYEE, null, CATEGORY, LocalDate.of(2023, 12, 1), 1250, EUR, "Lunch.", 0),
+            new Expense(2, EMPLOYEE, null, CATEGORY, LocalDate.of(2023, 12, 2), 3000, EUR, null, 0)
+    );
+
+    @InjectMocks
+    private ExpenseService expenseService;
+
+    @Mock
+    private ExpenseRepository expenseRepository;
+
+    @Mock
+    private ExpensePartitions expensePartitions;
+
+    @Mock
+    private ExpenseRollupService expenseRollupService;
+
+    @Mock
+    private ExpenseColumnStore expenseColumnStore;
+
+    @Mock
+    private ExpenseSketches expenseSketches;
+
+    @Mock
+    private ExpenseBudgets expenseBudgets;
+
+    @Mock
+    private ExpenseBudgets.Reservation reservation;
+
+    @Mock
+    private ExchangeRates exchangeRates;
+
+    @Mock
+    private ExpenseReceipts expenseReceipts;
+
+    @Mock
+    private EmployeeRepository employeeRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void mockExchangeRates() throws IOException {
+        ExchangeRateTable rates = ExchangeRateTable.parse(EUR, new BufferedReader(new StringReader("""
+                date,currency,rate
+                2023-12-01,USD,0.9
+                2023-12-01,JPY,0.0064
+                """)));
+        lenient().when(exchangeRates.table()).thenReturn(rates);
+        lenient().when(exchangeRates.base()).thenReturn(EUR);
+    }
+
+    @BeforeEach
+    void mockExpensePartitions() {
+        lenient().when(expensePartitions.lock()).thenReturn(new ReentrantReadWriteLock());
+    }
+
+    @BeforeEach
+    void mockExpenseRepository() {
+        lenient().when(expenseRepository.findById(anyLong())).thenAnswer(invocationOnMock -> {
+            long id = invocationOnMock.getArgument(0);
+            return EXPENSES.stream().filter(e -> e.getId() == id).findFirst();
+        });
+
+        lenient().when(expenseRepository.findByIdGreaterThanOrderByIdAsc(anyLong(), any(), any(), anyInt())).thenAnswer(invocationOnMock -> {
+            long id = invocationOnMock.getArgument(0);
+            int limit = invocationOnMock.getArgument(3);
+            return EXPENSES.stream().filter(e -> e.getId() > id).limit(limit).toList();
+        });
+
+        lenient().when(expenseRepository.insert(any(Expense.class))).thenAnswer(invocationOnMock -> {
+            Expense expense = invocationOnMock.getArgument(0);
+            expense.setId(expense.getId() == 0 ? 3 : expense.getId());
+            return expense;
+        });
+
+        lenient().when(expenseRepository.updateIfVersionMatches(any(Expense.class), any(Expense.class))).thenAnswer(invocationOnMock -> {
+            Expense expense = invocationOnMock.getArgument(1);
+            return (int) EXPENSES.stream()
+                    .filter(e -> e.getId() == expense.getId() && e.getVersion() == expense.getVersion())
+                    .count();
+        });
+
+        lenient().when(expenseRepository.deleteIfVersionMatches(any(Expense.class))).thenAnswer(invocationOnMock -> {
+            Expense expense = invocationOnMock.getArgument(0);
+            return (int) EXPENSES.stream()
+                    .filter(e -> e.getId() == expense.getId() && e.getVersion() == expense.getVersion())
+                    .count();
+        });
+
+        lenient().when(employeeRepository.findAllWithDepartmentByIdIn(anyCollection())).thenReturn(List.of(EMPLOYEE));
+
+        lenient().when(expenseBudgets.reservation()).thenReturn(reservation);
+
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocationOnMock -> {
+            TransactionCallback<?> callback = invocationOnMock.getArgument(0);
+            return callback.doInTransaction(null);
+        });
+
+        lenient().doAnswer(invocationOnMock -> {
+            Consumer<TransactionStatus> callback = invocationOnMock.getArgument(0);
+            callback.accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+    }
+
+    @Test
+    void testFind() {
+        ExpenseDTO expense = expenseService.find(1L);
+        assertEquals(1, expense.getId());
+        assertEquals(1, expense.getEmployeeId());
+        assertEquals(1, expense.getCategoryId());
+        assertEquals(LocalDate.of(2023, 12, 1), expense.getDate());
+        assertEquals(new BigDecimal("12.50"), expense.getAmount());
+        assertEquals("Lunch.", expense.getDescription());
+    }
+
+    @Test
+    void testFindNonExistent() {
+        EntityNotFoundException e = assertThrows(EntityNotFoundException.class, () -> expenseService.find(3L));
+        assertEquals("Expense not found with ID 3.", e.getMessage());
+    }
+
+    @Test
+    void testList() {
+        PageDTO<ExpenseDTO> page = expenseService.list(0, 1, null, null);
+        assertEquals(1, page.getItems().size());
+        assertEquals(1, page.getItems().get(0).getId());
+        assertEquals(1, page.getNext());
+
+        page = expenseService.list(page.getNext(), 1, null, null);
+        assertEquals(1, page.getItems().size());
+        assertEquals(2, page.getItems().get(0).getId());
+        assertNull(page.getNext());
+    }
+
+    @Test
+    void testCreate() {
+        ExpenseDTO expense = new ExpenseDTO(0, 1, 1, LocalDate.of(2023, 12, 3), new BigDecimal("8.90"), null, "Taxi.",
+                0);
+        expense = expenseService.save(expense);
+
+        assertEquals(3, expense.getId());
+        assertEquals(1, expense.getEmployeeId());
+        assertEquals(new BigDecimal("8.90"), expense.getAmount());
+        verify(expenseColumnStore).put(argThat(e -> e.getId() == 3));
+        verify(expenseSketches).add(argThat(e -> e.getId() == 3));
+        verify(reservation).reserve(argThat(added -> added.iterator().next().getId() == 3), eq(List.of()));
+        verify(reservation).commit();
+    }
+
+    @Test
+    void testCreateOverBudget() {
+        doThrow(new BudgetExceededException(4, YearMonth.of(2023, 12), new BigDecimal("5.00"), new BigDecimal("8.90")))
+                .when(reservation).reserve(anyCollection(), anyCollection());
+
+        ExpenseDTO expense = new ExpenseDTO(0, 1, 1, LocalDate.of(2023, 12, 3), new BigDecimal("8.90"), null, "Taxi.",
+                0);
+        BudgetExceededException e = assertThrows(BudgetExceededException.class, () -> expenseService.save(expense));
+
+        assertEquals("Department 4 has 5.00 left of its budget for 2023-12, not enough for 8.90.", e.getMessage());
+        verify(expenseRepository, never()).insert(any());
+        verify(reservation).release();
+        verify(reservation, never()).commit();
+        verifyNoInteractions(expenseColumnStore, expenseSketches);
+    }
+
+    @Test
+    void testUpdate() {
+        ExpenseDTO expense = new ExpenseDTO(2, 1, 1, LocalDate.of(2023, 12, 2), new BigDecimal("35.00"), null, null,
+                0);
+        expense = expenseService.save(expense);
+
+        assertEquals(2, expense.getId());
+        assertEquals(new BigDecimal("35.00"), expense.getAmount());
+        assertEquals(1, expense.getVersion());
+
+        // The old amount comes out of the rollups and the new one goes in.
+        verify(expenseRollupService).apply(
+                argThat(added -> added.iterator().next().getAmount() == 3500),
+                argThat(removed -> removed.iterator().next().getAmount() == 3000));
+        verify(expenseSketches).markStale(List.of(LocalDate.of(2023, 12, 2), LocalDate.of(2023, 12, 2)));
+        verify(reservation).reserve(
+                argThat(added -> added.iterator().next().getAmount() == 3500),
+                argThat(removed -> removed.iterator().next().getAmount() == 3000));
+        verify(reservation).commit();
+    }
+
+    @Test
+    void testUpdateNonExistent() {
+        ExpenseDTO expense = new ExpenseDTO(3, 1, 1, LocalDate.of(2023, 12, 3), BigDecimal.ONE, null, null, 0);
+        EntityNotFoundException e = assertThrows(EntityNotFoundException.class, () -> expenseService.save(expense));
+        assertEquals("Expense not found with ID 3.", e.getMessage());
+    }
+
+    @Test
+    void testUpdateConflict() {
+        ExpenseDTO expense = new ExpenseDTO(2, 1, 1, LocalDate.of(2023, 12, 2), BigDecimal.ONE, null, null, 5);
+        EntityConflictException e = assertThrows(EntityConflictException.class, () -> expenseService.save(expense));
+        assertEquals("Expense with ID 2 was modified after version 5.", e.getMessage());
+        verify(reservation).release();
+    }
+
+    @Test
+    void testDelete() throws IOException {
+        expenseService.delete(2L);
+
+        verify(expenseRepository).deleteIfVersionMatches(EXPENSES.get(1));
+        verify(expenseRollupService).apply(List.of(), List.of(EXPENSES.get(1)));
+        verify(expenseColumnStore).remove(EXPENSES.get(1));
+        verify(expenseSketches).markStale(List.of(LocalDate.of(2023, 12, 2)));
+        verify(reservation).reserve(List.of(), List.of(EXPENSES.get(1)));
+        verify(reservation).commit();
+        verify(expenseReceipts).deleteAll(2L);
+    }
+
+    @Test
+    void testDeleteNonExistent() {
+        EntityNotFoundException e = assertThrows(EntityNotFoundException.class, () -> expenseService.delete(3L));
+        assertEquals("Expense not found with ID 3.", e.getMessage());
+        verifyNoInteractions(expenseRollupService, expenseColumnStore, expenseSketches);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testInsertAll() {
+        expenseService.insertAll(List.of(
+                new ExpenseDTO(7, 1, 1, LocalDate.of(2023, 12, 3), BigDecimal.ONE, null, null, 2),
+                new ExpenseDTO(0, 1, 1, LocalDate.of(2023, 12, 4), BigDecimal.TEN, null, null, 0)
+        ));
+
+        ArgumentCaptor<List<Expense>> captor = ArgumentCaptor.forClass(List.class);
+        verify(expenseRepository).insertAll(captor.capture());
+        assertEquals(2, captor.getValue().size());
+        assertTrue(captor.getValue().stream().allMatch(e -> e.getId() == 0 && e.getVersion() == 0));
+        assertTrue(captor.getValue().stream().allMatch(e -> e.getEmployee() == EMPLOYEE));
+        verify(expenseRollupService).apply(captor.getValue(), List.of());
+        verify(expenseColumnStore).putAll(captor.getValue());
+        verify(expenseSketches).addAll(captor.getValue());
+        verify(reservation).reserve(captor.getValue(), List.of());
+        verify(reservation).commit();
+    }
+
+    @Test
+    void testListPartitions() {
+        when(expensePartitions.all()).thenReturn(new ConcurrentSkipListSet<>(List.of(YearMonth.of(2023, 12))));
+        when(expenseRepository.count(YearMonth.of(2023, 12))).thenReturn(2L);
+
+        List<ExpensePartitionDTO> partitions = expenseService.listPartitions();
+
+        assertEquals(1, partitions.size());
+        assertEquals(YearMonth.of(2023, 12), partitions.get(0).getMonth());
+        assertEquals("expense_202312", partitions.get(0).getTable());
+        assertEquals(2, partitions.get(0).getRows());
+    }
+
+    @Test
+    void testDropPartition() {
+        ReflectionTestUtils.setField(expenseService, "archiveDirectory", Path.of("archive"));
+        when(expensePartitions.drop(any(), any())).thenReturn(true);
+
+        expenseService.dropPartition(YearMonth.of(2023, 12), true);
+
+        verify(expensePartitions).drop(YearMonth.of(2023, 12), Path.of("archive", "expense_202312.csv"));
+        verify(expenseRollupService).removeMonth(YearMonth.of(2023, 12));
+        verify(expenseColumnStore).removeMonth(YearMonth.of(2023, 12));
+        verify(expenseSketches).removeMonth(YearMonth.of(2023, 12));
+        verify(expenseBudgets).removeMonth(YearMonth.of(2023, 12));
+    }
+
+    @Test
+    void testDropPartitionWaitsForRunningWrite() throws Exception {
+        CountDownLatch inserting = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocationOnMock -> {
+            inserting.countDown();
+            release.await();
+            return null;
+        }).when(expenseRepository).insertAll(any());
+        when(expensePartitions.drop(any(), any())).thenReturn(true);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try {
+            Future<?> insert = executor.submit(() -> expenseService.insertAll(List.of(
+                    new ExpenseDTO(0, 1, 1, LocalDate.of(2023, 12, 4), BigDecimal.TEN, null, null, 0))));
+            assertTrue(inserting.await(5, TimeUnit.SECONDS));
+            Future<?> drop = executor.submit(() -> expenseService.dropPartition(YearMonth.of(2023, 12), false));
+
+            verify(expensePartitions, after(200).never()).drop(any(), any());
+            release.countDown();
+            insert.get(5, TimeUnit.SECONDS);
+            drop.get(5, TimeUnit.SECONDS);
+
+            InOrder inOrder = inOrder(expenseColumnStore);
+            inOrder.verify(expenseColumnStore).putAll(anyCollection());
+            inOrder.verify(expenseColumnStore).removeMonth(YearMonth.of(2023, 12));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testDropNonExistentPartition() {
+        EntityNotFoundException e = assertThrows(EntityNotFoundException.class,
+                () -> expenseService.dropPartition(YearMonth.of(2023, 11), false));
+        assertEquals("Expense partition not found with ID 202311.", e.getMessage());
+        verify(expenseRollupService, never()).removeMonth(any());
+        verifyNoInteractions(expenseColumnStore);
+    }
+
+    @Test
+    void testParseResponse() {
+        ExpenseDTO expenseDTO = expenseService.parseResponse(EXPENSES.get(0));
+
+        assertEquals(1, expenseDTO.getId());
+        assertEquals(1, expenseDTO.getEmployeeId());
+        assertEquals(1, expenseDTO.getCategoryId());
+        assertEquals(LocalDate.of(2023, 12, 1), expenseDTO.getDate());
+        assertEquals(new BigDecimal("12.50"), expenseDTO.getAmount());
+        assertEquals("Lunch.", expenseDTO.getDescription());
+    }
+
+    @Test
+    void testParseRequest() {
+        ExpenseDTO expenseDTO = new ExpenseDTO(2, 4, 5, LocalDate.of(2023, 12, 2), new BigDecimal("30.00"), null, null,
+                1);
+        Expense expense = expenseService.parseRequest(expenseDTO);
+
+        assertEquals(2, expense.getId());
+        assertEquals(4, expense.getEmployee().getId());
+        assertEquals(5, expense.getCategory().getId());
+        assertEquals(LocalDate.of(2023, 12, 2), expense.getDate());
+        assertEquals(3000, expense.getAmount());
+        assertEquals(EUR, expense.getCurrency());
+        assertEquals(1, expense.getVersion());
+    }
+
+    @Test
+    void testParseRequestInOtherCurrency() {
+        ExpenseDTO expenseDTO = new ExpenseDTO(0, 4, 5, LocalDate.of(2023, 12, 2), new BigDecimal("1234.5"), "JPY",
+                null, 0);
+        Expense expense = expenseService.parseRequest(expenseDTO);
+
+        // Yen have no minor units, so the amount is rounded half up to whole yen.
+        assertEquals(1235, expense.getAmount());
+        assertEquals(Currency.getInstance("JPY"), expense.getCurrency());
+        assertEquals(new BigDecimal("1235"), expenseService.parseResponse(expense).getAmount());
+        assertEquals("JPY", expenseService.parseResponse(expense).getCurrency());
+    }
+
+    @Test
+    void testParseRequestWithoutExchangeRate() {
+        ExpenseDTO beforeRates = new ExpenseDTO(0, 4, 5, LocalDate.of(2023, 11, 30), BigDecimal.ONE, "USD", null, 0);
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> expenseService.parseRequest(beforeRates));
+        assertEquals("There is no exchange rate for USD on 2023-11-30.", e.getMessage());
+
+        ExpenseDTO unknown = new ExpenseDTO(0, 4, 5, LocalDate.of(2023, 12, 2), BigDecimal.ONE, "GBP", null, 0);
+        assertThrows(IllegalArgumentException.class, () -> expenseService.parseRequest(unknown));
+
+        ExpenseDTO invalid = new ExpenseDTO(0, 4, 5, LocalDate.of(2023, 12, 2), BigDecimal.ONE, "XYZ", null, 0);
+        assertThrows(IllegalArgumentException.class, () -> expenseService.parseRequest(invalid));
+    }
+}
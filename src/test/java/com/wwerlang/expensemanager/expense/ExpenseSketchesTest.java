@@ -0,0 +1,202 @@
+package com.wwerlang.expensemanager.expense;
+
+import com.wwerlang.expensemanager.category.Category;
+import com.wwerlang.expensemanager.department.Department;
+import com.wwerlang.expensemanager.employee.Employee;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Currency;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ExpenseSketchesTest {
+
+    private static final LocalDate DAY = LocalDate.of(2023, 12, 1);
+    private static final Currency EUR = Currency.getInstance("EUR");
+
+    @InjectMocks
+    private ExpenseSketches sketches;
+
+    @Mock
+    private ExpenseRepository expenseRepository;
+
+    @Mock
+    private ExchangeRates exchangeRates;
+
+    @Mock
+    private ExpensePartitions expensePartitions;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(expensePartitions.lock()).thenReturn(new ReentrantReadWriteLock());
+        lenient().when(exchangeRates.toBase(any())).thenAnswer(i -> i.<Expense>getArgument(0).getAmount());
+        lenient().when(exchangeRates.base()).thenReturn(EUR);
+    }
+
+    @Test
+    void testEstimatePerDepartmentAndCategory() {
+        sketches.addAll(List.of(
+                expense(1, 1, 1, DAY, "10.00"),
+                expense(1, 1, 2, DAY.plusDays(1), "2.50"),
+                expense(2, 1, 1, DAY.plusDays(2), "7.00"),
+                expense(3, 2, 1, DAY, "1.25"),
+                expense(4, 0, 2, DAY, "3.00")
+        ));
+
+        ExpenseSketchDTO department = sketches.estimate(DAY, DAY.plusDays(30), 1L, null, List.of(0.0, 0.5, 1.0));
+        assertEquals(3, department.getCount());
+        assertEquals(2, department.getDistinctEmployees());
+        assertEquals(List.of(new BigDecimal("2.50"), new BigDecimal("7.00"), new BigDecimal("10.00")),
+                List.copyOf(department.getAmounts().values()));
+
+        ExpenseSketchDTO category = sketches.estimate(DAY, DAY, null, 1L, List.of(0.5));
+        assertEquals(2, category.getCount());
+        assertEquals(2, category.getDistinctEmployees());
+        assertEquals(new BigDecimal("1.25"), category.getAmounts().get(0.5));
+
+        ExpenseSketchDTO withoutDepartment = sketches.estimate(DAY, DAY, 0L, null, List.of(0.5));
+        assertEquals(1, withoutDepartment.getCount());
+    }
+
+    @Test
+    void testEmptyRange() {
+        sketches.add(expense(1, 1, 1, DAY, "10.00"));
+
+        ExpenseSketchDTO sketch = sketches.estimate(DAY.plusDays(1), DAY.plusDays(7), 1L, null, List.of(0.5));
+        assertEquals(0, sketch.getCount());
+        assertEquals(0, sketch.getDistinctEmployees());
+        assertTrue(sketch.getAmounts().isEmpty());
+    }
+
+    @Test
+    void testRebuildsStaleDays() {
+        sketches.addAll(List.of(
+                expense(1, 1, 1, DAY, "10.00"),
+                expense(2, 1, 1, DAY, "20.00"),
+                expense(3, 1, 1, DAY.plusDays(1), "5.00")
+        ));
+        when(expenseRepository.findByDate(DAY)).thenReturn(List.of(expense(1, 1, 1, DAY, "12.00")));
+
+        sketches.markStale(List.of(DAY, DAY));
+        assertEquals(1, sketches.staleDays());
+        assertEquals(3, sketches.estimate(DAY, DAY.plusDays(1), 1L, null, List.of()).getCount());
+
+        assertEquals(1, sketches.rebuildStale());
+        assertEquals(0, sketches.staleDays());
+
+        ExpenseSketchDTO sketch = sketches.estimate(DAY, DAY.plusDays(1), 1L, null, List.of(1.0));
+        assertEquals(2, sketch.getCount());
+        assertEquals(2, sketch.getDistinctEmployees());
+        assertEquals(new BigDecimal("12.00"), sketch.getAmounts().get(1.0));
+
+        // Read from the month sketch, which is merged again from the days.
+        sketch = sketches.estimate(DAY, DAY.plusDays(30), 1L, null, List.of(1.0));
+        assertEquals(2, sketch.getCount());
+        assertEquals(new BigDecimal("12.00"), sketch.getAmounts().get(1.0));
+    }
+
+    /**
+     * One expense committed before the day is read and another one after it, both passed in while it is read.
+     */
+    @Test
+    void testRebuildCountsExpensesPassedInWhileReading() throws Exception {
+        Expense before = expense(1, 1, 1, DAY, "10.00");
+        before.setId(1);
+        Expense after = expense(2, 1, 1, DAY, "20.00");
+        after.setId(2);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            when(expenseRepository.findByDate(DAY)).thenAnswer(invocationOnMock -> {
+                // Estimates and writes do not wait for the query.
+                executor.submit(() -> sketches.addAll(List.of(before, after))).get(5, TimeUnit.SECONDS);
+                return List.of(before);
+            });
+
+            sketches.markStale(List.of(DAY));
+            assertEquals(1, sketches.rebuildStale());
+        } finally {
+            executor.shutdown();
+        }
+
+        ExpenseSketchDTO sketch = sketches.estimate(DAY, DAY, 1L, null, List.of(1.0));
+        assertEquals(2, sketch.getCount());
+        assertEquals(new BigDecimal("20.00"), sketch.getAmounts().get(1.0));
+        assertEquals(2, sketches.estimate(DAY, DAY.plusDays(30), 1L, null, List.of()).getCount());
+    }
+
+    @Test
+    void testRebuildSkipsMonthDroppedWhileReading() {
+        when(expenseRepository.findByDate(DAY)).thenAnswer(invocationOnMock -> {
+            sketches.removeMonth(YearMonth.of(2023, 12));
+            return List.of(expense(1, 1, 1, DAY, "10.00"));
+        });
+
+        sketches.markStale(List.of(DAY));
+        assertEquals(0, sketches.rebuildStale());
+        assertEquals(0, sketches.estimate(DAY, DAY, 1L, null, List.of()).getCount());
+    }
+
+    @Test
+    void testRemoveMonth() {
+        sketches.addAll(List.of(
+                expense(1, 1, 1, DAY.minusDays(1), "10.00"),
+                expense(2, 1, 1, DAY, "20.00")
+        ));
+        sketches.markStale(List.of(DAY));
+
+        sketches.removeMonth(YearMonth.of(2023, 12));
+
+        assertEquals(0, sketches.staleDays());
+        assertEquals(1, sketches.estimate(DAY.minusDays(1), DAY.plusDays(30), 1L, null, List.of()).getCount());
+    }
+
+    @Test
+    void testInvalidQueries() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> sketches.estimate(DAY, DAY, null, null, List.of()));
+        assertEquals("Give either a departmentId or a categoryId.", e.getMessage());
+
+        assertThrows(IllegalArgumentException.class, () -> sketches.estimate(DAY, DAY, 1L, 1L, List.of()));
+        assertThrows(IllegalArgumentException.class, () -> sketches.estimate(DAY.plusDays(1), DAY, 1L, null,
+                List.of()));
+
+        e = assertThrows(IllegalArgumentException.class, () -> sketches.estimate(DAY, DAY, 1L, null, List.of(1.5)));
+        assertEquals("Quantiles are between 0 and 1.", e.getMessage());
+    }
+
+    private static Expense expense(long employeeId, long departmentId, long categoryId, LocalDate date,
+                                   String amount) {
+        Employee employee = new Employee();
+        employee.setId(employeeId);
+        Department department = null;
+
+        if (departmentId != 0) {
+            department = new Department();
+            department.setId(departmentId);
+        }
+
+        Category category = new Category();
+        category.setId(categoryId);
+
+        return new Expense(0, employee, department, category, date,
+                ExchangeRateTable.minorUnits(new BigDecimal(amount), EUR), EUR, null, 0);
+    }
+}
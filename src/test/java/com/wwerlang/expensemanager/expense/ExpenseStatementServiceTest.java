@@ -0,0 +1,146 @@
+package com.wwerlang.expensemanager.expense;
+
+import com.wwerlang.expensemanager.category.Category;
+import com.wwerlang.expensemanager.category.CategoryRepository;
+import com.wwerlang.expensemanager.department.Department;
+import com.wwerlang.expensemanager.department.DepartmentRepository;
+import com.wwerlang.expensemanager.employee.Employee;
+import com.wwerlang.expensemanager.employee.EmployeeRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Slices are read on connections of their own, so the data is committed rather than left in a test transaction.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({ExpenseStatementService.class, ExpenseRepository.class, ExpensePartitions.class, ExchangeRates.class})
+class ExpenseStatementServiceTest {
+
+    private static final YearMonth DECEMBER = YearMonth.of(2023, 12);
+
+    @Autowired
+    private ExpenseStatementService expenseStatementService;
+
+    @Autowired
+    private ExpenseRepository expenseRepository;
+
+    @Autowired
+    private ExpensePartitions expensePartitions;
+
+    @Autowired
+    private DepartmentRepository departmentRepository;
+
+    @Autowired
+    private EmployeeRepository employeeRepository;
+
+    @Autowired
+    private CategoryRepository categoryRepository;
+
+    private Department it;
+    private Department sales;
+    private Category meal;
+
+    @BeforeEach
+    void setUp() {
+        it = departmentRepository.save(new Department(0, "IT", null, true, 0));
+        sales = departmentRepository.save(new Department(0, "Sales", null, true, 0));
+        meal = categoryRepository.save(new Category(0, "Meal", null, true, 0));
+    }
+
+    @AfterEach
+    void tearDown() {
+        List.copyOf(expensePartitions.all()).forEach(month -> expensePartitions.drop(month, null));
+        employeeRepository.deleteAllInBatch();
+        categoryRepository.deleteAllInBatch();
+        departmentRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void testWritesDepartmentsInOrderWithTotals() {
+        Employee john = employeeRepository.save(new Employee(0, "John", "Johnson", true, it, 0));
+        Employee jane = employeeRepository.save(new Employee(0, "Jane", "Jones", true, it, 0));
+        Employee smith = employeeRepository.save(new Employee(0, "Smith", "Smithson", true, sales, 0));
+        expenseRepository.insertAll(List.of(
+                expense(john, LocalDate.of(2023, 12, 5), "10.00"),
+                expense(john, LocalDate.of(2023, 12, 1), "2.50"),
+                expense(smith, LocalDate.of(2023, 12, 31), "7.00"),
+                expense(john, LocalDate.of(2023, 11, 30), "100.00")));
+
+        List<DepartmentStatementDTO> statements = new ArrayList<>();
+        expenseStatementService.write(DECEMBER, statements::add);
+
+        assertEquals(List.of("IT", "Sales"),
+                statements.stream().map(DepartmentStatementDTO::getDepartmentName).toList());
+
+        DepartmentStatementDTO department = statements.get(0);
+        assertEquals(new BigDecimal("12.50"), department.getTotal());
+        assertEquals(2, department.getCount());
+        assertEquals(List.of(john.getId(), jane.getId()),
+                department.getEmployees().stream().map(EmployeeStatementDTO::getEmployeeId).toList());
+
+        EmployeeStatementDTO employee = department.getEmployees().get(0);
+        assertEquals(new BigDecimal("12.50"), employee.getTotal());
+        assertEquals(List.of(LocalDate.of(2023, 12, 1), LocalDate.of(2023, 12, 5)),
+                employee.getExpenses().stream().map(ExpenseDTO::getDate).toList());
+
+        assertEquals(new BigDecimal("0.00"), department.getEmployees().get(1).getTotal());
+        assertTrue(department.getEmployees().get(1).getExpenses().isEmpty());
+        assertEquals(new BigDecimal("7.00"), statements.get(1).getTotal());
+    }
+
+    @Test
+    void testMergesSlicesOfLargeDepartment() {
+        int count = ExpenseStatementService.SLICE_SIZE * 3 + 7;
+        List<Employee> employees = employeeRepository.saveAll(IntStream.range(0, count)
+                .mapToObj(i -> new Employee(0, "Employee", String.valueOf(i), true, it, 0))
+                .toList());
+        expenseRepository.insertAll(employees.stream()
+                .map(e -> expense(e, LocalDate.of(2023, 12, 1), "1.00"))
+                .toList());
+
+        List<DepartmentStatementDTO> statements = new ArrayList<>();
+        expenseStatementService.write(DECEMBER, statements::add);
+
+        DepartmentStatementDTO department = statements.get(0);
+        assertEquals(new BigDecimal(count + ".00"), department.getTotal());
+        assertEquals(count, department.getCount());
+        assertEquals(employees.stream().map(Employee::getId).toList(),
+                department.getEmployees().stream().map(EmployeeStatementDTO::getEmployeeId).toList());
+    }
+
+    @Test
+    void testMonthWithoutExpenses() {
+        employeeRepository.save(new Employee(0, "John", "Johnson", true, it, 0));
+
+        List<DepartmentStatementDTO> statements = new ArrayList<>();
+        expenseStatementService.write(YearMonth.of(2020, 1), statements::add);
+
+        assertEquals(2, statements.size());
+        assertEquals(1, statements.get(0).getEmployees().size());
+        assertEquals(new BigDecimal("0.00"), statements.get(0).getTotal());
+        assertTrue(statements.get(1).getEmployees().isEmpty());
+    }
+
+    private Expense expense(Employee employee, LocalDate date, String amount) {
+        Currency eur = Currency.getInstance("EUR");
+        return new Expense(0, employee, employee.getDepartment(), meal, date,
+                ExchangeRateTable.minorUnits(new BigDecimal(amount), eur), eur, null, 0);
+    }
+}
@@ -0,0 +1,66 @@
+package com.wwerlang.expensemanager.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.DispatcherType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryCountInterceptorTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final QueryCountInterceptor interceptor = new QueryCountInterceptor();
+
+    @BeforeEach
+    void setUp() {
+        Metrics.addRegistry(registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Metrics.removeRegistry(registry);
+        QueryCounter.stop();
+    }
+
+    @Test
+    void testRecordsStatementsPerRequest() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/employee/1");
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/employee/{id}");
+        HandlerMethod handler = new HandlerMethod(this, getClass().getDeclaredMethod("find", long.class));
+
+        interceptor.preHandle(request, new MockHttpServletResponse(), handler);
+        new QueryCounter().inspect("select 1");
+        new QueryCounter().inspect("select 2");
+        interceptor.afterCompletion(request, new MockHttpServletResponse(), handler, null);
+
+        DistributionSummary summary = registry.get(QueryCountInterceptor.METRIC)
+                .tag("uri", "/employee/{id}")
+                .tag("handler", "QueryCountInterceptorTest.find")
+                .summary();
+        assertEquals(1, summary.count());
+        assertEquals(2, summary.totalAmount());
+    }
+
+    @Test
+    void testAsyncDispatchIsNotCountedAgain() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/async");
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/async");
+        request.setDispatcherType(DispatcherType.ASYNC);
+
+        interceptor.preHandle(request, new MockHttpServletResponse(), null);
+        interceptor.afterCompletion(request, new MockHttpServletResponse(), null, null);
+
+        assertNull(registry.find(QueryCountInterceptor.METRIC).tag("uri", "/async").summary());
+    }
+
+    private void find(long id) {
+    }
+}
@@ -0,0 +1,65 @@
+package com.wwerlang.expensemanager.metrics;
+
+import com.wwerlang.expensemanager.department.Department;
+import com.wwerlang.expensemanager.department.DepartmentRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest
+class QueryCounterTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private DepartmentRepository departmentRepository;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @AfterEach
+    void tearDown() {
+        QueryCounter.stop();
+    }
+
+    @Test
+    void testCountsStatements() {
+        entityManager.persistAndFlush(new Department(0, "IT", null, true, 0));
+        entityManager.clear();
+
+        QueryCounter.start();
+        departmentRepository.findByIdGreaterThanOrderByIdAsc(0, Limit.of(10));
+        departmentRepository.count();
+        assertEquals(2, QueryCounter.stop());
+    }
+
+    @Test
+    void testCountsJdbcTemplateStatements() {
+        JdbcTemplate jdbcTemplate = (JdbcTemplate) new JdbcTemplateQueryCounter()
+                .postProcessAfterInitialization(new JdbcTemplate(dataSource), "jdbcTemplate");
+
+        QueryCounter.start();
+        jdbcTemplate.queryForObject("select count(*) from department", Long.class);
+        jdbcTemplate.update("update department set version = version");
+        jdbcTemplate.batchUpdate("update department set version = version where id = ?", List.of(new Object[]{1L},
+                new Object[]{2L}));
+        jdbcTemplate.getDataSource();
+        assertEquals(3, QueryCounter.stop());
+    }
+
+    @Test
+    void testNotStarted() {
+        departmentRepository.count();
+        assertEquals(-1, QueryCounter.stop());
+    }
+}